@@ -0,0 +1,82 @@
+package com.bergerkiller.bukkit.coasters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.events.CoasterConnectionEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterNodeEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterNodesEvent;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Handles node editing events using PlotSquared permissions. The handlers for the
+ * different PlotSquared versions only implement looking up whether a player is
+ * added to the plot at a block.
+ */
+public abstract class PlotSquaredHandler implements Listener {
+    protected final TCCoasters plugin;
+
+    protected PlotSquaredHandler(TCCoasters plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onCoasterNodeEvent(CoasterNodeEvent event) {
+        event.setCancelledIfPositionInvalid(position -> checkAllowed(event.getPlayer(), position));
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onCoasterNodesEvent(CoasterNodesEvent event) {
+        // If player has global USE permission, the player can use the plugin anywhere
+        final Player player = event.getPlayer();
+        if (TCCoastersPermissions.USE.has(player)) {
+            return;
+        }
+
+        // Check all nodes in one pass, looking up the plot only once per block
+        final Map<IntVector3, Boolean> checkedBlocks = new HashMap<>();
+        event.setNodesCancelledIfPositionInvalid(position -> checkedBlocks.computeIfAbsent(
+                IntVector3.blockOf(position), block -> isAddedToPlot(player, block)).booleanValue());
+        if (checkedBlocks.containsValue(Boolean.FALSE)) {
+            this.plugin.sendNoPermissionMessage(player, TCCoastersLocalization.PLOTSQUARED_NO_PERMISSION);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOW, ignoreCancelled = true)
+    public void onCoasterConnectionEvent(CoasterConnectionEvent event) {
+        event.setCancelledIfPositionInvalid(position -> checkAllowed(event.getPlayer(), position));
+    }
+
+    // Checks whether the node at the position can be modified by the player
+    private boolean checkAllowed(Player player, Vector position) {
+        // If player has global USE permission, the player can use the plugin anywhere
+        if (TCCoastersPermissions.USE.has(player)) {
+            return true;
+        }
+
+        // Note: TCCCoastersListener already checks whether player has the plotsquared use permission
+        //       At event priority LOW the event would already be cancelled if that permission was absent.
+        if (!isAddedToPlot(player, IntVector3.blockOf(position))) {
+            this.plugin.sendNoPermissionMessage(player, TCCoastersLocalization.PLOTSQUARED_NO_PERMISSION);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a player is added to the plot at a block, and is allowed to make
+     * changes there
+     *
+     * @param player Player
+     * @param block Block coordinates
+     * @return True if the player is added to the plot at the block
+     */
+    protected abstract boolean isAddedToPlot(Player player, IntVector3 block);
+}
@@ -13,6 +13,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.logging.Level;
@@ -32,8 +33,11 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import com.bergerkiller.bukkit.coasters.commands.TCCoastersCommands;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSV;
+import com.bergerkiller.bukkit.coasters.csv.TrackFileFormat;
+import com.bergerkiller.bukkit.coasters.editor.PlayerEditSelectionFile;
 import com.bergerkiller.bukkit.coasters.editor.PlayerEditState;
 import com.bergerkiller.bukkit.coasters.editor.PlayerEditTool;
+import com.bergerkiller.bukkit.coasters.editor.object.ui.block.MapBlockTextureCache;
 import com.bergerkiller.bukkit.coasters.objects.TrackObjectTypeLight;
 import com.bergerkiller.bukkit.coasters.signs.actions.SignActionPower;
 import com.bergerkiller.bukkit.coasters.signs.actions.SignActionTrackAnimate;
@@ -53,6 +57,7 @@ import com.bergerkiller.bukkit.common.io.ByteArrayIOStream;
 import com.bergerkiller.bukkit.common.localization.LocalizationEnum;
 import com.bergerkiller.bukkit.common.map.MapResourcePack;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.wrappers.HumanHand;
 import com.bergerkiller.bukkit.tc.TCConfig;
 import com.bergerkiller.bukkit.tc.rails.type.RailType;
@@ -67,6 +72,23 @@ public class TCCoasters extends PluginBase {
     private static final boolean DEFAULT_PLOTSQUARED_ENABLED = false;
     private static final boolean DEFAULT_LIGHTAPI_ENABLED = true;
     private static final boolean DEFAULT_LEASH_GLITCH_FIX = false;
+    private static final int DEFAULT_HISTORY_MAX_CHANGES = 10000;
+    private static final int DEFAULT_HISTORY_MAX_MEMORY_MB = 128;
+    private static final boolean DEFAULT_HISTORY_COMPACT = true;
+    private static final int DEFAULT_HISTORY_MAX_DISK_MB = 256;
+    private static final TrackFileFormat DEFAULT_COASTER_FILE_FORMAT = TrackFileFormat.CSV;
+    private static final boolean DEFAULT_MEMORY_MAPPED_LOADING = false;
+    private static final boolean DEFAULT_COASTER_FILE_COMPRESSION = false;
+    private static final boolean DEFAULT_COASTER_JOURNAL = true;
+    private static final int DEFAULT_IMPORT_TICK_TIME_MS = 10;
+    private static final int DEFAULT_COASTER_JOURNAL_MAX_SIZE_KB = 4096;
+    private static final boolean DEFAULT_COALESCE_POWER_CHANGES = false;
+    private static final int DEFAULT_ANIMATION_INTERPOLATION_TICKS = 1;
+    private static final int MAX_ANIMATION_INTERPOLATION_TICKS = 3; // Clients interpolate entity movement over 3 ticks
+    private static final int DEFAULT_FAR_PARTICLE_DISTANCE = 0;
+    private static final int DEFAULT_FAR_PARTICLE_UPDATE_INTERVAL = 5;
+    private static final boolean DEFAULT_LAZY_COASTER_LOADING = false;
+    private static final int DEFAULT_LAZY_COASTER_UNLOAD_DELAY = 300;
     private Task worldUpdateTask, runQueuedTasksTask, updatePlayerEditStatesTask, autosaveTask;
     private TCCoastersCommands commands;
     private final CoasterRailType coasterRailType = new CoasterRailType(this);
@@ -89,6 +111,22 @@ public class TCCoasters extends PluginBase {
     private boolean plotSquaredEnabled = DEFAULT_PLOTSQUARED_ENABLED;
     private boolean lightAPIEnabled = DEFAULT_LIGHTAPI_ENABLED;
     private boolean fixLeashGlitch = DEFAULT_LEASH_GLITCH_FIX;
+    private int historyMaxChanges = DEFAULT_HISTORY_MAX_CHANGES;
+    private long historyMaxMemory = DEFAULT_HISTORY_MAX_MEMORY_MB * 1024L * 1024L;
+    private boolean historyCompact = DEFAULT_HISTORY_COMPACT;
+    private long historyMaxDiskUsage = DEFAULT_HISTORY_MAX_DISK_MB * 1024L * 1024L;
+    private TrackFileFormat coasterFileFormat = DEFAULT_COASTER_FILE_FORMAT;
+    private boolean memoryMappedLoading = DEFAULT_MEMORY_MAPPED_LOADING;
+    private boolean coasterFileCompression = DEFAULT_COASTER_FILE_COMPRESSION;
+    private boolean coasterJournal = DEFAULT_COASTER_JOURNAL;
+    private long importTickDuration = DEFAULT_IMPORT_TICK_TIME_MS * 1000000L;
+    private long coasterJournalMaxSize = DEFAULT_COASTER_JOURNAL_MAX_SIZE_KB * 1024L;
+    private boolean coalescePowerChanges = DEFAULT_COALESCE_POWER_CHANGES;
+    private int animationInterpolationTicks = DEFAULT_ANIMATION_INTERPOLATION_TICKS;
+    private int farParticleDistance = DEFAULT_FAR_PARTICLE_DISTANCE;
+    private int farParticleUpdateInterval = DEFAULT_FAR_PARTICLE_UPDATE_INTERVAL;
+    private boolean lazyCoasterLoading = DEFAULT_LAZY_COASTER_LOADING;
+    private int lazyCoasterUnloadDelay = DEFAULT_LAZY_COASTER_UNLOAD_DELAY;
     private boolean lightAPIFound = false;
     private boolean isDisabled = false;
     private Listener plotSquaredHandler = null;
@@ -131,9 +169,6 @@ public class TCCoasters extends PluginBase {
             coasterWorld = new CoasterWorldImpl(this, world);
             this.worlds.put(world, coasterWorld);
             coasterWorld.load();
-            if (isEnabled()) {
-                coasterWorld.enable();
-            }
         }
         return coasterWorld;
     }
@@ -201,6 +236,7 @@ public class TCCoasters extends PluginBase {
         PlayerEditState state = editStates.get(player);
         if (state != null) {
             state.save();
+            state.getHistory().close();
             editStates.remove(player);
         }
 
@@ -218,6 +254,29 @@ public class TCCoasters extends PluginBase {
         return new FileConfiguration(new File(folder, player.getUniqueId().toString() + ".yml"));
     }
 
+    /**
+     * Gets the file in which the nodes a player has selected are stored.
+     * This is a compact binary file stored next to the player's configuration.
+     *
+     * @param player Player
+     * @return player selection file
+     */
+    public PlayerEditSelectionFile getPlayerSelectionFile(Player player) {
+        File folder = new File(this.getDataFolder(), "players");
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        return new PlayerEditSelectionFile(new File(folder, player.getUniqueId().toString() + ".selection"));
+    }
+
+    public File getPlayerHistoryJournalFolder(Player player) {
+        File folder = new File(this.getDataFolder(), "players");
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        return new File(folder, player.getUniqueId().toString() + ".history");
+    }
+
     /**
      * Attempts to find the coaster by a given name
      * 
@@ -234,6 +293,23 @@ public class TCCoasters extends PluginBase {
         return null;
     }
 
+    /**
+     * Gets whether a coaster by a given name exists on any of the loaded worlds.
+     * Unlike {@link #findCoaster(String)}, this does not load coasters that are
+     * loaded lazily.
+     *
+     * @param name Name of the coaster
+     * @return True if the coaster exists
+     */
+    public boolean hasCoaster(String name) {
+        for (CoasterWorld world : this.worlds.values()) {
+            if (world.getTracks().hasCoaster(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Comes up with a coaster name that does not yet exist
      * 
@@ -242,7 +318,7 @@ public class TCCoasters extends PluginBase {
     public String generateNewCoasterName() {
         for (int i = 1;;i++) {
             String name = "coaster" + i;
-            if (findCoaster(name) == null) {
+            if (!hasCoaster(name)) {
                 return name;
             }
         }
@@ -408,6 +484,168 @@ public class TCCoasters extends PluginBase {
         return maximumParticleWarning;
     }
 
+    /**
+     * Gets the maximum number of changes remembered per player that can be undone.
+     * When more changes are made, the oldest changes are discarded.
+     *
+     * @return maximum number of history changes, 0 if unlimited
+     */
+    public int getHistoryMaxChanges() {
+        return this.historyMaxChanges;
+    }
+
+    /**
+     * Gets the maximum estimated memory used by the changes remembered per player
+     * that can be undone. When more memory is used, the oldest changes are discarded.
+     *
+     * @return maximum memory in bytes, 0 if unlimited
+     */
+    public long getHistoryMaxMemory() {
+        return this.historyMaxMemory;
+    }
+
+    /**
+     * Gets whether older changes that can be undone are stored in a more compact form
+     *
+     * @return True if history compacting is enabled
+     */
+    public boolean isHistoryCompactEnabled() {
+        return this.historyCompact;
+    }
+
+    /**
+     * Gets the maximum number of bytes per player used on disk to store changes that
+     * can be undone, that no longer fit in memory.
+     *
+     * @return maximum disk usage in bytes, 0 if changes are not stored on disk
+     */
+    public long getHistoryMaxDiskUsage() {
+        return this.historyMaxDiskUsage;
+    }
+
+    /**
+     * Gets the file format coasters are saved in
+     *
+     * @return coaster file format
+     */
+    public TrackFileFormat getCoasterFileFormat() {
+        return this.coasterFileFormat;
+    }
+
+    /**
+     * Gets whether coaster csv files are mapped into memory and read directly, rather than
+     * being read as a stream of text. This is faster for large coasters.
+     *
+     * @return True if memory-mapped loading is enabled
+     */
+    public boolean isMemoryMappedLoadingEnabled() {
+        return this.memoryMappedLoading;
+    }
+
+    /**
+     * Gets whether coaster files are compressed when saved. Compressed files are
+     * detected and decompressed when loading, whether this option is enabled or not.
+     *
+     * @return True if coaster file compression is enabled
+     */
+    public boolean isCoasterFileCompressionEnabled() {
+        return this.coasterFileCompression;
+    }
+
+    /**
+     * Gets whether autosave appends the nodes that changed to a journal file, rather
+     * than saving the entire coaster again
+     *
+     * @return True if the coaster journal is enabled
+     */
+    public boolean isCoasterJournalEnabled() {
+        return this.coasterJournal;
+    }
+
+    /**
+     * Gets the maximum size in bytes of the journal of a coaster, after which the
+     * coaster is saved in full again
+     *
+     * @return coaster journal maximum size in bytes
+     */
+    public long getCoasterJournalMaxSize() {
+        return this.coasterJournalMaxSize;
+    }
+
+    /**
+     * Gets the maximum time spent creating the nodes of an imported coaster every tick.
+     * Large coasters are created over multiple ticks.
+     *
+     * @return import time per tick in nanoseconds
+     */
+    public long getImportTickDuration() {
+        return this.importTickDuration;
+    }
+
+    /**
+     * Gets whether power channel changes are collected and delivered to the signs
+     * once per tick, rather than right away when a channel changes.
+     *
+     * @return True if power changes are coalesced
+     */
+    public boolean isPowerChangeCoalescingEnabled() {
+        return this.coalescePowerChanges;
+    }
+
+    /**
+     * Gets the number of ticks between the position and transform updates sent for
+     * display entity track objects moved by an animation. The client interpolates
+     * the movement in between. A value of 1 sends an update every tick.
+     *
+     * @return animation interpolation ticks, at least 1
+     */
+    public int getAnimationInterpolationTicks() {
+        return this.animationInterpolationTicks;
+    }
+
+    /**
+     * Gets the view distance (manhattan distance in blocks) beyond which viewers of
+     * a moving particle only receive movement updates every
+     * {@link #getFarParticleUpdateInterval()} ticks.
+     *
+     * @return far particle distance, or 0 if all viewers are updated every tick
+     */
+    public int getFarParticleDistance() {
+        return this.farParticleDistance;
+    }
+
+    /**
+     * Gets the number of ticks between the movement updates sent to viewers
+     * far away from a particle
+     *
+     * @return far particle update interval in ticks
+     * @see #getFarParticleDistance()
+     */
+    public int getFarParticleUpdateInterval() {
+        return this.farParticleUpdateInterval;
+    }
+
+    /**
+     * Gets whether coasters are only loaded once a chunk inside their area loads,
+     * or when they are looked up by name
+     *
+     * @return True if coasters are loaded lazily
+     */
+    public boolean isLazyCoasterLoadingEnabled() {
+        return this.lazyCoasterLoading;
+    }
+
+    /**
+     * Gets the number of seconds after which coasters loaded lazily are unloaded again,
+     * when no chunk inside their area is loaded
+     *
+     * @return unload delay in seconds, or 0 if coasters are never unloaded
+     * @see #isLazyCoasterLoadingEnabled()
+     */
+    public int getLazyCoasterUnloadDelay() {
+        return this.lazyCoasterUnloadDelay;
+    }
+
     /**
      * Gets the folder where coasters csv files are exported to when using
      * the export command
@@ -457,6 +695,65 @@ public class TCCoasters extends PluginBase {
         this.plotSquaredEnabled = config.get("plotSquaredEnabled", DEFAULT_PLOTSQUARED_ENABLED);
         config.setHeader("lightAPIEnabled", "\nWhether the light track object is made available when LightAPI is detected");
         this.lightAPIEnabled = config.get("lightAPIEnabled", DEFAULT_LIGHTAPI_ENABLED);
+        config.setHeader("historyMaxChanges", "\nMaximum number of changes players can undo using /tcc undo");
+        config.addHeader("historyMaxChanges", "When more changes are made, the oldest changes are forgotten. Set to 0 for no limit");
+        this.historyMaxChanges = Math.max(0, config.get("historyMaxChanges", DEFAULT_HISTORY_MAX_CHANGES));
+        config.setHeader("historyMaxMemoryMB", "\nMaximum estimated memory in megabytes the changes players can undo may use, per player");
+        config.addHeader("historyMaxMemoryMB", "When more memory is used, the oldest changes are forgotten. Set to 0 for no limit");
+        this.historyMaxMemory = Math.max(0, config.get("historyMaxMemoryMB", DEFAULT_HISTORY_MAX_MEMORY_MB)) * 1024L * 1024L;
+        config.setHeader("historyCompact", "\nWhether older changes players can undo are stored in a more compact form");
+        config.addHeader("historyCompact", "This reduces the memory used when players make a lot of changes to many nodes");
+        this.historyCompact = config.get("historyCompact", DEFAULT_HISTORY_COMPACT);
+        config.setHeader("historyMaxDiskMB", "\nMaximum size in megabytes of the file per player storing older changes players can undo");
+        config.addHeader("historyMaxDiskMB", "Changes that exceed the historyMaxChanges or historyMaxMemoryMB limits are moved to this file");
+        config.addHeader("historyMaxDiskMB", "The file is deleted when the player leaves. Set to 0 to not store changes on disk");
+        this.historyMaxDiskUsage = Math.max(0, config.get("historyMaxDiskMB", DEFAULT_HISTORY_MAX_DISK_MB)) * 1024L * 1024L;
+        config.setHeader("coasterFileFormat", "\nThe file format coasters are saved in. Can be 'csv' or 'binary'");
+        config.addHeader("coasterFileFormat", "The binary format is smaller and faster to load and save, but can not be edited by hand");
+        config.addHeader("coasterFileFormat", "Coasters saved in the other format are still loaded, and converted when saved again");
+        this.coasterFileFormat = TrackFileFormat.parse(config.get("coasterFileFormat", DEFAULT_COASTER_FILE_FORMAT.name().toLowerCase(Locale.ENGLISH)), DEFAULT_COASTER_FILE_FORMAT);
+        config.setHeader("coasterFileCompression", "\nWhether coaster files are compressed (gzip) when saved, which makes them a lot smaller");
+        config.addHeader("coasterFileCompression", "Compressed files keep their file extension, and are detected automatically when loading");
+        this.coasterFileCompression = config.get("coasterFileCompression", DEFAULT_COASTER_FILE_COMPRESSION);
+        config.setHeader("memoryMappedLoading", "\nWhether coaster csv files are mapped into memory when loading, which is faster for large coasters");
+        config.addHeader("memoryMappedLoading", "On Windows a mapped file stays locked until it is released by the garbage collector,");
+        config.addHeader("memoryMappedLoading", "which can cause saving right after loading to fail. Only enable this on other systems");
+        this.memoryMappedLoading = config.get("memoryMappedLoading", DEFAULT_MEMORY_MAPPED_LOADING);
+        config.setHeader("coasterJournal", "\nWhether autosave only appends the nodes that changed to a .journal file next to the coaster file");
+        config.addHeader("coasterJournal", "This makes saving small changes to large coasters much faster. The coaster is saved in full again");
+        config.addHeader("coasterJournal", "when many nodes change at once, or when the journal grows too large");
+        this.coasterJournal = config.get("coasterJournal", DEFAULT_COASTER_JOURNAL);
+        config.setHeader("coasterJournalMaxSizeKB", "\nMaximum size in kilobytes of the journal of a coaster, before the coaster is saved in full again");
+        config.addHeader("coasterJournalMaxSizeKB", "The journal is also never allowed to grow larger than the coaster file itself");
+        this.coasterJournalMaxSize = Math.max(0, config.get("coasterJournalMaxSizeKB", DEFAULT_COASTER_JOURNAL_MAX_SIZE_KB)) * 1024L;
+        config.setHeader("importTickTimeMs", "\nMaximum time in milliseconds spent every tick creating the nodes of a coaster being imported");
+        config.addHeader("importTickTimeMs", "Large coasters are created over multiple ticks, so importing them does not freeze the server");
+        this.importTickDuration = Math.max(1, config.get("importTickTimeMs", DEFAULT_IMPORT_TICK_TIME_MS)) * 1000000L;
+        config.setHeader("coalescePowerChanges", "\nWhether power channel changes are collected and delivered to signs once per tick");
+        config.addHeader("coalescePowerChanges", "Signs that listen to multiple channels changing in the same tick are only notified once, and");
+        config.addHeader("coalescePowerChanges", "changes that cause other channels to change are processed in rounds instead of recursively");
+        this.coalescePowerChanges = config.get("coalescePowerChanges", DEFAULT_COALESCE_POWER_CHANGES);
+        config.setHeader("animationInterpolationTicks", "\nNumber of ticks between position updates of display entity track objects moved by an animation");
+        config.addHeader("animationInterpolationTicks", "When above 1, the client smoothly interpolates the movement in between, which reduces the");
+        config.addHeader("animationInterpolationTicks", "number of packets sent for large animated scenes. The final position is always exact.");
+        config.addHeader("animationInterpolationTicks", "A value of 3 matches how long clients interpolate entity movement, and is the maximum. 1 disables this.");
+        this.animationInterpolationTicks = MathUtil.clamp(config.get("animationInterpolationTicks", DEFAULT_ANIMATION_INTERPOLATION_TICKS),
+                1, MAX_ANIMATION_INTERPOLATION_TICKS);
+        config.setHeader("farParticleDistance", "\nView distance (x + y + z blocks) beyond which players only receive the movement of");
+        config.addHeader("farParticleDistance", "display entity track objects every farParticleUpdateInterval ticks");
+        config.addHeader("farParticleDistance", "This reduces the packets sent to far-away players watching big animated scenes");
+        config.addHeader("farParticleDistance", "Set to 0 to send all movement to all players every tick");
+        this.farParticleDistance = Math.max(0, config.get("farParticleDistance", DEFAULT_FAR_PARTICLE_DISTANCE));
+        config.setHeader("farParticleUpdateInterval", "\nNumber of ticks between the movement updates sent to far-away players");
+        this.farParticleUpdateInterval = Math.max(1, config.get("farParticleUpdateInterval", DEFAULT_FAR_PARTICLE_UPDATE_INTERVAL));
+        config.setHeader("lazyCoasterLoading", "\nWhether to only load coasters once a chunk inside the area they cover loads");
+        config.addHeader("lazyCoasterLoading", "The area of every coaster is stored in an index file in the world folder");
+        config.addHeader("lazyCoasterLoading", "Coasters connected with each other are always loaded together");
+        config.addHeader("lazyCoasterLoading", "If a coaster file changed outside of TC-Coasters, all coasters are loaded once");
+        this.lazyCoasterLoading = config.get("lazyCoasterLoading", DEFAULT_LAZY_COASTER_LOADING);
+        config.setHeader("lazyCoasterUnloadDelay", "\nNumber of seconds after which lazily loaded coasters are unloaded again");
+        config.addHeader("lazyCoasterUnloadDelay", "when no chunk inside the area they cover is loaded. Set to 0 to never unload them");
+        this.lazyCoasterUnloadDelay = Math.max(0, config.get("lazyCoasterUnloadDelay", DEFAULT_LAZY_COASTER_UNLOAD_DELAY));
         config.setHeader("priority", "\nWhether TC-Coasters track have priority over other rail types, like vanilla track");
         boolean priority = config.get("priority", false);
         config.save();
@@ -517,11 +814,6 @@ public class TCCoasters extends PluginBase {
             this.getCoasterWorld(world);
         }
 
-        // Start firing off any scheduled pulse changes
-        for (CoasterWorldImpl world : new ArrayList<>(worlds.values())) {
-            world.enable();
-        }
-
         // Schedule some background tasks
         this.worldUpdateTask = (new WorldUpdateTask()).start(1, 1);
         this.runQueuedTasksTask = (new RunQueuedTasksTask()).start(1, 1);
@@ -542,6 +834,9 @@ public class TCCoasters extends PluginBase {
         // Commands
         this.commands = new TCCoastersCommands();
         this.commands.enable(this);
+
+        // Render the block selector icons in the background, so opening it the first time is fast
+        MapBlockTextureCache.get(16, 16).prerender(this);
     }
 
     @Override
@@ -7,9 +7,11 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerToggleSneakEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.WorldInitEvent;
 import org.bukkit.event.world.WorldUnloadEvent;
 
@@ -18,6 +20,7 @@ import com.bergerkiller.bukkit.coasters.editor.PlayerEditState;
 import com.bergerkiller.bukkit.coasters.editor.PlayerEditTool;
 import com.bergerkiller.bukkit.coasters.events.CoasterConnectionEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterNodeEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterNodesEvent;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 public class TCCoastersListener implements Listener {
@@ -80,6 +83,14 @@ public class TCCoastersListener implements Listener {
         }
     }
 
+    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
+    public void onCoasterNodesEvent(CoasterNodesEvent event) {
+        if (!this.plugin.hasUsePermission(event.getPlayer())) {
+            this.plugin.sendNoPermissionMessage(event.getPlayer(), TCCoastersLocalization.NO_PERMISSION);
+            event.setCancelled(true);
+        }
+    }
+
     @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
     public void onCoasterConnectionEvent(CoasterConnectionEvent event) {
         if (!this.plugin.hasUsePermission(event.getPlayer())) {
@@ -94,6 +105,14 @@ public class TCCoastersListener implements Listener {
         this.plugin.getCoasterWorld(event.getWorld());
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        if (this.plugin.isLazyCoasterLoadingEnabled()) {
+            this.plugin.getCoasterWorld(event.getWorld()).getTracks().loadCoastersInChunk(
+                    event.getChunk().getX(), event.getChunk().getZ());
+        }
+    }
+
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onWorldUnload(WorldUnloadEvent event) {
         this.plugin.unloadWorld(event.getWorld());
@@ -105,6 +124,14 @@ public class TCCoastersListener implements Listener {
         this.plugin.getEditState(event.getPlayer()).clearEditedNodes();
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // Start loading the edit state (and stored node selection) of players that can edit right away
+        if (this.plugin.hasUsePermission(event.getPlayer())) {
+            this.plugin.getEditState(event.getPlayer());
+        }
+    }
+
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
         this.plugin.logoutPlayer(event.getPlayer());
@@ -12,6 +12,7 @@ import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import com.bergerkiller.bukkit.coasters.objects.TrackObjectRemovalBatch;
 import com.bergerkiller.bukkit.coasters.signs.actions.TrackAnimationListener;
 import com.bergerkiller.bukkit.tc.controller.components.RailPiece;
 import com.bergerkiller.bukkit.tc.events.SignActionEvent;
@@ -57,6 +58,17 @@ public class TrackAnimationWorld implements CoasterWorldComponent {
         animate("", node, target, connections, duration);
     }
 
+    /**
+     * Gets whether a node is being moved by an animation that has not yet ended.
+     * Nodes whose animation ended this tick are no longer animating.
+     *
+     * @param node Node to check
+     * @return True if the node is animating
+     */
+    public boolean isAnimating(TrackNode node) {
+        return _animations.containsKey(node);
+    }
+
     public void animate(String animationName, TrackNode node, TrackNodeState target, TrackConnectionState[] connections, double duration) {
         _animations.put(node, new TrackAnimation(animationName, node, target, connections, MathUtil.floor(duration * 20.0)));
     }
@@ -179,6 +191,8 @@ public class TrackAnimationWorld implements CoasterWorldComponent {
         }
 
         // Now that all track connections are made, add the objects
+        // Objects removed by swapping out the connections are de-selected all at once
+        TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
         try {
             for (Map.Entry<TrackConnection, TrackConnectionState> addedConnection : _finishedConnections.entrySet()) {
                 addedConnection.getKey().onShapeUpdated();
@@ -186,6 +200,7 @@ public class TrackAnimationWorld implements CoasterWorldComponent {
             }
         } finally {
             _finishedConnections.clear();
+            removalBatch.finish();
         }
 
         // After moving the nodes around again, also rebuild the track information
@@ -17,12 +17,17 @@ import com.bergerkiller.bukkit.common.internal.CommonPlugin;
 import com.bergerkiller.bukkit.common.internal.permissions.PermissionHandler;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 
 import com.bergerkiller.bukkit.coasters.TCCoasters;
 import com.bergerkiller.bukkit.coasters.commands.annotations.CommandRequiresTCCPermission;
+import com.bergerkiller.bukkit.coasters.editor.PlayerEditHistory;
 import com.bergerkiller.bukkit.coasters.editor.PlayerEditState;
+import com.bergerkiller.bukkit.coasters.particles.TrackParticleWorld;
 import com.bergerkiller.bukkit.coasters.rails.TrackRailsSectionsAtRail;
+import com.bergerkiller.bukkit.coasters.signs.power.NamedPowerChannelRegistry;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.util.QueuedTask;
 import com.bergerkiller.bukkit.tc.controller.components.RailPath;
 
 import org.bukkit.util.Vector;
@@ -132,6 +137,78 @@ class DebugCommands {
         sender.sendMessage(ChatColor.YELLOW + "Selected Mode: " + state.getMode().getName());
     }
 
+    @CommandRequiresTCCPermission
+    @Command("history")
+    @CommandDescription("Displays the number of changes and estimated memory used by the undo history of players")
+    public void commandHistoryMemory(
+            final CommandSender sender,
+            final TCCoasters plugin
+    ) {
+        long totalMemory = 0L;
+        sender.sendMessage(ChatColor.YELLOW + "Undo history memory usage by player:");
+        for (Player player : plugin.getPlayersWithEditStates()) {
+            PlayerEditHistory history = plugin.getEditState(player).getHistory();
+            long memory = history.getMemoryUsage();
+            totalMemory += memory;
+            sender.sendMessage(ChatColor.YELLOW + "  - " + player.getName() + ": " +
+                    ChatColor.WHITE + history.getChangeCount() + " changes, " + formatMemory(memory) +
+                    " in memory, " + formatMemory(history.getDiskUsage()) + " on disk");
+        }
+        sender.sendMessage(ChatColor.YELLOW + "Total: " + ChatColor.WHITE + formatMemory(totalMemory));
+    }
+
+    @CommandRequiresTCCPermission
+    @Command("tasks")
+    @CommandDescription("Displays how many objects were queued, processed and deferred by the tasks run every tick")
+    public void commandQueuedTasks(
+            final CommandSender sender
+    ) {
+        sender.sendMessage(ChatColor.YELLOW + "Queued task statistics:");
+        for (QueuedTask<?> task : QueuedTask.getNamedTasks()) {
+            sender.sendMessage(ChatColor.YELLOW + "  - " + task.getName() + ": " +
+                    ChatColor.WHITE + task.getQueuedCount() + " queued, " +
+                    task.getProcessedCount() + " processed, " +
+                    task.getDeferredCount() + " deferred, " +
+                    task.getPendingCount() + " pending");
+        }
+    }
+
+    @CommandRequiresTCCPermission
+    @Command("power")
+    @CommandDescription("Displays statistics about the power channel changes delivered on the current world")
+    public void commandPowerMetrics(
+            final PlayerEditState state,
+            final CommandSender sender
+    ) {
+        NamedPowerChannelRegistry registry = state.getWorld().getNamedPowerChannels();
+        NamedPowerChannelRegistry.PropagationMetrics metrics = registry.getPropagationMetrics();
+        sender.sendMessage(ChatColor.YELLOW + "Power channels on this world:");
+        sender.sendMessage(ChatColor.YELLOW + "  Scheduled pulses and tasks: " + ChatColor.WHITE + registry.getScheduledTaskCount());
+        if (!state.getPlugin().isPowerChangeCoalescingEnabled()) {
+            sender.sendMessage(ChatColor.YELLOW + "  Coalescing power changes is disabled");
+            return;
+        }
+        sender.sendMessage(ChatColor.YELLOW + "  Channel changes: " + ChatColor.WHITE + metrics.channelChanges);
+        sender.sendMessage(ChatColor.YELLOW + "  Notifications delivered: " + ChatColor.WHITE + metrics.notifications +
+                " (" + metrics.deduplicated + " merged)");
+        sender.sendMessage(ChatColor.YELLOW + "  Cascades: " + ChatColor.WHITE + metrics.cascades +
+                " (at most " + metrics.maxRounds + " rounds in a tick, limit reached " + metrics.roundLimitReached + " times)");
+    }
+
+    @CommandRequiresTCCPermission
+    @Command("particles")
+    @CommandDescription("Displays how many packets were sent to de-spawn particles on the current world")
+    public void commandParticleMetrics(
+            final PlayerEditState state,
+            final CommandSender sender
+    ) {
+        TrackParticleWorld.DespawnMetrics metrics = state.getWorld().getParticles().getDespawnMetrics();
+        sender.sendMessage(ChatColor.YELLOW + "Particle de-spawning on this world:");
+        sender.sendMessage(ChatColor.YELLOW + "  Updates: " + ChatColor.WHITE + metrics.updates);
+        sender.sendMessage(ChatColor.YELLOW + "  Entities destroyed: " + ChatColor.WHITE + metrics.entitiesDestroyed);
+        sender.sendMessage(ChatColor.YELLOW + "  Packets sent: " + ChatColor.WHITE + metrics.packetsSent);
+    }
+
     @CommandRequiresTCCPermission
     @Command("metrics")
     @CommandDescription("Makes plugin load time metrics available to diagnose slow loading problems")
@@ -162,17 +239,11 @@ class DebugCommands {
             List<TrackCoaster> coastersByTime = new ArrayList<>(world.getTracks().getCoasters());
             coastersByTime.sort(Comparator.comparing(coaster -> coaster.getLoadMetrics().totalTime(), Comparator.reverseOrder()));
             for (TrackCoaster coaster : coastersByTime) {
-                // Compute an average/centroid position where the coaster is roughly located at
+                // The center of the bounds is roughly where the coaster is located at
                 List<TrackNode> nodes = coaster.getNodes();
                 Set<TrackConnection> uniqueConnections = new HashSet<>();
-                Vector avgPos = new Vector();
-                if (!nodes.isEmpty()) {
-                    nodes.forEach(node -> {
-                        avgPos.add(node.getPosition());
-                        uniqueConnections.addAll(node.getConnections());
-                    });
-                    avgPos.multiply(1.0 / nodes.size());
-                }
+                Vector avgPos = coaster.getBounds().getCenter();
+                nodes.forEach(node -> uniqueConnections.addAll(node.getConnections()));
 
                 // Compute metrics about how many track objects there are
                 int trackObjectCount = 0;
@@ -205,6 +276,15 @@ class DebugCommands {
         });
     }
 
+    private static final DecimalFormat memoryFormat = new DecimalFormat("0.##");
+    private static String formatMemory(long bytes) {
+        if (bytes >= (1024L * 1024L)) {
+            return memoryFormat.format((double) bytes / (1024.0 * 1024.0)) + " MB";
+        } else {
+            return memoryFormat.format((double) bytes / 1024.0) + " KB";
+        }
+    }
+
     private static final DecimalFormat timeFormat = new DecimalFormat("0.################");
     private static String formatTime(double seconds) {
         if (seconds >= 0.1) {
@@ -2,8 +2,14 @@ package com.bergerkiller.bukkit.coasters.commands;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -23,11 +29,10 @@ import com.bergerkiller.bukkit.coasters.editor.history.ChangeCancelledException;
 import com.bergerkiller.bukkit.coasters.events.CoasterCopyEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterImportEvent;
 import com.bergerkiller.bukkit.coasters.tracks.TrackCoaster;
-import com.bergerkiller.bukkit.coasters.tracks.TrackCoaster.CoasterLoadException;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
 import com.bergerkiller.bukkit.coasters.util.PlayerOrigin;
-import com.bergerkiller.bukkit.common.io.AsyncTextWriter;
+import com.bergerkiller.bukkit.common.AsyncTask;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.common.utils.StringUtil;
@@ -343,74 +348,73 @@ class EditStateCommands {
 
             PlayerEditState dlEditState = plugin.getEditState(player);
             TrackCoaster coaster = dlEditState.getWorld().getTracks().createNewEmpty(plugin.generateNewCoasterName());
-            try {
-                try {
-                    coaster.loadFromStream(download.contentInputStream(), player,
-                            absolute ? null : PlayerOrigin.getForPlayer(player));
-                } catch (ChangeCancelledException ex) {
-                    player.sendMessage(ChatColor.RED + "Not all coaster track nodes could be imported!");
-
-                    // Skip the 'failed to decode' message, makes no sense
-                    if (coaster.getNodes().isEmpty()) {
-                        coaster.remove();
-                        return;
-                    }
-                }
-                if (coaster.getNodes().isEmpty()) {
-                    player.sendMessage(ChatColor.RED + "Failed to decode any coaster track nodes!");
-                    coaster.remove();
-                    return;
-                }
-            } catch (CoasterLoadException ex) {
-                player.sendMessage(ChatColor.RED + ex.getMessage());
-                if (coaster.getNodes().isEmpty()) {
-                    coaster.remove();
-                    return;
-                }
-            }
+            player.sendMessage(ChatColor.YELLOW + "Importing coaster...");
+            coaster.loadFromStreamAsync(download.contentInputStream(), player,
+                    absolute ? null : PlayerOrigin.getForPlayer(player)
+            ).whenComplete((unused, error) -> finishImport(player, dlEditState, coaster, error));
+        });
+    }
 
-            // Check power state permissions. Would rather do it during load but whatever...
-            try {
-                for (TrackNode node : coaster.getNodes()) {
-                    node.checkPowerPermissions(player);
-                }
-            } catch (ChangeCancelledException ex) {
-                coaster.remove();
-                return;
-            }
+    private void finishImport(Player player, PlayerEditState dlEditState, TrackCoaster coaster, Throwable error) {
+        if (error instanceof ChangeCancelledException) {
+            player.sendMessage(ChatColor.RED + "Not all coaster track nodes could be imported!");
 
-            // Handle event
-            if (CommonUtil.callEvent(new CoasterImportEvent(player, coaster)).isCancelled()) {
-                player.sendMessage(ChatColor.RED + "Coaster could not be imported here!");
+            // Skip the 'failed to decode' message, makes no sense
+            if (coaster.getNodes().isEmpty()) {
                 coaster.remove();
                 return;
             }
+        } else if (error != null) {
+            player.sendMessage(ChatColor.RED + error.getMessage());
             if (coaster.getNodes().isEmpty()) {
-                player.sendMessage(ChatColor.RED + "None of the nodes could be imported here!");
                 coaster.remove();
                 return;
             }
+        }
+        if (coaster.getNodes().isEmpty()) {
+            player.sendMessage(ChatColor.RED + "Failed to decode any coaster track nodes!");
+            coaster.remove();
+            return;
+        }
 
-            // Create a history change for the entire coaster details
-            // This allows the player to undo this
-            dlEditState.getHistory().addChangeAfterCreatingCoaster(coaster);
-
-            player.sendMessage(ChatColor.GREEN + "Coaster with " + coaster.getNodes().size() + " nodes imported!");
-
-            // Show where this coaster is located
-            Vector centerPos = coaster.getNodes().stream()
-                .map(TrackNode::getPosition)
-                .reduce((a,b) -> a.clone().add(b))
-                .get().multiply(1.0 / coaster.getNodes().size());
-            player.sendMessage(ChatColor.GREEN + "Position is roughly:" +
-                " x=" + Double.toString(MathUtil.round(centerPos.getX(), 4)) +
-                " y=" + Double.toString(MathUtil.round(centerPos.getY(), 4)) +
-                " z=" + Double.toString(MathUtil.round(centerPos.getZ(), 4)));
-            ChatText text = ChatText.fromClickableRunCommand(ChatColor.UNDERLINE + "> Take me there! <",
-                    "/tp " + player.getName() + " " + centerPos.getX() + " " +
-                    centerPos.getY() + " " + centerPos.getZ());
-            text.sendTo(player);
-        });
+        // Check power state permissions. Would rather do it during load but whatever...
+        try {
+            for (TrackNode node : coaster.getNodes()) {
+                node.checkPowerPermissions(player);
+            }
+        } catch (ChangeCancelledException ex) {
+            coaster.remove();
+            return;
+        }
+
+        // Handle event
+        if (CommonUtil.callEvent(new CoasterImportEvent(player, coaster)).isCancelled()) {
+            player.sendMessage(ChatColor.RED + "Coaster could not be imported here!");
+            coaster.remove();
+            return;
+        }
+        if (coaster.getNodes().isEmpty()) {
+            player.sendMessage(ChatColor.RED + "None of the nodes could be imported here!");
+            coaster.remove();
+            return;
+        }
+
+        // Create a history change for the entire coaster details
+        // This allows the player to undo this
+        dlEditState.getHistory().addChangeAfterCreatingCoaster(coaster);
+
+        player.sendMessage(ChatColor.GREEN + "Coaster with " + coaster.getNodes().size() + " nodes imported!");
+
+        // Show where this coaster is located
+        Vector centerPos = coaster.getBounds().getCenter();
+        player.sendMessage(ChatColor.GREEN + "Position is roughly:" +
+            " x=" + Double.toString(MathUtil.round(centerPos.getX(), 4)) +
+            " y=" + Double.toString(MathUtil.round(centerPos.getY(), 4)) +
+            " z=" + Double.toString(MathUtil.round(centerPos.getZ(), 4)));
+        ChatText text = ChatText.fromClickableRunCommand(ChatColor.UNDERLINE + "> Take me there! <",
+                "/tp " + player.getName() + " " + centerPos.getX() + " " +
+                centerPos.getY() + " " + centerPos.getZ());
+        text.sendTo(player);
     }
 
     @CommandRequiresTCCPermission
@@ -436,21 +440,19 @@ class EditStateCommands {
             sender.sendMessage(ChatColor.RED + "These nodes could not be exported!");
         }
 
-        String content;
+        // Take a snapshot of the nodes to export, which is then encoded on another thread
+        final TrackCSVWriter snapshot = TrackCSVWriter.createSnapshot();
+        final char separator = nolimits2Format ? '\t' : ',';
         try {
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            try (TrackCSVWriter writer = new TrackCSVWriter(stream, nolimits2Format ? '\t' : ',')) {
-                if (nolimits2Format) {
-                    // NoLimits2 format
-                    writer.writeAllNoLimits2(exportedNodes, nolimits2Origin ? PlayerOrigin.getForPlayer(state.getPlayer()) : null);
-                } else {
-                    // Normal TCC format
-                    writer.setWriteLinksToForeignNodes(false);
-                    writer.write(PlayerOrigin.getForPlayer(state.getPlayer()));
-                    writer.writeAll(exportedNodes);
-                }
+            if (nolimits2Format) {
+                // NoLimits2 format
+                snapshot.writeAllNoLimits2(exportedNodes, nolimits2Origin ? PlayerOrigin.getForPlayer(state.getPlayer()) : null);
+            } else {
+                // Normal TCC format
+                snapshot.setWriteLinksToForeignNodes(false);
+                snapshot.write(PlayerOrigin.getForPlayer(state.getPlayer()));
+                snapshot.writeAll(exportedNodes);
             }
-            content = stream.toString("UTF-8");
         } catch (Throwable t) {
             plugin.getLogger().log(Level.SEVERE, "Failed to export coaster", t);
             sender.sendMessage(ChatColor.RED + "Failed to export: " + t.getMessage());
@@ -458,9 +460,9 @@ class EditStateCommands {
         }
 
         if (exportToFile) {
-            // Asynchronously write text content to file
+            // Asynchronously encode and write the csv to file
             final File resultFile = new File(plugin.getExportFolder(), "coaster_" + System.currentTimeMillis() + ".csv");
-            AsyncTextWriter.write(resultFile, content).handleAsync((result, t) -> {
+            encodeAsync(snapshot, separator, () -> new FileOutputStream(resultFile)).handleAsync((result, t) -> {
                 if (t != null) {
                     resultFile.delete();
                     sender.sendMessage(ChatColor.RED + "Failed to export to file: " + t.getMessage());
@@ -472,17 +474,58 @@ class EditStateCommands {
                 return result;
             }, CommonUtil.getPluginExecutor(plugin));
         } else {
-            // Asynchronously upload to a hastebin server
-            plugin.getHastebin().upload(content).thenAccept(t -> {
-                if (t.success()) {
+            // Asynchronously encode the csv, then upload it to a hastebin server
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            encodeAsync(snapshot, separator, () -> stream).thenApply(unused -> {
+                try {
+                    return stream.toString("UTF-8");
+                } catch (UnsupportedEncodingException ex) {
+                    throw new CompletionException(ex);
+                }
+            }).thenComposeAsync(content -> plugin.getHastebin().upload(content), CommonUtil.getPluginExecutor(plugin))
+              .whenCompleteAsync((t, error) -> {
+                if (error != null) {
+                    plugin.getLogger().log(Level.SEVERE, "Failed to export coaster", error);
+                    sender.sendMessage(ChatColor.RED + "Failed to export: " + error.getMessage());
+                } else if (t.success()) {
                     sender.sendMessage(ChatColor.GREEN + "Tracks exported: " + ChatColor.WHITE + ChatColor.UNDERLINE + t.url());
                 } else {
                     sender.sendMessage(ChatColor.RED + "Failed to export: " + t.error());
                 }
-            });
+            }, CommonUtil.getPluginExecutor(plugin));
         }
     }
 
+    /**
+     * Writes the entries of a snapshot as csv to an output stream on another thread
+     *
+     * @param snapshot Writer created using {@link TrackCSVWriter#createSnapshot()}
+     * @param separator CSV separator character
+     * @param output Opens the output stream to write to, on the other thread
+     * @return future completed once all is written
+     */
+    private static CompletableFuture<Void> encodeAsync(final TrackCSVWriter snapshot, final char separator, final OutputSupplier output) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try (TrackCSVWriter writer = new TrackCSVWriter(output.open(), separator)) {
+                    snapshot.writeSnapshotTo(writer);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                future.complete(null);
+            }
+        }.start();
+        return future;
+    }
+
+    @FunctionalInterface
+    private static interface OutputSupplier {
+        OutputStream open() throws IOException;
+    }
+
     @CommandRequiresTCCPermission
     @Command("info")
     @CommandDescription("Shows meta information about the selected nodes")
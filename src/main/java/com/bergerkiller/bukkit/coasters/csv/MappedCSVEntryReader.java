@@ -0,0 +1,433 @@
+package com.bergerkiller.bukkit.coasters.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.util.CSVFormatDetectorStream;
+import com.bergerkiller.bukkit.coasters.util.StringArrayBuffer;
+import com.bergerkiller.bukkit.coasters.util.SyntaxException;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Reads CSV entries directly from a byte buffer, which is usually a memory-mapped file.
+ * Fields are tokenized in place, following the same rules as the opencsv parser
+ * used by the regular reader.<br>
+ * <br>
+ * NODE, ROOT and LINK rows, which make up almost all of a coaster, are decoded straight
+ * from the field bytes without creating a String for every value. If such a row contains
+ * anything unusual, it is decoded the normal way instead, so that the results (and errors)
+ * are exactly the same as when using the regular reader.
+ */
+final class MappedCSVEntryReader implements TrackCSVReader.EntryReader {
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private ByteBuffer data;
+    private final int limit;
+    private final byte separator;
+    private final boolean ignoreQuotations;
+    private final StringArrayBuffer buffer = new StringArrayBuffer();
+    private int position = 0;
+    private int linesRead = 0;
+
+    // Unescaped contents of the fields of the current row
+    private byte[] fieldData = new byte[256];
+    private int fieldDataLength = 0;
+    private int[] fieldOffsets = new int[32]; // start/end pairs
+    private int fieldCount = 0;
+    private boolean parseFailed = false;
+
+    public MappedCSVEntryReader(ByteBuffer data) throws IOException {
+        this.data = data;
+        this.limit = data.limit();
+
+        CSVFormatDetectorStream detector = new CSVFormatDetectorStream(new ByteBufferInputStream(data.duplicate()));
+        detector.detect();
+        this.separator = (byte) detector.getSeparator();
+        this.ignoreQuotations = detector.getIgnoreQuotes();
+
+        // Skip the byte order mark, like the detector does for the regular reader
+        if (this.limit >= 3 && data.get(0) == (byte) 0xEF && data.get(1) == (byte) 0xBB && data.get(2) == (byte) 0xBF) {
+            this.position = 3;
+        }
+    }
+
+    /**
+     * Maps the contents of a file into memory and creates a reader reading from it
+     *
+     * @param file File to map
+     * @return reader
+     * @throws IOException If the file could not be opened or mapped
+     */
+    public static MappedCSVEntryReader map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped into memory: " + file);
+            }
+            return new MappedCSVEntryReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public TrackCSV.CSVEntry readNext() throws IOException, SyntaxException {
+        while (this.readRow()) {
+            try {
+                TrackCSV.CSVEntry entry = this.decodeNodeRow();
+                if (entry == null) {
+                    this.buffer.load(this.toStringArray());
+                    entry = TrackCSV.decode(this.buffer);
+                }
+                if (entry != null) {
+                    return entry;
+                }
+            } catch (SyntaxException ex) {
+                throw ex.setLine(this.linesRead);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        this.data = null; // Mapping is released once garbage collected
+    }
+
+    /**
+     * Decodes NODE, ROOT and LINK rows directly from the field bytes
+     *
+     * @return decoded entry, or null if the row must be decoded the normal way
+     */
+    private TrackCSV.CSVEntry decodeNodeRow() {
+        if (this.fieldCount < 4 || this.fieldLength(0) != 4) {
+            return null;
+        }
+
+        int start = this.fieldOffsets[0];
+        byte[] f = this.fieldData;
+        if (f[start] == 'L' && f[start + 1] == 'I' && f[start + 2] == 'N' && f[start + 3] == 'K') {
+            this.parseFailed = false;
+            TrackCSV.LinkNodeEntry link = new TrackCSV.LinkNodeEntry();
+            link.pos = this.parseVector(1);
+            return this.parseFailed ? null : link;
+        }
+
+        TrackCSV.BaseNodeEntry node;
+        if (f[start] == 'N' && f[start + 1] == 'O' && f[start + 2] == 'D' && f[start + 3] == 'E') {
+            node = new TrackCSV.NodeEntry();
+        } else if (f[start] == 'R' && f[start + 1] == 'O' && f[start + 2] == 'O' && f[start + 3] == 'T') {
+            node = new TrackCSV.RootNodeEntry();
+        } else {
+            return null;
+        }
+
+        if (this.fieldCount < 7) {
+            return null;
+        }
+        this.parseFailed = false;
+        node.pos = this.parseVector(1);
+        node.up = this.parseVector(4);
+        if (this.fieldCount > 7 && this.fieldLength(7) > 0) {
+            if (this.fieldCount < 10) {
+                return null;
+            }
+            node.rail = new IntVector3(this.parseInt(7), this.parseInt(8), this.parseInt(9));
+        } else {
+            node.rail = null;
+        }
+        return this.parseFailed ? null : node;
+    }
+
+    private Vector parseVector(int field) {
+        return new Vector(this.parseDouble(field), this.parseDouble(field + 1), this.parseDouble(field + 2));
+    }
+
+    /**
+     * Parses a plain decimal number such as written by the CSV writer. Only numbers that
+     * can be converted exactly with a single multiplication or division are parsed
+     * here, which gives the same result as {@link Double#parseDouble(String)}.
+     * For anything else {@link #parseFailed} is set.
+     */
+    private double parseDouble(int field) {
+        int pos = this.fieldOffsets[field << 1];
+        int end = this.fieldOffsets[(field << 1) + 1];
+        byte[] f = this.fieldData;
+        if (pos == end) {
+            this.parseFailed = true;
+            return 0.0;
+        }
+
+        boolean negative = false;
+        if (f[pos] == '-' || f[pos] == '+') {
+            negative = (f[pos] == '-');
+            pos++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int numSignificantDigits = 0;
+        int exponent = 0;
+        boolean hasDot = false;
+        for (; pos < end; pos++) {
+            byte b = f[pos];
+            if (b >= '0' && b <= '9') {
+                numDigits++;
+                if (mantissa != 0 || b != '0') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    numSignificantDigits++;
+                }
+                if (hasDot) {
+                    exponent--;
+                }
+            } else if (b == '.' && !hasDot) {
+                hasDot = true;
+            } else {
+                break;
+            }
+        }
+        if (numDigits == 0 || numSignificantDigits > 15) {
+            this.parseFailed = true;
+            return 0.0;
+        }
+
+        if (pos < end) {
+            byte b = f[pos];
+            if (b != 'e' && b != 'E') {
+                this.parseFailed = true;
+                return 0.0;
+            }
+            pos++;
+            boolean negativeExponent = false;
+            if (pos < end && (f[pos] == '-' || f[pos] == '+')) {
+                negativeExponent = (f[pos] == '-');
+                pos++;
+            }
+            if (pos == end || (end - pos) > 3) {
+                this.parseFailed = true;
+                return 0.0;
+            }
+            int exp = 0;
+            for (; pos < end; pos++) {
+                b = f[pos];
+                if (b < '0' || b > '9') {
+                    this.parseFailed = true;
+                    return 0.0;
+                }
+                exp = exp * 10 + (b - '0');
+            }
+            exponent += negativeExponent ? -exp : exp;
+        }
+
+        double value = (double) mantissa;
+        if (mantissa != 0) {
+            if (exponent < -22 || exponent > 22) {
+                this.parseFailed = true;
+                return 0.0;
+            } else if (exponent < 0) {
+                value /= POWERS_OF_TEN[-exponent];
+            } else {
+                value *= POWERS_OF_TEN[exponent];
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a plain integer number of at most 9 digits.
+     * For anything else {@link #parseFailed} is set.
+     */
+    private int parseInt(int field) {
+        int pos = this.fieldOffsets[field << 1];
+        int end = this.fieldOffsets[(field << 1) + 1];
+        byte[] f = this.fieldData;
+        boolean negative = false;
+        if (pos < end && (f[pos] == '-' || f[pos] == '+')) {
+            negative = (f[pos] == '-');
+            pos++;
+        }
+        if (pos == end || (end - pos) > 9) {
+            this.parseFailed = true;
+            return 0;
+        }
+        int value = 0;
+        for (; pos < end; pos++) {
+            byte b = f[pos];
+            if (b < '0' || b > '9') {
+                this.parseFailed = true;
+                return 0;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int fieldLength(int field) {
+        return this.fieldOffsets[(field << 1) + 1] - this.fieldOffsets[field << 1];
+    }
+
+    private String[] toStringArray() {
+        String[] values = new String[this.fieldCount];
+        for (int i = 0; i < values.length; i++) {
+            int start = this.fieldOffsets[i << 1];
+            values[i] = new String(this.fieldData, start, this.fieldOffsets[(i << 1) + 1] - start, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the fields of the next row. Fields are split up the same way the
+     * opencsv CSVParser does it, including quoted values that span multiple lines.
+     *
+     * @return True if a row was read, False if the end was reached
+     */
+    private boolean readRow() {
+        if (this.position >= this.limit) {
+            return false;
+        }
+
+        this.fieldDataLength = 0;
+        this.fieldCount = 0;
+
+        ByteBuffer data = this.data;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+        boolean inField = false; // Like opencsv, kept while a quoted value continues on the next line
+        boolean pending = false;
+        while (true) {
+            // Find the end of the current line, and the start of the one after it
+            int lineStart = this.position;
+            int lineEnd = lineStart;
+            while (lineEnd < this.limit && data.get(lineEnd) != '\n' && data.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            int next = lineEnd;
+            if (next < this.limit && data.get(next++) == '\r' && next < this.limit && data.get(next) == '\n') {
+                next++;
+            }
+            this.position = next;
+            this.linesRead++;
+
+            for (int i = lineStart; i < lineEnd; i++) {
+                byte c = data.get(i);
+                if (c == ESCAPE) {
+                    if (((inQuotes && !this.ignoreQuotations) || inField) && (i + 1) < lineEnd) {
+                        byte n = data.get(i + 1);
+                        if (n == QUOTE || n == ESCAPE) {
+                            this.append(n);
+                            i++;
+                        }
+                    }
+                } else if (c == QUOTE) {
+                    if (((inQuotes && !this.ignoreQuotations) || inField) && (i + 1) < lineEnd && data.get(i + 1) == QUOTE) {
+                        this.append(QUOTE);
+                        i++;
+                    } else {
+                        inQuotes = !inQuotes;
+
+                        // The tricky case of an embedded quote in the middle: a,bc"d"ef,g
+                        if ((i - lineStart) > 2
+                                && data.get(i - 1) != this.separator
+                                && (i + 1) < lineEnd
+                                && data.get(i + 1) != this.separator
+                        ) {
+                            if (this.fieldDataLength > fieldStart && this.isAllWhiteSpace(fieldStart)) {
+                                this.fieldDataLength = fieldStart;
+                            } else {
+                                this.append(c);
+                            }
+                        }
+                    }
+                    inField = !inField;
+                } else if (c == this.separator && !(inQuotes && !this.ignoreQuotations)) {
+                    this.addField(fieldStart);
+                    fieldStart = this.fieldDataLength;
+                    inField = false;
+                } else {
+                    this.append(c);
+                    inField = true;
+                }
+            }
+
+            pending = inQuotes && !this.ignoreQuotations;
+            if (!pending) {
+                this.addField(fieldStart);
+                return true;
+            } else if (this.position >= this.limit) {
+                // Quoted value was never closed, discard it
+                return true;
+            } else {
+                this.append((byte) '\n');
+            }
+        }
+    }
+
+    private boolean isAllWhiteSpace(int fieldStart) {
+        for (int i = fieldStart; i < this.fieldDataLength; i++) {
+            byte b = this.fieldData[i];
+            if (b < 0) {
+                // Check the decoded characters instead, there are non-ASCII whitespace characters
+                String value = new String(this.fieldData, fieldStart, this.fieldDataLength - fieldStart, StandardCharsets.UTF_8);
+                for (int k = 0; k < value.length(); k++) {
+                    if (!Character.isWhitespace(value.charAt(k))) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (!Character.isWhitespace((char) b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if (this.fieldDataLength == this.fieldData.length) {
+            this.fieldData = Arrays.copyOf(this.fieldData, this.fieldData.length * 2);
+        }
+        this.fieldData[this.fieldDataLength++] = b;
+    }
+
+    private void addField(int fieldStart) {
+        int index = this.fieldCount << 1;
+        if (index == this.fieldOffsets.length) {
+            this.fieldOffsets = Arrays.copyOf(this.fieldOffsets, this.fieldOffsets.length * 2);
+        }
+        this.fieldOffsets[index] = fieldStart;
+        this.fieldOffsets[index + 1] = this.fieldDataLength;
+        this.fieldCount++;
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer data;
+
+        public ByteBufferInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return this.data.hasRemaining() ? (this.data.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!this.data.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, this.data.remaining());
+            this.data.get(b, off, len);
+            return len;
+        }
+    }
+}
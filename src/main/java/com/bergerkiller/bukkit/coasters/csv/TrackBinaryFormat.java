@@ -0,0 +1,235 @@
+package com.bergerkiller.bukkit.coasters.csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.util.CSVFormatDetectorStream;
+import com.bergerkiller.bukkit.coasters.util.StringArrayBuffer;
+import com.bergerkiller.bukkit.coasters.util.SyntaxException;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Compact binary encoding of the same entries stored in the CSV format.<br>
+ * <br>
+ * The NODE, ROOT and LINK entries that make up almost all of a coaster are stored
+ * as fixed-width records of raw numbers, so no number formatting or parsing
+ * is needed. All other entries are stored as a row of values like in the CSV format,
+ * where each value refers to a string table. Strings are added to the table the first
+ * time they are written, so repeated values like sign lines and item details
+ * are only stored once.<br>
+ * <br>
+ * The file starts with {@link #MAGIC} and a version number, followed by records
+ * that each start with a record type byte.
+ */
+public final class TrackBinaryFormat {
+    /** First bytes of every file in this format: 'TCCB' */
+    public static final int MAGIC = 0x54434342;
+    private static final int VERSION = 1;
+    private static final int RECORD_ROOT = 1;
+    private static final int RECORD_NODE = 2;
+    private static final int RECORD_LINK = 3;
+    private static final int RECORD_ROW = 4;
+
+    private TrackBinaryFormat() {
+    }
+
+    /**
+     * Checks whether the first four bytes of a file are those of this format
+     *
+     * @param header First four bytes, big-endian
+     * @return True if the file is in this format
+     */
+    public static boolean isBinaryFormat(int header) {
+        return header == MAGIC;
+    }
+
+    static final class Writer implements TrackCSVWriter.EntryWriter {
+        private final DataOutputStream out;
+        private final Map<String, Integer> stringTable = new HashMap<>();
+
+        public Writer(OutputStream outputStream) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            this.out.writeInt(MAGIC);
+            writeVarInt(this.out, VERSION);
+        }
+
+        @Override
+        public void write(TrackCSV.CSVEntry entry, StringArrayBuffer buffer) throws IOException {
+            Class<?> type = entry.getClass();
+            if (type == TrackCSV.NodeEntry.class || type == TrackCSV.RootNodeEntry.class) {
+                TrackCSV.BaseNodeEntry node = (TrackCSV.BaseNodeEntry) entry;
+                this.out.writeByte((type == TrackCSV.NodeEntry.class) ? RECORD_NODE : RECORD_ROOT);
+                writeVector(node.pos);
+                writeVector(node.up);
+                if (node.rail == null) {
+                    this.out.writeBoolean(false);
+                    this.out.writeInt(0);
+                    this.out.writeInt(0);
+                    this.out.writeInt(0);
+                } else {
+                    this.out.writeBoolean(true);
+                    this.out.writeInt(node.rail.x);
+                    this.out.writeInt(node.rail.y);
+                    this.out.writeInt(node.rail.z);
+                }
+            } else if (type == TrackCSV.LinkNodeEntry.class) {
+                this.out.writeByte(RECORD_LINK);
+                writeVector(((TrackCSV.LinkNodeEntry) entry).pos);
+            } else {
+                buffer.clear();
+                entry.write(buffer);
+                writeRow(buffer.toArray(), true);
+            }
+        }
+
+        @Override
+        public void writeRow(String[] row, boolean applyQuotesToAll) throws IOException {
+            this.out.writeByte(RECORD_ROW);
+            writeVarInt(this.out, row.length);
+            for (String value : row) {
+                Integer index = this.stringTable.get(value);
+                if (index == null) {
+                    // New string: 0 followed by the string, which is assigned the next index
+                    this.stringTable.put(value, this.stringTable.size());
+                    byte[] data = value.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(this.out, 0);
+                    writeVarInt(this.out, data.length);
+                    this.out.write(data);
+                } else {
+                    writeVarInt(this.out, index.intValue() + 1);
+                }
+            }
+        }
+
+        private void writeVector(Vector v) throws IOException {
+            this.out.writeDouble(v.getX());
+            this.out.writeDouble(v.getY());
+            this.out.writeDouble(v.getZ());
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    static final class Reader implements TrackCSVReader.EntryReader {
+        private final DataInputStream in;
+        private final List<String> stringTable = new ArrayList<>();
+        private final StringArrayBuffer buffer = new StringArrayBuffer();
+        private final List<String> row = new ArrayList<>();
+        private int recordIndex = 0;
+
+        public Reader(InputStream inputStream) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(CSVFormatDetectorStream.decompress(inputStream)));
+            if (!isBinaryFormat(this.in.readInt())) {
+                throw new IOException("Not a binary coaster file");
+            }
+            int version = readVarInt(this.in);
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary coaster file version: " + version);
+            }
+        }
+
+        @Override
+        public TrackCSV.CSVEntry readNext() throws IOException, SyntaxException {
+            int recordType;
+            while ((recordType = this.in.read()) != -1) {
+                this.recordIndex++;
+                try {
+                    if (recordType == RECORD_NODE || recordType == RECORD_ROOT) {
+                        TrackCSV.BaseNodeEntry node = (recordType == RECORD_NODE)
+                                ? new TrackCSV.NodeEntry() : new TrackCSV.RootNodeEntry();
+                        node.pos = readVector();
+                        node.up = readVector();
+                        boolean hasRail = this.in.readBoolean();
+                        int x = this.in.readInt();
+                        int y = this.in.readInt();
+                        int z = this.in.readInt();
+                        node.rail = hasRail ? new IntVector3(x, y, z) : null;
+                        return node;
+                    } else if (recordType == RECORD_LINK) {
+                        TrackCSV.LinkNodeEntry link = new TrackCSV.LinkNodeEntry();
+                        link.pos = readVector();
+                        return link;
+                    } else if (recordType == RECORD_ROW) {
+                        this.readRow();
+                        this.buffer.load(this.row);
+                        TrackCSV.CSVEntry entry = TrackCSV.decode(this.buffer);
+                        if (entry != null) {
+                            return entry;
+                        }
+                    } else {
+                        throw new SyntaxException(this.recordIndex, 0, "Unknown record type: " + recordType);
+                    }
+                } catch (SyntaxException ex) {
+                    throw ex.setLine(this.recordIndex);
+                } catch (EOFException ex) {
+                    throw new SyntaxException(this.recordIndex, 0, "Unexpected end of file");
+                }
+            }
+            return null;
+        }
+
+        private void readRow() throws IOException, SyntaxException {
+            this.row.clear();
+            int length = readVarInt(this.in);
+            for (int i = 0; i < length; i++) {
+                int index = readVarInt(this.in);
+                if (index == 0) {
+                    byte[] data = new byte[readVarInt(this.in)];
+                    this.in.readFully(data);
+                    String value = new String(data, StandardCharsets.UTF_8);
+                    this.stringTable.add(value);
+                    this.row.add(value);
+                } else if (index <= this.stringTable.size()) {
+                    this.row.add(this.stringTable.get(index - 1));
+                } else {
+                    throw new SyntaxException(this.recordIndex, i + 1, "Invalid string table index: " + index);
+                }
+            }
+        }
+
+        private Vector readVector() throws IOException {
+            return new Vector(this.in.readDouble(), this.in.readDouble(), this.in.readDouble());
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+}
@@ -91,6 +91,8 @@ public class TrackCSV {
         registerEntry(AnimationStateLinkNodeEntry::new);
         registerEntry(PlayerOrigin::new);
         registerEntry(LockCoasterEntry::new);
+        registerEntry(JournalHeaderEntry::new);
+        registerEntry(JournalRemoveNodeEntry::new);
         registerEntry(AdjustTrackObjectTypeEntry::new);
         registerEntry(LODItemStack.CSVEntry::new);
         registerEntry(ObjectEntry::new);
@@ -700,6 +702,91 @@ public class TrackCSV {
         }
     }
 
+    /**
+     * First entry of a coaster change journal. Identifies the saved coaster file the
+     * changes in the journal apply to, so that a journal is never applied to a coaster
+     * file saved after it.
+     */
+    public static final class JournalHeaderEntry extends CSVEntry {
+        public long snapshotSize;
+        public long snapshotLastModified;
+
+        @Override
+        public boolean detect(StringArrayBuffer buffer) {
+            return buffer.get(0).equals("JOURNAL");
+        }
+
+        @Override
+        public void read(StringArrayBuffer buffer) throws SyntaxException {
+            buffer.next();
+            this.snapshotSize = nextLong(buffer);
+            this.snapshotLastModified = nextLong(buffer);
+        }
+
+        @Override
+        public void write(StringArrayBuffer buffer) {
+            buffer.put("JOURNAL");
+            buffer.put(Long.toString(this.snapshotSize));
+            buffer.put(Long.toString(this.snapshotLastModified));
+        }
+
+        @Override
+        public void processReader(CSVReaderState state) {
+        }
+
+        private static long nextLong(StringArrayBuffer buffer) throws SyntaxException {
+            String value = buffer.next();
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                throw buffer.createSyntaxException("Value is not a number: " + value);
+            }
+        }
+    }
+
+    /**
+     * Used in a coaster change journal. Removes the node at a position, along with all
+     * the links to it that are still pending. The entries that follow re-create the
+     * node, if it still exists, with all the links it has.
+     */
+    public static final class JournalRemoveNodeEntry extends CSVEntry {
+        public Vector pos;
+
+        @Override
+        public boolean detect(StringArrayBuffer buffer) {
+            return buffer.get(0).equals("JREMOVE");
+        }
+
+        @Override
+        public void read(StringArrayBuffer buffer) throws SyntaxException {
+            buffer.next();
+            this.pos = buffer.nextVector();
+        }
+
+        @Override
+        public void write(StringArrayBuffer buffer) {
+            buffer.put("JREMOVE");
+            buffer.putVector(this.pos);
+        }
+
+        @Override
+        public void processReader(CSVReaderState state) {
+            Vector pos = state.transformVector(this.pos);
+            TrackNode node = state.coaster.findNodeExact(pos, null);
+            if (node != null) {
+                state.coaster.removeNode(node);
+            }
+
+            // Links from or to the node are written again for the node that replaces it
+            TrackNodeReference ref = TrackNodeReference.at(pos);
+            state.pendingLinks.removeIf(link -> link.node_a.isReference(ref) || link.node_b.isReference(ref));
+            state.prevNode_pendingLinks.clear();
+            state.pendingTrackObjects.clear();
+            state.prevNode = null;
+            state.prevNodeAnimName = null;
+        }
+    }
+
     /**
      * Declares the details of a track object type implementation
      */
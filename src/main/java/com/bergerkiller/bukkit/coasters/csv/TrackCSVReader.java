@@ -1,9 +1,15 @@
 package com.bergerkiller.bukkit.coasters.csv;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.logging.Level;
 
 import com.bergerkiller.bukkit.coasters.editor.history.ChangeCancelledException;
@@ -25,28 +31,81 @@ import org.bukkit.entity.Player;
  * Helper class for building a coaster from a csv file
  */
 public class TrackCSVReader implements AutoCloseable {
-    private final CSVReader reader;
-    private final StringArrayBuffer buffer;
+    private final EntryReader reader;
     private PlayerOrigin origin = null;
     private TrackCSV.CSVReaderState state = null;
+    private CreateSteps steps = null;
     private boolean preserveSignKeys = false;
 
     public TrackCSVReader(InputStream inputStream) throws IOException {
-        CSVFormatDetectorStream detectorInput = new CSVFormatDetectorStream(inputStream);
-        detectorInput.detect();
-
-        CSVParser csv_parser = (new CSVParserBuilder())
-                .withSeparator(detectorInput.getSeparator())
-                .withQuoteChar('"')
-                .withEscapeChar('\\')
-                .withIgnoreQuotations(detectorInput.getIgnoreQuotes())
-                .withIgnoreLeadingWhiteSpace(true)
-                .build();
-        this.reader = (new CSVReaderBuilder(new InputStreamReader(detectorInput, StandardCharsets.UTF_8)))
-                .withCSVParser(csv_parser)
-                .build();
-
-        this.buffer = new StringArrayBuffer();
+        this(new OpenCSVEntryReader(inputStream));
+    }
+
+    private TrackCSVReader(EntryReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader that reads entries stored in the compact binary format,
+     * rather than as CSV text.
+     *
+     * @param inputStream Stream to read from
+     * @return reader
+     * @throws IOException If the stream does not contain data in the binary format
+     * @see TrackBinaryFormat
+     */
+    public static TrackCSVReader createBinary(InputStream inputStream) throws IOException {
+        return new TrackCSVReader(new TrackBinaryFormat.Reader(inputStream));
+    }
+
+    /**
+     * Creates a reader that reads CSV text from a file mapped into memory. This is
+     * much faster for large files, and produces the same entries as a reader
+     * created using {@link #TrackCSVReader(InputStream)}. Compressed files can not be
+     * mapped, and are read as a stream instead.
+     *
+     * @param file CSV file to read
+     * @return reader
+     * @throws IOException If the file could not be mapped into memory
+     */
+    public static TrackCSVReader createMapped(File file) throws IOException {
+        if (CSVFormatDetectorStream.isCompressed(file)) {
+            return new TrackCSVReader(new FileInputStream(file));
+        }
+        return new TrackCSVReader(MappedCSVEntryReader.map(file));
+    }
+
+    /**
+     * Creates a reader that reads CSV text from a buffer, without copying it first.
+     * Produces the same entries as a reader created using {@link #TrackCSVReader(InputStream)}.
+     *
+     * @param data Buffer with the CSV text, read from its current position up to its limit
+     * @return reader
+     * @throws IOException
+     */
+    public static TrackCSVReader createMapped(ByteBuffer data) throws IOException {
+        return new TrackCSVReader(new MappedCSVEntryReader(data.slice()));
+    }
+
+    /**
+     * Creates a reader that returns entries that were read before, for example
+     * using {@link #readAllEntries()} on another thread.
+     *
+     * @param entries Entries to return
+     * @return reader
+     */
+    public static TrackCSVReader createPreloaded(List<TrackCSV.CSVEntry> entries) {
+        final Iterator<TrackCSV.CSVEntry> iter = entries.iterator();
+        return new TrackCSVReader(new EntryReader() {
+            @Override
+            public TrackCSV.CSVEntry readNext() {
+                return iter.hasNext() ? iter.next() : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
     }
 
     @Override
@@ -108,7 +167,24 @@ public class TrackCSVReader implements AutoCloseable {
      * @throws SyntaxException
      */
     public TrackCSV.CSVEntry readNextEntry() throws IOException, SyntaxException {
-        return TrackCSV.readNext(this.reader, this.buffer);
+        return this.reader.readNext();
+    }
+
+    /**
+     * Reads all remaining entries. Entries are only decoded, so this can be
+     * done on another thread than the main thread.
+     *
+     * @return list of entries read
+     * @throws IOException
+     * @throws SyntaxException
+     */
+    public List<TrackCSV.CSVEntry> readAllEntries() throws IOException, SyntaxException {
+        List<TrackCSV.CSVEntry> entries = new ArrayList<TrackCSV.CSVEntry>();
+        TrackCSV.CSVEntry entry;
+        while ((entry = readNextEntry()) != null) {
+            entries.add(entry);
+        }
+        return entries;
     }
 
     /**
@@ -126,6 +202,42 @@ public class TrackCSVReader implements AutoCloseable {
         wrapErrors(this::createImpl);
     }
 
+    /**
+     * Starts creating the coaster described in the CSV file a little at a time, as the
+     * Player specified. This works the same as {@link #create(TrackCoaster, Player)},
+     * but the work is done by calling {@link #createNext(long)} until it returns true.
+     *
+     * @param coaster Coaster to fill with nodes and connections
+     * @param player Player that is creating (importing) the coaster
+     */
+    public void startCreate(TrackCoaster coaster, Player player) {
+        this.state = new TrackCSV.CSVReaderState(coaster, player, preserveSignKeys);
+        this.steps = new CreateSteps();
+
+        // Not locked by default
+        coaster.setLocked(false);
+    }
+
+    /**
+     * Continues creating the coaster started with {@link #startCreate(TrackCoaster, Player)}
+     * until all of it is created, or the time specified has elapsed.
+     *
+     * @param maxDurationNanos Time in nanoseconds after which to stop, and continue later
+     * @return True if the coaster was fully created, False if this method must be called again
+     * @throws TrackCoaster.CoasterLoadException
+     * @throws ChangeCancelledException If some entries could not be created. Only thrown
+     *                                  once all of the coaster that could be created, is created.
+     */
+    public boolean createNext(long maxDurationNanos) throws TrackCoaster.CoasterLoadException, ChangeCancelledException {
+        if (this.steps == null) {
+            throw new IllegalStateException("Not creating a coaster, call startCreate() first");
+        }
+        final long deadline = System.nanoTime() + maxDurationNanos;
+        final boolean[] finished = new boolean[] { false };
+        wrapErrors(() -> finished[0] = createNextImpl(deadline));
+        return finished[0];
+    }
+
     /**
      * Reads the full CSV file and creates the coaster described in it. Does not perform any
      * permission checking, so this should only be used when loading in coasters from a secure
@@ -157,6 +269,32 @@ public class TrackCSVReader implements AutoCloseable {
     public void createBaseOnly(TrackCoaster coaster) throws TrackCoaster.CoasterLoadException {
         try {
             this.state = new TrackCSV.CSVReaderState(coaster, preserveSignKeys);
+            wrapErrors(() -> {
+                // Not locked by default
+                coaster.setLocked(false);
+                createBaseImpl();
+            });
+        } catch (ChangeCancelledException ex) {
+            // This never happens in practise but handle it anyway
+            throw new TrackCoaster.CoasterLoadException("Unexpected Change Cancelled Exception", ex);
+        }
+    }
+
+    /**
+     * Reads the remaining entries of a coaster change journal and applies them to the coaster
+     * loaded by another reader using {@link #createBaseOnly(TrackCoaster)}. The LINK entries
+     * in the journal are added to those of the other reader, so they are created by the
+     * {@link #getFinalizeAction() finalize action} of that reader.
+     *
+     * @param baseReader Reader that loaded the coaster the journal applies to
+     * @throws TrackCoaster.CoasterLoadException
+     */
+    public void applyJournal(TrackCSVReader baseReader) throws TrackCoaster.CoasterLoadException {
+        if (baseReader.state == null) {
+            throw new IllegalStateException("Coaster was not loaded by the base reader");
+        }
+        try {
+            this.state = baseReader.state;
             wrapErrors(this::createBaseImpl);
         } catch (ChangeCancelledException ex) {
             // This never happens in practise but handle it anyway
@@ -180,6 +318,9 @@ public class TrackCSVReader implements AutoCloseable {
     }
 
     private void createImpl() throws IOException, SyntaxException, ChangeCancelledException {
+        // Not locked by default
+        state.coaster.setLocked(false);
+
         boolean hasChangeCancelledException = false;
         try {
             createBaseImpl();
@@ -196,28 +337,76 @@ public class TrackCSVReader implements AutoCloseable {
         }
     }
 
-    private void createBaseImpl() throws IOException, SyntaxException, ChangeCancelledException {
+    private boolean createNextImpl(long deadline) throws IOException, SyntaxException, ChangeCancelledException {
         TrackCSV.CSVReaderState state = this.state;
+        CreateSteps steps = this.steps;
 
-        // Not locked by default
-        state.coaster.setLocked(false);
+        // Read the entries we can from the CSV reader, like createBaseImpl() does
+        if (!steps.entriesDone) {
+            TrackCSV.CSVEntry entry;
+            while (true) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                if ((entry = readNextEntry()) == null) {
+                    break;
+                }
+                try {
+                    processEntry(entry);
+                } catch (ChangeCancelledException ex) {
+                    steps.hasChangeCancelledException = true;
+                    steps.lastEntry = null; // Don't run this logic
+                    break;
+                }
+                steps.lastEntry = entry;
+            }
+
+            // Closing logic, like connecting first node with last node
+            steps.entriesDone = true;
+            if (steps.lastEntry != null) {
+                try {
+                    steps.lastEntry.processReaderEnd(state);
+                } catch (ChangeCancelledException ex) {
+                    steps.hasChangeCancelledException = true;
+                }
+            }
+
+            // Go by all created nodes and initialize animation state connections up-front
+            state.coaster.refreshConnections();
+        }
+
+        // Create all pending connections, like createPendingLinksImpl() does
+        while (steps.linkIndex < state.pendingLinks.size()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            try {
+                state.processConnection(state.pendingLinks.get(steps.linkIndex++));
+            } catch (ChangeCancelledException ex) {
+                steps.hasChangeCancelledException = true;
+            }
+        }
+
+        // Done. If we had trouble at all, throw to indicate this
+        this.steps = null;
+        if (steps.hasChangeCancelledException) {
+            throw new ChangeCancelledException();
+        }
+        return true;
+    }
+
+    private void createBaseImpl() throws IOException, SyntaxException, ChangeCancelledException {
+        TrackCSV.CSVReaderState state = this.state;
 
         // Read all the entries we can from the CSV reader
         boolean hasChangeCancelledException = false;
         TrackCSV.CSVEntry lastEntry = null;
         TrackCSV.CSVEntry entry;
         while ((entry = readNextEntry()) != null) {
-            // Read the origin of the coaster from the csv
-            // The first line that refers to an origin is used
-            if (this.origin != null && state.transform == null && entry instanceof PlayerOriginHolder) {
-                state.transform = ((PlayerOriginHolder) entry).getOrigin().getTransformTo(this.origin);
-            }
-
-            // Let the entry refresh the reader state
             // If a permission issue occurs, abort, but do continue with creating the connections
             // as it would be very ugly to just have a bunch of disconnected nodes imported in
             try {
-                entry.processReader(state);
+                processEntry(entry);
             } catch (ChangeCancelledException ex) {
                 hasChangeCancelledException = true;
                 lastEntry = null; // Don't run this logic
@@ -244,6 +433,17 @@ public class TrackCSVReader implements AutoCloseable {
         }
     }
 
+    private void processEntry(TrackCSV.CSVEntry entry) throws ChangeCancelledException {
+        // Read the origin of the coaster from the csv
+        // The first line that refers to an origin is used
+        if (this.origin != null && state.transform == null && entry instanceof PlayerOriginHolder) {
+            state.transform = ((PlayerOriginHolder) entry).getOrigin().getTransformTo(this.origin);
+        }
+
+        // Let the entry refresh the reader state
+        entry.processReader(state);
+    }
+
     private void createPendingLinksImpl() throws ChangeCancelledException {
         TrackCSV.CSVReaderState state = this.state;
 
@@ -265,4 +465,64 @@ public class TrackCSVReader implements AutoCloseable {
             throw new ChangeCancelledException();
         }
     }
+
+    /**
+     * Progress of creating a coaster a little at a time
+     */
+    private static final class CreateSteps {
+        public TrackCSV.CSVEntry lastEntry = null;
+        public boolean entriesDone = false;
+        public int linkIndex = 0;
+        public boolean hasChangeCancelledException = false;
+    }
+
+    /**
+     * Reads entries stored in a particular file format
+     */
+    interface EntryReader extends AutoCloseable {
+        /**
+         * Reads the next entry
+         *
+         * @return next entry, null if the end was reached
+         * @throws IOException
+         * @throws SyntaxException
+         */
+        TrackCSV.CSVEntry readNext() throws IOException, SyntaxException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class OpenCSVEntryReader implements EntryReader {
+        private final CSVReader reader;
+        private final StringArrayBuffer buffer;
+
+        public OpenCSVEntryReader(InputStream inputStream) throws IOException {
+            CSVFormatDetectorStream detectorInput = new CSVFormatDetectorStream(inputStream);
+            detectorInput.detect();
+
+            CSVParser csv_parser = (new CSVParserBuilder())
+                    .withSeparator(detectorInput.getSeparator())
+                    .withQuoteChar('"')
+                    .withEscapeChar('\\')
+                    .withIgnoreQuotations(detectorInput.getIgnoreQuotes())
+                    .withIgnoreLeadingWhiteSpace(true)
+                    .build();
+            this.reader = (new CSVReaderBuilder(new InputStreamReader(detectorInput, StandardCharsets.UTF_8)))
+                    .withCSVParser(csv_parser)
+                    .build();
+
+            this.buffer = new StringArrayBuffer();
+        }
+
+        @Override
+        public TrackCSV.CSVEntry readNext() throws IOException, SyntaxException {
+            return TrackCSV.readNext(this.reader, this.buffer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
 }
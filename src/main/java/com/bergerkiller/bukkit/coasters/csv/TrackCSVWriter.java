@@ -26,14 +26,13 @@ import com.bergerkiller.bukkit.coasters.util.PlayerOrigin;
 import com.bergerkiller.bukkit.coasters.util.StringArrayBuffer;
 import com.bergerkiller.bukkit.coasters.util.TrailingNewLineTrimmingWriter;
 import com.bergerkiller.mountiplex.reflection.util.UniqueHash;
-import com.opencsv.CSVWriter;
 
 /**
  * Writes a list of TrackNodes to a CSVWriter, automatically traversing the chains of connections
  * and writing those as well.
  */
 public class TrackCSVWriter implements AutoCloseable {
-    private final ThrowingCSVWriter writer;
+    private final EntryWriter writer;
     private final StringArrayBuffer buffer = new StringArrayBuffer();
     private final Set<TrackNode> pendingNodes = new HashSet<TrackNode>();
     private final Set<TrackNode> writtenNodes = new HashSet<TrackNode>();
@@ -54,7 +53,52 @@ public class TrackCSVWriter implements AutoCloseable {
         char quotechar = '"';
         char escapechar = '\\';
         String lineEnd = "\r\n";
-        this.writer = new ThrowingCSVWriter(writer, separator, quotechar, escapechar, lineEnd);
+        this.writer = new CSVEntryWriter(writer, separator, quotechar, escapechar, lineEnd);
+    }
+
+    private TrackCSVWriter(EntryWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Creates a writer that writes the entries in the compact binary format,
+     * rather than as CSV text.
+     *
+     * @param outputStream Stream to write to
+     * @return writer
+     * @throws IOException
+     * @see TrackBinaryFormat
+     */
+    public static TrackCSVWriter createBinary(OutputStream outputStream) throws IOException {
+        return new TrackCSVWriter(new TrackBinaryFormat.Writer(outputStream));
+    }
+
+    /**
+     * Creates a writer that keeps the entries written in memory, without encoding
+     * them. The node and link entries, which make up most of a coaster, are copied as
+     * they are. Other entries are stored as a row of values.<br>
+     * <br>
+     * The entries can be written out later using {@link #writeSnapshotTo(TrackCSVWriter)}.
+     * This can be done on another thread, as the snapshot does not refer to the nodes.
+     *
+     * @return writer
+     */
+    public static TrackCSVWriter createSnapshot() {
+        return new TrackCSVWriter(new SnapshotEntryWriter());
+    }
+
+    /**
+     * Writes all the entries kept in memory by a writer created using {@link #createSnapshot()}
+     * to another writer. Can be called more than once.
+     *
+     * @param target Writer to write the entries to
+     * @throws IOException
+     */
+    public void writeSnapshotTo(TrackCSVWriter target) throws IOException {
+        if (!(this.writer instanceof SnapshotEntryWriter)) {
+            throw new IllegalStateException("This writer is not a snapshot");
+        }
+        ((SnapshotEntryWriter) this.writer).writeTo(target.writer, target.buffer);
     }
 
     /**
@@ -107,7 +151,7 @@ public class TrackCSVWriter implements AutoCloseable {
      */
     public void writeAllNoLimits2(Collection<TrackNode> nodes, PlayerOrigin origin) throws IOException {
         // Write header
-        this.writer.writeNextThrow(new String[] {"No.","PosX","PosY","PosZ","FrontX","FrontY","FrontZ","LeftX","LeftY","LeftZ","UpX","UpY","UpZ"}, true);
+        this.writer.writeRow(new String[] {"No.","PosX","PosY","PosZ","FrontX","FrontY","FrontZ","LeftX","LeftY","LeftZ","UpX","UpY","UpZ"}, true);
 
         // Set number format to use for all numbers written out
         // NoLimits2 uses 6-decimal precision, which are always printed out (even if .000000)
@@ -183,9 +227,7 @@ public class TrackCSVWriter implements AutoCloseable {
      * @param entry to write
      */
     public void write(TrackCSV.CSVEntry entry) throws IOException {
-        this.buffer.clear();
-        entry.write(this.buffer);
-        this.writer.writeNextThrow(this.buffer.toArray(), entry.applyQuotes());
+        this.writer.write(entry, this.buffer);
     }
 
     /**
@@ -252,34 +294,7 @@ public class TrackCSVWriter implements AutoCloseable {
             } else {
                 node_entry = new TrackCSV.NodeEntry();
             }
-            node_entry.setFromNode(startNode);
-            this.write(node_entry);
-            this.writeAllSigns(startNode.getSigns(), writeSignKeys || startNode.hasAnimationStates());
-
-            // If any exist, add animation node state entries
-            boolean saveConnections = startNode.doAnimationStatesChangeConnections();
-            for (TrackNodeAnimationState animState : startNode.getAnimationStates()) {
-                TrackCSV.AnimationStateNodeEntry anim_entry = new TrackCSV.AnimationStateNodeEntry();
-                anim_entry.name = animState.name;
-                anim_entry.setFromState(animState.state);
-                this.write(anim_entry);
-                this.writeAllSigns(animState.state.signs, true);
-                if (saveConnections) {
-                    for (TrackConnectionState ref : animState.connections) {
-                        this.writeAllObjects(ref);
-
-                        TrackCSV.AnimationStateLinkNodeEntry anim_link_entry = new TrackCSV.AnimationStateLinkNodeEntry();
-                        if (ref.node_a.isReference(startNode)) {
-                            anim_link_entry.pos = ref.node_b.getPosition();
-                            anim_link_entry.objectsFlipped = false;
-                        } else {
-                            anim_link_entry.pos = ref.node_a.getPosition();
-                            anim_link_entry.objectsFlipped = true;
-                        }
-                        this.write(anim_link_entry);
-                    }
-                }
-            }
+            this.writeNode(startNode, node_entry);
 
             // In junctions only mode, we write out all connections in order
             // After that, we stop.
@@ -347,13 +362,72 @@ public class TrackCSVWriter implements AutoCloseable {
         }
     }
 
+    /**
+     * Writes a single node as a ROOT entry, followed by LINK entries for all the
+     * connections it has, in order. Connections are written even if they were
+     * written before, and this does not affect what is written by later calls to
+     * {@link #writeAll(Collection)}. Used to write the nodes that changed
+     * to a coaster change journal.
+     *
+     * @param node Node to write
+     * @throws IOException
+     */
+    public void writeNodeWithAllLinks(TrackNode node) throws IOException {
+        this.writeNode(node, new TrackCSV.RootNodeEntry());
+        for (TrackConnection conn : node.getConnections()) {
+            if (conn.hasObjects() && conn.getNodeA() != node) {
+                conn.swapEnds();
+            }
+            this.writeAllObjects(conn);
+            this.writeLink(conn.getOtherNode(node));
+        }
+    }
+
+    private void writeNode(TrackNode node, TrackCSV.BaseNodeEntry node_entry) throws IOException {
+        node_entry.setFromNode(node);
+        this.write(node_entry);
+        this.writeAllSigns(node.getSigns(), writeSignKeys || node.hasAnimationStates());
+
+        // If any exist, add animation node state entries
+        boolean saveConnections = node.doAnimationStatesChangeConnections();
+        for (TrackNodeAnimationState animState : node.getAnimationStates()) {
+            TrackCSV.AnimationStateNodeEntry anim_entry = new TrackCSV.AnimationStateNodeEntry();
+            anim_entry.name = animState.name;
+            anim_entry.setFromState(animState.state);
+            this.write(anim_entry);
+            this.writeAllSigns(animState.state.signs, true);
+            if (saveConnections) {
+                for (TrackConnectionState ref : animState.connections) {
+                    this.writeAllObjects(ref);
+
+                    TrackCSV.AnimationStateLinkNodeEntry anim_link_entry = new TrackCSV.AnimationStateLinkNodeEntry();
+                    if (ref.node_a.isReference(node)) {
+                        anim_link_entry.pos = ref.node_b.getPosition();
+                        anim_link_entry.objectsFlipped = false;
+                    } else {
+                        anim_link_entry.pos = ref.node_a.getPosition();
+                        anim_link_entry.objectsFlipped = true;
+                    }
+                    this.write(anim_link_entry);
+                }
+            }
+        }
+    }
+
     private void writeLink(TrackNode node) throws IOException {
         TrackCSV.LinkNodeEntry link_entry = new TrackCSV.LinkNodeEntry();
         link_entry.pos = node.getPosition();
         this.write(link_entry);
     }
 
-    private void writeAllObjects(TrackObjectHolder trackObjectHolder) throws IOException {
+    /**
+     * Writes all the track objects of a track object holder, and the track object
+     * types they use that have not been written yet.
+     *
+     * @param trackObjectHolder Holder of the track objects to write
+     * @throws IOException
+     */
+    public void writeAllObjects(TrackObjectHolder trackObjectHolder) throws IOException {
         for (TrackObject object : trackObjectHolder.getObjects()) {
             TrackCSV.ObjectEntry object_entry = new TrackCSV.ObjectEntry();
             object_entry.distance = object.getDistance();
@@ -363,7 +437,14 @@ public class TrackCSVWriter implements AutoCloseable {
         }
     }
 
-    private void writeAllSigns(TrackNodeSign[] signs, boolean writeKeys) throws IOException {
+    /**
+     * Writes all the signs specified
+     *
+     * @param signs Signs to write
+     * @param writeKeys Whether to write the unique keys of the signs
+     * @throws IOException
+     */
+    public void writeAllSigns(TrackNodeSign[] signs, boolean writeKeys) throws IOException {
         for (TrackNodeSign sign : signs) {
             SignEntry entry = new SignEntry();
             entry.sign = sign;
@@ -492,15 +573,188 @@ public class TrackCSVWriter implements AutoCloseable {
         }
     }
 
-    // Extension that adds a writeNext that throws the IOException, rather than swallowing it silently
-    private static class ThrowingCSVWriter extends CSVWriter {
+    /**
+     * Writes entries out in a particular file format
+     */
+    interface EntryWriter extends AutoCloseable {
+        /**
+         * Writes a single entry
+         *
+         * @param entry Entry to write
+         * @param buffer Buffer that can be used to convert the entry into a row of values
+         * @throws IOException
+         */
+        void write(TrackCSV.CSVEntry entry, StringArrayBuffer buffer) throws IOException;
+
+        /**
+         * Writes a single row of values
+         *
+         * @param row Values to write
+         * @param applyQuotesToAll Whether to put quotes around all values
+         * @throws IOException
+         */
+        void writeRow(String[] row, boolean applyQuotesToAll) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static final class SnapshotEntryWriter implements EntryWriter {
+        private final List<Object> records = new ArrayList<Object>();
+
+        @Override
+        public void write(TrackCSV.CSVEntry entry, StringArrayBuffer buffer) throws IOException {
+            Class<?> type = entry.getClass();
+            if (type == TrackCSV.NodeEntry.class || type == TrackCSV.RootNodeEntry.class) {
+                TrackCSV.BaseNodeEntry node = (TrackCSV.BaseNodeEntry) entry;
+                TrackCSV.BaseNodeEntry copy = (type == TrackCSV.NodeEntry.class)
+                        ? new TrackCSV.NodeEntry() : new TrackCSV.RootNodeEntry();
+                copy.pos = node.pos.clone();
+                copy.up = node.up.clone();
+                copy.rail = node.rail;
+                this.records.add(copy);
+            } else if (type == TrackCSV.LinkNodeEntry.class) {
+                TrackCSV.LinkNodeEntry copy = new TrackCSV.LinkNodeEntry();
+                copy.pos = ((TrackCSV.LinkNodeEntry) entry).pos.clone();
+                this.records.add(copy);
+            } else {
+                buffer.clear();
+                entry.write(buffer);
+                this.records.add(new Row(buffer.toArray(), entry.applyQuotes()));
+            }
+        }
+
+        @Override
+        public void writeRow(String[] row, boolean applyQuotesToAll) throws IOException {
+            this.records.add(new Row(row, applyQuotesToAll));
+        }
 
-        public ThrowingCSVWriter(Writer writer, char separator, char quotechar, char escapechar, String lineEnd) {
-            super(writer, separator, quotechar, escapechar, lineEnd);
+        public void writeTo(EntryWriter target, StringArrayBuffer buffer) throws IOException {
+            for (Object record : this.records) {
+                if (record instanceof Row) {
+                    target.writeRow(((Row) record).values, ((Row) record).applyQuotesToAll);
+                } else {
+                    target.write((TrackCSV.CSVEntry) record, buffer);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private static final class Row {
+            public final String[] values;
+            public final boolean applyQuotesToAll;
+
+            public Row(String[] values, boolean applyQuotesToAll) {
+                this.values = values;
+                this.applyQuotesToAll = applyQuotesToAll;
+            }
+        }
+    }
+
+    /**
+     * Writes rows of values in the same way opencsv's CSVWriter does, throwing I/O errors
+     * rather than swallowing them silently. The values of entries are appended to the line
+     * straight from the buffer, so that numbers are not turned into a String first.
+     */
+    private static final class CSVEntryWriter implements EntryWriter {
+        private static final int INITIAL_LINE_SIZE = 1024;
+        private final Writer writer;
+        private final char separator;
+        private final char quotechar;
+        private final char escapechar;
+        private final String lineEnd;
+        private final StringBuilder line = new StringBuilder(INITIAL_LINE_SIZE);
+        private char[] lineChars = new char[INITIAL_LINE_SIZE];
+
+        public CSVEntryWriter(Writer writer, char separator, char quotechar, char escapechar, String lineEnd) {
+            this.writer = writer;
+            this.separator = separator;
+            this.quotechar = quotechar;
+            this.escapechar = escapechar;
+            this.lineEnd = lineEnd;
+        }
+
+        @Override
+        public void write(TrackCSV.CSVEntry entry, StringArrayBuffer buffer) throws IOException {
+            buffer.clear();
+            entry.write(buffer);
+
+            boolean applyQuotesToAll = entry.applyQuotes();
+            this.line.setLength(0);
+            for (int i = 0; i < buffer.size(); i++) {
+                if (i != 0) {
+                    this.line.append(this.separator);
+                }
+                int start = this.line.length();
+                buffer.appendTo(i, this.line);
+                this.quoteValue(start, applyQuotesToAll);
+            }
+            this.writeLine();
+        }
+
+        @Override
+        public void writeRow(String[] nextLine, boolean applyQuotesToAll) throws IOException {
+            this.line.setLength(0);
+            for (int i = 0; i < nextLine.length; i++) {
+                if (i != 0) {
+                    this.line.append(this.separator);
+                }
+                if (nextLine[i] != null) {
+                    int start = this.line.length();
+                    this.line.append(nextLine[i]);
+                    this.quoteValue(start, applyQuotesToAll);
+                }
+            }
+            this.writeLine();
+        }
+
+        /**
+         * Puts quotes around the value at the end of the line, if it contains characters
+         * that must be escaped or all values are quoted. Escapes quote and escape characters.
+         */
+        private void quoteValue(int start, boolean applyQuotesToAll) {
+            boolean hasSpecialCharacters = false;
+            for (int i = start; i < this.line.length(); i++) {
+                char c = this.line.charAt(i);
+                if (c == this.quotechar || c == this.escapechar || c == this.separator || c == '\n' || c == '\r') {
+                    hasSpecialCharacters = true;
+                    break;
+                }
+            }
+            if (hasSpecialCharacters) {
+                String value = this.line.substring(start);
+                this.line.setLength(start);
+                this.line.append(this.quotechar);
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == this.quotechar || c == this.escapechar) {
+                        this.line.append(this.escapechar);
+                    }
+                    this.line.append(c);
+                }
+                this.line.append(this.quotechar);
+            } else if (applyQuotesToAll) {
+                this.line.insert(start, this.quotechar);
+                this.line.append(this.quotechar);
+            }
+        }
+
+        private void writeLine() throws IOException {
+            this.line.append(this.lineEnd);
+            int length = this.line.length();
+            if (length > this.lineChars.length) {
+                this.lineChars = new char[Math.max(length, this.lineChars.length * 2)];
+            }
+            this.line.getChars(0, length, this.lineChars, 0);
+            this.writer.write(this.lineChars, 0, length);
         }
 
-        public void writeNextThrow(String[] nextLine, boolean applyQuotesToAll) throws IOException {
-            super.writeNext(nextLine, applyQuotesToAll, new StringBuilder(INITIAL_STRING_SIZE));
+        @Override
+        public void close() throws IOException {
+            this.writer.close();
         }
     }
 }
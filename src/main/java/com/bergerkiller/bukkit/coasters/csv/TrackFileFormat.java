@@ -0,0 +1,78 @@
+package com.bergerkiller.bukkit.coasters.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The file formats coasters can be saved in. All formats store the same
+ * entries, and are read using a {@link TrackCSVReader} and written
+ * using a {@link TrackCSVWriter}.
+ */
+public enum TrackFileFormat {
+    /** Human-readable CSV text. Also used for importing and exporting coasters */
+    CSV(".csv"),
+    /** Compact binary encoding, which is faster to read and write */
+    BINARY(".tccb");
+
+    private final String extension;
+
+    private TrackFileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension of files saved in this format, including the leading dot
+     *
+     * @return file extension
+     */
+    public String getExtension() {
+        return this.extension;
+    }
+
+    /**
+     * Creates a reader for reading coaster data in this format
+     *
+     * @param inputStream Stream to read from
+     * @return reader
+     * @throws IOException
+     */
+    public TrackCSVReader createReader(InputStream inputStream) throws IOException {
+        if (this == BINARY) {
+            return TrackCSVReader.createBinary(inputStream);
+        } else {
+            return new TrackCSVReader(inputStream);
+        }
+    }
+
+    /**
+     * Creates a writer for writing coaster data in this format
+     *
+     * @param outputStream Stream to write to
+     * @return writer
+     * @throws IOException
+     */
+    public TrackCSVWriter createWriter(OutputStream outputStream) throws IOException {
+        if (this == BINARY) {
+            return TrackCSVWriter.createBinary(outputStream);
+        } else {
+            return new TrackCSVWriter(outputStream);
+        }
+    }
+
+    /**
+     * Parses the name of a file format, as specified in the configuration
+     *
+     * @param name Name of the format
+     * @param def Format to return if the name is not recognized
+     * @return file format
+     */
+    public static TrackFileFormat parse(String name, TrackFileFormat def) {
+        for (TrackFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return def;
+    }
+}
@@ -1,24 +1,59 @@
 package com.bergerkiller.bukkit.coasters.editor;
 
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.logging.Level;
 
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
+import com.bergerkiller.bukkit.coasters.TCCoasters;
 import com.bergerkiller.bukkit.coasters.editor.history.HistoryChange;
+import com.bergerkiller.bukkit.coasters.editor.history.HistoryChangeCodec;
 import com.bergerkiller.bukkit.coasters.editor.history.HistoryChangeCollection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
 
 /**
- * Tracks the changes performed over time, allowing for 'undo' functionality.
+ * Tracks the changes performed over time, allowing for 'undo' functionality.<br>
+ * <br>
+ * The number of changes and the estimated memory they use is limited. Once a change
+ * is no longer among the most recent few, it is <i>settled</i>: it is compacted
+ * if enabled, and its memory usage is computed and accounted for. When a limit is
+ * exceeded, the oldest changes are moved to a journal on disk if enabled, or
+ * discarded otherwise. When all changes in memory have been undone, changes
+ * are read back from the journal.
  */
 public class PlayerEditHistory extends HistoryChangeCollection {
+    /**
+     * Number of most recent changes that are not settled yet, as they might still
+     * be modified while the player is editing
+     */
+    private static final int UNSETTLED_CHANGES = 4;
+    private final TCCoasters plugin;
     private final Player player;
     private final LinkedList<HistoryChange> history = new LinkedList<HistoryChange>();
     private final LinkedList<HistoryChange> future = new LinkedList<HistoryChange>();
+    private int settledCount = 0; // first number of changes in history that are settled
+    private long settledMemoryUsage = 0L;
+    private long futureMemoryUsage = 0L;
+    private final PlayerEditHistoryJournal journal;
 
-    public PlayerEditHistory(Player player) {
+    public PlayerEditHistory(TCCoasters plugin, Player player) {
+        this.plugin = plugin;
         this.player = player;
+        this.journal = new PlayerEditHistoryJournal(plugin.getPlayerHistoryJournalFolder(player),
+                new HistoryChangeCodec(plugin));
+        this.journal.clear(); // Left behind when the server did not shut down cleanly
+    }
+
+    /**
+     * Discards all changes stored on disk. Should be called when the player
+     * logs off.
+     */
+    public void close() {
+        this.journal.clear();
     }
 
     /**
@@ -31,13 +66,130 @@ public class PlayerEditHistory extends HistoryChangeCollection {
     @Override
     public HistoryChange addChange(HistoryChange change) {
         this.future.clear();
+        this.futureMemoryUsage = 0L;
         this.history.add(change);
+        this.settleChanges();
         return change;
     }
 
     @Override
     public void removeChange(HistoryChange change) {
-        this.history.remove(change);
+        int index = this.history.indexOf(change);
+        if (index != -1) {
+            this.history.remove(index);
+            if (index < this.settledCount) {
+                this.settledCount--;
+                this.settledMemoryUsage -= change.getMemoryUsage();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of changes that can be undone or redone, including
+     * no-op changes.
+     *
+     * @return total change count
+     */
+    public int getChangeCount() {
+        return this.journal.getCount() + this.history.size() + this.future.size();
+    }
+
+    /**
+     * Gets the number of bytes used on disk to store older changes
+     *
+     * @return disk usage in bytes
+     */
+    public long getDiskUsage() {
+        return this.journal.getSize();
+    }
+
+    /**
+     * Gets the estimated number of bytes of memory used by all the changes
+     * that can be undone or redone.
+     *
+     * @return estimated memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        long total = this.settledMemoryUsage + this.futureMemoryUsage;
+        Iterator<HistoryChange> iter = this.history.descendingIterator();
+        for (int n = this.history.size() - this.settledCount; n > 0; n--) {
+            total += iter.next().updateMemoryUsage();
+        }
+        return total;
+    }
+
+    /**
+     * Settles the changes that are no longer among the most recent changes, and
+     * discards the oldest changes while the configured limits are exceeded.
+     */
+    private void settleChanges() {
+        boolean compact = this.plugin.isHistoryCompactEnabled();
+        while ((this.history.size() - this.settledCount) > UNSETTLED_CHANGES) {
+            HistoryChange change = this.history.get(this.settledCount++);
+            if (compact) {
+                change.compact();
+            }
+            this.settledMemoryUsage += change.updateMemoryUsage();
+        }
+
+        int maxChanges = this.plugin.getHistoryMaxChanges();
+        long maxMemory = this.plugin.getHistoryMaxMemory();
+        while (!this.history.isEmpty() && (
+                   (maxChanges > 0 && this.history.size() > maxChanges) ||
+                   (maxMemory > 0L && this.settledCount > 0 && (this.settledMemoryUsage + this.futureMemoryUsage) > maxMemory)
+        )) {
+            HistoryChange change = this.history.removeFirst();
+            if (this.settledCount > 0) {
+                this.settledCount--;
+                this.settledMemoryUsage -= change.getMemoryUsage();
+            }
+            this.moveToJournal(change);
+        }
+    }
+
+    /**
+     * Stores a change removed from memory in the journal on disk. If the journal is
+     * disabled or the change cannot be stored, the change and all older changes are
+     * discarded.
+     *
+     * @param change Oldest change removed from memory
+     */
+    private void moveToJournal(HistoryChange change) {
+        long maxDiskUsage = this.plugin.getHistoryMaxDiskUsage();
+        if (maxDiskUsage == 0L || change.isNOOP()) {
+            return;
+        }
+        try {
+            this.journal.push(change, maxDiskUsage);
+        } catch (NotSerializableException ex) {
+            // Undoing older changes would no longer be reliable
+            this.journal.clear();
+        } catch (IOException ex) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to store undo history of " + this.player.getName(), ex);
+            this.journal.clear();
+        }
+    }
+
+    /**
+     * Reads the most recent change stored in the journal on disk back into memory
+     *
+     * @return True if a change was read, False if the journal is empty
+     */
+    private boolean moveFromJournal() {
+        try {
+            HistoryChange change = this.journal.pop();
+            if (change == null) {
+                return false;
+            }
+            this.history.addFirst(change);
+            this.settledCount++;
+            this.settledMemoryUsage += change.updateMemoryUsage();
+            return true;
+        } catch (IOException ex) {
+            this.plugin.getLogger().log(Level.WARNING, "Failed to read undo history of " + this.player.getName(), ex);
+            this.journal.clear();
+            return false;
+        }
     }
 
     @Override
@@ -70,21 +222,27 @@ public class PlayerEditHistory extends HistoryChangeCollection {
      * @return The change that was un-done, or null if none
      */
     public HistoryChange undo(long minTimestamp) {
-        while (!this.history.isEmpty()) {
+        while (!this.history.isEmpty() || this.moveFromJournal()) {
+            if (this.history.getLast().getTimestamp() < minTimestamp && !this.history.getLast().isNOOP()) {
+                return null;
+            }
             HistoryChange change = this.history.removeLast();
+            if (this.history.size() < this.settledCount) {
+                this.settledCount--;
+                this.settledMemoryUsage -= change.getMemoryUsage();
+            } else {
+                change.updateMemoryUsage();
+            }
             if (change.isNOOP()) {
                 continue;
             }
-            if (change.getTimestamp() < minTimestamp) {
-                this.history.addLast(change);
-                return null;
-            }
             try {
                 change.undo();
             } catch (TrackLockedException ex) {
                 this.player.sendMessage(ChatColor.RED + "Some changes could not be rolled back because the coaster is locked!");
             }
             this.future.add(change);
+            this.futureMemoryUsage += change.getMemoryUsage();
             return change;
         }
         return null;
@@ -97,7 +255,7 @@ public class PlayerEditHistory extends HistoryChangeCollection {
      * @return undo count
      */
     public int undoCountRemaining() {
-        int count = 0;
+        int count = this.journal.getCount();
         int limit = 0;
         for (HistoryChange change : this.history) {
             if (!change.isNOOP()) {
@@ -119,6 +277,7 @@ public class PlayerEditHistory extends HistoryChangeCollection {
     public HistoryChange redo() {
         while (!this.future.isEmpty()) {
             HistoryChange change = this.future.removeLast();
+            this.futureMemoryUsage -= change.getMemoryUsage();
             if (change.isNOOP()) {
                 continue;
             }
@@ -128,6 +287,7 @@ public class PlayerEditHistory extends HistoryChangeCollection {
                 this.player.sendMessage(ChatColor.RED + "Some changes could not be applied because the coaster is locked!");
             }
             this.history.add(change);
+            this.settleChanges();
             return change;
         }
         return null;
@@ -0,0 +1,445 @@
+package com.bergerkiller.bukkit.coasters.editor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.bergerkiller.bukkit.coasters.editor.history.HistoryChange;
+import com.bergerkiller.bukkit.coasters.editor.history.HistoryChangeCodec;
+import com.bergerkiller.bukkit.common.AsyncTask;
+
+/**
+ * Stores older history changes of a player on disk, so that they do not have to be
+ * kept in memory. The journal is a stack: changes are pushed in the order they
+ * happened, and popped again starting with the most recent one when undoing.<br>
+ * <br>
+ * The changes are stored in a folder of segment files, each holding a part of the
+ * journal. When the journal grows too large, the oldest segment file is deleted,
+ * so that no data has to be moved around. Every record in a segment is stored as
+ * the length of the encoded change, followed by the encoded change, followed by
+ * the length again. This allows walking the records from the end of the file.<br>
+ * <br>
+ * All disk access is done in order on a worker thread. Pushed changes are kept in
+ * memory and written to disk in batches. The most recent changes of the journal
+ * are kept in memory as well, and are read back from disk ahead of time while
+ * changes are popped. Popping only has to wait for the disk when changes are popped
+ * faster than they can be read back.
+ */
+public final class PlayerEditHistoryJournal {
+    private static final int SEGMENT_COUNT = 8; // Number of segments the maximum size is divided into
+    private static final long MIN_SEGMENT_SIZE = 64L * 1024L;
+    private static final long WRITE_BATCH_SIZE = 64L * 1024L;
+    private static final long PRELOAD_SIZE = 64L * 1024L; // Number of bytes of most recent changes kept in memory
+    private final File folder;
+    private final HistoryChangeCodec codec;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>(); // oldest first
+    private final List<File> unwrittenDeletes = new ArrayList<File>();
+    private long unwrittenSize = 0L;
+    private int nextSegmentIndex = 0;
+    private int count = 0;
+    private long size = 0L;
+    private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+    private volatile IOException writeError = null;
+
+    public PlayerEditHistoryJournal(File folder, HistoryChangeCodec codec) {
+        this.folder = folder;
+        this.codec = codec;
+    }
+
+    /**
+     * Gets the number of changes stored in this journal
+     *
+     * @return change count
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the number of bytes used by this journal, including the changes
+     * not yet written to disk
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Encodes a change and adds it as the most recent change of this journal.
+     * Then discards the oldest changes while the journal is larger than the
+     * maximum size specified. This is done by deleting whole segments at once,
+     * so the journal shrinks somewhat below the maximum size.
+     *
+     * @param change Change to add
+     * @param maxSize Maximum size in bytes
+     * @throws NotSerializableException If the change cannot be encoded
+     * @throws IOException If writing failed
+     */
+    public void push(HistoryChange change, long maxSize) throws IOException {
+        checkWriteError();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            this.codec.encode(out, change);
+        }
+        byte[] record = bytes.toByteArray();
+
+        // Start a new segment once the newest one is full
+        Segment newest = this.segments.peekLast();
+        if (newest == null || newest.size >= Math.max(MIN_SEGMENT_SIZE, maxSize / SEGMENT_COUNT)) {
+            newest = new Segment(new File(this.folder, (this.nextSegmentIndex++) + ".dat"));
+            this.segments.addLast(newest);
+        }
+        newest.tail.add(record);
+        newest.unwrittenCount++;
+        newest.unwrittenSize += 8 + record.length;
+        newest.size += 8 + record.length;
+        newest.count++;
+        this.unwrittenSize += 8 + record.length;
+        this.size += 8 + record.length;
+        this.count++;
+
+        // Discard the oldest segments, but always keep the newest one
+        while (this.size > maxSize && this.segments.size() > 1) {
+            Segment oldest = this.segments.removeFirst();
+            this.size -= oldest.size;
+            this.count -= oldest.count;
+            this.unwrittenSize -= oldest.unwrittenSize;
+            this.unwrittenDeletes.add(oldest.file);
+        }
+
+        if (this.unwrittenSize >= WRITE_BATCH_SIZE || !this.unwrittenDeletes.isEmpty()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Removes the most recent change from this journal and decodes it
+     *
+     * @return most recent change, null if the journal is empty
+     * @throws IOException If reading fails
+     */
+    public HistoryChange pop() throws IOException {
+        checkWriteError();
+
+        Segment newest = this.segments.peekLast();
+        if (newest == null) {
+            return null;
+        }
+
+        if (newest.tail.isEmpty()) {
+            // Changes are popped faster than they were read back, wait for it
+            if (newest.preload == null) {
+                this.startPreload(newest, PRELOAD_SIZE);
+            }
+            this.completePreload(newest, true);
+        }
+
+        byte[] data = newest.tail.remove(newest.tail.size() - 1);
+        if (newest.unwrittenCount > 0) {
+            // Not written to disk yet
+            newest.unwrittenCount--;
+            newest.unwrittenSize -= 8 + data.length;
+            this.unwrittenSize -= 8 + data.length;
+        }
+        newest.size -= 8 + data.length;
+        newest.count--;
+        this.size -= 8 + data.length;
+        this.count--;
+        if (newest.count == 0) {
+            this.segments.removeLast();
+            this.unwrittenDeletes.add(newest.file);
+            this.flush();
+        }
+
+        this.preloadRecentChanges();
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return this.codec.decode(in);
+        }
+    }
+
+    /**
+     * Discards all changes stored in this journal and deletes the journal files.
+     * The files are deleted on the worker thread once changes still being written
+     * to disk are written.
+     */
+    public void clear() {
+        this.writeError = null;
+        this.segments.clear();
+        this.unwrittenDeletes.clear();
+        this.unwrittenSize = 0L;
+        this.count = 0;
+        this.size = 0L;
+        this.schedule(() -> {
+            if (this.folder.isDirectory()) {
+                File[] files = this.folder.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+            if (this.folder.exists()) {
+                this.folder.delete();
+            }
+        });
+    }
+
+    /**
+     * Hands all changes not yet written to disk, and segments to delete, to the worker
+     * thread. Then discards the changes kept in memory that are not among the most
+     * recent changes of the journal.
+     */
+    private void flush() {
+        final List<Append> appends = new ArrayList<Append>();
+        for (Segment segment : this.segments) {
+            if (segment.unwrittenCount > 0) {
+                List<byte[]> records = segment.tail.subList(segment.tail.size() - segment.unwrittenCount, segment.tail.size());
+                appends.add(new Append(segment.file, segment.size - segment.unwrittenSize, new ArrayList<byte[]>(records)));
+                segment.unwrittenCount = 0;
+                segment.unwrittenSize = 0L;
+            }
+        }
+        final List<File> deletes = new ArrayList<File>(this.unwrittenDeletes);
+        this.unwrittenDeletes.clear();
+        this.unwrittenSize = 0L;
+
+        // All changes are written now, so only the most recent ones have to stay in memory
+        long inMemory = 0L;
+        for (Iterator<Segment> iter = this.segments.descendingIterator(); iter.hasNext();) {
+            Segment segment = iter.next();
+            int keepIndex = segment.tail.size();
+            while (keepIndex > 0 && inMemory + 8 + segment.tail.get(keepIndex - 1).length <= PRELOAD_SIZE) {
+                inMemory += 8 + segment.tail.get(--keepIndex).length;
+            }
+            if (segment.preload == null && keepIndex > 0) {
+                List<byte[]> discarded = segment.tail.subList(0, keepIndex);
+                for (byte[] record : discarded) {
+                    segment.prefixSize += 8 + record.length;
+                }
+                segment.prefixCount += discarded.size();
+                discarded.clear();
+            }
+            if (segment.prefixCount > 0) {
+                inMemory = PRELOAD_SIZE; // Changes in older segments are not contiguous with the ones in memory
+            }
+        }
+
+        if (appends.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        this.schedule(() -> write(appends, deletes));
+    }
+
+    /**
+     * Makes sure the most recent changes of the journal are kept in memory, by reading
+     * older changes back from disk before they are popped. Changes that were read already
+     * are added to the segments.
+     *
+     * @throws IOException If reading failed
+     */
+    private void preloadRecentChanges() throws IOException {
+        long inMemory = 0L;
+        for (Iterator<Segment> iter = this.segments.descendingIterator(); iter.hasNext();) {
+            Segment segment = iter.next();
+            this.completePreload(segment, false);
+            inMemory += segment.size - segment.prefixSize;
+            if (inMemory >= (PRELOAD_SIZE / 2)) {
+                break;
+            }
+            if (segment.prefixCount > 0) {
+                if (segment.preload == null) {
+                    this.startPreload(segment, PRELOAD_SIZE - inMemory);
+                }
+                break;
+            }
+        }
+    }
+
+    private void startPreload(final Segment segment, final long maxSize) {
+        final File file = segment.file;
+        final long end = segment.prefixSize;
+        final int maxCount = segment.prefixCount;
+        final CompletableFuture<List<byte[]>> preload = new CompletableFuture<List<byte[]>>();
+        segment.preload = preload;
+        this.schedule(() -> {
+            try {
+                preload.complete(read(file, end, maxCount, maxSize));
+            } catch (Throwable t) {
+                preload.completeExceptionally(t);
+            }
+        });
+    }
+
+    private void completePreload(Segment segment, boolean wait) throws IOException {
+        CompletableFuture<List<byte[]>> preload = segment.preload;
+        if (preload == null || (!wait && !preload.isDone())) {
+            return;
+        }
+        segment.preload = null;
+
+        List<byte[]> records;
+        try {
+            records = preload.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            } else {
+                throw new IOException("Unexpected error reading history journal", ex.getCause());
+            }
+        }
+        for (byte[] record : records) {
+            segment.prefixSize -= 8 + record.length;
+        }
+        segment.prefixCount -= records.size();
+        segment.tail.addAll(0, records);
+    }
+
+    /**
+     * Runs a task on the worker thread, after all tasks scheduled before it have completed
+     *
+     * @param task Task to run
+     */
+    private void schedule(final WorkerTask task) {
+        final CompletableFuture<Void> previous = this.lastWrite;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+        this.lastWrite = done;
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try {
+                    previous.join();
+                    task.run();
+                } catch (IOException ex) {
+                    writeError = ex;
+                } catch (Throwable t) {
+                    writeError = new IOException("Unexpected error writing history journal", t);
+                } finally {
+                    done.complete(null);
+                }
+            }
+        }.start();
+    }
+
+    private void write(List<Append> appends, List<File> deletes) throws IOException {
+        if (!appends.isEmpty()) {
+            this.folder.mkdirs();
+        }
+        for (Append append : appends) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (byte[] record : append.records) {
+                    out.writeInt(record.length);
+                    out.write(record);
+                    out.writeInt(record.length);
+                }
+            }
+
+            // Records that were popped after they were written are overwritten
+            try (RandomAccessFile raf = new RandomAccessFile(append.file, "rw")) {
+                raf.setLength(append.offset);
+                raf.seek(append.offset);
+                raf.write(bytes.toByteArray());
+            }
+        }
+        for (File file : deletes) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Reads the records that end at an offset in a segment file, walking back from
+     * the end until the maximum number of records or bytes is read. At least one
+     * record is read.
+     *
+     * @param file Segment file
+     * @param end Offset in the file where the last record to read ends
+     * @param maxCount Maximum number of records to read
+     * @param maxSize Maximum number of bytes to read
+     * @return records read, in the order they are stored in the file
+     * @throws IOException If reading failed
+     */
+    private static List<byte[]> read(File file, long end, int maxCount, long maxSize) throws IOException {
+        ArrayDeque<byte[]> records = new ArrayDeque<byte[]>();
+        long readSize = 0L;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            while (records.size() < maxCount && (records.isEmpty() || readSize < maxSize)) {
+                if (end < 8 || end > raf.length()) {
+                    throw new IOException("History journal is corrupt");
+                }
+                raf.seek(end - 4);
+                int length = raf.readInt();
+                long start = end - 8 - length;
+                if (length < 0 || start < 0) {
+                    throw new IOException("History journal is corrupt");
+                }
+                byte[] data = new byte[length];
+                raf.seek(start + 4);
+                raf.readFully(data);
+                records.addFirst(data);
+                readSize += 8 + length;
+                end = start;
+            }
+        }
+        return new ArrayList<byte[]>(records);
+    }
+
+    private void checkWriteError() throws IOException {
+        IOException error = this.writeError;
+        if (error != null) {
+            this.writeError = null;
+            throw error;
+        }
+    }
+
+    /**
+     * A segment file of the journal. The first records of a segment are only stored
+     * on disk, the remaining records are kept in memory. Of those, the last
+     * few might not have been written to disk yet.
+     */
+    private static final class Segment {
+        public final File file;
+        public final List<byte[]> tail = new ArrayList<byte[]>();
+        public int unwrittenCount = 0;
+        public long unwrittenSize = 0L;
+        public int prefixCount = 0;
+        public long prefixSize = 0L;
+        public long size = 0L;
+        public int count = 0;
+        public CompletableFuture<List<byte[]>> preload = null;
+
+        public Segment(File file) {
+            this.file = file;
+        }
+    }
+
+    private static final class Append {
+        public final File file;
+        public final long offset;
+        public final List<byte[]> records;
+
+        public Append(File file, long offset, List<byte[]> records) {
+            this.file = file;
+            this.offset = offset;
+            this.records = records;
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask {
+        void run() throws IOException;
+    }
+}
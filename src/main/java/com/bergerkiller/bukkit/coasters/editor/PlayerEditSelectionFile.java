@@ -0,0 +1,243 @@
+package com.bergerkiller.bukkit.coasters.editor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.TCCoastersUtil;
+import com.bergerkiller.bukkit.coasters.tracks.TrackCoaster;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.tracks.TrackWorld;
+import com.bergerkiller.bukkit.common.AsyncTask;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Stores the nodes a player has selected in a compact binary file next to the
+ * player's yaml configuration. Nodes are grouped by coaster name, and for every
+ * node the index into the coaster's node list and its position are stored.
+ * When restoring, the index is used to look up the node directly. Only when the
+ * node at that index is not at the stored position anymore is the coaster searched.
+ */
+public final class PlayerEditSelectionFile {
+    private static final int FORMAT_VERSION = 1;
+    private final File file;
+
+    public PlayerEditSelectionFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the file the selection is stored in
+     *
+     * @return selection file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Reads the stored selection on a worker thread. The returned future is completed
+     * on the main thread. If no selection is stored, or it could not be read, an empty
+     * selection is returned.
+     *
+     * @param plugin Plugin that owns the selection file
+     * @return future completed with the stored selection
+     */
+    public CompletableFuture<StoredSelection> readAsync(final Plugin plugin) {
+        final CompletableFuture<StoredSelection> future = new CompletableFuture<StoredSelection>();
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(read());
+                } catch (FileNotFoundException ex) {
+                    future.complete(StoredSelection.EMPTY);
+                } catch (IOException ex) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to read node selection from " + file, ex);
+                    future.complete(StoredSelection.EMPTY);
+                }
+            }
+        }.start();
+        return future.thenApplyAsync(result -> result, CommonUtil.getPluginExecutor(plugin));
+    }
+
+    /**
+     * Reads the stored selection. Does not access any track information, so this
+     * is safe to call from another thread.
+     *
+     * @return stored selection
+     * @throws IOException If reading fails
+     */
+    public StoredSelection read() throws IOException {
+        if (!this.file.exists()) {
+            return StoredSelection.EMPTY;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported selection file version: " + version);
+            }
+            int numCoasters = in.readInt();
+            List<StoredCoasterSelection> coasters = new ArrayList<>(numCoasters);
+            for (int c = 0; c < numCoasters; c++) {
+                String coasterName = in.readUTF();
+                int numNodes = in.readInt();
+                int[] indices = new int[numNodes];
+                double[] positions = new double[numNodes * 3];
+                for (int n = 0; n < numNodes; n++) {
+                    indices[n] = in.readInt();
+                    positions[3 * n] = in.readDouble();
+                    positions[3 * n + 1] = in.readDouble();
+                    positions[3 * n + 2] = in.readDouble();
+                }
+                coasters.add(new StoredCoasterSelection(coasterName, indices, positions));
+            }
+            return new StoredSelection(coasters);
+        }
+    }
+
+    /**
+     * Writes the nodes to the selection file. If no nodes are specified, the
+     * file is deleted instead. The nodes are first written to a temporary file,
+     * which then replaces the selection file, so that it is never read while
+     * only partially written.
+     *
+     * @param nodes Selected nodes to write
+     * @throws IOException If writing fails
+     */
+    public void write(Collection<TrackNode> nodes) throws IOException {
+        if (nodes.isEmpty()) {
+            if (this.file.exists()) {
+                this.file.delete();
+            }
+            return;
+        }
+
+        // Group the nodes by coaster, preserving selection order
+        Map<TrackCoaster, List<TrackNode>> nodesByCoaster = new LinkedHashMap<>();
+        for (TrackNode node : nodes) {
+            if (!node.isRemoved()) {
+                nodesByCoaster.computeIfAbsent(node.getCoaster(), c -> new ArrayList<>()).add(node);
+            }
+        }
+
+        File tmpFile = new File(this.file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile, false)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(nodesByCoaster.size());
+            for (Map.Entry<TrackCoaster, List<TrackNode>> entry : nodesByCoaster.entrySet()) {
+                // Compute the indices of all nodes in one pass, rather than doing indexOf for every node
+                IdentityHashMap<TrackNode, Integer> indices = new IdentityHashMap<>(entry.getValue().size());
+                for (TrackNode node : entry.getValue()) {
+                    indices.put(node, -1);
+                }
+                List<TrackNode> coasterNodes = entry.getKey().getNodes();
+                for (int i = 0; i < coasterNodes.size(); i++) {
+                    indices.replace(coasterNodes.get(i), i);
+                }
+
+                out.writeUTF(entry.getKey().getName());
+                out.writeInt(entry.getValue().size());
+                for (TrackNode node : entry.getValue()) {
+                    Vector p = node.getPosition();
+                    out.writeInt(indices.get(node).intValue());
+                    out.writeDouble(p.getX());
+                    out.writeDouble(p.getY());
+                    out.writeDouble(p.getZ());
+                }
+            }
+        }
+        Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * A selection read from disk, which has not yet been matched with the nodes on a world
+     */
+    public static final class StoredSelection {
+        public static final StoredSelection EMPTY = new StoredSelection(Collections.emptyList());
+        private final List<StoredCoasterSelection> coasters;
+
+        private StoredSelection(List<StoredCoasterSelection> coasters) {
+            this.coasters = coasters;
+        }
+
+        public boolean isEmpty() {
+            return this.coasters.isEmpty();
+        }
+
+        /**
+         * Finds all the nodes of this selection that exist on a world. Must be called
+         * on the main thread.
+         *
+         * @param tracks TrackWorld to find the nodes on
+         * @return List of nodes that were found
+         */
+        public List<TrackNode> resolve(TrackWorld tracks) {
+            List<TrackNode> result = new ArrayList<>();
+            for (StoredCoasterSelection coasterSelection : this.coasters) {
+                TrackCoaster coaster = tracks.findCoaster(coasterSelection.coasterName);
+                if (coaster != null) {
+                    coasterSelection.resolve(coaster, result);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final class StoredCoasterSelection {
+        private final String coasterName;
+        private final int[] indices;
+        private final double[] positions;
+
+        public StoredCoasterSelection(String coasterName, int[] indices, double[] positions) {
+            this.coasterName = coasterName;
+            this.indices = indices;
+            this.positions = positions;
+        }
+
+        public void resolve(TrackCoaster coaster, List<TrackNode> result) {
+            List<TrackNode> coasterNodes = coaster.getNodes();
+            for (int n = 0; n < this.indices.length; n++) {
+                Vector position = new Vector(this.positions[3 * n],
+                                             this.positions[3 * n + 1],
+                                             this.positions[3 * n + 2]);
+
+                // Fast path: node is still at the same index in the coaster
+                int index = this.indices[n];
+                if (index >= 0 && index < coasterNodes.size()) {
+                    TrackNode node = coasterNodes.get(index);
+                    if (TCCoastersUtil.isPositionSame(node.getPosition(), position)) {
+                        result.add(node);
+                        continue;
+                    }
+                }
+
+                // Slow path: nodes were added/removed since, search the coaster
+                TrackNode node = coaster.findNodeExact(position, null);
+                if (node != null) {
+                    result.add(node);
+                }
+            }
+        }
+    }
+}
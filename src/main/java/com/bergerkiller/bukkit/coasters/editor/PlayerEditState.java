@@ -1,5 +1,6 @@
 package com.bergerkiller.bukkit.coasters.editor;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -12,6 +13,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import com.bergerkiller.bukkit.coasters.editor.history.HistoryChangeConnect;
@@ -98,6 +100,7 @@ public class PlayerEditState implements CoasterWorldComponent {
     private NodeManipulationMode nodeManipulationMode = NodeManipulationMode.NONE;
     private int heldDownTicks = 0;
     private boolean changed = false;
+    private boolean selectionChanged = false;
     private boolean editedAnimationNamesChanged = false;
     private Block targetedBlock = null;
     private BlockFace targetedBlockFace = BlockFace.UP;
@@ -111,7 +114,7 @@ public class PlayerEditState implements CoasterWorldComponent {
         this.player = player;
         this.input = new PlayerEditInput(player);
         this.dragHandler = new NodeDragHandler(input);
-        this.history = new PlayerEditHistory(player);
+        this.history = new PlayerEditHistory(plugin, player);
         this.clipboard = new PlayerEditClipboard(this);
         this.objectState = new ObjectEditState(this);
         this.signState = new SignEditState(this);
@@ -152,8 +155,12 @@ public class PlayerEditState implements CoasterWorldComponent {
             this.editedNodes.clear();
             this.editedNodesByAnimationName.clear();
             this.editedAnimationNamesChanged = true;
+
+            // Legacy: selected nodes stored as x_y_z strings in the yaml
+            // Restore these once, after which they are saved in the selection file instead
             List<String> editNodePositions = config.getList("editedNodes", String.class);
             if (editNodePositions != null && !editNodePositions.isEmpty()) {
+                List<TrackNode> nodes = new ArrayList<TrackNode>(editNodePositions.size());
                 for (String nodeStr : editNodePositions) {
                     String[] coords = nodeStr.split("_");
                     if (coords.length == 3) {
@@ -164,25 +171,59 @@ public class PlayerEditState implements CoasterWorldComponent {
                             z = Double.parseDouble(coords[2]);
                             TrackNode node = getWorld().getTracks().findNodeExact(new Vector(x, y, z));
                             if (node != null) {
-                                this.editedNodes.add(node);
-                                for (TrackNodeAnimationState animation : node.getAnimationStates()) {
-                                    this.editedNodesByAnimationName.put(animation.name, node);
-                                }
-
-                                TrackNode zeroDistNeighbour = node.getZeroDistanceNeighbour();
-                                if (zeroDistNeighbour != null) {
-                                    this.editedNodes.add(zeroDistNeighbour);
-                                }
+                                nodes.add(node);
                             }
                         } catch (NumberFormatException ex) {}
                     }
                 }
+                this.restoreEditedNodes(nodes);
+                this.changed = true;
+                this.selectionChanged = true;
+                return;
             }
         }
         this.changed = false;
+        this.selectionChanged = false;
+
+        // Read the selected nodes from the selection file in the background, and
+        // restore them once read. If the player changes the selection before then,
+        // the stored selection is discarded.
+        this.plugin.getPlayerSelectionFile(this.player).readAsync(this.plugin).thenAccept(selection -> {
+            if (!this.selectionChanged && !selection.isEmpty() && TCCoastersUtil.isPlayerConnected(this.player)) {
+                this.restoreEditedNodes(selection.resolve(getWorld().getTracks()));
+            }
+        });
+    }
+
+    private void restoreEditedNodes(List<TrackNode> nodes) {
+        for (TrackNode node : nodes) {
+            if (node.isRemoved() || !this.editedNodes.add(node)) {
+                continue;
+            }
+            for (TrackNodeAnimationState animation : node.getAnimationStates()) {
+                this.editedNodesByAnimationName.put(animation.name, node);
+            }
+
+            TrackNode zeroDistNeighbour = node.getZeroDistanceNeighbour();
+            if (zeroDistNeighbour != null) {
+                this.editedNodes.add(zeroDistNeighbour);
+            }
+        }
+        this.editedAnimationNamesChanged = true;
+        for (TrackNode node : this.editedNodes) {
+            node.onStateUpdated(this.player);
+        }
     }
 
     public void save() {
+        if (this.selectionChanged) {
+            this.selectionChanged = false;
+            try {
+                this.plugin.getPlayerSelectionFile(this.player).write(this.getEditedNodes());
+            } catch (IOException ex) {
+                this.plugin.getLogger().log(Level.SEVERE, "Failed to save node selection of player " + this.player.getName(), ex);
+            }
+        }
         if (!this.changed) {
             return;
         }
@@ -190,12 +231,6 @@ public class PlayerEditState implements CoasterWorldComponent {
         FileConfiguration config = this.plugin.getPlayerConfig(this.player);
         config.set("mode", this.editMode);
         config.set("shaperMode", this.shaperMode);
-        List<String> editedNodeNames = new ArrayList<String>(this.editedNodes.size());
-        for (TrackNode node : this.getEditedNodes()) {
-            Vector p = node.getPosition();
-            editedNodeNames.add(p.getX() + "_" + p.getY() + "_" + p.getZ());
-        }
-        config.set("editedNodes", editedNodeNames);
         if (this.selectedAnimation == null) {
             config.remove("selectedAnimation");
         } else {
@@ -247,7 +282,7 @@ public class PlayerEditState implements CoasterWorldComponent {
     }
 
     private void onEditedNodesChanged() {
-        markChanged();
+        this.selectionChanged = true;
 
         // Tell the display the player has open, if applicable
         TCCoastersDisplay display = TCCoastersDisplay.getHeldDisplay(this.player, TCCoastersDisplay.class);
@@ -1173,6 +1208,10 @@ public class PlayerEditState implements CoasterWorldComponent {
             throw ex;
         }
 
+        setAnimationRailForNode(node, new_rail);
+    }
+
+    private void setAnimationRailForNode(TrackNode node, IntVector3 new_rail) {
         TrackNodeAnimationState animState = node.findAnimationState(this.selectedAnimation);
         if (animState != null) {
             // Refresh selected animation state of node too, if one is selected for this node
@@ -1201,10 +1240,35 @@ public class PlayerEditState implements CoasterWorldComponent {
             TrackNode node = this.editedNodes.iterator().next();
             setRailForNode(this.getHistory(), node, manipulator.apply(node.getRailBlock(true)));
         } else if (!this.editedNodes.isEmpty()) {
-            // Set the same rails block for all selected nodes and save as a single change
-            HistoryChange changes = this.getHistory().addChangeGroup();
+            // Compute the new rail blocks of all selected nodes, skipping those that do not change
+            List<TrackNode> changedNodes = new ArrayList<TrackNode>(this.editedNodes.size());
+            List<IntVector3> newRails = new ArrayList<IntVector3>(this.editedNodes.size());
             for (TrackNode node : this.getEditedNodes()) {
-                setRailForNode(changes, node, manipulator.apply(node.getRailBlock(true)));
+                IntVector3 new_rail = manipulator.apply(node.getRailBlock(true));
+                if (!LogicUtil.bothNullOrEqual(node.getRailBlock(false), new_rail)) {
+                    changedNodes.add(node);
+                    newRails.add(new_rail);
+                }
+            }
+            if (changedNodes.isEmpty()) {
+                return;
+            }
+
+            // Check all nodes can be changed at once, before changing any of them
+            this.getHistory().handleChangeBefore(this.player, changedNodes);
+
+            List<TrackNodeState> startStates = new ArrayList<TrackNodeState>(changedNodes.size());
+            for (int i = 0; i < changedNodes.size(); i++) {
+                TrackNode node = changedNodes.get(i);
+                startStates.add(node.getState());
+                node.setRailBlock(newRails.get(i));
+            }
+
+            // Save as a single change
+            this.getHistory().addChangeGroup().addChangesAfterChangingNodes(this.player, changedNodes, startStates);
+
+            for (int i = 0; i < changedNodes.size(); i++) {
+                setAnimationRailForNode(changedNodes.get(i), newRails.get(i));
             }
         }
     }
@@ -1219,23 +1283,30 @@ public class PlayerEditState implements CoasterWorldComponent {
         // Deselect locked nodes that we cannot edit
         this.deselectLockedNodes();
 
-        HistoryChange changes = null;
-        for (TrackNode node : this.getEditedNodes()) {
-            if (changes == null) {
-                changes = this.getHistory().addChangeGroup();
-            }
+        if (!this.hasEditedNodes()) {
+            return;
+        }
+
+        // Check all nodes can be changed at once, before changing any of them
+        this.getHistory().handleChangeBefore(this.player, this.getEditedNodes());
 
-            changes.handleChangeBefore(this.player, node);
-            TrackNodeState startState = node.getState();
+        List<TrackNode> nodes = new ArrayList<TrackNode>(this.getEditedNodes());
+        List<TrackNodeState> startStates = new ArrayList<TrackNodeState>(nodes.size());
+        for (TrackNode node : nodes) {
+            startStates.add(node.getState());
             Vector pos = node.getPosition().clone();
             manipulator.accept(pos);
             node.setPosition(pos);
-            changes.addChangeAfterChangingNode(this.player, node, startState);
+        }
+
+        // Save as a single change
+        this.getHistory().addChangeGroup().addChangesAfterChangingNodes(this.player, nodes, startStates);
 
+        for (TrackNode node : nodes) {
             // Refresh selected animation state of node too, if one is selected for this node
             TrackNodeAnimationState animState = node.findAnimationState(this.selectedAnimation);
             if (animState != null) {
-                node.setAnimationState(animState.name, animState.state.changePosition(pos), animState.connections);
+                node.setAnimationState(animState.name, animState.state.changePosition(node.getPosition()), animState.connections);
             }
         }
     }
@@ -1259,22 +1330,32 @@ public class PlayerEditState implements CoasterWorldComponent {
         this.deselectLockedNodes();
 
         // Apply to all nodes
-        HistoryChange changes = null;
-        for (TrackNode node : this.getEditedNodes()) {
-            if (changes == null) {
-                changes = this.getHistory().addChangeGroup();
-            }
+        if (!this.hasEditedNodes()) {
+            return;
+        }
+
+        // Check all nodes can be changed at once, before changing any of them
+        this.getHistory().handleChangeBefore(this.player, this.getEditedNodes());
 
-            changes.handleChangeBefore(this.player, node);
-            TrackNodeState startState = node.getState();
+        List<TrackNode> nodes = new ArrayList<TrackNode>(this.getEditedNodes());
+        List<TrackNodeState> startStates = new ArrayList<TrackNodeState>(nodes.size());
+        List<Vector> orientations = new ArrayList<Vector>(nodes.size());
+        for (TrackNode node : nodes) {
+            startStates.add(node.getState());
             Vector orientation = orientationFunc.apply(node);
+            orientations.add(orientation);
             node.setOrientation(orientation);
-            changes.addChangeAfterChangingNode(this.player, node, startState);
+        }
+
+        // Save as a single change
+        this.getHistory().addChangeGroup().addChangesAfterChangingNodes(this.player, nodes, startStates);
 
+        for (int i = 0; i < nodes.size(); i++) {
             // Refresh selected animation state of node too, if one is selected for this node
+            TrackNode node = nodes.get(i);
             TrackNodeAnimationState animState = node.findAnimationState(this.selectedAnimation);
             if (animState != null) {
-                node.setAnimationState(animState.name, animState.state.changeOrientation(orientation), animState.connections);
+                node.setAnimationState(animState.name, animState.state.changeOrientation(orientations.get(i)), animState.connections);
             }
         }
     }
@@ -1,10 +1,13 @@
 package com.bergerkiller.bukkit.coasters.editor.history;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 
+import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeState;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 /**
@@ -12,7 +15,8 @@ import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
  */
 public abstract class HistoryChange extends HistoryChangeCollection {
     private final List<HistoryChange> children = new LinkedList<HistoryChange>();
-    private final long timestamp;
+    private long timestamp;
+    private long memoryUsage = 0L;
     protected final CoasterWorld world;
 
     public HistoryChange(CoasterWorld world) {
@@ -122,6 +126,24 @@ public abstract class HistoryChange extends HistoryChangeCollection {
         return timestamp;
     }
 
+    /**
+     * Restores the timestamp of a change that was read back from disk
+     *
+     * @param timestamp Timestamp to set
+     */
+    void restoreTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Gets the child changes performed after this change is performed
+     *
+     * @return child changes
+     */
+    List<HistoryChange> getChildren() {
+        return this.children;
+    }
+
     /**
      * Gets how many seconds ago {@link #getTimestamp()} was
      *
@@ -130,4 +152,120 @@ public abstract class HistoryChange extends HistoryChangeCollection {
     public int getSecondsAgo() {
         return (int) ((System.currentTimeMillis() - timestamp) / 1000L);
     }
+
+    /**
+     * Gets the estimated number of bytes of memory used by this change and all its
+     * child changes, as last computed using {@link #updateMemoryUsage()}
+     *
+     * @return estimated memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        return this.memoryUsage;
+    }
+
+    /**
+     * Computes the estimated number of bytes of memory used by this change and
+     * all its child changes. The result is remembered and returned by
+     * {@link #getMemoryUsage()} afterwards.
+     *
+     * @return estimated memory usage in bytes
+     */
+    public long updateMemoryUsage() {
+        long total = MEMORY_CHANGE + this.estimateMemoryUsage();
+        for (HistoryChange child : this.children) {
+            total += MEMORY_LIST_ENTRY + child.updateMemoryUsage();
+        }
+        this.memoryUsage = total;
+        return total;
+    }
+
+    /**
+     * Estimates the memory used by the data this change stores, excluding
+     * the child changes. Only an estimate, it does not have to be exact.
+     *
+     * @return estimated memory usage in bytes
+     */
+    protected long estimateMemoryUsage() {
+        return 0L;
+    }
+
+    /**
+     * Converts consecutive child changes of node states into a single change that
+     * stores the same information in a more compact way. Other child changes
+     * are compacted recursively. The order in which changes are performed is
+     * preserved.
+     */
+    public void compact() {
+        if (this.children.isEmpty()) {
+            return;
+        }
+
+        List<HistoryChange> compacted = new ArrayList<HistoryChange>(this.children.size());
+        List<HistoryChangeNode> nodeChanges = new ArrayList<HistoryChangeNode>();
+        for (HistoryChange child : this.children) {
+            if (child instanceof HistoryChangeNode && !child.hasChanges()) {
+                HistoryChangeNode nodeChange = (HistoryChangeNode) child;
+                if (!nodeChanges.isEmpty() && nodeChanges.get(0).world != nodeChange.world) {
+                    flushCompactedNodes(compacted, nodeChanges);
+                }
+                nodeChanges.add(nodeChange);
+            } else {
+                flushCompactedNodes(compacted, nodeChanges);
+                child.compact();
+                compacted.add(child);
+            }
+        }
+        flushCompactedNodes(compacted, nodeChanges);
+
+        if (compacted.size() != this.children.size()) {
+            this.children.clear();
+            this.children.addAll(compacted);
+        }
+    }
+
+    private static void flushCompactedNodes(List<HistoryChange> compacted, List<HistoryChangeNode> nodeChanges) {
+        if (nodeChanges.size() == 1) {
+            compacted.add(nodeChanges.get(0));
+        } else if (!nodeChanges.isEmpty()) {
+            compacted.add(new HistoryChangeNodeBatch(nodeChanges));
+        }
+        nodeChanges.clear();
+    }
+
+    // Rough estimates of the memory used by objects on a 64-bit JVM with compressed pointers
+    private static final long MEMORY_CHANGE = 64L; // change itself + its (empty) list of children
+    private static final long MEMORY_LIST_ENTRY = 24L; // linked list node
+    private static final long MEMORY_VECTOR = 40L;
+    private static final long MEMORY_INT_VECTOR = 24L;
+    private static final long MEMORY_SIGN = 96L;
+    protected static final long MEMORY_TRACK_OBJECT = 64L;
+
+    /**
+     * Estimates the memory used by a node state stored by a change
+     *
+     * @param state Node state
+     * @return estimated memory usage in bytes
+     */
+    protected static long estimateMemoryUsage(TrackNodeState state) {
+        long total = 32L + 2L * MEMORY_VECTOR;
+        if (state.railBlock != null) {
+            total += MEMORY_INT_VECTOR;
+        }
+        if (state.signs.length > 0) {
+            total += 16L + state.signs.length * (4L + MEMORY_SIGN);
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the memory used by a connection state stored by a change
+     *
+     * @param state Connection state
+     * @return estimated memory usage in bytes
+     */
+    protected static long estimateMemoryUsage(TrackConnectionState state) {
+        // Two node references with a position vector each, and the objects array
+        int numObjects = state.getObjects().size();
+        return 24L + 2L * (16L + MEMORY_VECTOR) + 16L + numObjects * (4L + MEMORY_TRACK_OBJECT);
+    }
 }
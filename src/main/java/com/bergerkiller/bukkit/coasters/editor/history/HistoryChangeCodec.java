@@ -0,0 +1,328 @@
+package com.bergerkiller.bukkit.coasters.editor.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.TCCoasters;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSVReader;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSVWriter;
+import com.bergerkiller.bukkit.coasters.objects.TrackObject;
+import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeSign;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeState;
+import com.bergerkiller.bukkit.coasters.util.SyntaxException;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Encodes history changes into a compact binary form, and decodes them again.
+ * Node and connection states are stored as raw numbers. Signs and track objects,
+ * which are rare and have a lot of properties, are stored using the same
+ * CSV rows used when saving coasters.
+ */
+public final class HistoryChangeCodec {
+    private static final byte TYPE_GROUP = 0;
+    private static final byte TYPE_NODE = 1;
+    private static final byte TYPE_NODE_BATCH = 2;
+    private static final byte TYPE_CREATE_NODE = 3;
+    private static final byte TYPE_DELETE_NODE = 4;
+    private static final byte TYPE_CONNECT = 5;
+    private static final byte TYPE_DISCONNECT = 6;
+    private static final byte TYPE_CREATE_OBJECT = 7;
+    private static final byte TYPE_DELETE_OBJECT = 8;
+    private static final byte TYPE_CHANGE_OBJECT = 9;
+    private final TCCoasters plugin;
+
+    public HistoryChangeCodec(TCCoasters plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Encodes a change and all its child changes
+     *
+     * @param out Stream to write to
+     * @param change Change to encode
+     * @throws NotSerializableException If the change, or one of its child changes, is of a type
+     *         that cannot be encoded
+     * @throws IOException If writing fails
+     */
+    public void encode(DataOutputStream out, HistoryChange change) throws IOException {
+        if (change instanceof HistoryChangeGroup || change instanceof HistoryChangeLazyGroup) {
+            out.writeByte(TYPE_GROUP);
+        } else if (change instanceof HistoryChangeNode) {
+            HistoryChangeNode nodeChange = (HistoryChangeNode) change;
+            out.writeByte(TYPE_NODE);
+            writeWorld(out, change.world);
+            writeNodeState(out, nodeChange.getFrom());
+            writeNodeState(out, nodeChange.getTo());
+        } else if (change instanceof HistoryChangeNodeBatch) {
+            HistoryChangeNodeBatch batch = (HistoryChangeNodeBatch) change;
+            int count = batch.getNodeCount();
+            out.writeByte(TYPE_NODE_BATCH);
+            writeWorld(out, change.world);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                writeNodeState(out, batch.getState(i, false));
+                writeNodeState(out, batch.getState(i, true));
+            }
+        } else if (change instanceof HistoryChangeCreateNode) {
+            HistoryChangeCreateNode createChange = (HistoryChangeCreateNode) change;
+            out.writeByte((change instanceof HistoryChangeDeleteNode) ? TYPE_DELETE_NODE : TYPE_CREATE_NODE);
+            writeWorld(out, change.world);
+            out.writeUTF(createChange.getCoasterName());
+            writeNodeState(out, createChange.getState());
+        } else if (change instanceof HistoryChangeConnect) {
+            out.writeByte((change instanceof HistoryChangeDisconnect) ? TYPE_DISCONNECT : TYPE_CONNECT);
+            writeWorld(out, change.world);
+            writeConnectionState(out, ((HistoryChangeConnect) change).getState());
+        } else if (change instanceof HistoryChangeCreateTrackObject) {
+            HistoryChangeCreateTrackObject objectChange = (HistoryChangeCreateTrackObject) change;
+            out.writeByte((change instanceof HistoryChangeDeleteTrackObject) ? TYPE_DELETE_OBJECT : TYPE_CREATE_OBJECT);
+            writeWorld(out, change.world);
+            writeConnectionState(out, objectChange.getConnection());
+            writeObjects(out, Collections.singletonList(objectChange.getObject()));
+        } else if (change instanceof HistoryChangeTrackObject) {
+            HistoryChangeTrackObject objectChange = (HistoryChangeTrackObject) change;
+            out.writeByte(TYPE_CHANGE_OBJECT);
+            writeWorld(out, change.world);
+            writeConnectionState(out, objectChange.getOldConnection());
+            writeConnectionState(out, objectChange.getNewConnection());
+            List<TrackObject> objects = new ArrayList<TrackObject>(2);
+            objects.add(objectChange.getOldObject());
+            objects.add(objectChange.getNewObject());
+            writeObjects(out, objects);
+        } else {
+            throw new NotSerializableException(change.getClass().getName());
+        }
+
+        out.writeLong(change.getTimestamp());
+        List<HistoryChange> children = change.getChildren();
+        out.writeInt(children.size());
+        for (HistoryChange child : children) {
+            encode(out, child);
+        }
+    }
+
+    /**
+     * Decodes a change and all its child changes previously encoded using
+     * {@link #encode(DataOutputStream, HistoryChange)}. If the world a change
+     * was made on is no longer loaded, an empty group change is returned for it.
+     *
+     * @param in Stream to read from
+     * @return decoded change
+     * @throws IOException If reading fails or the data is corrupt
+     */
+    public HistoryChange decode(DataInputStream in) throws IOException {
+        HistoryChange change;
+        byte type = in.readByte();
+        if (type == TYPE_GROUP) {
+            change = new HistoryChangeGroup();
+        } else if (type == TYPE_NODE) {
+            CoasterWorld world = readWorld(in);
+            TrackNodeState from = readNodeState(in);
+            TrackNodeState to = readNodeState(in);
+            change = (world == null) ? new HistoryChangeGroup() : new HistoryChangeNode(world, from, to);
+        } else if (type == TYPE_NODE_BATCH) {
+            CoasterWorld world = readWorld(in);
+            int count = in.readInt();
+            List<HistoryChangeNode> nodeChanges = new ArrayList<HistoryChangeNode>(count);
+            for (int i = 0; i < count; i++) {
+                TrackNodeState from = readNodeState(in);
+                TrackNodeState to = readNodeState(in);
+                nodeChanges.add(new HistoryChangeNode(world, from, to));
+            }
+            change = (world == null || count == 0) ? new HistoryChangeGroup() : new HistoryChangeNodeBatch(nodeChanges);
+        } else if (type == TYPE_CREATE_NODE || type == TYPE_DELETE_NODE) {
+            CoasterWorld world = readWorld(in);
+            String coasterName = in.readUTF();
+            TrackNodeState state = readNodeState(in);
+            if (world == null) {
+                change = new HistoryChangeGroup();
+            } else if (type == TYPE_DELETE_NODE) {
+                change = new HistoryChangeDeleteNode(world, coasterName, state);
+            } else {
+                change = new HistoryChangeCreateNode(world, coasterName, state);
+            }
+        } else if (type == TYPE_CONNECT || type == TYPE_DISCONNECT) {
+            CoasterWorld world = readWorld(in);
+            TrackConnectionState state = readConnectionState(in);
+            if (world == null) {
+                change = new HistoryChangeGroup();
+            } else if (type == TYPE_DISCONNECT) {
+                change = new HistoryChangeDisconnect(world, state);
+            } else {
+                change = new HistoryChangeConnect(world, state);
+            }
+        } else if (type == TYPE_CREATE_OBJECT || type == TYPE_DELETE_OBJECT) {
+            CoasterWorld world = readWorld(in);
+            TrackConnectionState connection = readConnectionState(in);
+            List<TrackObject> objects = readObjects(in);
+            if (world == null || objects.size() != 1) {
+                change = new HistoryChangeGroup();
+            } else if (type == TYPE_DELETE_OBJECT) {
+                change = new HistoryChangeDeleteTrackObject(world, connection, objects.get(0));
+            } else {
+                change = new HistoryChangeCreateTrackObject(world, connection, objects.get(0));
+            }
+        } else if (type == TYPE_CHANGE_OBJECT) {
+            CoasterWorld world = readWorld(in);
+            TrackConnectionState oldConnection = readConnectionState(in);
+            TrackConnectionState newConnection = readConnectionState(in);
+            List<TrackObject> objects = readObjects(in);
+            if (world == null || objects.size() != 2) {
+                change = new HistoryChangeGroup();
+            } else {
+                change = new HistoryChangeTrackObject(world, oldConnection, newConnection, objects.get(0), objects.get(1));
+            }
+        } else {
+            throw new IOException("Unknown history change type: " + type);
+        }
+
+        change.restoreTimestamp(in.readLong());
+        int numChildren = in.readInt();
+        for (int i = 0; i < numChildren; i++) {
+            change.addChange(decode(in));
+        }
+        return change;
+    }
+
+    private void writeWorld(DataOutputStream out, CoasterWorld world) throws IOException {
+        UUID uuid = world.getBukkitWorld().getUID();
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private CoasterWorld readWorld(DataInputStream in) throws IOException {
+        World world = Bukkit.getWorld(new UUID(in.readLong(), in.readLong()));
+        return (world == null) ? null : this.plugin.getCoasterWorld(world);
+    }
+
+    private static void writeVector(DataOutputStream out, Vector v) throws IOException {
+        out.writeDouble(v.getX());
+        out.writeDouble(v.getY());
+        out.writeDouble(v.getZ());
+    }
+
+    private static Vector readVector(DataInputStream in) throws IOException {
+        return new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeNodeState(DataOutputStream out, TrackNodeState state) throws IOException {
+        writeVector(out, state.position);
+        writeVector(out, state.orientation);
+        if (state.railBlock == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeInt(state.railBlock.x);
+            out.writeInt(state.railBlock.y);
+            out.writeInt(state.railBlock.z);
+        }
+        if (state.signs.length == 0) {
+            out.writeInt(0);
+        } else {
+            ByteArrayOutputStream csv = new ByteArrayOutputStream();
+            try (TrackCSVWriter writer = new TrackCSVWriter(csv)) {
+                writer.writeAllSigns(state.signs, true);
+            }
+            writeBytes(out, csv.toByteArray());
+        }
+    }
+
+    private static TrackNodeState readNodeState(DataInputStream in) throws IOException {
+        Vector position = readVector(in);
+        Vector orientation = readVector(in);
+        IntVector3 railBlock = null;
+        if (in.readBoolean()) {
+            railBlock = new IntVector3(in.readInt(), in.readInt(), in.readInt());
+        }
+        TrackNodeState state = TrackNodeState.create(position, orientation, railBlock);
+        byte[] signsCSV = readBytes(in);
+        if (signsCSV.length > 0) {
+            List<TrackNodeSign> signs = new ArrayList<TrackNodeSign>();
+            try (TrackCSVReader reader = new TrackCSVReader(new ByteArrayInputStream(signsCSV))) {
+                TrackCSV.CSVEntry entry;
+                while ((entry = reader.readNextEntry()) != null) {
+                    if (entry instanceof TrackCSV.SignEntry) {
+                        signs.add(((TrackCSV.SignEntry) entry).sign);
+                    }
+                }
+            } catch (SyntaxException ex) {
+                throw new IOException("Corrupt sign data", ex);
+            }
+            state = state.changeSigns(signs.toArray(new TrackNodeSign[signs.size()]));
+        }
+        return state;
+    }
+
+    private static void writeConnectionState(DataOutputStream out, TrackConnectionState state) throws IOException {
+        writeVector(out, state.node_a.getPosition());
+        writeVector(out, state.node_b.getPosition());
+        writeObjects(out, state.getObjects());
+    }
+
+    private static TrackConnectionState readConnectionState(DataInputStream in) throws IOException {
+        Vector posA = readVector(in);
+        Vector posB = readVector(in);
+        return TrackConnectionState.createDereferenced(posA, posB, readObjects(in));
+    }
+
+    private static void writeObjects(DataOutputStream out, final List<TrackObject> objects) throws IOException {
+        if (objects.isEmpty()) {
+            out.writeInt(0);
+            return;
+        }
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (TrackCSVWriter writer = new TrackCSVWriter(csv)) {
+            writer.writeAllObjects(TrackConnectionState.createDereferenced(new Vector(), new Vector(), objects));
+        }
+        writeBytes(out, csv.toByteArray());
+    }
+
+    private static List<TrackObject> readObjects(DataInputStream in) throws IOException {
+        byte[] objectsCSV = readBytes(in);
+        if (objectsCSV.length == 0) {
+            return Collections.emptyList();
+        }
+        TrackCSV.CSVReaderState state = new TrackCSV.CSVReaderState();
+        try (TrackCSVReader reader = new TrackCSVReader(new ByteArrayInputStream(objectsCSV))) {
+            TrackCSV.CSVEntry entry;
+            while ((entry = reader.readNextEntry()) != null) {
+                entry.processReader(state);
+            }
+        } catch (SyntaxException ex) {
+            throw new IOException("Corrupt track object data", ex);
+        } catch (ChangeCancelledException ex) {
+            throw new IOException("Track object could not be decoded", ex);
+        }
+        return state.pendingTrackObjects;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid data length: " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return data;
+    }
+}
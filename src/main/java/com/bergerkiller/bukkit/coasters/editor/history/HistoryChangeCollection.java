@@ -1,5 +1,6 @@
 package com.bergerkiller.bukkit.coasters.editor.history;
 
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -7,11 +8,14 @@ import java.util.stream.Stream;
 
 import org.bukkit.entity.Player;
 
+import com.bergerkiller.bukkit.coasters.TCCoasters;
 import com.bergerkiller.bukkit.coasters.TCCoastersLocalization;
 import com.bergerkiller.bukkit.coasters.TCCoastersPermissions;
 import com.bergerkiller.bukkit.coasters.events.CoasterAfterChangeNodeEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterAfterChangeNodesEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterAfterChangeTrackObjectEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterBeforeChangeNodeEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterBeforeChangeNodesEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterCreateConnectionEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterCreateNodeEvent;
 import com.bergerkiller.bukkit.coasters.events.CoasterCreateTrackObjectEvent;
@@ -164,6 +168,36 @@ public abstract class HistoryChangeCollection {
         return addChange(new HistoryChangeNode(node.getWorld(), startState, node.getState()));
     }
 
+    /**
+     * Adds changes to history right after a player changed multiple nodes at once.
+     * Fires a single {@link CoasterAfterChangeNodesEvent} for all the nodes. If the change
+     * of any of the nodes is cancelled, all nodes are reverted to their start state
+     * and the ChangeCancelledException is thrown.
+     *
+     * @param who The player that changed the nodes
+     * @param nodes The nodes that were changed
+     * @param startStates The states of the nodes before they were changed, in the same order
+     * @throws ChangeCancelledException If the change of any of the nodes is cancelled
+     */
+    public final void addChangesAfterChangingNodes(Player who, List<TrackNode> nodes, List<TrackNodeState> startStates) throws ChangeCancelledException {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        TCCoasters plugin = nodes.get(0).getPlugin();
+        if (CoasterAfterChangeNodesEvent.call(plugin, who, nodes, startStates).hasCancelledNodes()) {
+            // Revert the changes
+            for (int i = 0; i < nodes.size(); i++) {
+                nodes.get(i).setState(startStates.get(i));
+            }
+            throw new ChangeCancelledException();
+        }
+
+        for (int i = 0; i < nodes.size(); i++) {
+            TrackNode node = nodes.get(i);
+            addChange(new HistoryChangeNode(node.getWorld(), startStates.get(i), node.getState()));
+        }
+    }
+
     public final HistoryChange addChangeCreateNode(Player who, TrackNode node) throws ChangeCancelledException {
         try {
             handleEvent(new CoasterCreateNodeEvent(who, node));
@@ -279,6 +313,25 @@ public abstract class HistoryChangeCollection {
         handleEvent(new CoasterBeforeChangeNodeEvent(who, node));
     }
 
+    /**
+     * Fires a single {@link CoasterBeforeChangeNodesEvent} for all the nodes that are about
+     * to be changed. If the change of any of the nodes is cancelled, the
+     * ChangeCancelledException is thrown.
+     *
+     * @param who The player that wants to change the nodes
+     * @param nodes The nodes to be changed
+     * @throws ChangeCancelledException If the change of any of the nodes is cancelled
+     */
+    public void handleChangeBefore(Player who, Collection<TrackNode> nodes) throws ChangeCancelledException {
+        if (nodes.isEmpty()) {
+            return;
+        }
+        TCCoasters plugin = nodes.iterator().next().getPlugin();
+        if (CoasterBeforeChangeNodesEvent.call(plugin, who, nodes).hasCancelledNodes()) {
+            throw new ChangeCancelledException();
+        }
+    }
+
     public void handleChangeAfterSetRail(Player who, TrackNode node, IntVector3 old_rail) throws ChangeCancelledException {
         TrackNodeState old_state = node.getState().changeRail(old_rail);
         handleEvent(new CoasterAfterChangeNodeEvent(who, node, old_state));
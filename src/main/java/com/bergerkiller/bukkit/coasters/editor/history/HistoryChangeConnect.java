@@ -7,6 +7,7 @@ import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 /**
  * Connects or disconnects two nodes
@@ -23,6 +24,20 @@ public class HistoryChangeConnect extends HistoryChange {
         this.state = TrackConnectionState.createDereferenced(nodeA.getPosition(), nodeB.getPosition(), objects);
     }
 
+    HistoryChangeConnect(CoasterWorld world, TrackConnectionState state) {
+        super(world);
+        this.state = state;
+    }
+
+    TrackConnectionState getState() {
+        return this.state;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 8L + estimateMemoryUsage(this.state);
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         if (undo) {
@@ -23,6 +23,19 @@ public class HistoryChangeCreateNode extends HistoryChange {
         this.state = state;
     }
 
+    String getCoasterName() {
+        return this.coasterName;
+    }
+
+    TrackNodeState getState() {
+        return this.state;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 2L * 8L + 40L + 2L * this.coasterName.length() + estimateMemoryUsage(this.state);
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         if (undo) {
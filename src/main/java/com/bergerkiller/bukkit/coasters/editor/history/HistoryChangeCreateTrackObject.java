@@ -4,6 +4,7 @@ import com.bergerkiller.bukkit.coasters.objects.TrackObject;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 /**
  * Creates a track object on a connection
@@ -18,6 +19,25 @@ public class HistoryChangeCreateTrackObject extends HistoryChange {
         this.object = object.clone();
     }
 
+    HistoryChangeCreateTrackObject(CoasterWorld world, TrackConnectionState connection, TrackObject object) {
+        super(world);
+        this.connection = connection;
+        this.object = object;
+    }
+
+    TrackConnectionState getConnection() {
+        return this.connection;
+    }
+
+    TrackObject getObject() {
+        return this.object;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 2L * 8L + estimateMemoryUsage(this.connection) + MEMORY_TRACK_OBJECT;
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         TrackConnection connection = this.connection.findOnWorld(this.world.getTracks());
@@ -2,7 +2,9 @@ package com.bergerkiller.bukkit.coasters.editor.history;
 
 import com.bergerkiller.bukkit.coasters.objects.TrackObject;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
+import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 /**
  * Removes a track object from a connection between two nodes
@@ -13,6 +15,10 @@ public class HistoryChangeDeleteTrackObject extends HistoryChangeCreateTrackObje
         super(connection, object);
     }
 
+    HistoryChangeDeleteTrackObject(CoasterWorld world, TrackConnectionState connection, TrackObject object) {
+        super(world, connection, object);
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         super.run(!undo);
@@ -3,8 +3,10 @@ package com.bergerkiller.bukkit.coasters.editor.history;
 import java.util.List;
 
 import com.bergerkiller.bukkit.coasters.objects.TrackObject;
+import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 public class HistoryChangeDisconnect extends HistoryChangeConnect {
 
@@ -12,6 +14,10 @@ public class HistoryChangeDisconnect extends HistoryChangeConnect {
         super(nodeA, nodeB, objects);
     }
 
+    HistoryChangeDisconnect(CoasterWorld world, TrackConnectionState state) {
+        super(world, state);
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         super.run(!undo);
@@ -26,6 +26,29 @@ public class HistoryChangeNode extends HistoryChange {
         this.to = to;
     }
 
+    /**
+     * Gets the state of the node before the change
+     *
+     * @return from state
+     */
+    public TrackNodeState getFrom() {
+        return this.from;
+    }
+
+    /**
+     * Gets the state of the node after the change
+     *
+     * @return to state
+     */
+    public TrackNodeState getTo() {
+        return this.to;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 2L * 8L + estimateMemoryUsage(this.from) + estimateMemoryUsage(this.to);
+    }
+
     @Override
     protected final void run(boolean undo) throws TrackLockedException {
         if (undo) {
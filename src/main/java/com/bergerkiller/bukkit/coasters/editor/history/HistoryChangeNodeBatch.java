@@ -0,0 +1,110 @@
+package com.bergerkiller.bukkit.coasters.editor.history;
+
+import java.util.List;
+
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeSign;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeState;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+/**
+ * Changes the state of multiple nodes, in the same way as a sequence of
+ * {@link HistoryChangeNode} changes would. Positions and orientations are stored in
+ * a flat array, and the rail blocks and signs only by reference, which uses far
+ * less memory than separate changes with their own node states.
+ * Created when compacting older changes using {@link HistoryChange#compact()}.
+ */
+public final class HistoryChangeNodeBatch extends HistoryChange {
+    private static final int STRIDE = 12; // from position/orientation, to position/orientation
+    private final double[] vectors;
+    private final Object[] railsAndSigns; // from rail, from signs, to rail, to signs
+
+    public HistoryChangeNodeBatch(List<HistoryChangeNode> changes) {
+        super(changes.get(0).world);
+        int count = changes.size();
+        this.vectors = new double[count * STRIDE];
+        this.railsAndSigns = new Object[count * 4];
+        for (int i = 0; i < count; i++) {
+            HistoryChangeNode change = changes.get(i);
+            store(i, 0, change.getFrom());
+            store(i, 1, change.getTo());
+        }
+    }
+
+    /**
+     * Gets the state of a node before or after the change
+     *
+     * @param index Index of the node change
+     * @param after Whether to get the state after the change, instead of before
+     * @return node state
+     */
+    TrackNodeState getState(int index, boolean after) {
+        return state(index, after ? 1 : 0);
+    }
+
+    private void store(int index, int part, TrackNodeState state) {
+        int v = index * STRIDE + part * 6;
+        this.vectors[v++] = state.position.getX();
+        this.vectors[v++] = state.position.getY();
+        this.vectors[v++] = state.position.getZ();
+        this.vectors[v++] = state.orientation.getX();
+        this.vectors[v++] = state.orientation.getY();
+        this.vectors[v] = state.orientation.getZ();
+        int r = index * 4 + part * 2;
+        this.railsAndSigns[r] = state.railBlock;
+        this.railsAndSigns[r + 1] = state.signs;
+    }
+
+    private Vector position(int index, int part) {
+        int v = index * STRIDE + part * 6;
+        return new Vector(this.vectors[v], this.vectors[v + 1], this.vectors[v + 2]);
+    }
+
+    private TrackNodeState state(int index, int part) {
+        int v = index * STRIDE + part * 6 + 3;
+        Vector orientation = new Vector(this.vectors[v], this.vectors[v + 1], this.vectors[v + 2]);
+        int r = index * 4 + part * 2;
+        return TrackNodeState.create(position(index, part), orientation, (IntVector3) this.railsAndSigns[r])
+                .changeSigns((TrackNodeSign[]) this.railsAndSigns[r + 1]);
+    }
+
+    /**
+     * Gets the number of node changes stored
+     *
+     * @return node change count
+     */
+    public int getNodeCount() {
+        return this.vectors.length / STRIDE;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 2L * 16L + this.vectors.length * 8L + this.railsAndSigns.length * 4L;
+    }
+
+    @Override
+    protected void run(boolean undo) throws TrackLockedException {
+        // Performed in the same order as the separate changes would be
+        boolean someTracksLocked = false;
+        int count = getNodeCount();
+        int fromPart = undo ? 1 : 0;
+        int toPart = undo ? 0 : 1;
+        for (int n = 0; n < count; n++) {
+            int i = undo ? (count - n - 1) : n;
+            TrackNode node = world.getTracks().findNodeExact(position(i, fromPart));
+            if (node != null) {
+                if (node.isLocked()) {
+                    someTracksLocked = true;
+                    continue;
+                }
+                node.setState(state(i, toPart));
+            }
+        }
+        if (someTracksLocked) {
+            throw new TrackLockedException();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.bergerkiller.bukkit.coasters.objects.TrackObject;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackLockedException;
+import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 
 /**
  * Changes the position, bound connection or other properties of a track object
@@ -20,6 +21,36 @@ public class HistoryChangeTrackObject extends HistoryChange {
         this.new_object = new_object.clone();
     }
 
+    HistoryChangeTrackObject(CoasterWorld world, TrackConnectionState old_connection, TrackConnectionState new_connection, TrackObject old_object, TrackObject new_object) {
+        super(world);
+        this.old_connection = old_connection;
+        this.new_connection = new_connection;
+        this.old_object = old_object;
+        this.new_object = new_object;
+    }
+
+    TrackConnectionState getOldConnection() {
+        return this.old_connection;
+    }
+
+    TrackConnectionState getNewConnection() {
+        return this.new_connection;
+    }
+
+    TrackObject getOldObject() {
+        return this.old_object;
+    }
+
+    TrackObject getNewObject() {
+        return this.new_object;
+    }
+
+    @Override
+    protected long estimateMemoryUsage() {
+        return 4L * 8L + estimateMemoryUsage(this.old_connection) + estimateMemoryUsage(this.new_connection)
+                + 2L * MEMORY_TRACK_OBJECT;
+    }
+
     @Override
     protected void run(boolean undo) throws TrackLockedException {
         TrackConnection old_connection = this.old_connection.findOnWorld(this.world.getTracks());
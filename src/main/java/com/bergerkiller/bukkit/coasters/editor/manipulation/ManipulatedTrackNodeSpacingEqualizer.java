@@ -326,31 +326,41 @@ public class ManipulatedTrackNodeSpacingEqualizer<N extends ManipulatedTrackNode
             // Sort by distance from start. Needed for applying later.
             movedObjects.sort(Comparator.comparingDouble(a -> a.fullDistance));
 
+            // Fire a single event for all the nodes that will move
+            // Only fire event for the main node, since we know the zero-distance neighbour occupies the same spot
+            int numMovedNodes = Math.min(middleNodes.size(), points.size());
+            List<TrackNode> movedNodes = new ArrayList<>(numMovedNodes);
+            for (int i = 0; i < numMovedNodes; i++) {
+                movedNodes.add(middleNodes.get(i).node);
+            }
+            history.handleChangeBefore(state.getPlayer(), movedNodes);
+
             // Move all the nodes to their new positions
-            // Fire events and store this change in history, so that it can be undone and redone properly
-            for (int i = 0; i < middleNodes.size(); i++) {
-                if (i >= points.size()) {
-                    break;
-                }
+            List<TrackNodeState> startStates = new ArrayList<>(numMovedNodes);
+            for (int i = 0; i < numMovedNodes; i++) {
                 TrackConnection.Point point = points.get(i);
                 N node = middleNodes.get(i);
 
-                // Only fire event for the main node, since we know the zero-distance neighbour occupies the same spot
-                history.handleChangeBefore(state.getPlayer(), node.node);
-                TrackNodeState startState = node.node.getState();
+                startStates.add(node.node.getState());
                 node.setPosition(point.position);
                 node.setOrientation(point.orientation.upVector());
                 node.dragPosition = point.position.clone();
-                try {
-                    history.addChangeAfterChangingNode(state.getPlayer(), node.node, startState);
-                } catch (ChangeCancelledException ex) {
-                    // Restore zero-distance neighbour position and orientation too
+            }
+
+            // Fire a single event for all the nodes that moved
+            // Store this change in history, so that it can be undone and redone properly
+            try {
+                history.addChangesAfterChangingNodes(state.getPlayer(), movedNodes, startStates);
+            } catch (ChangeCancelledException ex) {
+                // Restore zero-distance neighbour position and orientation too
+                for (int i = 0; i < numMovedNodes; i++) {
+                    N node = middleNodes.get(i);
                     if (node.node_zd != null) {
-                        node.node_zd.setPosition(startState.position);
-                        node.node_zd.setOrientation(startState.orientation);
+                        node.node_zd.setPosition(startStates.get(i).position);
+                        node.node_zd.setOrientation(startStates.get(i).orientation);
                     }
-                    throw ex;
                 }
+                throw ex;
             }
 
             // Recompute the connection shapes
@@ -4,12 +4,10 @@ import com.bergerkiller.bukkit.coasters.editor.PlayerEditInput;
 import com.bergerkiller.bukkit.coasters.editor.PlayerEditState;
 import com.bergerkiller.bukkit.coasters.editor.history.ChangeCancelledException;
 import com.bergerkiller.bukkit.coasters.editor.history.HistoryChangeCollection;
-import com.bergerkiller.bukkit.coasters.events.CoasterBeforeChangeNodeEvent;
+import com.bergerkiller.bukkit.coasters.events.CoasterBeforeChangeNodesEvent;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
 import com.bergerkiller.bukkit.common.math.Matrix4x4;
-import com.bergerkiller.bukkit.common.utils.CommonUtil;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -75,16 +73,11 @@ public class NodeDragHandler {
 
         // If no manipulator is set yet, create one
         if (dragManipulator == null) {
-            // Fire start events for all nodes to be edited and keep track of cancelled ones
-            List<TrackNode> cancelledNodes = new ArrayList<>();
-            List<TrackNode> editableNodes = new ArrayList<>();
-            for (TrackNode node : editedNodes) {
-                if (CommonUtil.callEvent(new CoasterBeforeChangeNodeEvent(input.getPlayer(), node)).isCancelled()) {
-                    cancelledNodes.add(node);
-                } else {
-                    editableNodes.add(node);
-                }
-            }
+            // Fire a single start event for all nodes to be edited and keep track of cancelled ones
+            CoasterBeforeChangeNodesEvent beforeEvent = CoasterBeforeChangeNodesEvent.call(
+                    state.getPlugin(), input.getPlayer(), editedNodes);
+            List<TrackNode> cancelledNodes = beforeEvent.getCancelledNodes();
+            List<TrackNode> editableNodes = beforeEvent.getAllowedNodes();
             if (!editableNodes.isEmpty()) {
                 NodeDragEvent event = this.nextEvent(true);
                 editedNodesSaveState = new HashSet<>(editedNodes);
@@ -9,6 +9,7 @@ import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnectionState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
 import com.bergerkiller.bukkit.coasters.tracks.TrackNodeAnimationState;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeState;
 import com.bergerkiller.bukkit.coasters.tracks.TrackWorld;
 import com.bergerkiller.bukkit.common.utils.PlayerUtil;
 import org.bukkit.Color;
@@ -198,38 +199,23 @@ public abstract class NodeManipulatorBase<N extends ManipulatedTrackNode> implem
     }
 
     protected void recordEditedNodesInHistory(HistoryChangeCollection history) throws ChangeCancelledException {
-        // Before processing, fire an event for all nodes that changed. If any of them fail (permissions!),
-        // cancel the entire move operation for all other nodes, too.
-        {
-            HistoryChange changes = null;
-            for (ManipulatedTrackNode manipulatedNode : manipulatedNodes) {
-                try {
-                    if (changes == null) {
-                        changes = history.addChangeGroup();
-                    }
-                    if (!manipulatedNode.node.isRemoved()) {
-                        changes.addChangeAfterChangingNode(state.getPlayer(), manipulatedNode.node, manipulatedNode.startState);
-                    }
-                    if (manipulatedNode.node_zd != null && !manipulatedNode.node_zd.isRemoved()) {
-                        changes.addChangeAfterChangingNode(state.getPlayer(), manipulatedNode.node_zd, manipulatedNode.startState);
-                    }
-                } catch (ChangeCancelledException ex) {
-                    // Undo all changes that were already executed or are going to be executed for other nodes
-                    // Ignore the one that was already cancelled
-                    for (ManipulatedTrackNode prevModifiedNode : manipulatedNodes) {
-                        if (prevModifiedNode != manipulatedNode) {
-                            if (!prevModifiedNode.node.isRemoved()) {
-                                prevModifiedNode.node.setState(prevModifiedNode.startState);
-                            }
-                            if (prevModifiedNode.node_zd != null && !prevModifiedNode.node_zd.isRemoved()) {
-                                prevModifiedNode.node_zd.setState(prevModifiedNode.startState);
-                            }
-                        }
-                    }
-                    throw ex;
-                }
+        // Fire a single event for all nodes that changed. If any of them fail (permissions!),
+        // the entire move operation is cancelled for all other nodes, too.
+        List<TrackNode> changedNodes = new ArrayList<>(manipulatedNodes.size());
+        List<TrackNodeState> startStates = new ArrayList<>(manipulatedNodes.size());
+        for (ManipulatedTrackNode manipulatedNode : manipulatedNodes) {
+            if (!manipulatedNode.node.isRemoved()) {
+                changedNodes.add(manipulatedNode.node);
+                startStates.add(manipulatedNode.startState);
+            }
+            if (manipulatedNode.node_zd != null && !manipulatedNode.node_zd.isRemoved()) {
+                changedNodes.add(manipulatedNode.node_zd);
+                startStates.add(manipulatedNode.startState);
             }
         }
+        if (!changedNodes.isEmpty()) {
+            history.addChangeGroup().addChangesAfterChangingNodes(state.getPlayer(), changedNodes, startStates);
+        }
 
         // Update position and orientation of animation state, if one is selected
         String selectedAnimation = state.getSelectedAnimation();
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.bergerkiller.bukkit.coasters.objects.TrackObject;
 import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
@@ -105,6 +106,21 @@ public final class ObjectEditSelectedGroup {
         return false;
     }
 
+    /**
+     * Gets whether any of the track objects specified are part of this group
+     *
+     * @param objects Set of track objects
+     * @return True if one or more of the objects are part of this group
+     */
+    public boolean containsAnyObject(Set<TrackObject> objects) {
+        for (SelectedObject select : selection) {
+            if (objects.contains(select.object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Gets whether any track objects are inside this group
      *
@@ -303,18 +319,19 @@ public final class ObjectEditSelectedGroup {
      * @return group of track objects found
      */
     public static ObjectEditSelectedGroup findNear(TrackConnection.PointOnPath point) {
-        final List<TrackObject> allObjects = point.connection.getObjects();
-        if (allObjects.isEmpty()) {
-            return new ObjectEditSelectedGroup(point.connection, Collections.emptyList());
-        }
-
         // If nothing is very closeby to where the player clicked, allow for a distance of 4.0 away
         // It will pick the best alternative track object found, and from there, all that is close to it
         final double groupDistanceThreshold = 0.2; // Objects 0.2 distance apart are grouped together
         double altBestDistance = 4.0; // No further than 4 blocks away
+        final List<TrackObject> nearObjects = point.connection.getObjectsInRange(
+                point.distance - altBestDistance, point.distance + altBestDistance);
+        if (nearObjects.isEmpty()) {
+            return new ObjectEditSelectedGroup(point.connection, Collections.emptyList());
+        }
+
         TrackObject altBestObject = null;
-        List<SelectedObject> result = new ArrayList<>(Math.min(16, allObjects.size()));
-        for (TrackObject object : allObjects) {
+        List<SelectedObject> result = new ArrayList<>(Math.min(16, nearObjects.size()));
+        for (TrackObject object : nearObjects) {
             double distance = Math.abs(object.getDistance() - point.distance);
             if (distance < groupDistanceThreshold) {
                 result.add(new SelectedObject(object));
@@ -326,7 +343,10 @@ public final class ObjectEditSelectedGroup {
 
         // Select all objects near to the alternative best object if player didn't click near to one
         if (result.isEmpty() && altBestObject != null) {
-            for (TrackObject object : allObjects) {
+            for (TrackObject object : point.connection.getObjectsInRange(
+                    altBestObject.getDistance() - groupDistanceThreshold,
+                    altBestObject.getDistance() + groupDistanceThreshold)
+            ) {
                 double distance = Math.abs(object.getDistance() - altBestObject.getDistance());
                 if (distance < groupDistanceThreshold) {
                     result.add(new SelectedObject(object));
@@ -576,6 +576,43 @@ public class ObjectEditState {
         return true;
     }
 
+    /**
+     * Deselects all the track objects specified, if they were previously selected.
+     * Invalidates the current selection if it contains any of them. Used when
+     * many objects are removed at once.
+     *
+     * @param objects Set of track objects to deselect
+     * @return True if one or more of the objects were selected, and are now deselected
+     */
+    public boolean deselectTrackObjects(Set<TrackObject> objects) {
+        // Invalidate group as it now contains an object that no longer exists
+        if (this.lastEditedGroup != null && this.lastEditedGroup.containsAnyObject(objects)) {
+            this.lastEditedGroup = null;
+        }
+
+        // Remove selection, going by whichever of the two is smaller
+        boolean changed = false;
+        if (this.editedTrackObjects.size() <= objects.size()) {
+            Iterator<TrackObject> iter = this.editedTrackObjects.keySet().iterator();
+            while (iter.hasNext()) {
+                if (objects.contains(iter.next())) {
+                    iter.remove();
+                    changed = true;
+                }
+            }
+        } else {
+            for (TrackObject object : objects) {
+                changed |= (this.editedTrackObjects.remove(object) != null);
+            }
+        }
+
+        // May have caused a particle visibility change
+        if (changed) {
+            getWorld().getParticles().scheduleViewerUpdate(this.getPlayer());
+        }
+        return changed;
+    }
+
     /**
      * Selects and de-selects track objects based on a track object selected group.
      *
@@ -1052,12 +1089,10 @@ public class ObjectEditState {
     }
 
     private void selectObjectsBeyondDistance(TrackConnection connection, boolean direction, double distance) {
-        for (TrackObject object : connection.getObjects()) {
-            if (direction ? (object.getDistance() <= distance) :
-                            (object.getDistance() >= distance)
-            ) {
-                this.selectTrackObject(connection, object);
-            }
+        List<TrackObject> objects = direction ? connection.getObjectsInRange(Double.NEGATIVE_INFINITY, distance)
+                                              : connection.getObjectsInRange(distance, Double.POSITIVE_INFINITY);
+        for (TrackObject object : objects) {
+            this.selectTrackObject(connection, object);
         }
     }
 
@@ -1,21 +1,64 @@
 package com.bergerkiller.bukkit.coasters.editor.object.ui.block;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+
+import com.bergerkiller.bukkit.coasters.TCCoasters;
+import com.bergerkiller.bukkit.common.AsyncTask;
+import com.bergerkiller.bukkit.common.Task;
 import com.bergerkiller.bukkit.common.bases.IntVector2;
+import com.bergerkiller.bukkit.common.config.FileConfiguration;
 import com.bergerkiller.bukkit.common.map.MapTexture;
 import com.bergerkiller.bukkit.common.map.util.Model;
 import com.bergerkiller.bukkit.common.math.Vector3;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MaterialUtil;
 import com.bergerkiller.bukkit.common.wrappers.BlockData;
 import com.bergerkiller.bukkit.tc.TCConfig;
+import com.bergerkiller.bukkit.tc.TrainCarts;
 
 /**
- * Renders and caches the textures of blocks
+ * Renders and caches the textures of blocks. The number of textures kept in memory
+ * is limited, with the least recently used textures removed first.<br>
+ * <br>
+ * The textures of all blocks can be pre-rendered in the background using
+ * {@link #prerender(TCCoasters)}, so that opening the block selector does not
+ * stall the server. These textures are stored in a cache file, so that they only have
+ * to be rendered again when the resource pack or server version changes.
  */
 public class MapBlockTextureCache {
     private static final Map<IntVector2, MapBlockTextureCache> textureCaches = new HashMap<IntVector2, MapBlockTextureCache>();
-    private final Map<BlockData, MapTexture> blockTextures = new HashMap<BlockData, MapTexture>();
+    private static final int MAX_CACHED_TEXTURES = 2048;
+    private static final int CACHE_FILE_VERSION = 2;
+    private static final long PRERENDER_TICK_DURATION = 2000000L; // 2ms
+    private final Map<BlockData, MapTexture> blockTextures = new LinkedHashMap<BlockData, MapTexture>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BlockData, MapTexture> eldest) {
+            return size() > MAX_CACHED_TEXTURES;
+        }
+    };
     private final int width, height;
     private final float scale;
     private final int off_x, off_y;
@@ -29,13 +72,178 @@ public class MapBlockTextureCache {
     }
 
     public MapTexture get(BlockData data) {
-        return blockTextures.computeIfAbsent(data, d -> {
-            MapTexture texture = MapTexture.createEmpty(this.width, this.height);
-            Model model = TCConfig.resourcePack.getBlockModel(d);
-            texture.setLightOptions(0.0f, 1.0f, new Vector3(-1, 1, -1));
-            texture.drawModel(model, this.scale, this.off_x, this.off_y, 225.0f, -60.0f);
-            return texture;
-        });
+        MapTexture texture = this.blockTextures.get(data);
+        if (texture == null) {
+            texture = render(data);
+            this.blockTextures.put(data, texture);
+        }
+        return texture;
+    }
+
+    private MapTexture render(BlockData data) {
+        MapTexture texture = MapTexture.createEmpty(this.width, this.height);
+        Model model = TCConfig.resourcePack.getBlockModel(data);
+        texture.setLightOptions(0.0f, 1.0f, new Vector3(-1, 1, -1));
+        texture.drawModel(model, this.scale, this.off_x, this.off_y, 225.0f, -60.0f);
+        return texture;
+    }
+
+    /**
+     * Pre-renders the textures of all blocks in the background. The cache file in the
+     * plugin data folder is read on a worker thread, and if it was written for the same
+     * resource pack and server version, the textures stored in it are used. All other
+     * textures are rendered on the main thread a few at a time every tick, because the
+     * resource pack is also used on the main thread and is not thread-safe. Newly
+     * rendered textures are written to the cache file on a worker thread.
+     *
+     * @param plugin TC-Coasters plugin instance
+     */
+    public void prerender(final TCCoasters plugin) {
+        final List<BlockData> blocks = new ArrayList<BlockData>();
+        for (Material block : MaterialUtil.getAllBlocks()) {
+            if (block != Material.AIR) {
+                blocks.add(BlockData.fromMaterial(block));
+            }
+        }
+        final File cacheFile = new File(new File(plugin.getDataFolder(), "cache"),
+                "block_textures_" + this.width + "x" + this.height + ".dat");
+        final String serverVersion = Bukkit.getBukkitVersion();
+
+        final CompletableFuture<CacheFileContents> readFuture = new CompletableFuture<CacheFileContents>();
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try {
+                    String fingerprint = computeFingerprint(serverVersion, blocks.size());
+                    readFuture.complete(new CacheFileContents(fingerprint, readCacheFile(cacheFile, fingerprint)));
+                } catch (Throwable t) {
+                    readFuture.completeExceptionally(t);
+                }
+            }
+        }.start();
+
+        readFuture.whenCompleteAsync((contents, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Failed to read block texture cache", error);
+                contents = new CacheFileContents(null, Collections.<String, byte[]>emptyMap());
+            }
+            final CacheFileContents stored = contents;
+            final Map<String, byte[]> rendered = new LinkedHashMap<String, byte[]>();
+            new Task(plugin) {
+                private int index = 0;
+                private boolean changed = false;
+
+                @Override
+                public void run() {
+                    long deadline = System.nanoTime() + PRERENDER_TICK_DURATION;
+                    do {
+                        if (index >= blocks.size()) {
+                            stop();
+                            if (stored.fingerprint != null && (changed || stored.textures.size() != rendered.size())) {
+                                writeCacheFileAsync(plugin, cacheFile, stored.fingerprint, rendered);
+                            }
+                            return;
+                        }
+
+                        BlockData block = blocks.get(index++);
+                        String name = block.getType().name();
+                        byte[] pixels = stored.textures.get(name);
+                        MapTexture texture = blockTextures.get(block);
+                        if (texture == null) {
+                            if (pixels != null) {
+                                texture = MapTexture.createEmpty(width, height);
+                                texture.writePixels(0, 0, width, height, pixels);
+                            } else {
+                                texture = render(block);
+                            }
+                            blockTextures.put(block, texture);
+                        }
+                        if (pixels == null) {
+                            pixels = texture.getBuffer();
+                            changed = true;
+                        }
+                        rendered.put(name, pixels);
+                    } while (System.nanoTime() < deadline);
+                }
+            }.start(1, 1);
+        }, CommonUtil.getPluginExecutor(plugin));
+    }
+
+    private void writeCacheFileAsync(final TCCoasters plugin, final File cacheFile, final String fingerprint, final Map<String, byte[]> textures) {
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try {
+                    writeCacheFile(cacheFile, fingerprint, textures);
+                } catch (Throwable t) {
+                    plugin.getLogger().log(Level.WARNING, "Failed to write block texture cache", t);
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Computes a fingerprint of the resource pack TrainCarts renders with and the server version.
+     * For a resource pack file, the size and last modification time of the file are included,
+     * so that the cache file is rendered again when the resource pack is replaced.
+     *
+     * @param serverVersion Bukkit server version
+     * @param blockCount Number of blocks that are rendered
+     * @return fingerprint
+     */
+    private static String computeFingerprint(String serverVersion, int blockCount) {
+        FileConfiguration config = new FileConfiguration(TrainCarts.plugin);
+        config.load();
+        String packPath = config.get("resourcePack", "default");
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(serverVersion).append(';').append(blockCount).append(';').append(packPath);
+        File packFile = new File(packPath);
+        if (packFile.exists()) {
+            fingerprint.append(';').append(packFile.length());
+            fingerprint.append(';').append(packFile.lastModified());
+        }
+        return fingerprint.toString();
+    }
+
+    private Map<String, byte[]> readCacheFile(File cacheFile, String fingerprint) throws IOException {
+        Map<String, byte[]> result = new HashMap<String, byte[]>();
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (stream.readInt() != CACHE_FILE_VERSION ||
+                !stream.readUTF().equals(fingerprint) ||
+                stream.readInt() != this.width ||
+                stream.readInt() != this.height
+            ) {
+                return result; // Outdated
+            }
+
+            int count = stream.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = stream.readUTF();
+                byte[] pixels = new byte[this.width * this.height];
+                stream.readFully(pixels);
+                result.put(name, pixels);
+            }
+        } catch (FileNotFoundException ex) {
+            // Not yet rendered before
+        }
+        return result;
+    }
+
+    private void writeCacheFile(File cacheFile, String fingerprint, Map<String, byte[]> textures) throws IOException {
+        cacheFile.getParentFile().mkdirs();
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            stream.writeInt(CACHE_FILE_VERSION);
+            stream.writeUTF(fingerprint);
+            stream.writeInt(this.width);
+            stream.writeInt(this.height);
+            stream.writeInt(textures.size());
+            for (Map.Entry<String, byte[]> entry : textures.entrySet()) {
+                stream.writeUTF(entry.getKey());
+                stream.write(entry.getValue());
+            }
+        }
+        Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     public static MapBlockTextureCache create(int width, int height) {
@@ -45,4 +253,14 @@ public class MapBlockTextureCache {
     public static MapBlockTextureCache get(int width, int height) {
         return textureCaches.computeIfAbsent(new IntVector2(width, height), MapBlockTextureCache::new);
     }
+
+    private static final class CacheFileContents {
+        public final String fingerprint;
+        public final Map<String, byte[]> textures;
+
+        public CacheFileContents(String fingerprint, Map<String, byte[]> textures) {
+            this.fingerprint = fingerprint;
+            this.textures = textures;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.bergerkiller.bukkit.coasters.events;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.coasters.tracks.TrackNodeState;
+
+/**
+ * Event fired once after a player changed the position, orientation or rail block
+ * of multiple nodes at once. Cancelling individual nodes, or the event itself,
+ * reverts the change.<br>
+ * <br>
+ * For compatibility, a {@link CoasterAfterChangeNodeEvent} is still fired for
+ * every node that was not cancelled, but only if other plugins listen for it.
+ */
+public class CoasterAfterChangeNodesEvent extends CoasterNodesEvent {
+    private final List<TrackNodeState> _previousStates;
+
+    /**
+     * Initializer for the CoasterAfterChangeNodesEvent
+     *
+     * @param who            The player that changed the nodes
+     * @param nodes          The nodes that were changed
+     * @param previousStates The previous states of the nodes before changing, in the same order
+     */
+    public CoasterAfterChangeNodesEvent(Player who, List<TrackNode> nodes, List<TrackNodeState> previousStates) {
+        super(who, nodes);
+        if (nodes.size() != previousStates.size()) {
+            throw new IllegalArgumentException("Number of previous states does not match the number of nodes");
+        }
+        _previousStates = Collections.unmodifiableList(new ArrayList<TrackNodeState>(previousStates));
+    }
+
+    /**
+     * Gets the previous state of the node at the index in {@link #getNodes()}
+     * before it was changed
+     *
+     * @param index Index of the node
+     * @return previous state
+     */
+    public TrackNodeState getPreviousState(int index) {
+        return _previousStates.get(index);
+    }
+
+    @Override
+    protected CoasterNodeEvent createNodeEvent(int index) {
+        return new CoasterAfterChangeNodeEvent(getPlayer(), getNodes().get(index), _previousStates.get(index));
+    }
+
+    /**
+     * Fires this event, and afterwards a {@link CoasterAfterChangeNodeEvent} for every
+     * node that was not cancelled, if plugins other than the owner plugin listen for it.
+     *
+     * @param owner Plugin that fires the event
+     * @param who Player that changed the nodes
+     * @param nodes Nodes that were changed
+     * @param previousStates Previous states of the nodes before changing
+     * @return Event after it was handled
+     * @see CoasterNodesEvent#call(Plugin, CoasterNodesEvent)
+     */
+    public static CoasterAfterChangeNodesEvent call(Plugin owner, Player who, List<TrackNode> nodes, List<TrackNodeState> previousStates) {
+        return call(owner, new CoasterAfterChangeNodesEvent(who, nodes, previousStates));
+    }
+}
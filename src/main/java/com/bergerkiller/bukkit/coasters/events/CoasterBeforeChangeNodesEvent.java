@@ -0,0 +1,52 @@
+package com.bergerkiller.bukkit.coasters.events;
+
+import java.util.Collection;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+
+/**
+ * Event fired once before a player starts changing the position, orientation
+ * or rail block of multiple nodes at once. Individual nodes can be cancelled,
+ * which excludes them from the change. Cancelling the event itself cancels the
+ * change of all nodes.<br>
+ * <br>
+ * For compatibility, a {@link CoasterBeforeChangeNodeEvent} is still fired for
+ * every node that was not cancelled, but only if other plugins listen for it.
+ * Changes of the signs of nodes are not included, these fire a
+ * {@link CoasterBeforeChangeNodeEvent} for every node because every sign is
+ * checked with its own build event as well.
+ */
+public class CoasterBeforeChangeNodesEvent extends CoasterNodesEvent {
+
+    /**
+     * Initializer for the CoasterBeforeChangeNodesEvent
+     *
+     * @param who   The player that is about to change the nodes
+     * @param nodes The nodes that are going to be changed
+     */
+    public CoasterBeforeChangeNodesEvent(Player who, Collection<TrackNode> nodes) {
+        super(who, nodes);
+    }
+
+    @Override
+    protected CoasterNodeEvent createNodeEvent(int index) {
+        return new CoasterBeforeChangeNodeEvent(getPlayer(), getNodes().get(index));
+    }
+
+    /**
+     * Fires this event, and afterwards a {@link CoasterBeforeChangeNodeEvent} for every
+     * node that was not cancelled, if plugins other than the owner plugin listen for it.
+     *
+     * @param owner Plugin that fires the event
+     * @param who Player that is about to change the nodes
+     * @param nodes Nodes that are going to be changed
+     * @return Event after it was handled
+     * @see CoasterNodesEvent#call(Plugin, CoasterNodesEvent)
+     */
+    public static CoasterBeforeChangeNodesEvent call(Plugin owner, Player who, Collection<TrackNode> nodes) {
+        return call(owner, new CoasterBeforeChangeNodesEvent(who, nodes));
+    }
+}
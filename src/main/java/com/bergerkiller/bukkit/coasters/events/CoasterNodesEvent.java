@@ -0,0 +1,193 @@
+package com.bergerkiller.bukkit.coasters.events;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.tracks.TrackNode;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+
+/**
+ * Base class for all coaster events that involve many track nodes at once.
+ * Individual nodes can be cancelled, which excludes them from the change.
+ * Cancelling the event itself cancels the change of all nodes.<br>
+ * <br>
+ * For compatibility, the single-node event is still fired for every node
+ * that was not cancelled, but only if other plugins listen for node events.
+ */
+public abstract class CoasterNodesEvent extends CoasterEvent {
+    private static final HandlerList handlers = new HandlerList();
+    private final List<TrackNode> _nodes;
+    private final BitSet _cancelledNodes;
+
+    protected CoasterNodesEvent(Player who, Collection<TrackNode> nodes) {
+        super(who);
+        _nodes = Collections.unmodifiableList(new ArrayList<TrackNode>(nodes));
+        _cancelledNodes = new BitSet(_nodes.size());
+    }
+
+    /**
+     * Gets all the nodes involved in this event, including nodes that
+     * have been cancelled.
+     *
+     * @return unmodifiable list of nodes
+     */
+    public List<TrackNode> getNodes() {
+        return _nodes;
+    }
+
+    /**
+     * Gets the nodes involved in this event, excluding the nodes that
+     * have been cancelled. If the event itself is cancelled, returns an empty list.
+     *
+     * @return list of nodes that are not cancelled
+     */
+    public List<TrackNode> getAllowedNodes() {
+        if (isCancelled()) {
+            return Collections.emptyList();
+        }
+        List<TrackNode> result = new ArrayList<TrackNode>(_nodes.size() - _cancelledNodes.cardinality());
+        for (int i = _cancelledNodes.nextClearBit(0); i < _nodes.size(); i = _cancelledNodes.nextClearBit(i + 1)) {
+            result.add(_nodes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the nodes that have been cancelled. If the event itself is cancelled,
+     * returns all nodes.
+     *
+     * @return list of cancelled nodes
+     */
+    public List<TrackNode> getCancelledNodes() {
+        if (isCancelled()) {
+            return _nodes;
+        }
+        List<TrackNode> result = new ArrayList<TrackNode>(_cancelledNodes.cardinality());
+        for (int i = _cancelledNodes.nextSetBit(0); i >= 0; i = _cancelledNodes.nextSetBit(i + 1)) {
+            result.add(_nodes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets whether any of the nodes, or the event itself, was cancelled
+     *
+     * @return True if any node was cancelled
+     */
+    public boolean hasCancelledNodes() {
+        return isCancelled() || !_cancelledNodes.isEmpty();
+    }
+
+    /**
+     * Gets whether the change of the node at the index in {@link #getNodes()} is cancelled
+     *
+     * @param index Index of the node
+     * @return True if cancelled
+     */
+    public boolean isNodeCancelled(int index) {
+        return isCancelled() || _cancelledNodes.get(index);
+    }
+
+    /**
+     * Sets whether the change of the node at the index in {@link #getNodes()} is cancelled
+     *
+     * @param index Index of the node
+     * @param cancel Whether to cancel changing the node
+     */
+    public void setNodeCancelled(int index, boolean cancel) {
+        _cancelledNodes.set(index, cancel);
+    }
+
+    /**
+     * Cancels the change of all nodes whose position is rejected by the filter.
+     * Unlike {@link #setCancelledIfPositionInvalid(Predicate)} this only cancels
+     * the individual nodes, and not the entire event. Nodes that are already cancelled
+     * are not tested again.
+     *
+     * @param positionFilter Filter predicate for positions where changes occur
+     */
+    public void setNodesCancelledIfPositionInvalid(Predicate<Vector> positionFilter) {
+        for (int i = _cancelledNodes.nextClearBit(0); i < _nodes.size(); i = _cancelledNodes.nextClearBit(i + 1)) {
+            if (!positionFilter.test(_nodes.get(i).getPosition())) {
+                _cancelledNodes.set(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean testPositions(Predicate<Vector> positionFilter) {
+        for (TrackNode node : _nodes) {
+            if (!positionFilter.test(node.getPosition())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public World getWorld() {
+        return _nodes.isEmpty() ? getPlayer().getWorld() : _nodes.get(0).getBukkitWorld();
+    }
+
+    /**
+     * Creates the single-node event fired for a node of this event, for plugins
+     * that only listen for node events
+     *
+     * @param index Index of the node in {@link #getNodes()}
+     * @return node event
+     */
+    protected abstract CoasterNodeEvent createNodeEvent(int index);
+
+    @Override
+    public final HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+
+    /**
+     * Fires an event, and afterwards the single-node event for every node that was
+     * not cancelled, if plugins other than the owner plugin listen for it.
+     * Nodes cancelled in those events are cancelled in this event as well.
+     *
+     * @param owner Plugin that fires the event, whose own node event listeners are
+     *              expected to handle this event instead
+     * @param event Event to fire
+     * @return Event after it was handled
+     */
+    public static <T extends CoasterNodesEvent> T call(Plugin owner, T event) {
+        CommonUtil.callEvent(event);
+        if (!event.isCancelled() && hasForeignListeners(owner)) {
+            List<TrackNode> eventNodes = event.getNodes();
+            BitSet cancelledNodes = ((CoasterNodesEvent) event)._cancelledNodes;
+            for (int i = cancelledNodes.nextClearBit(0); i < eventNodes.size(); i = cancelledNodes.nextClearBit(i + 1)) {
+                if (CommonUtil.callEvent(event.createNodeEvent(i)).isCancelled()) {
+                    cancelledNodes.set(i);
+                }
+            }
+        }
+        return event;
+    }
+
+    private static boolean hasForeignListeners(Plugin owner) {
+        for (RegisteredListener listener : CoasterNodeEvent.getHandlerList().getRegisteredListeners()) {
+            if (listener.getPlugin() != owner) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -119,6 +119,7 @@ public class TrackObject implements Cloneable {
         this.flipped = false;
         TrackConnection.PointOnPath point = this.findPointOnPath(connection);
         this.flipped = (point.orientation.rightVector().dot(rightDirection) < 0.0);
+        connection.onObjectDistanceChanged();
         connection.markChanged();
 
         if (isAdded()) {
@@ -143,11 +144,20 @@ public class TrackObject implements Cloneable {
         if (this.distance != distance || this.flipped != flipped) {
             this.distance = distance;
             this.flipped = flipped;
+            connection.onObjectDistanceChanged();
             connection.markChanged();
             this.onShapeUpdated(connection);
         }
     }
 
+    /**
+     * Sets the distance and flipped properties without updating anything. Should only be used
+     * for objects that are not stored on a connection, because the connection does not
+     * sort its objects by distance again.
+     *
+     * @param distance
+     * @param flipped
+     */
     public void setDistanceFlippedSilently(double distance, boolean flipped) {
         this.distance = distance;
         this.flipped = flipped;
@@ -207,7 +217,7 @@ public class TrackObject implements Cloneable {
         this.particle = null; // isAdded() -> false
 
         // Remove from player edit states to prevent trouble
-        connection.getPlugin().forAllEditStates(state -> state.getObjects().deselectTrackObject(connection, TrackObject.this));
+        TrackObjectRemovalBatch.deselect(connection, this);
     }
 
     public void onShapeUpdated(TrackConnection connection) {
@@ -0,0 +1,204 @@
+package com.bergerkiller.bukkit.coasters.objects;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.bergerkiller.bukkit.common.utils.LogicUtil;
+
+/**
+ * Stores the track objects of a single connection, sorted by distance. Adding objects
+ * is amortized O(1), and objects in a range of distances can be found using a binary
+ * search.<br>
+ * <br>
+ * Objects can change distance after they are added. When that happens,
+ * {@link #markUnsorted()} must be called, and the objects are sorted again
+ * the next time they are queried. The list returned by {@link #asList()} is
+ * an immutable snapshot, so objects can be added or removed while iterating it.
+ */
+public final class TrackObjectList {
+    private static final Comparator<TrackObject> BY_DISTANCE = Comparator.comparingDouble(TrackObject::getDistance);
+    private static final double EQUALS_DISTANCE_EPSILON = 1e-20; // Same as TrackObject equals()
+    private TrackObject[] objects = TrackObject.EMPTY;
+    private int size = 0;
+    private boolean sorted = true;
+    private List<TrackObject> snapshot = Collections.emptyList();
+
+    /**
+     * Gets the number of objects stored
+     *
+     * @return object count
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether no objects are stored
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Adds an object
+     *
+     * @param object Object to add
+     */
+    public void add(TrackObject object) {
+        if (this.size == this.objects.length) {
+            this.objects = Arrays.copyOf(this.objects, Math.max(4, this.size * 2));
+        }
+        if (this.sorted && this.size > 0 && BY_DISTANCE.compare(this.objects[this.size - 1], object) > 0) {
+            this.sorted = false;
+        }
+        this.objects[this.size++] = object;
+        this.snapshot = null;
+    }
+
+    /**
+     * Removes an object equal to the object specified
+     *
+     * @param object Object to remove
+     * @return The object that was removed, or null if not found
+     */
+    public TrackObject remove(TrackObject object) {
+        int index = indexOf(object);
+        if (index == -1) {
+            return null;
+        }
+
+        TrackObject removed = this.objects[index];
+        System.arraycopy(this.objects, index + 1, this.objects, index, this.size - index - 1);
+        this.objects[--this.size] = null;
+        this.snapshot = null;
+        return removed;
+    }
+
+    /**
+     * Removes all objects
+     *
+     * @return the objects that were removed
+     */
+    public List<TrackObject> clear() {
+        List<TrackObject> removed = asList();
+        this.objects = TrackObject.EMPTY;
+        this.size = 0;
+        this.sorted = true;
+        this.snapshot = Collections.emptyList();
+        return removed;
+    }
+
+    /**
+     * Replaces all objects with the objects specified
+     *
+     * @param objects New objects
+     */
+    public void setAll(Collection<TrackObject> objects) {
+        this.objects = objects.isEmpty() ? TrackObject.EMPTY : objects.toArray(new TrackObject[objects.size()]);
+        this.size = this.objects.length;
+        this.sorted = false;
+        this.snapshot = null;
+    }
+
+    /**
+     * Signals that the distance of one or more objects changed, and that they
+     * must be sorted again
+     */
+    public void markUnsorted() {
+        this.sorted = false;
+        this.snapshot = null;
+    }
+
+    /**
+     * Reverses the order of the objects. Used when the distances of all objects
+     * are inverted, which keeps them sorted.
+     */
+    public void reverse() {
+        for (int i = 0, j = this.size - 1; i < j; i++, j--) {
+            TrackObject tmp = this.objects[i];
+            this.objects[i] = this.objects[j];
+            this.objects[j] = tmp;
+        }
+        this.snapshot = null;
+    }
+
+    /**
+     * Gets all the objects, sorted by distance
+     *
+     * @return immutable list of objects
+     */
+    public List<TrackObject> asList() {
+        ensureSorted();
+        List<TrackObject> snapshot = this.snapshot;
+        if (snapshot == null) {
+            snapshot = LogicUtil.asImmutableList(Arrays.copyOf(this.objects, this.size));
+            this.snapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets all the objects whose distance is within a range, sorted by distance
+     *
+     * @param minDistance Minimum distance (inclusive)
+     * @param maxDistance Maximum distance (inclusive)
+     * @return immutable list of objects within the range
+     */
+    public List<TrackObject> getInRange(double minDistance, double maxDistance) {
+        ensureSorted();
+        int start = lowerBound(minDistance);
+        int end = start;
+        while (end < this.size && this.objects[end].getDistance() <= maxDistance) {
+            end++;
+        }
+        if (start == end) {
+            return Collections.emptyList();
+        } else if (start == 0 && end == this.size) {
+            return asList();
+        } else {
+            return LogicUtil.asImmutableList(Arrays.copyOfRange(this.objects, start, end));
+        }
+    }
+
+    private int indexOf(TrackObject object) {
+        ensureSorted();
+        double distance = object.getDistance();
+        for (int i = lowerBound(distance - EQUALS_DISTANCE_EPSILON); i < this.size; i++) {
+            TrackObject stored = this.objects[i];
+            if (stored.getDistance() > (distance + EQUALS_DISTANCE_EPSILON)) {
+                break;
+            } else if (stored.equals(object)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Index of the first object with a distance equal to or larger than the distance specified
+    private int lowerBound(double distance) {
+        int low = 0;
+        int high = this.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.objects[mid].getDistance() < distance) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureSorted() {
+        if (!this.sorted) {
+            Arrays.sort(this.objects, 0, this.size, BY_DISTANCE);
+            this.sorted = true;
+            this.snapshot = null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.bergerkiller.bukkit.coasters.objects;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.bergerkiller.bukkit.coasters.TCCoasters;
+import com.bergerkiller.bukkit.coasters.tracks.TrackConnection;
+
+/**
+ * Collects the track objects removed from connections, and de-selects them from the
+ * edit states of all players at once when finished. Without a batch, every removed
+ * object is de-selected by going over the edit states of all players, which is slow
+ * when many objects are removed at once, such as when a coaster is deleted.<br>
+ * <br>
+ * Batches can be nested. When a batch is started on the same thread while another
+ * batch is active, the objects are de-selected when the outermost batch finishes.
+ */
+public final class TrackObjectRemovalBatch {
+    private static TrackObjectRemovalBatch active = null;
+    private final TCCoasters plugin;
+    private final Thread thread;
+    private final Set<TrackObject> removed = new HashSet<>();
+    private int depth = 1;
+
+    private TrackObjectRemovalBatch(TCCoasters plugin) {
+        this.plugin = plugin;
+        this.thread = Thread.currentThread();
+    }
+
+    /**
+     * Starts collecting the track objects that are removed. The returned batch must be
+     * finished using {@link #finish()}, preferably in a finally block.
+     *
+     * @param plugin TC-Coasters plugin instance
+     * @return started batch
+     */
+    public static TrackObjectRemovalBatch start(TCCoasters plugin) {
+        TrackObjectRemovalBatch batch = active;
+        if (batch != null && batch.plugin == plugin && batch.thread == Thread.currentThread()) {
+            batch.depth++;
+            return batch;
+        } else if (batch == null) {
+            return active = new TrackObjectRemovalBatch(plugin);
+        } else {
+            // Another thread is batching, de-select right away instead
+            TrackObjectRemovalBatch unused = new TrackObjectRemovalBatch(plugin);
+            unused.depth = 0;
+            return unused;
+        }
+    }
+
+    /**
+     * Finishes this batch. If this is the outermost batch, all objects removed
+     * since it was started are de-selected from the edit states of all players.
+     *
+     * @return number of objects de-selected
+     */
+    public int finish() {
+        if (this.depth == 0 || --this.depth > 0) {
+            return 0;
+        }
+        if (active == this) {
+            active = null;
+        }
+        if (this.removed.isEmpty()) {
+            return 0;
+        }
+
+        final Set<TrackObject> removed = this.removed;
+        plugin.forAllEditStates(state -> state.getObjects().deselectTrackObjects(removed));
+        int count = removed.size();
+        removed.clear();
+        return count;
+    }
+
+    /**
+     * De-selects a track object that was removed from a connection from the edit states
+     * of all players. If a batch was started, this is done when the batch finishes.
+     *
+     * @param connection Connection the object was removed from
+     * @param object Track object that was removed
+     */
+    public static void deselect(TrackConnection connection, TrackObject object) {
+        TrackObjectRemovalBatch batch = active;
+        if (batch != null && batch.plugin == connection.getPlugin() && batch.thread == Thread.currentThread()) {
+            batch.removed.add(object);
+        } else {
+            connection.getPlugin().forAllEditStates(state -> state.getObjects().deselectTrackObject(connection, object));
+        }
+    }
+}
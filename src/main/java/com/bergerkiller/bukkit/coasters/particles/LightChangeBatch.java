@@ -0,0 +1,126 @@
+package com.bergerkiller.bukkit.coasters.particles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.tc.attachments.control.light.LightAPIController;
+
+/**
+ * Collects the lights added and removed by light particles during a tick, and
+ * applies them to the light controllers all at once. Changes are de-duplicated
+ * per block position and level, so a light that is removed and then added again
+ * at the same block before the batch is applied causes no light updates at all.
+ * The remaining changes are applied chunk by chunk, removing lights before adding
+ * new ones.
+ */
+public final class LightChangeBatch {
+    private final Map<LightKey, Integer> changes = new HashMap<>();
+
+    /**
+     * Adds a light at a block
+     *
+     * @param controller Light controller
+     * @param position Block position of the light
+     * @param level Light level
+     */
+    public void add(LightAPIController controller, IntVector3 position, int level) {
+        change(new LightKey(controller, position, level), 1);
+    }
+
+    /**
+     * Removes a light previously added at a block
+     *
+     * @param controller Light controller
+     * @param position Block position of the light
+     * @param level Light level
+     */
+    public void remove(LightAPIController controller, IntVector3 position, int level) {
+        change(new LightKey(controller, position, level), -1);
+    }
+
+    private void change(LightKey key, int delta) {
+        changes.merge(key, delta, (a, b) -> {
+            int sum = a + b;
+            return (sum == 0) ? null : sum;
+        });
+    }
+
+    /**
+     * Gets whether there are light changes that have not been applied yet
+     *
+     * @return True if there are pending changes
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Applies all collected light changes to the light controllers
+     *
+     * @return number of light additions and removals applied
+     */
+    public int apply() {
+        if (changes.isEmpty()) {
+            return 0;
+        }
+
+        List<Map.Entry<LightKey, Integer>> entries = new ArrayList<>(changes.entrySet());
+        changes.clear();
+        entries.sort((a, b) -> {
+            int comp = a.getKey().compareChunk(b.getKey());
+            return (comp != 0) ? comp : Integer.compare(a.getValue(), b.getValue());
+        });
+
+        int count = 0;
+        for (Map.Entry<LightKey, Integer> entry : entries) {
+            LightKey key = entry.getKey();
+            int delta = entry.getValue();
+            for (; delta < 0; delta++, count++) {
+                key.controller.remove(key.position, key.level);
+            }
+            for (; delta > 0; delta--, count++) {
+                key.controller.add(key.position, key.level);
+            }
+        }
+        return count;
+    }
+
+    private static final class LightKey {
+        public final LightAPIController controller;
+        public final IntVector3 position;
+        public final int level;
+
+        public LightKey(LightAPIController controller, IntVector3 position, int level) {
+            this.controller = controller;
+            this.position = position;
+            this.level = level;
+        }
+
+        public int compareChunk(LightKey other) {
+            int comp = Integer.compare(position.x >> 4, other.position.x >> 4);
+            return (comp != 0) ? comp : Integer.compare(position.z >> 4, other.position.z >> 4);
+        }
+
+        @Override
+        public int hashCode() {
+            return position.hashCode() * 31 + level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof LightKey) {
+                LightKey other = (LightKey) o;
+                return controller == other.controller &&
+                       level == other.level &&
+                       position.equals(other.position);
+            } else {
+                return false;
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.bergerkiller.bukkit.coasters.particles;
 
+import java.util.Collections;
+
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
@@ -17,16 +19,20 @@ import com.bergerkiller.generated.net.minecraft.network.protocol.PacketHandle;
 public abstract class TrackParticle implements TrackParticleLifecycle {
     protected TrackParticleWorld world;
     private ImmutablePlayerSet viewers = ImmutablePlayerSet.EMPTY;
+    private ImmutablePlayerSet nearViewers = ImmutablePlayerSet.EMPTY;
+    private ImmutablePlayerSet farViewers = ImmutablePlayerSet.EMPTY;
+    private boolean farViewersOutdated = false;
     private TrackParticleState.Source stateSource = TrackParticleState.SOURCE_NONE;
     private int flags = 0;
 
     protected static final int FLAG_APPEARANCE_DIRTY = (1<<0);
     protected static final int FLAG_ALWAYS_VISIBLE   = (1<<1);
 
+    // Spend at most 5ms a tick updating appearance, so many particles changing at once doesn't cause a lag spike
     private static final QueuedTask<TrackParticle> UPDATE_APPEARANCE_TASK = QueuedTask.create(TrackParticle::isAdded, particle -> {
         particle.clearFlag(TrackParticle.FLAG_APPEARANCE_DIRTY);
         particle.updateAppearance();
-    });
+    }).setName("Particle appearance updates").setTickBudget(Integer.MAX_VALUE, 5000000L);
 
     public TrackParticleWorld getWorld() {
         return this.world;
@@ -76,20 +82,57 @@ public abstract class TrackParticle implements TrackParticleLifecycle {
     // Internal use only
     final void addNewViewer(Player viewer) {
         this.viewers = this.viewers.add(viewer);
+        this.nearViewers = this.nearViewers.add(viewer);
     }
 
     // Internal use only
     final void removeOldViewer(Player viewer) {
         this.viewers = this.viewers.remove(viewer);
+        this.nearViewers = this.nearViewers.remove(viewer);
+        this.farViewers = this.farViewers.remove(viewer);
     }
 
     // Internal use only
     final ImmutablePlayerSet clearAllViewers() {
         ImmutablePlayerSet old = this.viewers;
         this.viewers = old.clear();
+        this.nearViewers = this.nearViewers.clear();
+        this.farViewers = this.farViewers.clear();
         return old;
     }
 
+    // Internal use only
+    final void setFarViewer(Player viewer, boolean far) {
+        if (far) {
+            int oldSize = this.farViewers.size();
+            this.farViewers = this.farViewers.add(viewer);
+            if (this.farViewers.size() != oldSize) {
+                this.nearViewers = this.nearViewers.remove(viewer);
+            }
+        } else {
+            int oldSize = this.farViewers.size();
+            this.farViewers = this.farViewers.remove(viewer);
+            if (this.farViewers.size() != oldSize) {
+                this.nearViewers = this.nearViewers.add(viewer);
+
+                // Viewer came close, it should not have to wait for the movement it missed
+                if (this.farViewersOutdated) {
+                    this.updateFarViewers(Collections.singletonList(viewer));
+                }
+            }
+        }
+    }
+
+    // Internal use only
+    final void runFarViewerUpdate() {
+        if (this.farViewersOutdated) {
+            this.farViewersOutdated = false;
+            if (!this.farViewers.isEmpty()) {
+                this.updateFarViewers(this.farViewers);
+            }
+        }
+    }
+
     /**
      * Sets or clears a flag of this particle. Returns true if the flag changed.
      * 
@@ -150,6 +193,31 @@ public abstract class TrackParticle implements TrackParticleLifecycle {
         return !this.viewers.isEmpty();
     }
 
+    /**
+     * Gets the viewers that should receive a movement update of this particle right away.
+     * Viewers far away from this particle are left out. They are sent the movement
+     * every few ticks instead, using {@link #updateFarViewers(Iterable)}.
+     *
+     * @return viewers to send movement updates to
+     */
+    protected ImmutablePlayerSet getMovementViewers() {
+        if (!this.farViewers.isEmpty() && this.world != null) {
+            this.farViewersOutdated = true;
+            this.world.scheduleFarViewerUpdate(this);
+        }
+        return this.nearViewers;
+    }
+
+    /**
+     * Called every few ticks to send the current position of this particle to viewers far
+     * away, after movement updates were skipped for them using {@link #getMovementViewers()}.
+     * Particles that use that method must implement this one.
+     *
+     * @param viewers Viewers to send the current position to
+     */
+    protected void updateFarViewers(Iterable<Player> viewers) {
+    }
+
     public void broadcastPacket(PacketHandle packet) {
         for (Player viewer : this.viewers) {
             PacketUtil.sendPacket(viewer, packet);
@@ -22,7 +22,8 @@ public class TrackParticleArmorStandItem extends TrackParticle {
     protected static final int FLAG_LARGE_CHANGES     = (1<<5);
 
     private static final QueuedTask<TrackParticleArmorStandItem> DESPAWN_HOLDER_TASK = QueuedTask.create(
-            100, TrackParticle::isAdded, TrackParticleArmorStandItem::destroyHolderEntity);
+            100, TrackParticle::isAdded, TrackParticleArmorStandItem::destroyHolderEntity)
+            .setName("Armorstand item holder despawn");
 
     private DoubleOctree.Entry<TrackParticle> position;
     private Quaternion orientation;
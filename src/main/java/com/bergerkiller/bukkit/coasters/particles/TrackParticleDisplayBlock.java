@@ -20,9 +20,11 @@ public class TrackParticleDisplayBlock extends TrackParticle {
     protected static final int FLAG_CLIP_CHANGED      = (1<<5);
     protected static final int FLAG_BRIGHTNESS_CHANGED = (1<<6);
     protected static final int FLAG_LARGE_CHANGES     = (1<<7);
+    protected static final int FLAG_INTERPOLATED      = (1<<8);
 
     private static final QueuedTask<TrackParticleDisplayBlock> DESPAWN_HOLDER_TASK = QueuedTask.create(
-            100, TrackParticle::isAdded, TrackParticleDisplayBlock::destroyHolderEntity);
+            100, TrackParticle::isAdded, TrackParticleDisplayBlock::destroyHolderEntity)
+            .setName("Display block holder despawn");
 
     private DoubleOctree.Entry<TrackParticle> position;
     private final Quaternion orientation;
@@ -30,6 +32,7 @@ public class TrackParticleDisplayBlock extends TrackParticle {
     private Brightness brightness;
     private final Vector size;
     private BlockData blockData;
+    private int interpolationDuration = VirtualDisplayEntity.DEFAULT_INTERPOLATION_DURATION;
     private int holderEntityId = -1;
     private int entityId = -1;
 
@@ -46,7 +49,7 @@ public class TrackParticleDisplayBlock extends TrackParticle {
         if (!this.orientation.equals(orientation)) {
             this.orientation.setTo(orientation);
             this.setFlag(FLAG_TRANSFORM_CHANGED);
-            this.scheduleUpdateAppearance();
+            this.scheduleUpdateMovement();
         }
         if (!this.position.equalsCoord(position)) {
             if (Math.abs(position.getX() - this.position.getX()) > 0.02 ||
@@ -57,6 +60,16 @@ public class TrackParticleDisplayBlock extends TrackParticle {
             }
             this.position = updatePosition(this.position, position);
             this.setFlag(FLAG_POSITION_CHANGED);
+            this.scheduleUpdateMovement();
+        }
+    }
+
+    private void scheduleUpdateMovement() {
+        // When moved by an animation, send the changes every few ticks and let the client interpolate
+        if (this.world != null && this.world.isInterpolatingAnimation()) {
+            this.setFlag(FLAG_INTERPOLATED);
+            this.world.scheduleInterpolatedUpdate(this);
+        } else {
             this.scheduleUpdateAppearance();
         }
     }
@@ -115,6 +128,7 @@ public class TrackParticleDisplayBlock extends TrackParticle {
         VirtualDisplayEntity entity = VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
                 .position(this.position)
                 .orientation(this.orientation)
+                .interpolationDuration(this.interpolationDuration)
                 .clip(this.clip)
                 .scale(this.size)
                 .block(this.blockData)
@@ -138,27 +152,35 @@ public class TrackParticleDisplayBlock extends TrackParticle {
 
     @Override
     public void updateAppearance() {
+        boolean interpolated = this.clearFlag(FLAG_INTERPOLATED);
         if (this.clearFlag(FLAG_POSITION_CHANGED)) {
             boolean large_changes = this.clearFlag(FLAG_LARGE_CHANGES);
             if (hasViewers()) {
                 VirtualDisplayEntity entity = VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
                         .position(this.position);
-                if (large_changes) {
+                if (large_changes || interpolated) {
                     entity.spawnHolder(getViewers());
                     DESPAWN_HOLDER_TASK.schedule(this);
                 }
-                for (Player viewer : this.getViewers()) {
-                    entity.updatePosition(viewer);
-                }
+                entity.updatePosition(this.getMovementViewers());
                 this.holderEntityId = entity.holderEntityId();
                 this.entityId = entity.entityId();
             }
         }
         if (this.clearFlag(FLAG_TRANSFORM_CHANGED) && this.entityId != -1) {
-            VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
+            VirtualDisplayEntity entity = VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
                 .orientation(this.orientation)
-                .scale(this.size)
-                .updateMetadata(this.getViewers());
+                .scale(this.size);
+
+            // Interpolate the transformation over the same time as it takes for the next update to arrive
+            int duration = interpolated ? getWorld().getAnimationInterpolationTicks()
+                                        : VirtualDisplayEntity.DEFAULT_INTERPOLATION_DURATION;
+            if (this.interpolationDuration != duration) {
+                this.interpolationDuration = duration;
+                entity.interpolationDuration(duration);
+            }
+
+            entity.updateMetadata(this.getMovementViewers());
         }
         if (this.clearFlag(FLAG_BLOCK_CHANGED) && this.entityId != -1) {
             VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
@@ -178,6 +200,19 @@ public class TrackParticleDisplayBlock extends TrackParticle {
         }
     }
 
+    @Override
+    protected void updateFarViewers(Iterable<Player> viewers) {
+        if (this.entityId != -1) {
+            VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
+                    .position(this.position)
+                    .orientation(this.orientation)
+                    .scale(this.size)
+                    .interpolationDuration(this.interpolationDuration)
+                    .updatePosition(viewers)
+                    .updateMetadata(viewers);
+        }
+    }
+
     private void destroyHolderEntity() {
         VirtualDisplayEntity entity = VirtualDisplayEntity.createBlock(this.holderEntityId, this.entityId)
                 .position(this.position)
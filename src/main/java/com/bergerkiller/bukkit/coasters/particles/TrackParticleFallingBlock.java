@@ -20,7 +20,8 @@ public class TrackParticleFallingBlock extends TrackParticle {
     private int entityId = -1;
 
     private static final QueuedTask<TrackParticleFallingBlock> DESPAWN_HOLDER_TASK = QueuedTask.create(
-            100, TrackParticle::isAdded, TrackParticleFallingBlock::destroyHolderEntity);
+            100, TrackParticle::isAdded, TrackParticleFallingBlock::destroyHolderEntity)
+            .setName("Falling block holder despawn");
 
     protected TrackParticleFallingBlock(Vector position, Quaternion orientation, BlockData material) {
         this.position = DoubleOctree.Entry.create(position, this);
@@ -1,16 +1,17 @@
 package com.bergerkiller.bukkit.coasters.particles;
 
+import java.util.EnumMap;
 import java.util.UUID;
 
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
+import com.bergerkiller.bukkit.coasters.util.EntityDestroyBatch;
 import com.bergerkiller.bukkit.common.collections.octree.DoubleOctree;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
 import com.bergerkiller.bukkit.common.utils.PacketUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
-import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundRemoveEntitiesPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundSetEntityDataPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundEntityPositionSyncPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundAddEntityPacketHandle;
@@ -84,10 +85,14 @@ public class TrackParticleItem extends TrackParticle {
             broadcastPacket(tpPacket);
         }
         if (this.clearFlag(FLAG_ITEM_CHANGED) && this.entityId != -1) {
+            // Build the packet once for every different item shown to viewers
+            EnumMap<TrackParticleState, ClientboundSetEntityDataPacketHandle> metaPackets = new EnumMap<>(TrackParticleState.class);
             for (Player viewer : this.getViewers()) {
-                DataWatcher metadata = new DataWatcher();
-                metadata.set(ItemEntityHandle.DATA_ITEM, this.itemType.getItem(this.getState(viewer)));
-                ClientboundSetEntityDataPacketHandle metaPacket = ClientboundSetEntityDataPacketHandle.createNew(this.entityId, metadata, true);
+                ClientboundSetEntityDataPacketHandle metaPacket = metaPackets.computeIfAbsent(this.getState(viewer), state -> {
+                    DataWatcher metadata = new DataWatcher();
+                    metadata.set(ItemEntityHandle.DATA_ITEM, this.itemType.getItem(state));
+                    return ClientboundSetEntityDataPacketHandle.createNew(this.entityId, metadata, true);
+                });
                 PacketUtil.sendPacket(viewer, metaPacket);
             }
         }
@@ -133,7 +138,7 @@ public class TrackParticleItem extends TrackParticle {
     @Override
     public void makeHiddenFor(Player viewer) {
         if (this.entityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.entityId));
+            EntityDestroyBatch.destroy(viewer, this.entityId);
         }
     }
 
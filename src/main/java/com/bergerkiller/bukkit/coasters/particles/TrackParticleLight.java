@@ -93,21 +93,25 @@ public class TrackParticleLight extends TrackParticle {
         return false;
     }
 
+    // Light changes are applied once per tick, so moving lights only update the light engine once
     private void addLight() {
+        if (this.world == null) {
+            return;
+        }
         if (this.controller == null) {
             this.controller = LightAPIController.get(this.getWorld().getBukkitWorld(),
                     this.type == LightType.SKY);
         }
 
-        this.controller.add(this.position, this.level);
+        this.world.getLightChanges().add(this.controller, this.position, this.level);
     }
 
     private void removeLight() {
-        if (this.controller == null) {
+        if (this.world == null || this.controller == null) {
             return;
         }
 
-        this.controller.remove(this.position, this.level);
+        this.world.getLightChanges().remove(this.controller, this.position, this.level);
     }
 
     /**
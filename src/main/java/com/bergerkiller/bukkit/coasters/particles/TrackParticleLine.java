@@ -8,6 +8,7 @@ import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.Vector;
 
+import com.bergerkiller.bukkit.coasters.util.EntityDestroyBatch;
 import com.bergerkiller.bukkit.common.collections.octree.DoubleOctree;
 import com.bergerkiller.bukkit.common.utils.DebugUtil;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
@@ -17,7 +18,6 @@ import com.bergerkiller.bukkit.common.utils.PacketUtil;
 import com.bergerkiller.bukkit.common.utils.PlayerUtil;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundSetEntityLinkPacketHandle;
-import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundRemoveEntitiesPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundSetEquipmentPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundEntityPositionSyncPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundAddMobPacketHandle;
@@ -157,36 +157,43 @@ public class TrackParticleLine extends TrackParticle {
             this.getWorld().hideAndDisplayParticle(this);
         }
         if (this.clearFlag(FLAG_POSITION_CHANGED)) {
+            // Viewers on the same Minecraft version use the same offsets, so build the packets
+            // once and re-use them for all viewers that use the same offsets
+            LineOffsets lastOffsets = null;
+            ClientboundEntityPositionSyncPacketHandle tpPacket1 = null;
+            ClientboundEntityPositionSyncPacketHandle tpPacket2 = null;
+            ClientboundEntityPositionSyncPacketHandle tpPacket3 = null;
             for (Player viewer : this.getViewers()) {
                 LineOffsets offsets = getOffsets(viewer);
-                if (this.e1 != -1) {
-                    ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
+                if (offsets != lastOffsets) {
+                    lastOffsets = offsets;
+                    tpPacket1 = (this.e1 == -1) ? null : ClientboundEntityPositionSyncPacketHandle.createNew(
                             this.e1,
                             this.p1.getX() + offsets.p1x,
                             this.p1.getY() + offsets.p1y,
                             this.p1.getZ() + offsets.p1z,
                             0.0f, 0.0f, false);
-                    PacketUtil.sendPacket(viewer, tpPacket);
-                }
-                if (this.e2 != -1) {
-                    ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
+                    tpPacket2 = (this.e2 == -1) ? null : ClientboundEntityPositionSyncPacketHandle.createNew(
                             this.e2,
                             this.p2.getX() + offsets.p2x,
                             this.p2.getY() + offsets.p2y,
                             this.p2.getZ() + offsets.p2z,
                             0.0f, 0.0f, false);
-                    PacketUtil.sendPacket(viewer, tpPacket);
-                }
-
-                boolean fixLeashGlitch = offsets.fixLeashGlitch(this.world);
-                if (fixLeashGlitch && this.e3 != -1) {
-                    ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
+                    tpPacket3 = (this.e3 == -1 || !offsets.fixLeashGlitch(this.world)) ? null : ClientboundEntityPositionSyncPacketHandle.createNew(
                             this.e3,
                             this.p2.getX() + UNGLITCH_AS_OFFSETS.getX(),
                             this.p2.getY() + UNGLITCH_AS_OFFSETS.getY(),
                             this.p2.getZ() + UNGLITCH_AS_OFFSETS.getZ(),
                             UNGITCH_AS_YAW, 0.0f, false);
-                    PacketUtil.sendPacket(viewer, tpPacket);
+                }
+                if (tpPacket1 != null) {
+                    PacketUtil.sendPacket(viewer, tpPacket1);
+                }
+                if (tpPacket2 != null) {
+                    PacketUtil.sendPacket(viewer, tpPacket2);
+                }
+                if (tpPacket3 != null) {
+                    PacketUtil.sendPacket(viewer, tpPacket3);
                 }
             }
         }
@@ -195,13 +202,13 @@ public class TrackParticleLine extends TrackParticle {
     @Override
     public void makeHiddenFor(Player viewer) {
         if (this.e1 != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.e1));
+            EntityDestroyBatch.destroy(viewer, this.e1);
         }
         if (this.e2 != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.e2));
+            EntityDestroyBatch.destroy(viewer, this.e2);
         }
         if (this.e3 != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.e3));
+            EntityDestroyBatch.destroy(viewer, this.e3);
         }
     }
 
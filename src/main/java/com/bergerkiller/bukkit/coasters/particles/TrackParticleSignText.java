@@ -9,12 +9,12 @@ import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
+import com.bergerkiller.bukkit.coasters.util.EntityDestroyBatch;
 import com.bergerkiller.bukkit.common.collections.octree.DoubleOctree;
 import com.bergerkiller.bukkit.common.utils.EntityUtil;
 import com.bergerkiller.bukkit.common.utils.PacketUtil;
 import com.bergerkiller.bukkit.common.wrappers.ChatText;
 import com.bergerkiller.bukkit.common.wrappers.DataWatcher;
-import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundRemoveEntitiesPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundSetEntityDataPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundEntityPositionSyncPacketHandle;
 import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundAddMobPacketHandle;
@@ -133,17 +133,11 @@ public class TrackParticleSignText extends TrackParticle {
 
     @Override
     public void makeHiddenFor(Player viewer) {
-        if (ClientboundRemoveEntitiesPacketHandle.canDestroyMultiple()) {
-            int[] ids = new int[this.lines.length];
-            for (int i = 0; i < ids.length; i++) {
-                ids[i] = this.lines[i].entityId;
-            }
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewMultiple(ids));
-        } else {
-            for (TextLine line : this.lines) {
-                PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(line.entityId));
-            }
+        int[] ids = new int[this.lines.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.lines[i].entityId;
         }
+        EntityDestroyBatch.destroy(viewer, ids);
     }
 
     @Override
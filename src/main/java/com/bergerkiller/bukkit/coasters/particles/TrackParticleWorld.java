@@ -3,6 +3,7 @@ package com.bergerkiller.bukkit.coasters.particles;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +13,7 @@ import java.util.logging.Level;
 
 import com.bergerkiller.bukkit.coasters.TCCoastersUtil;
 import com.bergerkiller.bukkit.coasters.objects.lod.LODItemStack;
+import com.bergerkiller.bukkit.coasters.util.EntityDestroyBatch;
 import com.bergerkiller.bukkit.common.collections.ImmutablePlayerSet;
 import com.bergerkiller.bukkit.common.wrappers.Brightness;
 import org.bukkit.Bukkit;
@@ -35,12 +37,19 @@ import com.bergerkiller.bukkit.common.wrappers.BlockData;
 public class TrackParticleWorld implements CoasterWorldComponent {
     private final CoasterWorld _world;
     public DoubleOctree<TrackParticle> particles = new DoubleOctree<TrackParticle>();
-    public List<TrackParticle> particlesWithoutViewers = new ArrayList<TrackParticle>();
+    public Set<TrackParticle> particlesWithoutViewers = new LinkedHashSet<TrackParticle>();
     private final Map<Player, ViewerParticleList> viewers = new ConcurrentHashMap<>(16, 0.75f, 1);
     private final ArrayList<ParticleWithBlockDistance> particlesSortedList = new ArrayList<>();
     private int updateCtr = 0;
     private boolean forceViewerUpdate = false;
     private boolean visibleToEveryone = false;
+    private boolean animating = false;
+    private int interpolationCtr = 0;
+    private Set<TrackParticle> interpolatedParticles = new LinkedHashSet<>();
+    private int farViewerUpdateCtr = 0;
+    private Set<TrackParticle> farViewerUpdates = new LinkedHashSet<>();
+    private final DespawnMetrics despawnMetrics = new DespawnMetrics();
+    private final LightChangeBatch lightChanges = new LightChangeBatch();
 
     public TrackParticleWorld(CoasterWorld world) {
         this._world = world;
@@ -189,6 +198,9 @@ public class TrackParticleWorld implements CoasterWorldComponent {
             }
         }
         this.particlesWithoutViewers.clear();
+        this.lightChanges.apply();
+        this.interpolatedParticles.clear();
+        this.farViewerUpdates.clear();
         this.viewers.clear();
         this.updateCtr = 0;
         this.forceViewerUpdate = true;
@@ -206,6 +218,65 @@ public class TrackParticleWorld implements CoasterWorldComponent {
         this.forceViewerUpdate = true;
     }
 
+    /**
+     * Sets whether particles are currently being moved by an animation. While set, and
+     * animation interpolation is enabled in the configuration, display entity particles
+     * only send their changes every few ticks and let the client interpolate in between.
+     *
+     * @param animating Whether particles are being moved by an animation
+     */
+    public void setAnimating(boolean animating) {
+        this.animating = animating;
+    }
+
+    /**
+     * Gets whether changes to particles right now should be sent later as part of an
+     * interpolated animation update, using {@link #scheduleInterpolatedUpdate(TrackParticle)}
+     *
+     * @return True if changes are interpolated
+     */
+    public boolean isInterpolatingAnimation() {
+        return this.animating && getAnimationInterpolationTicks() > 1;
+    }
+
+    /**
+     * Gets the number of ticks between the interpolated animation updates of particles
+     *
+     * @return animation interpolation ticks
+     */
+    public int getAnimationInterpolationTicks() {
+        return getPlugin().getAnimationInterpolationTicks();
+    }
+
+    /**
+     * Schedules the appearance of a particle to be updated the next time interpolated
+     * animation updates are sent
+     *
+     * @param particle Particle to update
+     */
+    public void scheduleInterpolatedUpdate(TrackParticle particle) {
+        this.interpolatedParticles.add(particle);
+    }
+
+    /**
+     * Gets the light changes made by light particles that are applied next tick
+     *
+     * @return pending light changes
+     */
+    public LightChangeBatch getLightChanges() {
+        return this.lightChanges;
+    }
+
+    /**
+     * Schedules a particle to send its current position to the viewers far away from it
+     * the next time far viewers are updated
+     *
+     * @param particle Particle whose far viewers missed movement updates
+     */
+    public void scheduleFarViewerUpdate(TrackParticle particle) {
+        this.farViewerUpdates.add(particle);
+    }
+
     /**
      * Forces a search for new particles around a player.
      * Normally this search only happens when a player moves.
@@ -275,6 +346,33 @@ public class TrackParticleWorld implements CoasterWorldComponent {
     }
 
     public void updateAll() {
+        // Apply the light changes made since the previous tick all at once
+        this.lightChanges.apply();
+
+        // Send the changes of particles moved by animations every few ticks
+        if (!this.interpolatedParticles.isEmpty() && ++this.interpolationCtr >= getAnimationInterpolationTicks()) {
+            Set<TrackParticle> particles = this.interpolatedParticles;
+            this.interpolatedParticles = new LinkedHashSet<>();
+            this.interpolationCtr = 0;
+            for (TrackParticle particle : particles) {
+                if (particle.isAdded()) {
+                    particle.scheduleUpdateAppearance();
+                }
+            }
+        }
+
+        // Send the movement of particles to far-away viewers every few ticks
+        if (!this.farViewerUpdates.isEmpty() && ++this.farViewerUpdateCtr >= getPlugin().getFarParticleUpdateInterval()) {
+            Set<TrackParticle> particles = this.farViewerUpdates;
+            this.farViewerUpdates = new LinkedHashSet<>();
+            this.farViewerUpdateCtr = 0;
+            for (TrackParticle particle : particles) {
+                if (particle.isAdded()) {
+                    particle.runFarViewerUpdate();
+                }
+            }
+        }
+
         // Refresh for all players that are online
         for (Player viewer : Bukkit.getOnlinePlayers()) {
             this.update(viewer);
@@ -309,7 +407,8 @@ public class TrackParticleWorld implements CoasterWorldComponent {
 
             // Detect all the particles currently in range of the viewer
             // This uses the octree to do so efficiently
-            ViewerLifecycleState lifecycleState = new ViewerLifecycleState(viewer, viewerBlock, this.updateCtr++);
+            int farDistance = this.getPlugin().getFarParticleDistance();
+            ViewerLifecycleState lifecycleState = new ViewerLifecycleState(viewer, viewerBlock, this.updateCtr++, farDistance);
             viewed.block = viewerBlock;
             int cuboid_range = this.getPlugin().getEditState(viewer).getParticleViewRange();
             int maxParticles = this.getPlugin().getMaximumParticleCount();
@@ -337,7 +436,7 @@ public class TrackParticleWorld implements CoasterWorldComponent {
 
                         // Reset state, try again
                         // Changing the updateCounter causes it to de-spawn particles we spawned before
-                        lifecycleState = new ViewerLifecycleState(viewer, viewerBlock, this.updateCtr++);
+                        lifecycleState = new ViewerLifecycleState(viewer, viewerBlock, this.updateCtr++, farDistance);
                         numParticles = 0;
                         break;
                     }
@@ -396,8 +495,13 @@ public class TrackParticleWorld implements CoasterWorldComponent {
             viewed.reachedLimit = reachedLimit;
 
             // Particles that are no longer in view have an outdated update counter value
-            // De-spawn all these
-            viewed.despawnOutdated(lifecycleState);
+            // De-spawn all these, destroying all their entities with as few packets as possible
+            EntityDestroyBatch batch = EntityDestroyBatch.start(viewer);
+            try {
+                viewed.despawnOutdated(lifecycleState);
+            } finally {
+                despawnMetrics.add(batch);
+            }
         } else {
             hideAllFor(viewer);
         }
@@ -424,10 +528,25 @@ public class TrackParticleWorld implements CoasterWorldComponent {
     public void hideAllFor(Player viewer) {
         ViewerParticleList viewed = this.viewers.remove(viewer);
         if (viewed != null) {
-            viewed.despawnAll(viewer);
+            EntityDestroyBatch batch = EntityDestroyBatch.start(viewer);
+            try {
+                viewed.despawnAll(viewer);
+            } finally {
+                despawnMetrics.add(batch);
+            }
         }
     }
 
+    /**
+     * Gets metrics about the entities destroyed and packets sent when particles
+     * go out of view of players on this world
+     *
+     * @return despawn metrics
+     */
+    public DespawnMetrics getDespawnMetrics() {
+        return despawnMetrics;
+    }
+
     /**
      * Checks whether a particular entity Id is a particle a player can see.
      * This method is thread-safe, it can be called from another thread.
@@ -462,6 +581,28 @@ public class TrackParticleWorld implements CoasterWorldComponent {
         return false;
     }
 
+    /**
+     * Metrics about the entities destroyed when particles go out of view of players
+     */
+    public static class DespawnMetrics {
+        /** Number of times particles were de-spawned for a player */
+        public long updates;
+        /** Number of entities destroyed */
+        public long entitiesDestroyed;
+        /** Number of packets sent to destroy these entities */
+        public long packetsSent;
+
+        private void add(EntityDestroyBatch batch) {
+            int count = batch.getCount();
+            int packets = batch.finish();
+            if (count > 0) {
+                updates++;
+                entitiesDestroyed += count;
+                packetsSent += packets;
+            }
+        }
+    }
+
     private static class ViewerParticleList {
         public IntVector3 block = null;
         public final Map<TrackParticle, DisplayedState> particles = new ConcurrentHashMap<>(16, 0.75f, 1);
@@ -571,6 +712,7 @@ public class TrackParticleWorld implements CoasterWorldComponent {
 
             public static DisplayedState spawn(TrackParticle particle, ViewerLifecycleState lifecycleState) {
                 particle.addNewViewer(lifecycleState.getViewer());
+                particle.setFarViewer(lifecycleState.getViewer(), lifecycleState.isFarAway());
 
                 DisplayedState state = new DisplayedState();
                 state.updateCounter = lifecycleState.updateCounter;
@@ -581,6 +723,7 @@ public class TrackParticleWorld implements CoasterWorldComponent {
 
             public void refresh(TrackParticle particle, ViewerLifecycleState lifecycleState) {
                 this.updateCounter = lifecycleState.updateCounter;
+                particle.setFarViewer(lifecycleState.getViewer(), lifecycleState.isFarAway());
                 if (!this.particleLifecycle.isLifecycleValid(lifecycleState)) {
                     TrackParticleLifecycle newLifeCycle = particle.getLifecycle(lifecycleState);
                     if (this.particleLifecycle != newLifeCycle) {
@@ -620,13 +763,25 @@ public class TrackParticleWorld implements CoasterWorldComponent {
         public final Player viewer;
         public final IntVector3 viewerBlock;
         public final int updateCounter;
+        public final int farDistance;
         public DoubleOctreeIterator<?> cuboidIterator; // Used for x/y/z
         private int cachedViewDistance = -1;
 
-        public ViewerLifecycleState(Player viewer, IntVector3 viewerBlock, int updateCounter) {
+        public ViewerLifecycleState(Player viewer, IntVector3 viewerBlock, int updateCounter, int farDistance) {
             this.viewer = viewer;
             this.viewerBlock = viewerBlock;
             this.updateCounter = updateCounter;
+            this.farDistance = farDistance;
+        }
+
+        /**
+         * Gets whether the particle is far enough away from the viewer that movement
+         * updates are only sent every few ticks
+         *
+         * @return True if far away
+         */
+        public boolean isFarAway() {
+            return farDistance > 0 && getViewDistance() > farDistance;
         }
 
         @Override
@@ -282,6 +282,11 @@ public class SignActionPower extends TCCSignAction {
         public void onChanged() {
         }
 
+        @Override
+        public int hashCode() {
+            return signBlock.hashCode();
+        }
+
         @Override
         public boolean equals(Object o) {
             return o instanceof TCCPowerSignRecipient && ((TCCPowerSignRecipient) o).signBlock.equals(this.signBlock);
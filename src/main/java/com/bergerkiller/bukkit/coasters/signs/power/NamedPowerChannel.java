@@ -182,6 +182,23 @@ public class NamedPowerChannel implements Cloneable {
         state.removeRecipient(power, recipient);
     }
 
+    /**
+     * Un-registers a recipient previously registered using
+     * {@link #addRecipient(NamedPowerChannelRegistry, Recipient)}, because it is
+     * unloaded and will be registered again later. Unlike
+     * {@link #removeRecipient(NamedPowerChannelRegistry, Recipient)}, the power
+     * channel stays registered with its power state and pulses if this was the last
+     * recipient, until {@link NamedPowerChannelRegistry#resumeSuspended(String)}
+     * is called with the same key.
+     *
+     * @param power Power registry to un-register inside of
+     * @param recipient Recipient to un-register
+     * @param key Key to resume the suspended channel with later
+     */
+    public void suspendRecipient(NamedPowerChannelRegistry power, Recipient recipient, String key) {
+        state.suspendRecipient(power, recipient, key);
+    }
+
     /**
      * Gets the text displayed on the tooltip sign particle for this power channel as an input
      *
@@ -313,6 +330,11 @@ public class NamedPowerChannel implements Cloneable {
             sign.fireActionEvent(SignActionType.REDSTONE_CHANGE);
         }
 
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(sign);
+        }
+
         @Override
         public boolean equals(Object o) {
             return o instanceof TrackNodeSignRecipientInput && ((TrackNodeSignRecipientInput) o).sign == this.sign;
@@ -345,6 +367,11 @@ public class NamedPowerChannel implements Cloneable {
             sign.onPowerChanged();
         }
 
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(sign);
+        }
+
         @Override
         public boolean equals(Object o) {
             return o instanceof TrackNodeSignRecipientOutput && ((TrackNodeSignRecipientOutput) o).sign == this.sign;
@@ -399,6 +426,10 @@ public class NamedPowerChannel implements Cloneable {
         public void removeRecipient(NamedPowerChannelRegistry power, Recipient recipient) {
             // Not registered - no-op
         }
+
+        public void suspendRecipient(NamedPowerChannelRegistry power, Recipient recipient, String key) {
+            removeRecipient(power, recipient);
+        }
     }
 
     static class NamedPowerStateMultiple extends NamedPowerState {
@@ -4,32 +4,39 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 import org.bukkit.block.BlockFace;
 
 import com.bergerkiller.bukkit.coasters.signs.power.NamedPowerChannel.NamedPowerState;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
+import com.bergerkiller.bukkit.coasters.util.TimingWheel;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorldComponent;
-import com.bergerkiller.bukkit.common.Task;
 import com.bergerkiller.bukkit.common.config.ConfigurationNode;
 import com.bergerkiller.bukkit.common.config.FileConfiguration;
 import com.bergerkiller.bukkit.common.utils.CommonUtil;
 
 /**
  * Tracks the named redstone power states for all signs on a
- * world.
+ * world. All pending pulses and other delayed tasks of the world
+ * are kept in a single timing wheel, advanced every tick.
  */
 public class NamedPowerChannelRegistry implements CoasterWorldComponent {
+    private static final int MAX_PROPAGATION_ROUNDS = 100;
     private final CoasterWorld world;
     private final Map<String, SignRegisteredNamedPowerState> byName = new HashMap<>();
     private final TreeSet<String> names = new TreeSet<String>();
     private List<String> namesCopy = null; // More efficient
-    private List<ScheduledTask> offlineScheduledTasks = Collections.emptyList();
+    private final TimingWheel scheduled = new TimingWheel();
+    private LinkedHashMap<NamedPowerChannel.Recipient, PendingRecipient> pendingRecipients = new LinkedHashMap<>();
+    private LinkedHashMap<NamedPowerChannel.Recipient, PendingRecipient> deliveringRecipients = new LinkedHashMap<>();
+    private final Map<String, List<SignRegisteredNamedPowerState>> suspended = new HashMap<>();
+    private final PropagationMetrics propagationMetrics = new PropagationMetrics();
+    private boolean isPropagating = false;
 
     public NamedPowerChannelRegistry(CoasterWorld world) {
         this.world = world;
@@ -102,6 +109,34 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
         }
     }
 
+    /**
+     * Resumes the power channels suspended using
+     * {@link NamedPowerChannel#suspendRecipient(NamedPowerChannelRegistry, NamedPowerChannel.Recipient, String)}
+     * with a key. Should be called once the recipients that were suspended are registered again.
+     * Channels that have no recipients left afterwards are un-registered, and their power state
+     * information is lost.
+     *
+     * @param key Key the recipients were suspended with
+     */
+    public void resumeSuspended(String key) {
+        List<SignRegisteredNamedPowerState> states = suspended.remove(key);
+        if (states != null) {
+            for (SignRegisteredNamedPowerState state : states) {
+                state.resume();
+            }
+        }
+    }
+
+    /**
+     * Resumes all suspended power channels, as if {@link #resumeSuspended(String)} was called
+     * for all keys
+     */
+    public void resumeAllSuspended() {
+        for (String key : new ArrayList<>(suspended.keySet())) {
+            resumeSuspended(key);
+        }
+    }
+
     /**
      * If a PendingPowerPulses.yml file exists, loads it in and re-schedules the pulses contained
      * within. This should be called AFTER the relevant tracks are loaded in so that the named
@@ -131,31 +166,122 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
     }
 
     /**
-     * Called after the plugin enables (or a World loads in while enabled) to start animating
-     * scheduled pulses.
+     * Advances the scheduled pulses and tasks by one tick. Scheduled tasks
+     * only count down while the plugin is enabled, as this is only called then.
      */
-    public void enable() {
-        List<ScheduledTask> tasks = offlineScheduledTasks;
-        offlineScheduledTasks = Collections.emptyList();
-        tasks.forEach(ScheduledTask::offlineStart);
+    @Override
+    public void updateAll() {
+        scheduled.advance();
+        propagatePowerChanges();
     }
 
     /**
-     * Schedules a task to be run at a delay once the plugin enables properly
+     * Gets metrics about the power changes coalesced and delivered on this World
+     * when coalescing power changes is enabled.
      *
-     * @param task Task
+     * @return propagation metrics
      */
-    void scheduleOffline(ScheduledTask task) {
-        if (offlineScheduledTasks.isEmpty()) {
-            offlineScheduledTasks = new ArrayList<>();
+    public PropagationMetrics getPropagationMetrics() {
+        return propagationMetrics;
+    }
+
+    /**
+     * Delivers all power channel changes collected since the last time this was called
+     * to the recipients. Every recipient is notified of the change once, in the order its
+     * channels first changed, and then receives the powered state of every channel of it
+     * that changed. Changes caused by delivering the notifications are delivered in
+     * following rounds, up to a limit, after which they are delivered the next tick.
+     */
+    public void propagatePowerChanges() {
+        if (pendingRecipients.isEmpty() || isPropagating) {
+            return;
+        }
+
+        isPropagating = true;
+        try {
+            int round = 0;
+            while (!pendingRecipients.isEmpty()) {
+                if (++round > MAX_PROPAGATION_ROUNDS) {
+                    propagationMetrics.roundLimitReached++;
+                    getPlugin().getLogger().log(Level.WARNING, "Power channel changes keep causing more changes " +
+                            "(infinite loop?), delivering the remaining changes next tick");
+                    break;
+                } else if (round > 1) {
+                    propagationMetrics.cascades++;
+                }
+
+                // Changes made while delivering are collected in the other map, for the next round
+                LinkedHashMap<NamedPowerChannel.Recipient, PendingRecipient> delivering = pendingRecipients;
+                pendingRecipients = deliveringRecipients;
+                deliveringRecipients = delivering;
+
+                // Notify to update particles, then fire events for all recipients
+                // Events might un-register recipients, which removes their channels from the pending recipient
+                try {
+                    for (PendingRecipient pending : delivering.values()) {
+                        if (pending.hasChannels()) {
+                            pending.recipient.onChanged();
+                        }
+                    }
+                    for (PendingRecipient pending : delivering.values()) {
+                        List<SignRegisteredNamedPowerState> changed = pending.changed;
+                        for (int i = 0; i < changed.size(); i++) {
+                            SignRegisteredNamedPowerState state = changed.get(i);
+                            if (state != null) {
+                                pending.recipient.onPostChange(state.isPowered());
+                                propagationMetrics.notifications++;
+                            }
+                        }
+                    }
+                } finally {
+                    delivering.clear();
+                }
+            }
+            propagationMetrics.maxRounds = Math.max(propagationMetrics.maxRounds, Math.min(round, MAX_PROPAGATION_ROUNDS));
+        } finally {
+            isPropagating = false;
         }
-        offlineScheduledTasks.add(task);
+    }
+
+    // Called when a channel changes power while coalescing changes, before the change happens
+    private void queueRecipients(SignRegisteredNamedPowerState state) {
+        propagationMetrics.channelChanges++;
+        for (NamedPowerChannel.Recipient recipient : state.recipients) {
+            PendingRecipient pending = pendingRecipients.computeIfAbsent(recipient, PendingRecipient::new);
+            if (pending.changed.contains(state)) {
+                propagationMetrics.deduplicated++;
+            } else {
+                pending.changed.add(state);
+            }
+            if (!pending.preChanged) {
+                pending.preChanged = true;
+                recipient.onPreChange();
+            }
+        }
+    }
+
+    // Called when a channel starts or stops a pulse without changing power while coalescing changes
+    private void queueRecipientsOfChange(SignRegisteredNamedPowerState state) {
+        for (NamedPowerChannel.Recipient recipient : state.recipients) {
+            PendingRecipient pending = pendingRecipients.computeIfAbsent(recipient, PendingRecipient::new);
+            if (!pending.changed.contains(state) && !pending.notified.contains(state)) {
+                pending.notified.add(state);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pulses and other tasks currently scheduled on this World
+     *
+     * @return scheduled task count
+     */
+    public int getScheduledTaskCount() {
+        return scheduled.size();
     }
 
     /**
      * Creates a TC-Coasters scheduled task. Returned task can be scheduled
-     * or stopped. If TC-Coasters is not yet enabled, schedules this task once
-     * the plugin enables, unless the task was cancelled before that point.
+     * or stopped. Tasks only count down while TC-Coasters is enabled.
      *
      * @param task Task to run
      * @return ScheduledTask
@@ -169,12 +295,17 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
      * pending tasks for them.
      */
     public void saveAndAbortPulses() {
-        // Serialize pending pulses
-        List<ConfigurationNode> pendingPulseConfigs = byName.values().stream()
-                .filter(SignRegisteredNamedPowerState::hasPulse)
-                .map(ScheduledPulse::new)
-                .map(ScheduledPulse::toConfig)
-                .collect(Collectors.toList());
+        // Deliver changes still waiting to be delivered, so they are saved
+        propagatePowerChanges();
+
+        // Serialize pending pulses straight from the scheduled tasks
+        List<ConfigurationNode> pendingPulseConfigs = new ArrayList<>();
+        scheduled.forEach(entry -> {
+            if (entry instanceof PulseTask) {
+                SignRegisteredNamedPowerState state = ((PulseTask) entry).state;
+                pendingPulseConfigs.add(new ScheduledPulse(state).toConfig());
+            }
+        });
 
         // Abort all pulses and clean up tasks
         abortAllPulses();
@@ -208,10 +339,10 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
 
     private class SignRegisteredNamedPowerState extends NamedPowerChannel.NamedPowerState {
         private List<NamedPowerChannel.Recipient> recipients;
-        private ScheduledTask pulseTask = null;
-        private int pulseTaskDoneTime = -1;
+        private PulseTask pulseTask = null;
         private int powerChangesThisTick = 0;
         private int powerChangesTickNum = 0;
+        private int suspendedCount = 0;
 
         public SignRegisteredNamedPowerState(String name, boolean powered, NamedPowerChannel.Recipient recipient) {
             super(name, powered);
@@ -237,7 +368,7 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
         @Override
         public void pulsePowered(boolean powered, int delay) {
             // Check not removed
-            if (this.recipients.isEmpty()) {
+            if (!isRegistered()) {
                 throw new UnsupportedOperationException("Only registered named power channels support pulsing");
             }
 
@@ -246,13 +377,9 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
             // Must do this before changing powered state so the notifications work right
             boolean hadPulse = hasPulse();
             if (pulseTask == null) {
-                pulseTask = createTask(() -> {
-                    pulseTaskDoneTime = -1;
-                    changePowered(!isPowered());
-                });
+                pulseTask = new PulseTask(this);
             }
             pulseTask.restart(delay);
-            pulseTaskDoneTime = CommonUtil.getServerTicks() + delay;
 
             // Change powered state
             if (powered != isPowered()) {
@@ -284,6 +411,13 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
                 }
             }
 
+            // When coalescing, recipients are notified of the change later on
+            if (getPlugin().isPowerChangeCoalescingEnabled()) {
+                queueRecipients(this);
+                super.setPowered(powered);
+                return;
+            }
+
             // Store previous 'is powered' state
             List<NamedPowerChannel.Recipient> recipients = this.recipients;
             recipients.forEach(NamedPowerChannel.Recipient::onPreChange);
@@ -302,28 +436,28 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
 
         @Override
         public int getPulseDelay() {
-            int tickTimeDone = pulseTaskDoneTime;
-            if (tickTimeDone == -1) {
-                return -1;
-            } else {
-                return Math.max(0, tickTimeDone - CommonUtil.getServerTicks());
-            }
+            PulseTask task = pulseTask;
+            return (task == null) ? -1 : (int) Math.min(Integer.MAX_VALUE, task.getRemainingTicks());
         }
 
         @Override
         public boolean hasPulse() {
-            return pulseTaskDoneTime != -1;
+            PulseTask task = pulseTask;
+            return task != null && task.isScheduled();
         }
 
         public void abortPulse() {
             if (pulseTask != null) {
                 pulseTask.stop();
-                pulseTaskDoneTime = -1;
             }
         }
 
         public void notifyRecipientsOfChange() {
-            recipients.forEach(NamedPowerChannel.Recipient::onChanged);
+            if (getPlugin().isPowerChangeCoalescingEnabled()) {
+                queueRecipientsOfChange(this);
+            } else {
+                recipients.forEach(NamedPowerChannel.Recipient::onChanged);
+            }
         }
 
         @Override
@@ -331,7 +465,7 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
             List<NamedPowerChannel.Recipient> recipients = this.recipients;
 
             // If not registered anymore, or a different world, defer
-            if (recipients.isEmpty() || NamedPowerChannelRegistry.this != power) {
+            if (!isRegistered() || NamedPowerChannelRegistry.this != power) {
                 return super.addRecipient(power, recipient);
             }
 
@@ -354,15 +488,19 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
             if (index == -1) {
                 return;
             }
+            PendingRecipient pending = pendingRecipients.get(recipient);
+            if (pending != null) {
+                pending.remove(this);
+            }
+            pending = deliveringRecipients.get(recipient);
+            if (pending != null) {
+                pending.remove(this);
+            }
             if (recipients.size() == 1) {
-                // No more recipients. De-register this named state.
+                // No more recipients. De-register this named state, unless suspended.
                 this.recipients = Collections.emptyList();
-                byName.remove(getName());
-                names.remove(getName());
-                namesCopy = null; // Invalidate
-                if (pulseTask != null) {
-                    pulseTask.stop();
-                    pulseTask = null;
+                if (suspendedCount == 0) {
+                    unregister();
                 }
             } else {
                 recipients = new ArrayList<>(recipients);
@@ -370,6 +508,96 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
                 this.recipients = recipients;
             }
         }
+
+        @Override
+        public void suspendRecipient(NamedPowerChannelRegistry power, NamedPowerChannel.Recipient recipient, String key) {
+            if (NamedPowerChannelRegistry.this == power && isRegistered() && recipients.contains(recipient)) {
+                suspended.computeIfAbsent(key, k -> new ArrayList<>()).add(this);
+                suspendedCount++;
+            }
+            removeRecipient(power, recipient);
+        }
+
+        public void resume() {
+            if (--suspendedCount == 0 && recipients.isEmpty() && isRegistered()) {
+                unregister();
+            }
+        }
+
+        private boolean isRegistered() {
+            return byName.get(getName()) == this;
+        }
+
+        private void unregister() {
+            byName.remove(getName());
+            names.remove(getName());
+            namesCopy = null; // Invalidate
+            if (pulseTask != null) {
+                pulseTask.stop();
+                pulseTask = null;
+            }
+        }
+    }
+
+    /**
+     * A recipient that is notified of changes of its channels once they are propagated.
+     * Channels that are un-registered for the recipient are set to null, rather than
+     * removed, as they might be iterated over while delivering the changes.
+     */
+    private static final class PendingRecipient {
+        public final NamedPowerChannel.Recipient recipient;
+        /** Channels that changed power state */
+        public final List<SignRegisteredNamedPowerState> changed = new ArrayList<>(1);
+        /** Channels that only started or stopped a pulse */
+        public final List<SignRegisteredNamedPowerState> notified = new ArrayList<>(1);
+        public boolean preChanged = false;
+
+        public PendingRecipient(NamedPowerChannel.Recipient recipient) {
+            this.recipient = recipient;
+        }
+
+        public boolean hasChannels() {
+            for (SignRegisteredNamedPowerState state : changed) {
+                if (state != null) {
+                    return true;
+                }
+            }
+            for (SignRegisteredNamedPowerState state : notified) {
+                if (state != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void remove(SignRegisteredNamedPowerState state) {
+            int index = changed.indexOf(state);
+            if (index != -1) {
+                changed.set(index, null);
+            }
+            index = notified.indexOf(state);
+            if (index != -1) {
+                notified.set(index, null);
+            }
+        }
+    }
+
+    /**
+     * Metrics about the power changes coalesced and delivered on a World
+     */
+    public static class PropagationMetrics {
+        /** Number of times a channel changed power state while coalescing */
+        public long channelChanges;
+        /** Number of notifications delivered to recipients */
+        public long notifications;
+        /** Number of notifications that were merged with a notification already pending for a recipient */
+        public long deduplicated;
+        /** Number of extra rounds needed because delivering notifications changed more channels */
+        public long cascades;
+        /** Number of times the round limit was reached, and changes were delivered the next tick */
+        public long roundLimitReached;
+        /** Largest number of rounds needed in a single tick */
+        public int maxRounds;
     }
 
     private static final class ScheduledPulse {
@@ -408,22 +636,14 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
     }
 
     /**
-     * Schedules a Runnable to run. Also works if the plugin is not yet enabled,
-     * in which case the task is queued up for later.
+     * Schedules a Runnable to run after a delay in ticks. Also works if the plugin
+     * is not yet enabled, in which case the delay starts counting down once it is.
      */
-    public final class ScheduledTask {
-        private final Task task;
-        private long offlineDelay = -1; // If set to -1, not scheduled offline
-        private boolean started = false;
+    public class ScheduledTask extends TimingWheel.Entry {
+        private final Runnable runnable;
 
         private ScheduledTask(Runnable runnable) {
-            this.task = new Task(NamedPowerChannelRegistry.this.getPlugin()) {
-                @Override
-                public void run() {
-                    started = false;
-                    runnable.run();
-                }
-            };
+            this.runnable = runnable;
         }
 
         public void restart() {
@@ -431,34 +651,34 @@ public class NamedPowerChannelRegistry implements CoasterWorldComponent {
         }
 
         public void restart(long delay) {
-            if (!task.getPlugin().isEnabled()) {
-                // Register for enabling later
-                boolean schedule = (offlineDelay == -1);
-                offlineDelay = delay;
-                if (schedule) {
-                    NamedPowerChannelRegistry.this.scheduleOffline(this);
-                }
-            } else {
-                stop();
-                task.start(Math.max(1, delay));
-                started = true;
-            }
+            scheduled.schedule(this, Math.max(1, delay));
         }
 
         public void stop() {
-            if (started) {
-                task.stop();
-                started = false;
-            }
-            offlineDelay = -1;
+            scheduled.cancel(this);
         }
 
-        void offlineStart() {
-            if (offlineDelay != -1) {
-                task.start(offlineDelay);
-                offlineDelay = -1;
-                started = true;
+        @Override
+        protected void onExpired() {
+            // Catch errors, as they would otherwise stop other tasks from running this tick
+            try {
+                runnable.run();
+            } catch (Throwable t) {
+                getPlugin().getLogger().log(Level.SEVERE, "Failed to run scheduled power channel task", t);
             }
         }
     }
+
+    /**
+     * Task that inverts the powered state of a named power state when the pulse
+     * ends. Pending pulses are saved by finding these in the scheduled tasks.
+     */
+    private final class PulseTask extends ScheduledTask {
+        public final SignRegisteredNamedPowerState state;
+
+        private PulseTask(SignRegisteredNamedPowerState state) {
+            super(() -> state.changePowered(!state.isPowered()));
+            this.state = state;
+        }
+    }
 }
@@ -0,0 +1,445 @@
+package com.bergerkiller.bukkit.coasters.tracks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bukkit.util.Vector;
+
+import com.bergerkiller.bukkit.coasters.TCCoasters;
+import com.bergerkiller.bukkit.coasters.csv.TrackFileFormat;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
+
+/**
+ * Stores the bounds and chunk area covered by every coaster saved on a world, and the other
+ * coasters each coaster is connected with. This makes the bounds of coasters available before
+ * they are loaded, and is used to load coasters only once a chunk inside their area loads.
+ * The index is saved to a file in the world configuration folder, and every entry stores a
+ * stamp of the coaster's files so that outdated entries are detected.<br>
+ * <br>
+ * Coasters not yet loaded are tracked as pending. Both the pending and the loaded coasters
+ * can be looked up by chunk using a coarse grid of chunk regions.
+ */
+final class CoasterBoundsIndex {
+    public static final String FILE_NAME = "coaster_bounds.dat";
+    private static final int FILE_VERSION = 2;
+    private static final int REGION_SHIFT = 3; // 8x8 chunks
+    private static final int CHUNK_PADDING = 1;
+    private final File folder;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Entry> pending = new HashMap<>();
+    private final RegionGrid pendingByRegion = new RegionGrid();
+    private final RegionGrid loadedByRegion = new RegionGrid();
+    private boolean changed = false;
+
+    public CoasterBoundsIndex(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Gets the index entry of a coaster
+     *
+     * @param coasterName Name of the coaster
+     * @return entry, or null if this coaster is not indexed
+     */
+    public Entry get(String coasterName) {
+        return this.entries.get(coasterName);
+    }
+
+    /**
+     * Gets whether the index entry of a coaster was made for the files of the coaster
+     * as they exist right now
+     *
+     * @param coasterName Name of the coaster
+     * @return True if an entry exists and it is up to date
+     */
+    public boolean isUpToDate(String coasterName) {
+        Entry entry = this.entries.get(coasterName);
+        return entry != null && entry.fileStamp == computeFileStamp(coasterName);
+    }
+
+    /**
+     * Updates the index entry of a coaster after it was loaded or saved
+     *
+     * @param coaster The coaster
+     */
+    public void update(TrackCoaster coaster) {
+        TrackCoasterBounds bounds = coaster.getBounds();
+        if (bounds.isEmpty()) {
+            remove(coaster.getName());
+            return;
+        }
+
+        List<Vector> animationPositions = new ArrayList<>();
+        for (TrackNode node : coaster.getNodes()) {
+            for (TrackNodeAnimationState animState : node.getAnimationStates()) {
+                animationPositions.add(animState.state.position);
+            }
+        }
+        Set<String> links = new LinkedHashSet<>();
+        for (TrackCoaster other : findLinkedCoasters(coaster)) {
+            links.add(other.getName());
+        }
+        putLoaded(createEntry(coaster.getName(), bounds, animationPositions, links));
+    }
+
+    /**
+     * Creates a new index entry for a coaster. The chunk area of the entry includes the
+     * bounds and other positions specified, padded by a chunk.
+     *
+     * @param coasterName Name of the coaster
+     * @param bounds Bounds of the nodes of the coaster
+     * @param positions Other positions to include in the chunk area, such as
+     *                  the positions of nodes in animations
+     * @param links Names of the other coasters the coaster is connected with
+     * @return new entry
+     */
+    Entry createEntry(String coasterName, TrackCoasterBounds bounds, Collection<Vector> positions, Collection<String> links) {
+        Entry entry = new Entry(coasterName, computeFileStamp(coasterName));
+        entry.bounds.include(bounds.getMinX(), bounds.getMinY(), bounds.getMinZ());
+        entry.bounds.include(bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ());
+        entry.minChunkX = MathUtil.floor(bounds.getMinX()) >> 4;
+        entry.minChunkZ = MathUtil.floor(bounds.getMinZ()) >> 4;
+        entry.maxChunkX = MathUtil.floor(bounds.getMaxX()) >> 4;
+        entry.maxChunkZ = MathUtil.floor(bounds.getMaxZ()) >> 4;
+        for (Vector position : positions) {
+            entry.include(position);
+        }
+        entry.minChunkX -= CHUNK_PADDING;
+        entry.minChunkZ -= CHUNK_PADDING;
+        entry.maxChunkX += CHUNK_PADDING;
+        entry.maxChunkZ += CHUNK_PADDING;
+        entry.links = links.isEmpty() ? Collections.emptyList() : new ArrayList<>(links);
+        entry.lastActiveTime = System.currentTimeMillis();
+        return entry;
+    }
+
+    /**
+     * Stores the index entry of a coaster that is loaded, replacing the previous entry
+     *
+     * @param entry Entry to store
+     */
+    void putLoaded(Entry entry) {
+        removePending(entry.name);
+        Entry previous = this.entries.put(entry.name, entry);
+        if (previous != null) {
+            this.loadedByRegion.remove(previous);
+        }
+        this.loadedByRegion.add(entry);
+        this.changed = true;
+    }
+
+    /**
+     * Removes the index entry of a coaster, for example because it was deleted
+     *
+     * @param coasterName Name of the coaster
+     */
+    public void remove(String coasterName) {
+        Entry entry = this.entries.remove(coasterName);
+        if (entry != null) {
+            this.loadedByRegion.remove(entry);
+            this.changed = true;
+        }
+        removePending(coasterName);
+    }
+
+    /**
+     * Marks an indexed coaster as pending, not loaded yet
+     *
+     * @param coasterName Name of the coaster
+     */
+    public void addPending(String coasterName) {
+        Entry entry = this.entries.get(coasterName);
+        if (entry == null || this.pending.put(coasterName, entry) != null) {
+            return;
+        }
+        this.loadedByRegion.remove(entry);
+        this.pendingByRegion.add(entry);
+    }
+
+    /**
+     * Removes a coaster from the pending coasters, because it was loaded
+     *
+     * @param coasterName Name of the coaster
+     */
+    public void removePending(String coasterName) {
+        Entry entry = this.pending.remove(coasterName);
+        if (entry != null) {
+            this.pendingByRegion.remove(entry);
+        }
+    }
+
+    /**
+     * Gets whether a coaster is pending to be loaded
+     *
+     * @param coasterName Name of the coaster
+     * @return True if pending
+     */
+    public boolean isPending(String coasterName) {
+        return this.pending.containsKey(coasterName);
+    }
+
+    /**
+     * Gets whether there are coasters pending to be loaded
+     *
+     * @return True if there are pending coasters
+     */
+    public boolean hasPending() {
+        return !this.pending.isEmpty();
+    }
+
+    /**
+     * Gets the names of all pending coasters
+     *
+     * @return pending coaster names
+     */
+    public Collection<String> getPendingNames() {
+        return this.pending.keySet();
+    }
+
+    /**
+     * Gets the names of the pending coasters whose area contains a chunk
+     *
+     * @param chunkX Chunk X-coordinate
+     * @param chunkZ Chunk Z-coordinate
+     * @return names of the pending coasters in the chunk
+     */
+    public List<String> getPendingInChunk(int chunkX, int chunkZ) {
+        List<String> result = Collections.emptyList();
+        for (Entry entry : this.pendingByRegion.get(chunkX, chunkZ)) {
+            if (entry.containsChunk(chunkX, chunkZ)) {
+                if (result.isEmpty()) {
+                    result = new ArrayList<>(2);
+                }
+                result.add(entry.name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the last active time of the entries of all loaded coasters whose area
+     * contains a chunk
+     *
+     * @param chunkX Chunk X-coordinate
+     * @param chunkZ Chunk Z-coordinate
+     * @param time Time to set, in milliseconds
+     */
+    public void markActiveInChunk(int chunkX, int chunkZ, long time) {
+        for (Entry entry : this.loadedByRegion.get(chunkX, chunkZ)) {
+            if (entry.containsChunk(chunkX, chunkZ)) {
+                entry.lastActiveTime = time;
+            }
+        }
+    }
+
+    /**
+     * Reads the index from file. Entries that cannot be read are omitted, which
+     * causes those coasters to be loaded right away.
+     *
+     * @throws IOException
+     */
+    public void load() throws IOException {
+        this.entries.clear();
+        this.pending.clear();
+        this.pendingByRegion.clear();
+        this.loadedByRegion.clear();
+        this.changed = false;
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile())))) {
+            if (stream.readInt() != FILE_VERSION) {
+                this.changed = true;
+                return;
+            }
+            int count = stream.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(stream.readUTF(), stream.readLong());
+                entry.bounds.include(stream.readDouble(), stream.readDouble(), stream.readDouble());
+                entry.bounds.include(stream.readDouble(), stream.readDouble(), stream.readDouble());
+                entry.minChunkX = stream.readInt();
+                entry.minChunkZ = stream.readInt();
+                entry.maxChunkX = stream.readInt();
+                entry.maxChunkZ = stream.readInt();
+                int numLinks = stream.readInt();
+                entry.links = new ArrayList<>(numLinks);
+                for (int j = 0; j < numLinks; j++) {
+                    entry.links.add(stream.readUTF());
+                }
+                entry.lastActiveTime = System.currentTimeMillis();
+                this.entries.put(entry.name, entry);
+            }
+        } catch (FileNotFoundException ex) {
+            // Not created yet
+        }
+    }
+
+    /**
+     * Writes the index to file, if it changed since it was last loaded or saved
+     *
+     * @throws IOException
+     */
+    public void save() throws IOException {
+        if (!this.changed) {
+            return;
+        }
+        this.changed = false;
+        this.folder.mkdirs();
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile())))) {
+            stream.writeInt(FILE_VERSION);
+            stream.writeInt(this.entries.size());
+            for (Entry entry : this.entries.values()) {
+                stream.writeUTF(entry.name);
+                stream.writeLong(entry.fileStamp);
+                stream.writeDouble(entry.bounds.getMinX());
+                stream.writeDouble(entry.bounds.getMinY());
+                stream.writeDouble(entry.bounds.getMinZ());
+                stream.writeDouble(entry.bounds.getMaxX());
+                stream.writeDouble(entry.bounds.getMaxY());
+                stream.writeDouble(entry.bounds.getMaxZ());
+                stream.writeInt(entry.minChunkX);
+                stream.writeInt(entry.minChunkZ);
+                stream.writeInt(entry.maxChunkX);
+                stream.writeInt(entry.maxChunkZ);
+                stream.writeInt(entry.links.size());
+                for (String link : entry.links) {
+                    stream.writeUTF(link);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds all the other coasters a coaster is connected with, either with connections
+     * or with connections made by animations
+     *
+     * @param coaster The coaster
+     * @return other coasters connected with the coaster
+     */
+    public static Set<TrackCoaster> findLinkedCoasters(TrackCoaster coaster) {
+        Set<TrackCoaster> result = new LinkedHashSet<>();
+        for (TrackNode node : coaster.getNodes()) {
+            for (TrackConnection connection : node.getConnections()) {
+                result.add(connection.getOtherNode(node).getCoaster());
+            }
+            for (TrackNodeAnimationState animState : node.getAnimationStates()) {
+                for (TrackConnectionState connection : animState.connections) {
+                    if (connection.node_a.isExistingNode()) {
+                        result.add(((TrackNode) connection.node_a).getCoaster());
+                    }
+                    if (connection.node_b.isExistingNode()) {
+                        result.add(((TrackNode) connection.node_b).getCoaster());
+                    }
+                }
+            }
+        }
+        result.remove(coaster);
+        result.remove(null);
+        return result;
+    }
+
+    private File getFile() {
+        return new File(this.folder, FILE_NAME);
+    }
+
+    private long computeFileStamp(String coasterName) {
+        String baseName = TCCoasters.escapeName(coasterName);
+        long stamp = 1;
+        for (TrackFileFormat format : TrackFileFormat.values()) {
+            stamp = updateFileStamp(stamp, new File(this.folder, baseName + format.getExtension()));
+            stamp = updateFileStamp(stamp, new File(this.folder, baseName + format.getExtension() + ".tmp"));
+        }
+        return updateFileStamp(stamp, new File(this.folder, baseName + TrackCoaster.JOURNAL_EXTENSION));
+    }
+
+    private static long updateFileStamp(long stamp, File file) {
+        long length = file.length(); // 0 if missing
+        if (length == 0) {
+            return stamp * 31;
+        }
+        return (stamp * 31 + length) * 31 + file.lastModified();
+    }
+
+    /**
+     * A single indexed coaster
+     */
+    public static final class Entry {
+        public final String name;
+        public final long fileStamp;
+        public final TrackCoasterBounds bounds = new TrackCoasterBounds();
+        public int minChunkX, minChunkZ, maxChunkX, maxChunkZ;
+        public List<String> links = Collections.emptyList();
+        public long lastActiveTime;
+
+        private Entry(String name, long fileStamp) {
+            this.name = name;
+            this.fileStamp = fileStamp;
+        }
+
+        private void include(Vector position) {
+            int cx = MathUtil.floor(position.getX()) >> 4;
+            int cz = MathUtil.floor(position.getZ()) >> 4;
+            if (cx < minChunkX) minChunkX = cx;
+            if (cz < minChunkZ) minChunkZ = cz;
+            if (cx > maxChunkX) maxChunkX = cx;
+            if (cz > maxChunkZ) maxChunkZ = cz;
+        }
+
+        public boolean containsChunk(int chunkX, int chunkZ) {
+            return chunkX >= minChunkX && chunkX <= maxChunkX &&
+                   chunkZ >= minChunkZ && chunkZ <= maxChunkZ;
+        }
+    }
+
+    /**
+     * Coarse grid of chunk regions, storing the entries whose chunk area overlaps each region
+     */
+    private static final class RegionGrid {
+        private final Map<Long, List<Entry>> regions = new HashMap<>();
+
+        public void add(Entry entry) {
+            for (int rx = entry.minChunkX >> REGION_SHIFT; rx <= (entry.maxChunkX >> REGION_SHIFT); rx++) {
+                for (int rz = entry.minChunkZ >> REGION_SHIFT; rz <= (entry.maxChunkZ >> REGION_SHIFT); rz++) {
+                    this.regions.computeIfAbsent(regionKey(rx, rz), k -> new ArrayList<>(2)).add(entry);
+                }
+            }
+        }
+
+        public void remove(Entry entry) {
+            for (int rx = entry.minChunkX >> REGION_SHIFT; rx <= (entry.maxChunkX >> REGION_SHIFT); rx++) {
+                for (int rz = entry.minChunkZ >> REGION_SHIFT; rz <= (entry.maxChunkZ >> REGION_SHIFT); rz++) {
+                    long key = regionKey(rx, rz);
+                    List<Entry> regionEntries = this.regions.get(key);
+                    if (regionEntries != null && regionEntries.remove(entry) && regionEntries.isEmpty()) {
+                        this.regions.remove(key);
+                    }
+                }
+            }
+        }
+
+        public List<Entry> get(int chunkX, int chunkZ) {
+            List<Entry> regionEntries = this.regions.get(regionKey(chunkX >> REGION_SHIFT, chunkZ >> REGION_SHIFT));
+            return (regionEntries == null) ? Collections.emptyList() : regionEntries;
+        }
+
+        public void clear() {
+            this.regions.clear();
+        }
+
+        private static long regionKey(int regionX, int regionZ) {
+            return ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+        }
+    }
+}
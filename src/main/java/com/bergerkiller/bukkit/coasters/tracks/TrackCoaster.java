@@ -1,17 +1,28 @@
 package com.bergerkiller.bukkit.coasters.tracks;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
+import java.util.zip.GZIPOutputStream;
 
 import com.bergerkiller.bukkit.coasters.TCCoastersUtil;
 import com.bergerkiller.bukkit.coasters.editor.history.ChangeCancelledException;
+import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 import org.bukkit.util.FileUtil;
 import org.bukkit.util.Vector;
@@ -20,21 +31,43 @@ import com.bergerkiller.bukkit.coasters.TCCoasters;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSV;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSVReader;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSVWriter;
+import com.bergerkiller.bukkit.coasters.csv.TrackFileFormat;
 import com.bergerkiller.bukkit.coasters.util.PlayerOrigin;
+import com.bergerkiller.bukkit.coasters.util.SyntaxException;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorldComponent;
+import com.bergerkiller.bukkit.common.AsyncTask;
+import com.bergerkiller.bukkit.common.Task;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+import com.bergerkiller.bukkit.common.utils.CommonUtil;
+import com.bergerkiller.bukkit.common.utils.MathUtil;
 
 /**
  * All the nodes belonging to a single coaster.
  * Properties applied to all the nodes of the coaster are stored here.
  */
 public class TrackCoaster implements CoasterWorldComponent, Lockable {
+    /** File extension of the journal storing the changes made since the coaster was last saved in full */
+    public static final String JOURNAL_EXTENSION = ".journal";
+    /** Maximum number of nodes written to the journal in one save. If more changed, the coaster is saved in full */
+    private static final int MAX_JOURNAL_NODES = 256;
     private final CoasterWorld _world;
     private String _name;
     private List<TrackNode> _nodes;
     private boolean _changed = false;
     private boolean _locked = false;
     private final CoasterLoadMetrics _loadMetrics = new CoasterLoadMetrics();
+    // Tracks the changes since the last save, so they can be appended to the journal
+    private final Set<TrackNode> _changedNodes = new LinkedHashSet<TrackNode>();
+    private final List<Vector> _removedNodePositions = new ArrayList<Vector>();
+    private boolean _fullSaveRequired = true;
+    private long _savedFileSize = 0;
+    private long _savedFileLastModified = 0;
+    private long _journalSize = 0;
+    private CompletableFuture<SavedFile> _pendingSave = null;
+    private boolean _importing = false;
+    private final TrackCoasterBounds _bounds = new TrackCoasterBounds();
+    private boolean _boundsOutdated = false;
 
     protected TrackCoaster(CoasterWorld world, String name) {
         this._world = world;
@@ -62,6 +95,9 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
      * @return node at the position, null if not found
      */
     public TrackNode findNodeExact(Vector position, TrackNode excludedNode) {
+        if (!getBounds().contains(position, 1e-4)) {
+            return null;
+        }
         for (TrackNode node : this._nodes) {
             if (TCCoastersUtil.isPositionSame(node.getPosition(), position) && node != excludedNode) {
                 TrackNode orphan = node.selectZeroDistanceOrphan();
@@ -83,6 +119,9 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
      */
     public List<TrackNode> findNodesNear(List<TrackNode> result, Vector position, double radius) {
         // Minor
+        if (!getBounds().contains(position, radius)) {
+            return result;
+        }
         double rq = (radius*radius);
         for (TrackNode node : this._nodes) {
             if (node.getPosition().distanceSquared(position) < rq) {
@@ -94,12 +133,21 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
 
     public void removeNode(TrackNode node) {
         if (this._nodes.remove(node)) {
+            if (!this._boundsOutdated && this._bounds.isOnEdge(node.getPosition())) {
+                this._boundsOutdated = true;
+            }
             this.getWorld().getTracks().disconnectAll(node, true);
             this.getWorld().getTracks().cancelNodeRefresh(node);
             this.getWorld().getRails().purge(node);
             node.onRemoved();
             this.getPlugin().forAllEditStates(editState -> editState.setEditing(node, false));
-            this.markChanged();
+            this._changed = true;
+            if (!this._fullSaveRequired && node._savedPosition != null) {
+                this._removedNodePositions.add(node._savedPosition);
+                if (this._removedNodePositions.size() > MAX_JOURNAL_NODES) {
+                    this.markChanged();
+                }
+            }
         }
     }
 
@@ -107,6 +155,41 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
         return this._nodes;
     }
 
+    /**
+     * Gets the axis-aligned bounding box of the positions of all nodes of this coaster.
+     * The bounds are updated as nodes are added, moved and removed, so this does not
+     * iterate all nodes every time. The returned bounds should not be stored, as they
+     * change when nodes change.
+     *
+     * @return coaster bounds
+     */
+    public TrackCoasterBounds getBounds() {
+        if (this._boundsOutdated) {
+            this._boundsOutdated = false;
+            this._bounds.reset();
+            for (TrackNode node : this._nodes) {
+                this._bounds.include(node.getPosition());
+            }
+        }
+        return this._bounds;
+    }
+
+    /**
+     * Called by a node of this coaster when it moves, to update the bounds
+     *
+     * @param oldPosition Position of the node before it moved
+     * @param newPosition Position of the node now
+     */
+    void onNodeMoved(Vector oldPosition, Vector newPosition) {
+        if (this._boundsOutdated) {
+            return;
+        } else if (this._bounds.isOnEdge(oldPosition)) {
+            this._boundsOutdated = true;
+        } else {
+            this._bounds.include(newPosition);
+        }
+    }
+
     public String getName() {
         return this._name;
     }
@@ -114,6 +197,10 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
     public TrackNode createNewNode(TrackNodeState state) {
         TrackNode node = new TrackNode(this, state);
         this._nodes.add(node);
+        if (!this._boundsOutdated) {
+            this._bounds.include(node.getPosition());
+        }
+        this.markNodeChanged(node);
         return node;
     }
 
@@ -144,14 +231,61 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
      */
     protected void markUnchanged() {
         this._changed = false;
+        this.resetChangeTracking();
+    }
+
+    /**
+     * Gets whether this coaster has changes that have not been saved yet
+     *
+     * @return True if there are unsaved changes
+     */
+    boolean hasUnsavedChanges() {
+        return this._changed || this._pendingSave != null || this._importing;
+    }
+
+    /**
+     * Gets whether this coaster is being imported using
+     * {@link #loadFromStreamAsync(InputStream, Player, PlayerOrigin)}.
+     * Coasters that are still being imported are not saved.
+     *
+     * @return True if this coaster is being imported
+     */
+    boolean isImporting() {
+        return this._importing;
     }
 
     /**
      * Called from all over the place to indicate that the coaster has been changed.
      * Autosave will kick in at a later time to save this coaster to file again.
+     * The coaster is saved in full, as it is not known what changed.
      */
     public void markChanged() {
         this._changed = true;
+        this._fullSaveRequired = true;
+        this._changedNodes.clear();
+        this._removedNodePositions.clear();
+    }
+
+    /**
+     * Indicates that a single node of this coaster has been changed. Autosave will
+     * kick in at a later time to save this node to the journal of this coaster.
+     *
+     * @param node The node that changed
+     */
+    void markNodeChanged(TrackNode node) {
+        this._changed = true;
+        if (!this._fullSaveRequired && this._changedNodes.add(node) && this._changedNodes.size() > MAX_JOURNAL_NODES) {
+            this.markChanged();
+        }
+    }
+
+    private void resetChangeTracking() {
+        this._fullSaveRequired = false;
+        this._changedNodes.clear();
+        this._removedNodePositions.clear();
+        for (TrackNode node : this._nodes) {
+            node._savedPosition = node.getPosition();
+        }
     }
 
     /**
@@ -165,12 +299,36 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
      * Removes all nodes and connections of this coaster
      */
     public void clear() {
+        this._fullSaveRequired = true;
         getWorld().getRails().purge(this._nodes);
         for (TrackNode node : this._nodes) {
             this.getWorld().getTracks().disconnectAll(node, true);
             node.onRemoved();
         }
         this._nodes.clear();
+        this._bounds.reset();
+        this._boundsOutdated = false;
+    }
+
+    /**
+     * Unloads all nodes and connections of this coaster, because it is loaded lazily and
+     * has become inactive. Unlike {@link #clear()}, this does not destroy the signs of the
+     * nodes, and the power channels they use are suspended until the coaster is loaded again.
+     * All coasters connected with this coaster must be unloaded at the same time.
+     */
+    void unload() {
+        getWorld().getRails().purge(this._nodes);
+        for (TrackNode node : this._nodes) {
+            for (TrackConnection connection : node.getConnections()) {
+                if (connection.getNodeA() == node) {
+                    connection.onRemoved();
+                }
+            }
+            node.onUnloaded();
+        }
+        this._nodes.clear();
+        this._bounds.reset();
+        this._boundsOutdated = false;
     }
 
     /**
@@ -215,10 +373,19 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
      * @return CoasterLoadFinalizeAction Action to be run once all coasters are loaded in
      */
     public CoasterLoadFinalizeAction loadBase() {
+        this.waitForPendingSave();
+
         // Reset metrics
         _loadMetrics.loadTimeSeconds = 0.0;
         _loadMetrics.finalizeTimeSeconds = 0.0;
 
+        // Nothing is tracked while loading. Until a snapshot file is loaded, changes
+        // cannot be appended to a journal.
+        this._fullSaveRequired = true;
+        this._savedFileSize = 0;
+        this._savedFileLastModified = 0;
+        this._journalSize = 0;
+
         CoasterLoadFinalizeAction finalizeAction = () -> {};
 
         // Start timestamp to load the coaster from disk
@@ -227,29 +394,61 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
         // Load the save file. If the save file is not found, but a .tmp file version of it does exist,
         // this indicates saving failed previously inbetween deleting and renaming the .tmp to .csv.
         // We must load the .tmp file instead, then, but also log a warning about this!
+        // The file in the configured format is preferred, but files in other formats are loaded too.
         String baseName = TCCoasters.escapeName(this.getName());
         File folder = this.getWorld().getConfigFolder(false);
-        File tmpFile = new File(folder, baseName + ".csv.tmp");
-        File realFile = new File(folder, baseName + ".csv");
-        if (!realFile.exists()) {
-            if (tmpFile.exists()) {
-                this.getPlugin().getLogger().log(Level.WARNING,
-                        "Coaster " + this.getName() + " was restored from a temporary csv file, indicating prior save failure");
-                realFile = tmpFile;
-            } else {
-                this.getPlugin().getLogger().log(Level.SEVERE,
-                        "Coaster " + this.getName() + " could not be loaded: missing file");
-                _loadMetrics.loadTimeSeconds = (double) (System.nanoTime() - startTimeNanos) / 1000000000.0;
-                return finalizeAction;
+        File realFile = null;
+        TrackFileFormat format = null;
+        for (TrackFileFormat possibleFormat : getFileFormatsToLoad()) {
+            File possibleFile = new File(folder, baseName + possibleFormat.getExtension());
+            if (possibleFile.exists()) {
+                realFile = possibleFile;
+                format = possibleFormat;
+                break;
             }
         }
+        if (realFile == null) {
+            for (TrackFileFormat possibleFormat : getFileFormatsToLoad()) {
+                File tmpFile = new File(folder, baseName + possibleFormat.getExtension() + ".tmp");
+                if (tmpFile.exists()) {
+                    this.getPlugin().getLogger().log(Level.WARNING,
+                            "Coaster " + this.getName() + " was restored from a temporary " +
+                            possibleFormat.getExtension() + " file, indicating prior save failure");
+                    realFile = tmpFile;
+                    format = possibleFormat;
+                    break;
+                }
+            }
+        }
+        if (realFile == null) {
+            this.getPlugin().getLogger().log(Level.SEVERE,
+                    "Coaster " + this.getName() + " could not be loaded: missing file");
+            _loadMetrics.loadTimeSeconds = (double) (System.nanoTime() - startTimeNanos) / 1000000000.0;
+            return finalizeAction;
+        }
 
-        // Load from file
+        // Load from file, then apply the changes stored in the journal since it was saved
+        File journalFile = new File(folder, baseName + JOURNAL_EXTENSION);
+        boolean resaveRequired = false;
         try {
-            try (TrackCSVReader reader = new TrackCSVReader(new FileInputStream(realFile))) {
+            try (TrackCSVReader reader = openReader(realFile, format)) {
                 reader.setPreserveSignKeys(true);
                 finalizeAction = reader.getFinalizeAction();
                 reader.createBaseOnly(this);
+
+                // Changes can only be appended to a journal of the file that will be overwritten
+                // when saving. Changes to a restored .tmp file or a file in another format are saved
+                // in full the first time.
+                long fileSize = realFile.length();
+                long fileLastModified = realFile.lastModified();
+                if (format == this.getPlugin().getCoasterFileFormat() && !realFile.getName().endsWith(".tmp")) {
+                    this._savedFileSize = fileSize;
+                    this._savedFileLastModified = fileLastModified;
+                }
+
+                if (journalFile.exists()) {
+                    resaveRequired = !loadJournal(reader, journalFile, fileSize, fileLastModified);
+                }
             } catch (FileNotFoundException e) {
                 this.getPlugin().getLogger().log(Level.SEVERE,
                         "Failed to find file trying to load coaster " + this.getName());
@@ -261,12 +460,17 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
             this.getPlugin().getLogger().log(Level.SEVERE, e.getMessage());
 
             // Move the file to a backup place
-            File backupFile = new File(folder, baseName + ".csv.corrupt." + System.currentTimeMillis());
+            File backupFile = new File(folder, baseName + format.getExtension() + ".corrupt." + System.currentTimeMillis());
             if (realFile.renameTo(backupFile)) {
                 // Log it so people know
                 this.getPlugin().getLogger().log(Level.WARNING,
                         "A backup of this corrupted coaster file can be found at " + backupFile.toString());
 
+                // The journal belongs to the corrupted file, keep it next to it
+                if (journalFile.exists()) {
+                    backupJournal(journalFile);
+                }
+
                 // Re-save the coaster right away, to make sure details are still there
                 this.save(false);
             }
@@ -279,14 +483,77 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
         _loadMetrics.loadTimeSeconds = (double) (System.nanoTime() - startTimeNanos) / 1000000000.0;
 
         // Record the time it took to finalize
+        // If the journal could not be applied, save the coaster in full once links are restored
         final CoasterLoadFinalizeAction finalizeActionFinal = finalizeAction;
+        final boolean resaveRequiredFinal = resaveRequired;
         return () -> {
             long finalizeStartNanos = System.nanoTime();
             finalizeActionFinal.finishCoaster();
             _loadMetrics.finalizeTimeSeconds = (double) (System.nanoTime() - finalizeStartNanos) / 1000000000.0;
+            if (resaveRequiredFinal) {
+                this.save(false);
+            }
         };
     }
 
+    /**
+     * Applies the changes stored in the journal of this coaster to the nodes loaded
+     * by a reader. If the journal does not belong to the file that was loaded, or is
+     * corrupted, it is moved to a backup place.
+     *
+     * @param baseReader Reader that loaded the coaster file
+     * @param journalFile Journal file
+     * @param fileSize Size of the coaster file that was loaded
+     * @param fileLastModified Last modified timestamp of the coaster file that was loaded
+     * @return True if the journal was applied, False if the coaster must be saved in full again
+     */
+    private boolean loadJournal(TrackCSVReader baseReader, File journalFile, long fileSize, long fileLastModified) {
+        try (TrackCSVReader reader = new TrackCSVReader(new FileInputStream(journalFile))) {
+            reader.setPreserveSignKeys(true);
+            TrackCSV.CSVEntry header = reader.readNextEntry();
+            if (header == null) {
+                return true; // Empty, nothing to do
+            }
+            if (!(header instanceof TrackCSV.JournalHeaderEntry) ||
+                ((TrackCSV.JournalHeaderEntry) header).snapshotSize != fileSize ||
+                ((TrackCSV.JournalHeaderEntry) header).snapshotLastModified != fileLastModified
+            ) {
+                this.getPlugin().getLogger().log(Level.WARNING,
+                        "Journal of coaster " + this.getName() + " does not belong to the coaster file, ignoring it");
+                backupJournal(journalFile);
+                return false;
+            }
+            reader.applyJournal(baseReader);
+            this._journalSize = journalFile.length();
+            return true;
+        } catch (IOException | SyntaxException ex) {
+            this.getPlugin().getLogger().log(Level.SEVERE,
+                    "An I/O Error occurred while loading the journal of coaster " + this.getName(), ex);
+        } catch (CoasterLoadException ex) {
+            this.getPlugin().getLogger().log(Level.SEVERE, ex.getMessage());
+        }
+        backupJournal(journalFile);
+        return false;
+    }
+
+    private void backupJournal(File journalFile) {
+        File backupFile = new File(journalFile.getParentFile(), journalFile.getName() + ".corrupt." + System.currentTimeMillis());
+        if (journalFile.renameTo(backupFile)) {
+            this.getPlugin().getLogger().log(Level.WARNING,
+                    "A backup of the journal of this coaster can be found at " + backupFile.toString());
+        } else {
+            journalFile.delete();
+        }
+    }
+
+    private TrackCSVReader openReader(File file, TrackFileFormat format) throws IOException {
+        if (format == TrackFileFormat.CSV && this.getPlugin().isMemoryMappedLoadingEnabled()) {
+            return TrackCSVReader.createMapped(file);
+        } else {
+            return format.createReader(new FileInputStream(file));
+        }
+    }
+
     /**
      * Gets the time it took to load this coaster from disk
      *
@@ -334,42 +601,245 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
         }
     }
 
+    /**
+     * Loads this coaster by reading CSV data from a stream, like
+     * {@link #loadFromStream(InputStream, Player, PlayerOrigin)} does, without stalling the server.
+     * The data is decoded on another thread, after which the coaster is created on the main
+     * thread a little every tick. The player is informed of progress while this happens.
+     * The coaster is not saved until importing finishes, and importing is aborted when the
+     * coaster is removed or the plugin is disabled in the meantime.
+     *
+     * @param inputStream to read from
+     * @param player Player that is loading/importing the coaster, for which permissions are checked.
+     * @param origin relative to which to place the coaster
+     * @return future completed on the main thread once the coaster is loaded. Is completed exceptionally
+     *         with a CoasterLoadException or ChangeCancelledException if loading failed.
+     */
+    public CompletableFuture<Void> loadFromStreamAsync(final InputStream inputStream, final Player player, final PlayerOrigin origin) {
+        final CompletableFuture<List<TrackCSV.CSVEntry>> entriesFuture = new CompletableFuture<>();
+        this._importing = true;
+        new AsyncTask() {
+            @Override
+            public void run() {
+                try (TrackCSVReader reader = new TrackCSVReader(inputStream)) {
+                    entriesFuture.complete(reader.readAllEntries());
+                } catch (IOException ex) {
+                    entriesFuture.completeExceptionally(new CoasterLoadException("An I/O Error occurred while loading coaster " + TrackCoaster.this.getName(), ex));
+                } catch (SyntaxException ex) {
+                    entriesFuture.completeExceptionally(new CoasterLoadException("Syntax error while loading coaster " + TrackCoaster.this.getName() + " " + ex.getMessage()));
+                } catch (Throwable t) {
+                    entriesFuture.completeExceptionally(new CoasterLoadException("Unexpected exception occurred loading coaster " + TrackCoaster.this.getName(), t));
+                }
+            }
+        }.start();
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        entriesFuture.whenCompleteAsync((entries, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            if (this.isImportAborted()) {
+                result.completeExceptionally(new CoasterLoadException("Coaster " + this.getName() + " was removed while importing"));
+                return;
+            }
+
+            final TrackCSVReader reader = TrackCSVReader.createPreloaded(entries);
+            try {
+                reader.setOrigin(origin);
+                reader.startCreate(this, player);
+            } catch (Throwable t) {
+                result.completeExceptionally(new CoasterLoadException("Unexpected exception occurred loading coaster " + this.getName(), t));
+                return;
+            }
+            new Task(this.getPlugin()) {
+                private int ticks = 0;
+
+                @Override
+                public void run() {
+                    if (TrackCoaster.this.isImportAborted()) {
+                        result.completeExceptionally(new CoasterLoadException("Coaster " + TrackCoaster.this.getName() + " was removed while importing"));
+                        stop();
+                        return;
+                    }
+                    try {
+                        if (!reader.createNext(TrackCoaster.this.getPlugin().getImportTickDuration())) {
+                            if (++ticks % 40 == 0 && TCCoastersUtil.isPlayerConnected(player)) {
+                                player.sendMessage(ChatColor.YELLOW + "Importing coaster... " + TrackCoaster.this.getNodes().size() + " nodes created");
+                            }
+                            return;
+                        }
+                        result.complete(null);
+                    } catch (CoasterLoadException | ChangeCancelledException ex) {
+                        result.completeExceptionally(ex);
+                    } catch (Throwable t) {
+                        result.completeExceptionally(new CoasterLoadException("Unexpected exception occurred loading coaster " + TrackCoaster.this.getName(), t));
+                    }
+                    stop();
+                }
+            }.start(1, 1);
+        }, CommonUtil.getPluginExecutor(this.getPlugin()));
+        return result.whenComplete((unused, error) -> this._importing = false);
+    }
+
+    private boolean isImportAborted() {
+        return !this.getPlugin().isEnabled() || !this.getWorld().getTracks().getCoasters().contains(this);
+    }
+
     /**
      * Renames this coaster, renaming the save file and changing {@link #getName()}
      *
      * @param newName New name
      */
     public void renameTo(String newName) {
+        this.waitForPendingSave();
         File folder = this.getWorld().getConfigFolder(true);
-        File oldRealFile = new File(folder, TCCoasters.escapeName(this.getName()) + ".csv");
-        File newRealFile = new File(folder, TCCoasters.escapeName(newName) + ".csv");
-        oldRealFile.renameTo(newRealFile);
+        for (TrackFileFormat format : TrackFileFormat.values()) {
+            File oldRealFile = new File(folder, TCCoasters.escapeName(this.getName()) + format.getExtension());
+            File newRealFile = new File(folder, TCCoasters.escapeName(newName) + format.getExtension());
+            if (oldRealFile.exists()) {
+                oldRealFile.renameTo(newRealFile);
+            }
+        }
+        File oldJournalFile = new File(folder, TCCoasters.escapeName(this.getName()) + JOURNAL_EXTENSION);
+        if (oldJournalFile.exists()) {
+            oldJournalFile.renameTo(new File(folder, TCCoasters.escapeName(newName) + JOURNAL_EXTENSION));
+        }
         this._name = newName;
     }
 
     /**
-     * Saves the contents of this coaster to .csv file
+     * Gets the file formats to try when loading this coaster, in order of preference
+     *
+     * @return file formats
+     */
+    private List<TrackFileFormat> getFileFormatsToLoad() {
+        TrackFileFormat preferred = this.getPlugin().getCoasterFileFormat();
+        List<TrackFileFormat> formats = new ArrayList<TrackFileFormat>(TrackFileFormat.values().length);
+        formats.add(preferred);
+        for (TrackFileFormat format : TrackFileFormat.values()) {
+            if (format != preferred) {
+                formats.add(format);
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * Saves the contents of this coaster to file, in the file format configured.
+     * During autosave, when only few nodes changed, the changes are appended to the
+     * journal of this coaster instead. When the coaster must be saved in full during
+     * autosave, a snapshot of the coaster is taken which is written to file on another thread.
      * 
      * @param autosave whether to save only when changes occurred (true), or all the time (false)
      */
     public void save(boolean autosave) {
-        if (autosave && !this._changed) {
+        if (autosave && (!this._changed || this._pendingSave != null)) {
+            return; // Changes made while a snapshot is written are saved during the next autosave
+        }
+        if (autosave && this.saveJournal()) {
+            this._changed = false;
             return;
         }
+        this.waitForPendingSave();
         this._changed = false;
+        this._savedFileSize = 0; // Until saved successfully, the journal can't be used
+
+        final TrackFileFormat format = this.getPlugin().getCoasterFileFormat();
+        if (!autosave) {
+            SavedFile savedFile = this.writeFile(format, this::writeContents);
+            if (savedFile != null) {
+                this.resetChangeTracking();
+                this.onSaved(savedFile);
+            }
+            return;
+        }
+
+        // Rewriting a large coaster takes a while, so only take a snapshot of it right now
+        final TrackCSVWriter snapshot = TrackCSVWriter.createSnapshot();
+        try {
+            this.writeContents(snapshot);
+        } catch (Throwable t) {
+            this.getPlugin().getLogger().log(Level.SEVERE,
+                    "An unexpected error occurred while saving coaster " + this.getName(), t);
+            return;
+        }
+
+        // Changes made from now on are appended to the journal of the new file
+        this.resetChangeTracking();
+
+        final CompletableFuture<SavedFile> pendingSave = new CompletableFuture<SavedFile>();
+        this._pendingSave = pendingSave;
+        new AsyncTask() {
+            @Override
+            public void run() {
+                pendingSave.complete(writeFile(format, snapshot::writeSnapshotTo));
+            }
+        }.start();
+        pendingSave.thenAcceptAsync(savedFile -> {
+            if (this._pendingSave == pendingSave) {
+                this._pendingSave = null;
+                this.onSaved(savedFile);
+                this.getWorld().getTracks().onCoasterSaved(this);
+            }
+        }, CommonUtil.getPluginExecutor(this.getPlugin()));
+    }
+
+    /**
+     * Waits until a snapshot of this coaster, saved during autosave, has been written to file.
+     * Must be called before the files of this coaster are accessed.
+     */
+    void waitForPendingSave() {
+        CompletableFuture<SavedFile> pendingSave = this._pendingSave;
+        if (pendingSave != null) {
+            this._pendingSave = null;
+            this.onSaved(pendingSave.join());
+        }
+    }
+
+    private void writeContents(TrackCSVWriter writer) throws IOException {
+        writer.setWriteSignKeys(true);
+        if (this.isLocked()) {
+            writer.write(new TrackCSV.LockCoasterEntry());
+        }
+        writer.writeAll(this.getNodes());
+    }
 
+    /**
+     * Called on the main thread after this coaster was written to file. If successful,
+     * changes made since then can be appended to a new journal.
+     *
+     * @param savedFile Details of the saved file, null if saving failed
+     */
+    private void onSaved(SavedFile savedFile) {
+        if (savedFile != null && savedFile.journalDeleted) {
+            this._savedFileSize = savedFile.size;
+            this._savedFileLastModified = savedFile.lastModified;
+            this._journalSize = 0;
+        } else {
+            this._savedFileSize = 0; // Don't append to a journal that belongs to an older file
+            this._fullSaveRequired = true;
+        }
+    }
+
+    /**
+     * Writes the coaster to a temporary file, and then moves it in place of the saved file.
+     * Afterwards the journal and files saved in other formats are deleted. Can be called from
+     * another thread, as long as the contents do not refer to the nodes of the coaster.
+     *
+     * @param format File format to save in
+     * @param contents Writes the contents of the coaster
+     * @return details of the saved file, or null if saving failed
+     */
+    private SavedFile writeFile(TrackFileFormat format, ContentsWriter contents) {
         // Save coaster information to a tmp file first
         boolean success = false;
         String baseName = TCCoasters.escapeName(this.getName());
         File folder = this.getWorld().getConfigFolder(true);
-        File tmpFile = new File(folder, baseName + ".csv.tmp");
-        File realFile = new File(folder, baseName + ".csv");
-        try (TrackCSVWriter writer = new TrackCSVWriter(new FileOutputStream(tmpFile, false))) {
-            writer.setWriteSignKeys(true);
-            if (this.isLocked()) {
-                writer.write(new TrackCSV.LockCoasterEntry());
-            }
-            writer.writeAll(this.getNodes());
+        File tmpFile = new File(folder, baseName + format.getExtension() + ".tmp");
+        File realFile = new File(folder, baseName + format.getExtension());
+        try (TrackCSVWriter writer = format.createWriter(openOutput(tmpFile))) {
+            contents.write(writer);
             success = true;
         } catch (IOException ex) {
             this.getPlugin().getLogger().log(Level.SEVERE,
@@ -389,7 +859,7 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
         // Check for success to decide whether to keep or discard the tmpFile
         if (!success) {
             tmpFile.delete(); // Ignore failure to delete again...
-            return;
+            return null;
         }
 
         // Attempt moving. If that fails, attempt a copy + delete.
@@ -400,8 +870,218 @@ public class TrackCoaster implements CoasterWorldComponent, Lockable {
             } else {
                 this.getPlugin().getLogger().log(Level.SEVERE,
                         "Failed to save coaster " + this.getName() + ": Failed to move or copy file");
+                return null;
             }
         }
+
+        // All changes are now in the file, start a new journal
+        File journalFile = new File(folder, baseName + JOURNAL_EXTENSION);
+        SavedFile savedFile = new SavedFile(realFile.length(), realFile.lastModified(),
+                journalFile.delete() || !journalFile.exists());
+
+        // Remove files saved in a different format previously, so they aren't loaded instead
+        for (TrackFileFormat otherFormat : TrackFileFormat.values()) {
+            if (otherFormat != format) {
+                File otherFile = new File(folder, baseName + otherFormat.getExtension());
+                if (otherFile.exists()) {
+                    otherFile.delete();
+                }
+            }
+        }
+
+        return savedFile;
+    }
+
+    private OutputStream openOutput(File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file, false);
+        if (!this.getPlugin().isCoasterFileCompressionEnabled()) {
+            return out;
+        }
+        try {
+            return new GZIPOutputStream(out, 65536);
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Appends the nodes changed since the last save to the journal of this coaster.
+     * Fails when the coaster must be saved in full instead, because too much changed,
+     * the changes cannot be described by node positions, or the journal grew too large.
+     *
+     * @return True if the changes were appended to the journal
+     */
+    private boolean saveJournal() {
+        if (this._fullSaveRequired || this._savedFileSize <= 0 || !this.getPlugin().isCoasterJournalEnabled()) {
+            return false;
+        }
+
+        // Also rewrite junctions connected to changed nodes, so the order in which they switch is preserved
+        Set<TrackNode> nodes = new LinkedHashSet<TrackNode>();
+        for (TrackNode node : this._changedNodes) {
+            if (node.isRemoved() || node.getCoaster() != this) {
+                continue;
+            }
+            nodes.add(node);
+            for (TrackNode neighbour : node.getNeighbours()) {
+                if (neighbour.getConnections().size() > 2) {
+                    if (neighbour.getCoaster() != this) {
+                        return false;
+                    }
+                    nodes.add(neighbour);
+                }
+            }
+        }
+        if (nodes.size() > MAX_JOURNAL_NODES) {
+            return false;
+        }
+
+        // Nodes are removed and re-created by their position. This only works if that
+        // position refers to one node only. The positions are looked up by block, so
+        // every node of the coaster is only checked against the positions in its block.
+        Map<IntVector3, List<JournalPosition>> positionsByBlock = new HashMap<IntVector3, List<JournalPosition>>();
+        TrackCoasterBounds positionBounds = new TrackCoasterBounds();
+        for (Vector position : this._removedNodePositions) {
+            addJournalPosition(positionsByBlock, positionBounds, position, null);
+        }
+        for (TrackNode node : nodes) {
+            addJournalPosition(positionsByBlock, positionBounds, node.getPosition(), node);
+            if (node._savedPosition != null) {
+                addJournalPosition(positionsByBlock, positionBounds, node._savedPosition, node);
+            }
+        }
+        for (TrackNode other : this._nodes) {
+            Vector otherPosition = other.getPosition();
+            if (!positionBounds.contains(otherPosition, 1e-4)) {
+                continue;
+            }
+            List<JournalPosition> positions = positionsByBlock.get(new IntVector3(
+                    otherPosition.getBlockX(), otherPosition.getBlockY(), otherPosition.getBlockZ()));
+            if (positions != null) {
+                for (JournalPosition position : positions) {
+                    if (position.owner != other && TCCoastersUtil.isPositionSame(otherPosition, position.position)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        // Encode the changes
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (TrackCSVWriter writer = new TrackCSVWriter(data)) {
+            writer.setWriteSignKeys(true);
+            if (this._journalSize == 0) {
+                TrackCSV.JournalHeaderEntry header = new TrackCSV.JournalHeaderEntry();
+                header.snapshotSize = this._savedFileSize;
+                header.snapshotLastModified = this._savedFileLastModified;
+                writer.write(header);
+            }
+            TrackCSV.JournalRemoveNodeEntry removeEntry = new TrackCSV.JournalRemoveNodeEntry();
+            for (Vector position : this._removedNodePositions) {
+                removeEntry.pos = position;
+                writer.write(removeEntry);
+            }
+            for (TrackNode node : nodes) {
+                if (node._savedPosition != null) {
+                    removeEntry.pos = node._savedPosition;
+                    writer.write(removeEntry);
+                }
+            }
+            for (TrackNode node : nodes) {
+                writer.writeNodeWithAllLinks(node);
+            }
+        } catch (Throwable t) {
+            this.getPlugin().getLogger().log(Level.SEVERE,
+                    "An unexpected error occurred while saving the journal of coaster " + this.getName(), t);
+            return false;
+        }
+
+        // Once the journal grows larger than the coaster itself, it's time to save the coaster in full
+        long maxJournalSize = Math.min(this.getPlugin().getCoasterJournalMaxSize(), this._savedFileSize);
+        if (this._journalSize + data.size() > maxJournalSize) {
+            return false;
+        }
+
+        // Append to the journal. Entries are separated by a newline.
+        // If writing fails, undo the partially written data.
+        File journalFile = new File(this.getWorld().getConfigFolder(true), TCCoasters.escapeName(this.getName()) + JOURNAL_EXTENSION);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            long start = (this._journalSize == 0) ? 0 : file.length();
+            try {
+                file.setLength(start);
+                file.seek(start);
+                if (start > 0) {
+                    file.write("\r\n".getBytes(StandardCharsets.UTF_8));
+                }
+                file.write(data.toByteArray());
+            } catch (IOException ex) {
+                file.setLength(start);
+                throw ex;
+            }
+            this._journalSize = file.length();
+        } catch (IOException ex) {
+            this.getPlugin().getLogger().log(Level.SEVERE,
+                    "An I/O Error occurred while saving the journal of coaster " + this.getName(), ex);
+            return false;
+        }
+
+        // Changes are stored
+        for (TrackNode node : nodes) {
+            node._savedPosition = node.getPosition();
+        }
+        this._changedNodes.clear();
+        this._removedNodePositions.clear();
+        return true;
+    }
+
+    /**
+     * Adds a position written to the journal to a by-block lookup. Positions close to the
+     * edge of a block are added to the neighbouring blocks as well, so that nodes at
+     * approximately the same position are found in the block they are in.
+     */
+    private static void addJournalPosition(Map<IntVector3, List<JournalPosition>> positionsByBlock,
+            TrackCoasterBounds positionBounds, Vector position, TrackNode owner
+    ) {
+        JournalPosition entry = new JournalPosition(position, owner);
+        positionBounds.include(position);
+        int minX = MathUtil.floor(position.getX() - 1e-4), maxX = MathUtil.floor(position.getX() + 1e-4);
+        int minY = MathUtil.floor(position.getY() - 1e-4), maxY = MathUtil.floor(position.getY() + 1e-4);
+        int minZ = MathUtil.floor(position.getZ() - 1e-4), maxZ = MathUtil.floor(position.getZ() + 1e-4);
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    positionsByBlock.computeIfAbsent(new IntVector3(x, y, z), b -> new ArrayList<JournalPosition>(1)).add(entry);
+                }
+            }
+        }
+    }
+
+    private static final class JournalPosition {
+        public final Vector position;
+        public final TrackNode owner;
+
+        public JournalPosition(Vector position, TrackNode owner) {
+            this.position = position;
+            this.owner = owner;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentsWriter {
+        void write(TrackCSVWriter writer) throws IOException;
+    }
+
+    private static final class SavedFile {
+        public final long size;
+        public final long lastModified;
+        public final boolean journalDeleted;
+
+        public SavedFile(long size, long lastModified, boolean journalDeleted) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.journalDeleted = journalDeleted;
+        }
     }
 
     /**
@@ -0,0 +1,124 @@
+package com.bergerkiller.bukkit.coasters.tracks;
+
+import org.bukkit.util.Vector;
+
+/**
+ * Axis-aligned bounding box of the positions of all the nodes of a coaster.
+ * A coaster updates its bounds as nodes are added or moved. When a node on
+ * the edge of the bounds is moved inward or removed, the bounds are computed
+ * again from all nodes the next time they are requested.
+ */
+public final class TrackCoasterBounds {
+    private double minX, minY, minZ, maxX, maxY, maxZ;
+    private boolean empty;
+
+    TrackCoasterBounds() {
+        this.reset();
+    }
+
+    /**
+     * Gets whether these bounds contain no positions at all, because the coaster has no nodes
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return this.empty;
+    }
+
+    public double getMinX() {
+        return this.minX;
+    }
+
+    public double getMinY() {
+        return this.minY;
+    }
+
+    public double getMinZ() {
+        return this.minZ;
+    }
+
+    public double getMaxX() {
+        return this.maxX;
+    }
+
+    public double getMaxY() {
+        return this.maxY;
+    }
+
+    public double getMaxZ() {
+        return this.maxZ;
+    }
+
+    /**
+     * Gets the center of these bounds
+     *
+     * @return center position
+     */
+    public Vector getCenter() {
+        return new Vector(0.5 * (this.minX + this.maxX),
+                          0.5 * (this.minY + this.maxY),
+                          0.5 * (this.minZ + this.maxZ));
+    }
+
+    /**
+     * Gets whether a position is inside these bounds, or at most a distance away from them
+     *
+     * @param position Position
+     * @param margin Distance the position can be outside of the bounds
+     * @return True if the position is within these bounds
+     */
+    public boolean contains(Vector position, double margin) {
+        return !this.empty &&
+               position.getX() >= (this.minX - margin) && position.getX() <= (this.maxX + margin) &&
+               position.getY() >= (this.minY - margin) && position.getY() <= (this.maxY + margin) &&
+               position.getZ() >= (this.minZ - margin) && position.getZ() <= (this.maxZ + margin);
+    }
+
+    /**
+     * Gets whether a position lies on the edge of these bounds. When a node at such a
+     * position is removed or moved, the bounds might shrink.
+     *
+     * @param position Position
+     * @return True if the position is on the edge
+     */
+    boolean isOnEdge(Vector position) {
+        return position.getX() == this.minX || position.getX() == this.maxX ||
+               position.getY() == this.minY || position.getY() == this.maxY ||
+               position.getZ() == this.minZ || position.getZ() == this.maxZ;
+    }
+
+    void include(Vector position) {
+        include(position.getX(), position.getY(), position.getZ());
+    }
+
+    void include(double x, double y, double z) {
+        if (this.empty) {
+            this.empty = false;
+            this.minX = this.maxX = x;
+            this.minY = this.maxY = y;
+            this.minZ = this.maxZ = z;
+        } else {
+            if (x < this.minX) this.minX = x;
+            if (y < this.minY) this.minY = y;
+            if (z < this.minZ) this.minZ = z;
+            if (x > this.maxX) this.maxX = x;
+            if (y > this.maxY) this.maxY = y;
+            if (z > this.maxZ) this.maxZ = z;
+        }
+    }
+
+    void reset() {
+        this.empty = true;
+        this.minX = this.minY = this.minZ = 0.0;
+        this.maxX = this.maxY = this.maxZ = 0.0;
+    }
+
+    @Override
+    public String toString() {
+        if (this.empty) {
+            return "{empty}";
+        }
+        return "{min={" + this.minX + ", " + this.minY + ", " + this.minZ + "}, " +
+               "max={" + this.maxX + ", " + this.maxY + ", " + this.maxZ + "}}";
+    }
+}
@@ -1,15 +1,16 @@
 package com.bergerkiller.bukkit.coasters.tracks;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.List;
 
 import org.bukkit.util.Vector;
 
 import com.bergerkiller.bukkit.coasters.objects.TrackObject;
 import com.bergerkiller.bukkit.coasters.objects.TrackObjectHolder;
+import com.bergerkiller.bukkit.coasters.objects.TrackObjectList;
+import com.bergerkiller.bukkit.coasters.objects.TrackObjectRemovalBatch;
 import com.bergerkiller.bukkit.coasters.particles.TrackParticleLine;
 import com.bergerkiller.bukkit.coasters.particles.TrackParticleWorld;
 import com.bergerkiller.bukkit.coasters.tracks.path.EndPoint;
@@ -19,7 +20,6 @@ import com.bergerkiller.bukkit.coasters.world.CoasterWorldComponent;
 import com.bergerkiller.bukkit.common.bases.IntVector3;
 import com.bergerkiller.bukkit.common.math.Matrix4x4;
 import com.bergerkiller.bukkit.common.math.Quaternion;
-import com.bergerkiller.bukkit.common.utils.LogicUtil;
 import com.bergerkiller.bukkit.common.utils.MathUtil;
 import com.bergerkiller.bukkit.tc.Util;
 import com.bergerkiller.bukkit.tc.controller.components.RailPath;
@@ -32,7 +32,7 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
     protected NodeEndPoint _endA;
     protected NodeEndPoint _endB;
     private List<TrackParticleLine> lines = new ArrayList<TrackParticleLine>();
-    private TrackObject[] objects = TrackObject.EMPTY;
+    private final TrackObjectList objects = new TrackObjectList();
     private double fullDistance = Double.NaN;
 
     protected TrackConnection(TrackNode nodeA, TrackNode nodeB) {
@@ -122,9 +122,11 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
         // Compute total distance and invert all the objects's distances
         // This doesn't actually change the position of the object, so it can be done silently
         // Flipped is inverted also, because the motion vector on the path reverses direction
-        for (TrackObject object : this.objects) {
+        // Inverting all distances reverses the order, so the objects stay sorted by distance
+        for (TrackObject object : this.objects.asList()) {
             object.setDistanceFlippedSilently(this.getFullDistance() - object.getDistance(), !object.isFlipped());
         }
+        this.objects.reverse();
 
         //TODO: Technically we got to swap the lines also
         //      This is not a big deal, the next time this connection changes, it'll do a wrap-around
@@ -197,12 +199,36 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
 
     @Override
     public boolean hasObjects() {
-        return this.objects.length > 0;
+        return !this.objects.isEmpty();
     }
 
+    /**
+     * {@inheritDoc}<br>
+     * <br>
+     * The objects are sorted by distance.
+     */
     @Override
     public List<TrackObject> getObjects() {
-        return LogicUtil.asImmutableList(this.objects);
+        return this.objects.asList();
+    }
+
+    /**
+     * Gets all the track objects whose distance is within a range
+     *
+     * @param minDistance Minimum distance (inclusive)
+     * @param maxDistance Maximum distance (inclusive)
+     * @return immutable list of objects within the range, sorted by distance
+     */
+    public List<TrackObject> getObjectsInRange(double minDistance, double maxDistance) {
+        return this.objects.getInRange(minDistance, maxDistance);
+    }
+
+    /**
+     * Called by a track object stored on this connection when its distance changes,
+     * so that the objects are sorted by distance again
+     */
+    public void onObjectDistanceChanged() {
+        this.objects.markUnsorted();
     }
 
     /**
@@ -211,7 +237,7 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
      * @param object
      */
     public void addObject(TrackObject object) {
-        this.objects = LogicUtil.appendArray(this.objects, object);
+        this.objects.add(object);
         this.markChanged();
         object.onAdded(this);
     }
@@ -234,7 +260,7 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
         int numExpectedObjects = connectionObjects.getObjects().size();
         List<TrackObject> expectedObjects = new ArrayList<>(numExpectedObjects);
         List<TrackObject> updatedObjects = new ArrayList<>(numExpectedObjects);
-        List<TrackObject> removedObjects = new ArrayList<>(Arrays.asList(this.objects));
+        List<TrackObject> newObjects = new ArrayList<>();
 
         // Identify the track objects that must exist as part of the connection state
         if (connectionObjects.isSameFlipped(this)) {
@@ -247,48 +273,105 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
             }
         }
 
+        // Both the previous and the expected objects are sorted by distance, so that for every
+        // previous object the expected objects at the same position are found with a binary search
+        expectedObjects.sort(Comparator.comparingDouble(TrackObject::getDistance));
+        List<TrackObject> previousObjects = this.objects.asList();
+        boolean[] previousMatched = new boolean[previousObjects.size()];
+        boolean[] expectedMatched = new boolean[expectedObjects.size()];
+
         // Go by previous track objects. If they are 100% identical with one of the expected objects,
         // undo removal and keep it as an updated unchanged object.
-        for (Iterator<TrackObject> remIter = removedObjects.iterator(); remIter.hasNext();) {
-            TrackObject removed = remIter.next();
-            for (Iterator<TrackObject> expectedIter = expectedObjects.iterator(); expectedIter.hasNext();) {
-                TrackObject expected = expectedIter.next();
-                if (removed.isSamePositionAs(expected) && removed.getType().equals(expected.getType())) {
-                    updatedObjects.add(removed);
-                    remIter.remove();
-                    expectedIter.remove();
-                    break;
-                }
+        for (int i = 0; i < previousMatched.length; i++) {
+            TrackObject previous = previousObjects.get(i);
+            int index = findSamePosition(expectedObjects, expectedMatched, previous, true);
+            if (index != -1) {
+                updatedObjects.add(previous);
+                previousMatched[i] = true;
+                expectedMatched[index] = true;
             }
         }
 
         // Go by previous track objects. If they are positioned at the exact same position, update the type in place
         // This causes a 'swap' of the represented object display
-        for (Iterator<TrackObject> remIter = removedObjects.iterator(); remIter.hasNext();) {
-            TrackObject removed = remIter.next();
-            for (Iterator<TrackObject> expectedIter = expectedObjects.iterator(); expectedIter.hasNext();) {
-                TrackObject expected = expectedIter.next();
-                if (removed.isSamePositionAs(expected)) {
-                    removed.setType(this, expected.getType());
-                    updatedObjects.add(removed);
-                    remIter.remove();
-                    expectedIter.remove();
-                    break;
+        for (int i = 0; i < previousMatched.length; i++) {
+            if (!previousMatched[i]) {
+                TrackObject previous = previousObjects.get(i);
+                int index = findSamePosition(expectedObjects, expectedMatched, previous, false);
+                if (index != -1) {
+                    previous.setType(this, expectedObjects.get(index).getType());
+                    updatedObjects.add(previous);
+                    previousMatched[i] = true;
+                    expectedMatched[index] = true;
                 }
             }
         }
 
         // For all remaining removed objects, remove them officially
-        removedObjects.forEach(o -> o.onRemoved(this));
+        TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+        try {
+            for (int i = 0; i < previousMatched.length; i++) {
+                if (!previousMatched[i]) {
+                    previousObjects.get(i).onRemoved(this);
+                }
+            }
+        } finally {
+            removalBatch.finish();
+        }
 
         // For all remaining expected objects, add them as they are
-        updatedObjects.addAll(expectedObjects);
+        for (int i = 0; i < expectedMatched.length; i++) {
+            if (!expectedMatched[i]) {
+                newObjects.add(expectedObjects.get(i));
+            }
+        }
+        updatedObjects.addAll(newObjects);
 
-        // Update objects array, then fire onAdded for newly added objects
+        // Update objects, then fire onAdded for newly added objects
         // Fire markChanged() all the time, this stuff is too dynamic to safely test for changes
-        this.objects = updatedObjects.toArray(TrackObject.EMPTY);
+        this.objects.setAll(updatedObjects);
         this.markChanged();
-        expectedObjects.forEach(newlyAdded -> newlyAdded.onAdded(this));
+        newObjects.forEach(newlyAdded -> newlyAdded.onAdded(this));
+    }
+
+    /**
+     * Finds the index of an object in a list of objects sorted by distance that is at
+     * the same position as another object, and that was not matched before.
+     *
+     * @param sortedObjects Objects sorted by distance
+     * @param matched Which objects were matched before, and should be skipped
+     * @param object Object to find an object at the same position for
+     * @param sameType Whether the object must also be of the same type
+     * @return index of the object found, or -1 if not found
+     */
+    private static int findSamePosition(List<TrackObject> sortedObjects, boolean[] matched, TrackObject object, boolean sameType) {
+        // Same epsilon as used by TrackObject isSamePositionAs()
+        double minDistance = object.getDistance() - 1e-8;
+        double maxDistance = object.getDistance() + 1e-8;
+
+        int low = 0;
+        int high = sortedObjects.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedObjects.get(mid).getDistance() < minDistance) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < sortedObjects.size(); i++) {
+            TrackObject candidate = sortedObjects.get(i);
+            if (candidate.getDistance() > maxDistance) {
+                break;
+            }
+            if (!matched[i] && object.isSamePositionAs(candidate) &&
+                    (!sameType || object.getType().equals(candidate.getType()))
+            ) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -362,14 +445,11 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
      * @return True if the object was removed, False if not
      */
     public boolean removeObject(TrackObject object) {
-        for (int i = 0; i < this.objects.length; i++) {
-            TrackObject old_object = this.objects[i];
-            if (old_object.equals(object)) {
-                this.objects = TrackObject.removeArrayElement(this.objects, i);
-                this.markChanged();
-                old_object.onRemoved(this);
-                return true;
-            }
+        TrackObject old_object = this.objects.remove(object);
+        if (old_object != null) {
+            this.markChanged();
+            old_object.onRemoved(this);
+            return true;
         }
         return false;
     }
@@ -378,12 +458,16 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
      * Removes all objects that exist for this connection
      */
     public void clearObjects() {
-        TrackObject[] objects = this.objects;
-        if (objects.length > 0) {
-            this.objects = TrackObject.EMPTY;
+        if (!this.objects.isEmpty()) {
+            List<TrackObject> objects = this.objects.clear();
             this.markChanged();
-            for (TrackObject object : objects) {
-                object.onRemoved(this);
+            TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+            try {
+                for (TrackObject object : objects) {
+                    object.onRemoved(this);
+                }
+            } finally {
+                removalBatch.finish();
             }
         }
     }
@@ -412,16 +496,14 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
      */
     public boolean moveObject(TrackObject object, TrackConnection newConnection, double newDistance, Vector rightDirection) {
         if (newConnection != this) {
-            for (int i = 0; i < this.objects.length; i++) {
-                if (this.objects[i].equals(object)) {
-                    this.objects = TrackObject.removeArrayElement(this.objects, i);
-                    this.markChanged();
-
-                    newConnection.objects = LogicUtil.appendArray(newConnection.objects, object);
-                    newConnection.markChanged();
-                    object.setDistanceComputeFlipped(newConnection, newDistance, rightDirection);
-                    return true;
-                }
+            TrackObject old_object = this.objects.remove(object);
+            if (old_object != null) {
+                this.markChanged();
+
+                newConnection.objects.add(old_object);
+                newConnection.markChanged();
+                old_object.setDistanceComputeFlipped(newConnection, newDistance, rightDirection);
+                return true;
             }
             return false;
         } else if (object.getDistance() == newDistance) {
@@ -473,7 +555,7 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
             }
         }
 
-        for (TrackObject object : this.objects) {
+        for (TrackObject object : this.objects.asList()) {
             object.onShapeUpdated(this);
         }
     }
@@ -722,8 +804,15 @@ public class TrackConnection implements Lockable, CoasterWorldComponent, TrackOb
             this.lines.get(i).remove();
         }
         this.lines.clear();
-        for (TrackObject object : this.objects) {
-            object.onRemoved(this);
+        if (!this.objects.isEmpty()) {
+            TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+            try {
+                for (TrackObject object : this.objects.asList()) {
+                    object.onRemoved(this);
+                }
+            } finally {
+                removalBatch.finish();
+            }
         }
     }
 
@@ -53,6 +53,11 @@ public class TrackNode implements TrackNodeReference, CoasterWorldComponent, Loc
     private TrackParticleSignText _signTextParticle;
     // Connections are automatically updated when connecting/disconnecting
     protected TrackConnection[] _connections;
+    // Position of this node when the coaster was last saved, null if it was created since
+    protected Vector _savedPosition = null;
+    // Search state of TrackNodeSearchPath, valid while _searchId matches the current search
+    int _searchId = 0;
+    int _searchIndex = 0;
 
     protected TrackNode(TrackCoaster group, Vector pos, Vector up) {
         this(group, TrackNodeState.create(pos, up, null));
@@ -144,7 +149,7 @@ public class TrackNode implements TrackNodeReference, CoasterWorldComponent, Loc
     public void markChanged() {
         TrackCoaster coaster = this._coaster;
         if (coaster != null) {
-            coaster.markChanged();
+            coaster.markNodeChanged(this);
         }
     }
 
@@ -165,6 +170,9 @@ public class TrackNode implements TrackNodeReference, CoasterWorldComponent, Loc
         Vector curr = this._pos;
         if (curr.getX() != position.getX() || curr.getY() != position.getY() || curr.getZ() != position.getZ()) {
             this._pos = position.clone();
+            if (this._coaster != null) {
+                this._coaster.onNodeMoved(curr, this._pos);
+            }
             //this._particle.setPosition(this._pos);
             this._upParticleArrow.setPosition(this._pos);
             if (this._railBlock == null) {
@@ -1158,6 +1166,27 @@ public class TrackNode implements TrackNodeReference, CoasterWorldComponent, Loc
         _coaster = null; // mark removed by breaking reference to coaster
     }
 
+    /**
+     * Called when the coaster of this node is unloaded, to be loaded again later.
+     * Unlike {@link #onRemoved()}, no destroy events are fired for the signs of this
+     * node, and the power channels of the signs are suspended instead of removed.
+     */
+    void onUnloaded() {
+        final TCCoasters plugin = getPlugin();
+        final String suspendKey = this._coaster.getName();
+
+        destroyParticles();
+        for (TrackNodeSign sign : this._signs) {
+            sign.unload(plugin, suspendKey);
+        }
+        for (TrackNodeAnimationState animState : this._animationStates) {
+            for (TrackNodeSign sign : animState.state.signs) {
+                sign.unload(plugin, suspendKey);
+            }
+        }
+        _coaster = null; // mark removed by breaking reference to coaster
+    }
+
     public void destroyParticles() {
         this._upParticleArrow.remove();
         this._blockParticle.remove();
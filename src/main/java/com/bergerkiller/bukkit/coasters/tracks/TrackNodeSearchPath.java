@@ -1,7 +1,10 @@
 package com.bergerkiller.bukkit.coasters.tracks;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -10,38 +13,51 @@ import java.util.Set;
  */
 public class TrackNodeSearchPath {
     private static final double MAX_SEARCH_DISTANCE = 8000; // 50 chunks
+    private static int lastSearchId = 0;
 
-    public final HashSet<TrackNode> path = new HashSet<TrackNode>();
+    /** All nodes of the path, in order from the start node to the found node */
+    public final HashSet<TrackNode> path = new LinkedHashSet<TrackNode>();
+    /** All connections of the path, in order from the start node to the found node */
     public final List<TrackConnection> pathConnections = new ArrayList<TrackConnection>();
+    /** The selected node that was found at the end of the path */
     public TrackNode current = null;
     private double searchDistance = 0.0;
-    private boolean foundSelection = false;
-    private boolean foundEnd = false;
-
-    public TrackNodeSearchPath(TrackNodeSearchPath base) {
-        this.path.addAll(base.path);
-        this.pathConnections.addAll(base.pathConnections);
-        this.current = base.current;
-        this.searchDistance = base.searchDistance;
-        this.foundSelection = base.foundSelection;
-        this.foundEnd = base.foundEnd;
-    }
 
     public TrackNodeSearchPath(TrackNode startNode) {
         this.current = startNode;
         this.path.add(startNode);
     }
 
-    public void next(TrackNode node, TrackConnection connection) {
-        this.path.add(node);
-        this.pathConnections.add(connection);
-        this.searchDistance += node.getPosition().distance(this.current.getPosition());
-        this.current = node;
+    private TrackNodeSearchPath(SearchNode<TrackNode, TrackConnection> end) {
+        // Walk the parent pointers back to the start node, then reverse
+        List<TrackNode> nodes = new ArrayList<TrackNode>();
+        for (SearchNode<TrackNode, TrackConnection> s = end; s != null; s = s.parent) {
+            nodes.add(s.node);
+            if (s.connection != null) {
+                this.pathConnections.add(s.connection);
+            }
+        }
+        Collections.reverse(nodes);
+        Collections.reverse(this.pathConnections);
+        this.path.addAll(nodes);
+        this.current = end.node;
+        this.searchDistance = end.distance;
     }
 
     /**
-     * Searches for the shortest path from the start node to any of the selected track nodes
-     * 
+     * Gets the total distance between the nodes of this path
+     *
+     * @return path distance
+     */
+    public double getDistance() {
+        return this.searchDistance;
+    }
+
+    /**
+     * Searches for the shortest path from the start node to any of the selected track nodes.
+     * Uses Dijkstra's algorithm over the node graph, where the cost of a connection is the
+     * straight-line distance between the two nodes.
+     *
      * @param startNode
      * @param selected
      * @return shorted path, null if no path could be found
@@ -54,79 +70,265 @@ public class TrackNodeSearchPath {
             return null;
         }
 
-        // Recursion using a list of paths (to avoid stack overflow)
-        // 'Tick' each list once to move forwards
-        // Drop/disable lists when their cost exceeds that of a path with a found other node
-        // This avoids iterating more nodes than absolutely required
-        List<TrackNodeSearchPath> paths = new ArrayList<TrackNodeSearchPath>();
-        paths.add(new TrackNodeSearchPath(startNode));
-        TrackNodeSearchPath bestPath = null;
-        boolean finished = false;
-        while (!finished) {
-            finished = true;
-            for (int i = 0; i < paths.size(); i++) {
-                TrackNodeSearchPath path = paths.get(i);
-                if (path.foundEnd) {
-                    continue;
-                }
+        SearchNode<TrackNode, TrackConnection> end = search(TRACK_GRAPH, startNode, selected, MAX_SEARCH_DISTANCE);
+        return (end == null) ? null : new TrackNodeSearchPath(end);
+    }
 
-                // Stop working on branches exceeding the best cost we've already found
-                if (bestPath != null && path.searchDistance >= bestPath.searchDistance) {
-                    path.foundEnd = true;
-                    continue;
-                }
+    /**
+     * Performs Dijkstra's algorithm on a graph, looking for the nearest node that is selected.
+     * Only parent pointers are tracked while searching, the full path is only reconstructed
+     * once a selected node is found.<br>
+     * <br>
+     * Every node visited is given an index into arrays storing the search state, and the
+     * queue is a binary heap of these indices. The index is stored in the node itself, so
+     * no map lookups or objects per node are needed while searching.
+     *
+     * @param graph Graph to search
+     * @param startNode Node to start searching from
+     * @param selected Nodes to find
+     * @param maxDistance Maximum distance away from the start node to search
+     * @return Search node of the nearest selected node found, or null if none was found
+     */
+    static <N, C> SearchNode<N, C> search(SearchGraph<N, C> graph, N startNode, Set<N> selected, double maxDistance) {
+        if (++lastSearchId == 0) {
+            lastSearchId = 1; // 0 is used by nodes never searched
+        }
+        SearchState state = new SearchState(lastSearchId);
+        graph.setSearchIndex(startNode, state.searchId, state.add(startNode, null, -1, 0.0));
+
+        int current;
+        while ((current = state.poll()) != -1) {
+            @SuppressWarnings("unchecked")
+            N node = (N) state.nodes[current];
+
+            // Found the nearest selected node
+            if (selected.contains(node)) {
+                return state.createSearchNode(current);
+            }
+
+            // All remaining nodes in the queue are further away than this
+            double currentDistance = state.distance[current];
+            if (currentDistance >= maxDistance) {
+                break;
+            }
 
-                // Abort the search if the path exceeds the maximum permitted distance
-                if (path.searchDistance >= MAX_SEARCH_DISTANCE) {
-                    path.foundEnd = true;
-                    continue;
+            for (C connection : graph.getConnections(node)) {
+                N neighbour = graph.getOtherNode(connection, node);
+                double distance = currentDistance + graph.getDistance(node, neighbour);
+                int index = graph.getSearchIndex(neighbour, state.searchId);
+                if (index == -1) {
+                    graph.setSearchIndex(neighbour, state.searchId, state.add(neighbour, connection, current, distance));
+                } else if (!state.settled[index] && distance < state.distance[index]) {
+                    state.update(index, connection, current, distance);
                 }
+            }
+        }
 
-                // Still got more to do - reset finished flag
-                finished = false;
+        return null;
+    }
 
-                // Find the next node in the path to look at
-                TrackNode nextNode = null;
-                TrackConnection nextConnection = null;
-                for (TrackConnection connection : path.current.getConnections()) {
-                    TrackNode neighbour =  connection.getOtherNode(path.current);
-                    if (path.path.contains(neighbour)) {
-                        continue; // already traversed / we got from there
-                    }
+    /**
+     * The nodes and connections searched through by {@link #search(SearchGraph, Object, Set, double)}
+     *
+     * @param <N> Node type
+     * @param <C> Connection type
+     */
+    interface SearchGraph<N, C> {
+        Iterable<C> getConnections(N node);
+        N getOtherNode(C connection, N node);
+        double getDistance(N nodeA, N nodeB);
 
-                    // Continue from next node. But if this is a splice into multiple paths,
-                    // add additional node paths for all of those.
-                    if (nextNode == null) {
-                        nextNode = neighbour;
-                        nextConnection = connection;
-                    } else {
-                        // Create a new branch, cloning this one as a base
-                        TrackNodeSearchPath branch = new TrackNodeSearchPath(path);
-                        branch.next(neighbour, connection);
-                        if (selected.contains(neighbour)) {
-                            branch.foundEnd = branch.foundSelection = true;
-                            if (bestPath == null || bestPath.searchDistance > branch.searchDistance) {
-                                bestPath = branch;
-                            }
-                        }
-                        paths.add(branch);
+        /**
+         * Gets the index of a node in the search state, which was set using
+         * {@link #setSearchIndex(Object, int, int)} during the same search
+         *
+         * @param node Node
+         * @param searchId Id of the current search
+         * @return index, or -1 if the node was not yet visited during this search
+         */
+        int getSearchIndex(N node, int searchId);
+
+        /**
+         * Sets the index of a node in the search state
+         *
+         * @param node Node
+         * @param searchId Id of the current search
+         * @param index Index to set
+         */
+        void setSearchIndex(N node, int searchId, int index);
+    }
+
+    private static final SearchGraph<TrackNode, TrackConnection> TRACK_GRAPH = new SearchGraph<TrackNode, TrackConnection>() {
+        @Override
+        public Iterable<TrackConnection> getConnections(TrackNode node) {
+            return node.getConnections();
+        }
+
+        @Override
+        public TrackNode getOtherNode(TrackConnection connection, TrackNode node) {
+            return connection.getOtherNode(node);
+        }
+
+        @Override
+        public double getDistance(TrackNode nodeA, TrackNode nodeB) {
+            return nodeA.getPosition().distance(nodeB.getPosition());
+        }
+
+        @Override
+        public int getSearchIndex(TrackNode node, int searchId) {
+            return (node._searchId == searchId) ? node._searchIndex : -1;
+        }
+
+        @Override
+        public void setSearchIndex(TrackNode node, int searchId, int index) {
+            node._searchId = searchId;
+            node._searchIndex = index;
+        }
+    };
+
+    /**
+     * Stores the state of all nodes visited during a search in arrays, indexed by the
+     * order in which the nodes were first visited. Keeps a binary min-heap of node
+     * indices sorted by distance. When a shorter route to a node is found, the node is
+     * added to the heap again, and the older heap entry is skipped when polled.
+     */
+    private static final class SearchState {
+        public final int searchId;
+        public Object[] nodes = new Object[64];
+        public Object[] connections = new Object[64];
+        public int[] parent = new int[64];
+        public double[] distance = new double[64];
+        public boolean[] settled = new boolean[64];
+        public int count = 0;
+        private double[] heapDistance = new double[64];
+        private int[] heapIndex = new int[64];
+        private int heapSize = 0;
+
+        public SearchState(int searchId) {
+            this.searchId = searchId;
+        }
+
+        public int add(Object node, Object connection, int parent, double distance) {
+            if (this.count == this.nodes.length) {
+                int newLength = this.count * 2;
+                this.nodes = Arrays.copyOf(this.nodes, newLength);
+                this.connections = Arrays.copyOf(this.connections, newLength);
+                this.parent = Arrays.copyOf(this.parent, newLength);
+                this.distance = Arrays.copyOf(this.distance, newLength);
+                this.settled = Arrays.copyOf(this.settled, newLength);
+            }
+            int index = this.count++;
+            this.nodes[index] = node;
+            update(index, connection, parent, distance);
+            return index;
+        }
+
+        public void update(int index, Object connection, int parent, double distance) {
+            this.connections[index] = connection;
+            this.parent[index] = parent;
+            this.distance[index] = distance;
+            push(index, distance);
+        }
+
+        /**
+         * Removes the node nearest to the start node from the queue, and marks it settled
+         *
+         * @return index of the node, -1 if the queue is empty
+         */
+        public int poll() {
+            while (this.heapSize > 0) {
+                int index = this.heapIndex[0];
+                double distance = this.heapDistance[0];
+                int lastIndex = this.heapIndex[--this.heapSize];
+                double lastDistance = this.heapDistance[this.heapSize];
+
+                // Sift the last entry down from the root
+                int pos = 0;
+                int child;
+                while ((child = 2 * pos + 1) < this.heapSize) {
+                    if (child + 1 < this.heapSize && this.heapDistance[child + 1] < this.heapDistance[child]) {
+                        child++;
+                    }
+                    if (lastDistance <= this.heapDistance[child]) {
+                        break;
                     }
+                    this.heapIndex[pos] = this.heapIndex[child];
+                    this.heapDistance[pos] = this.heapDistance[child];
+                    pos = child;
                 }
+                this.heapIndex[pos] = lastIndex;
+                this.heapDistance[pos] = lastDistance;
 
-                if (nextNode == null) {
-                    path.foundEnd = true;
-                } else {
-                    path.next(nextNode, nextConnection);
-                    if (selected.contains(nextNode)) {
-                        path.foundEnd = path.foundSelection = true;
-                        if (bestPath == null || bestPath.searchDistance > path.searchDistance) {
-                            bestPath = path;
-                        }
-                    }
+                // Skip outdated entries, for which a shorter route was found
+                if (!this.settled[index] && distance == this.distance[index]) {
+                    this.settled[index] = true;
+                    return index;
                 }
             }
+            return -1;
         }
 
-        return bestPath;
+        private void push(int index, double distance) {
+            if (this.heapSize == this.heapIndex.length) {
+                this.heapIndex = Arrays.copyOf(this.heapIndex, this.heapSize * 2);
+                this.heapDistance = Arrays.copyOf(this.heapDistance, this.heapSize * 2);
+            }
+
+            // Sift up from the end
+            int pos = this.heapSize++;
+            while (pos > 0) {
+                int parentPos = (pos - 1) >> 1;
+                if (this.heapDistance[parentPos] <= distance) {
+                    break;
+                }
+                this.heapIndex[pos] = this.heapIndex[parentPos];
+                this.heapDistance[pos] = this.heapDistance[parentPos];
+                pos = parentPos;
+            }
+            this.heapIndex[pos] = index;
+            this.heapDistance[pos] = distance;
+        }
+
+        /**
+         * Creates the search nodes of the path from the start node to a node
+         *
+         * @param index Index of the node at the end of the path
+         * @return search node of the node at the end of the path
+         */
+        @SuppressWarnings("unchecked")
+        public <N, C> SearchNode<N, C> createSearchNode(int index) {
+            int[] path = new int[16];
+            int length = 0;
+            for (int i = index; i != -1; i = this.parent[i]) {
+                if (length == path.length) {
+                    path = Arrays.copyOf(path, length * 2);
+                }
+                path[length++] = i;
+            }
+
+            SearchNode<N, C> result = null;
+            while (--length >= 0) {
+                int i = path[length];
+                result = new SearchNode<N, C>((N) this.nodes[i], result, (C) this.connections[i], this.distance[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A node of the path found by a search, with the node before it in the path
+     */
+    static final class SearchNode<N, C> {
+        public final N node;
+        public final SearchNode<N, C> parent;
+        public final C connection;
+        public final double distance;
+
+        public SearchNode(N node, SearchNode<N, C> parent, C connection, double distance) {
+            this.node = node;
+            this.parent = parent;
+            this.connection = connection;
+            this.distance = distance;
+        }
     }
 }
@@ -103,6 +103,34 @@ public class TrackNodeSign implements Cloneable {
         }
     }
 
+    /**
+     * Un-binds this sign from its node because the coaster is unloaded, to be loaded again
+     * later. Unlike un-binding it using {@link #updateBinding(TCCoasters, TrackNodeBinding)},
+     * no destroy event is fired, and the power channels of this sign are suspended so that
+     * their power state is kept.
+     *
+     * @param plugin TC-Coasters plugin instance
+     * @param suspendKey Key the power channels are suspended with
+     */
+    void unload(TCCoasters plugin, String suspendKey) {
+        this.cachedFakeSign = null;
+        plugin.getSignLookup().remove(this);
+
+        if (this.binding.isActive()) {
+            for (NamedPowerChannel channel : this.inputPowerChannels) {
+                channel.suspendRecipient(this.binding.world().getNamedPowerChannels(), Recipient.ofSignInput(this), suspendKey);
+            }
+            for (NamedPowerChannel channel : this.outputPowerChannels) {
+                channel.suspendRecipient(this.binding.world().getNamedPowerChannels(), Recipient.ofSignOutput(this), suspendKey);
+            }
+
+            // Refresh rail cache when the sign is removed
+            invalidateCachedSignsOfNode(this.binding.node());
+        }
+
+        this.binding = TrackNodeBinding.NONE;
+    }
+
     private static void invalidateCachedSignsOfNode(TrackNode node) {
         OfflineBlock railBlock = node.getOfflineWorld().getBlockAt(node.getRailBlock(true));
         RailLookup.CachedRailPiece piece = RailLookup.lookupCachedRailPieceIfCached(railBlock, node.getPlugin().getRailType());
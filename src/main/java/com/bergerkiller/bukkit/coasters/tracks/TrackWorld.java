@@ -1,23 +1,34 @@
 package com.bergerkiller.bukkit.coasters.tracks;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
 import com.bergerkiller.bukkit.coasters.objects.TrackObject;
+import com.bergerkiller.bukkit.coasters.objects.TrackObjectRemovalBatch;
 import com.bergerkiller.bukkit.coasters.rails.TrackRailsWorld;
 import com.google.common.collect.Iterables;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.util.Vector;
 
 import com.bergerkiller.bukkit.coasters.TCCoasters;
+import com.bergerkiller.bukkit.coasters.animation.TrackAnimationWorld;
+import com.bergerkiller.bukkit.coasters.csv.TrackFileFormat;
+import com.bergerkiller.bukkit.coasters.particles.TrackParticleWorld;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorld;
 import com.bergerkiller.bukkit.coasters.world.CoasterWorldComponent;
 import com.bergerkiller.bukkit.common.math.Matrix4x4;
@@ -34,6 +45,9 @@ public class TrackWorld implements CoasterWorldComponent {
     private final NodeUpdateList _changedNodes = new NodeUpdateList();
     private final NodeUpdateList _changedNodesPriority = new NodeUpdateList();
     private final LoadMetrics _loadMetrics = new LoadMetrics();
+    private CoasterBoundsIndex _boundsIndex = null;
+    private long _nextUnloadCheckTime = 0;
+    private static final long UNLOAD_CHECK_INTERVAL_MILLIS = 10000;
 
     public TrackWorld(CoasterWorld world) {
         this._world = world;
@@ -46,7 +60,8 @@ public class TrackWorld implements CoasterWorldComponent {
     }
 
     /**
-     * Gets a list of all coasters on this world
+     * Gets a list of all coasters on this world. When coasters are loaded lazily,
+     * this only includes the coasters that are loaded.
      * 
      * @return coasters
      */
@@ -66,7 +81,7 @@ public class TrackWorld implements CoasterWorldComponent {
                 return coaster;
             }
         }
-        return null;
+        return loadPendingCoaster(name);
     }
 
     /**
@@ -81,7 +96,42 @@ public class TrackWorld implements CoasterWorldComponent {
                 return coaster;
             }
         }
-        return null;
+        return loadPendingCoaster(name);
+    }
+
+    /**
+     * Gets the bounds of the nodes of a coaster by a given name. If the coaster is
+     * not loaded, the bounds stored in the bounds index file are returned, without
+     * loading the coaster.
+     *
+     * @param name Name of the coaster
+     * @return coaster bounds, or null if the coaster does not exist or was never saved
+     */
+    public TrackCoasterBounds findCoasterBounds(String name) {
+        for (TrackCoaster coaster: this._coasters) {
+            if (coaster.getName().equals(name)) {
+                return coaster.getBounds();
+            }
+        }
+        CoasterBoundsIndex.Entry entry = (this._boundsIndex == null) ? null : this._boundsIndex.get(name);
+        return (entry == null) ? null : entry.bounds;
+    }
+
+    /**
+     * Gets whether a coaster by a given name exists on this world. Unlike
+     * {@link #findCoaster(String)}, this does not load the coaster if it is
+     * not loaded yet.
+     *
+     * @param name Name of the coaster
+     * @return True if the coaster exists
+     */
+    public boolean hasCoaster(String name) {
+        for (TrackCoaster coaster: this._coasters) {
+            if (coaster.getName().equals(name)) {
+                return true;
+            }
+        }
+        return this._boundsIndex != null && this._boundsIndex.isPending(name);
     }
 
     /**
@@ -283,6 +333,11 @@ public class TrackWorld implements CoasterWorldComponent {
      * This makes sure that when creating links, the 'straightened' effect of the
      * node is preferred instead of creating random broken junctions.
      *
+     * <br>
+     * When coasters are loaded lazily, coasters not yet loaded whose area includes the
+     * position are loaded, so that changes in the edit history of players can still
+     * be undone and redone after the coaster was unloaded.
+     *
      * @param position Node position
      * @param excludedNode If multiple track nodes exist at a position, makes sure to
      *                     exclude this node. Ignored if null.
@@ -295,6 +350,27 @@ public class TrackWorld implements CoasterWorldComponent {
                 return node;
             }
         }
+
+        // Load coasters that might have a node at this position, and look again in those
+        if (this._boundsIndex != null && this._boundsIndex.hasPending()) {
+            List<String> names = new ArrayList<>();
+            for (String name : this._boundsIndex.getPendingInChunk(position.getBlockX() >> 4, position.getBlockZ() >> 4)) {
+                CoasterBoundsIndex.Entry entry = this._boundsIndex.get(name);
+                if (entry != null && entry.bounds.contains(position, 1e-4)) {
+                    names.add(name);
+                }
+            }
+            if (!names.isEmpty()) {
+                int numLoaded = this._coasters.size();
+                loadPendingCoasters(names);
+                for (int i = numLoaded; i < this._coasters.size(); i++) {
+                    TrackNode node = this._coasters.get(i).findNodeExact(position, excludedNode);
+                    if (node != null) {
+                        return node;
+                    }
+                }
+            }
+        }
         return null;
     }
 
@@ -321,7 +397,15 @@ public class TrackWorld implements CoasterWorldComponent {
      * @param coaster  The coaster to remove
      */
     public void removeCoaster(TrackCoaster coaster) {
-        coaster.clear();
+        if (this._boundsIndex != null) {
+            this._boundsIndex.remove(coaster.getName());
+        }
+        TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+        try {
+            coaster.clear();
+        } finally {
+            removalBatch.finish();
+        }
         this._coasters.remove(coaster);
     }
 
@@ -653,23 +737,29 @@ public class TrackWorld implements CoasterWorldComponent {
         scheduleNodeRefresh(node);
 
         // Also perform proper removal logic of the connections themselves
-        for (TrackConnection conn : connections) {
-            TrackNode other = conn.getOtherNode(node);
+        // Objects removed along with the connections are de-selected all at once
+        TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+        try {
+            for (TrackConnection conn : connections) {
+                TrackNode other = conn.getOtherNode(node);
 
-            // Remove all connections from the other node
-            removeConnectionFromNode(other, conn);
+                // Remove all connections from the other node
+                removeConnectionFromNode(other, conn);
 
-            // Remove from animations also
-            if (fromAnimations && other.hasAnimationStates()) {
-                other.removeAnimationStateConnection(null, node);
-            }
+                // Remove from animations also
+                if (fromAnimations && other.hasAnimationStates()) {
+                    other.removeAnimationStateConnection(null, node);
+                }
 
-            // Schedule refresh of other node
-            scheduleNodeRefresh(other);
+                // Schedule refresh of other node
+                scheduleNodeRefresh(other);
 
-            // Destroy connection
-            conn.onRemoved();
-            conn.markChanged();
+                // Destroy connection
+                conn.onRemoved();
+                conn.markChanged();
+            }
+        } finally {
+            removalBatch.finish();
         }
     }
 
@@ -688,12 +778,19 @@ public class TrackWorld implements CoasterWorldComponent {
      */
     public void clear() {
         // Perform clearing logic
-        for (TrackCoaster coaster : this._coasters) {
-            coaster.clear();
+        TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+        try {
+            for (TrackCoaster coaster : this._coasters) {
+                coaster.clear();
+            }
+        } finally {
+            removalBatch.finish();
         }
         this._coasters.clear();
+        this.getWorld().getNamedPowerChannels().resumeAllSuspended();
         this._changedNodes.clear();
         this._changedNodesPriority.clear();
+        this._boundsIndex = null;
         this.rebuild();
     }
 
@@ -705,25 +802,67 @@ public class TrackWorld implements CoasterWorldComponent {
 
         long startTimeNanos = System.nanoTime();
 
-        // List all coasters saved on disk. List both .csv and .csv.tmp coasters.
-        HashSet<String> coasterNames = new HashSet<String>();
+        // List all coasters saved on disk. List both .csv and .csv.tmp coasters, and the same
+        // for all other file formats coasters can be saved in.
+        Set<String> coasterNames = new HashSet<String>();
         File[] filesInFolder = this.getWorld().getConfigFolder().listFiles();
         if (filesInFolder != null) {
             for (File coasterFile : filesInFolder) {
                 String name = coasterFile.getName();
-                if (name.endsWith(".csv.tmp")) {
-                    coasterNames.add(TCCoasters.unescapeName(name.substring(0, name.length() - 8)));
-                } else if (name.endsWith(".csv")) {
-                    coasterNames.add(TCCoasters.unescapeName(name.substring(0, name.length() - 4)));
+                if (name.endsWith(".tmp")) {
+                    name = name.substring(0, name.length() - 4);
+                }
+                for (TrackFileFormat format : TrackFileFormat.values()) {
+                    if (name.endsWith(format.getExtension())) {
+                        coasterNames.add(TCCoasters.unescapeName(name.substring(0, name.length() - format.getExtension().length())));
+                        break;
+                    }
                 }
             }
         }
 
+        // Read the bounds of all coasters saved previously
+        this._boundsIndex = new CoasterBoundsIndex(this.getWorld().getConfigFolder());
+        try {
+            this._boundsIndex.load();
+        } catch (IOException ex) {
+            this.getPlugin().getLogger().log(Level.WARNING, "Failed to read coaster bounds index of world " +
+                    this.getBukkitWorld().getName(), ex);
+        }
+
+        // When coasters are loaded lazily, only load the coasters in chunks that are loaded right now
+        // If any coaster is not indexed, or changed since it was indexed, all coasters are loaded
+        // once. It is not known what other coasters it links with, and those links would be lost.
+        if (this.getPlugin().isLazyCoasterLoadingEnabled()) {
+            if (coasterNames.stream().allMatch(this._boundsIndex::isUpToDate)) {
+                coasterNames.forEach(this._boundsIndex::addPending);
+                coasterNames.clear();
+                for (Chunk chunk : this.getBukkitWorld().getLoadedChunks()) {
+                    coasterNames.addAll(this._boundsIndex.getPendingInChunk(chunk.getX(), chunk.getZ()));
+                }
+                coasterNames = collectLinkedPendingCoasters(coasterNames);
+            }
+        }
+
         // Build and load the base of all coasters
+        loadCoasters(coasterNames);
+
+        _loadMetrics.loadTimeSeconds = (double) (System.nanoTime() - startTimeNanos) / 1000000000.0;
+
+        // Apply pending node changes and rebuild all track-rail information
+        rebuild();
+    }
+
+    private void loadCoasters(Collection<String> coasterNames) {
+        List<TrackCoaster> coasters = new ArrayList<>(coasterNames.size());
         List<TrackCoaster.CoasterLoadFinalizeAction> finalizeActions = new ArrayList<>(coasterNames.size());
         for (String name : coasterNames) {
+            if (this._boundsIndex != null) {
+                this._boundsIndex.removePending(name);
+            }
             TrackCoaster coaster = new TrackCoaster(this.getWorld(), name);
             this._coasters.add(coaster);
+            coasters.add(coaster);
             finalizeActions.add(coaster.loadBase());
         }
 
@@ -731,15 +870,156 @@ public class TrackWorld implements CoasterWorldComponent {
         finalizeActions.forEach(TrackCoaster.CoasterLoadFinalizeAction::finishCoaster);
 
         // Mark all coasters as unchanged
-        for (TrackCoaster coaster : this._coasters) {
+        // Power channels suspended when the coasters were unloaded before are registered again
+        for (TrackCoaster coaster : coasters) {
             coaster.refreshConnections();
             coaster.markUnchanged();
+            if (this._boundsIndex != null) {
+                this._boundsIndex.update(coaster);
+            }
+            this.getWorld().getNamedPowerChannels().resumeSuspended(coaster.getName());
         }
+    }
 
-        _loadMetrics.loadTimeSeconds = (double) (System.nanoTime() - startTimeNanos) / 1000000000.0;
+    /**
+     * Loads the coasters that were not loaded yet because coasters are loaded lazily,
+     * and whose area includes a chunk. Is called when chunks load.
+     *
+     * @param chunkX Chunk X-coordinate
+     * @param chunkZ Chunk Z-coordinate
+     */
+    public void loadCoastersInChunk(int chunkX, int chunkZ) {
+        if (this._boundsIndex != null && this._boundsIndex.hasPending()) {
+            List<String> names = this._boundsIndex.getPendingInChunk(chunkX, chunkZ);
+            if (!names.isEmpty()) {
+                loadPendingCoasters(names);
+            }
+        }
+    }
 
-        // Apply pending node changes and rebuild all track-rail information
-        rebuild();
+    private TrackCoaster loadPendingCoaster(String name) {
+        if (this._boundsIndex == null || !this._boundsIndex.isPending(name)) {
+            return null;
+        }
+        loadPendingCoasters(Collections.singletonList(name));
+        for (TrackCoaster coaster : this._coasters) {
+            if (coaster.getName().equals(name)) {
+                return coaster;
+            }
+        }
+        return null;
+    }
+
+    // Loads coasters that were not loaded yet because coasters are loaded lazily
+    // The rails of the loaded nodes are updated right away, so trains can use them this tick
+    private void loadPendingCoasters(Collection<String> names) {
+        loadCoasters(collectLinkedPendingCoasters(names));
+        runAllUpdates(this._changedNodes, true);
+    }
+
+    // Coasters connected with each other must be loaded together, otherwise the links are lost
+    private Set<String> collectLinkedPendingCoasters(Collection<String> names) {
+        Set<String> result = new LinkedHashSet<>(names);
+        ArrayDeque<String> remaining = new ArrayDeque<>(names);
+        while (!remaining.isEmpty()) {
+            CoasterBoundsIndex.Entry entry = this._boundsIndex.get(remaining.poll());
+            if (entry != null) {
+                for (String link : entry.links) {
+                    if (this._boundsIndex.isPending(link) && result.add(link)) {
+                        remaining.add(link);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unloads the coasters that are loaded lazily, when no chunk inside their area
+     * has been loaded for the configured unload delay. Coasters connected with each
+     * other are only unloaded together, and not while they have unsaved changes or
+     * nodes are selected by players.
+     */
+    private void unloadInactiveCoasters() {
+        long delay = 1000L * this.getPlugin().getLazyCoasterUnloadDelay();
+        if (delay <= 0 || this._coasters.isEmpty()) {
+            return;
+        }
+
+        // Track when coasters were last in a loaded chunk
+        long now = System.currentTimeMillis();
+        for (Chunk chunk : this.getBukkitWorld().getLoadedChunks()) {
+            this._boundsIndex.markActiveInChunk(chunk.getX(), chunk.getZ(), now);
+        }
+
+        // Nodes selected by players can not be unloaded
+        Set<TrackCoaster> editedCoasters = new HashSet<>();
+        this.getPlugin().forAllEditStates(editState -> {
+            for (TrackNode node : editState.getEditedNodes()) {
+                editedCoasters.add(node.getCoaster());
+            }
+        });
+
+        // Find groups of connected coasters that have all been inactive for long enough
+        // The links stored in the index are up to date, as coasters with unsaved changes are kept
+        Map<String, TrackCoaster> coastersByName = new HashMap<>(this._coasters.size());
+        for (TrackCoaster coaster : this._coasters) {
+            coastersByName.put(coaster.getName(), coaster);
+        }
+        Set<TrackCoaster> visited = new HashSet<>();
+        List<List<TrackCoaster>> groupsToUnload = new ArrayList<>();
+        for (TrackCoaster coaster : this._coasters) {
+            if (visited.contains(coaster)) {
+                continue;
+            }
+
+            List<TrackCoaster> group = new ArrayList<>();
+            boolean canUnload = true;
+            ArrayDeque<TrackCoaster> remaining = new ArrayDeque<>();
+            remaining.add(coaster);
+            visited.add(coaster);
+            while (!remaining.isEmpty()) {
+                TrackCoaster groupCoaster = remaining.poll();
+                group.add(groupCoaster);
+                CoasterBoundsIndex.Entry entry = this._boundsIndex.get(groupCoaster.getName());
+                if (entry == null || (now - entry.lastActiveTime) < delay ||
+                    groupCoaster.hasUnsavedChanges() || editedCoasters.contains(groupCoaster)
+                ) {
+                    canUnload = false;
+                }
+                if (entry != null) {
+                    for (String link : entry.links) {
+                        TrackCoaster other = coastersByName.get(link);
+                        if (other != null && visited.add(other)) {
+                            remaining.add(other);
+                        }
+                    }
+                }
+            }
+            if (canUnload) {
+                groupsToUnload.add(group);
+            }
+        }
+
+        // Unload them, keeping them in the index so they load again when chunks load
+        // Signs are not destroyed, as they are still there when the coasters load again
+        for (List<TrackCoaster> group : groupsToUnload) {
+            for (TrackCoaster coaster : group) {
+                this._boundsIndex.update(coaster);
+            }
+            TrackObjectRemovalBatch removalBatch = TrackObjectRemovalBatch.start(this.getPlugin());
+            try {
+                for (TrackCoaster coaster : group) {
+                    coaster.unload();
+                }
+            } finally {
+                removalBatch.finish();
+            }
+            for (TrackCoaster coaster : group) {
+                this._coasters.remove(coaster);
+                this._boundsIndex.addPending(coaster.getName());
+            }
+        }
     }
 
     /**
@@ -811,6 +1091,14 @@ public class TrackWorld implements CoasterWorldComponent {
     public void updateAll() {
         this._changedNodesPriority.clear(); // At this stage this shouldn't even contain elements
         runAllUpdates(this._changedNodes, true);
+
+        if (this._boundsIndex != null && this.getPlugin().isLazyCoasterLoadingEnabled()) {
+            long now = System.currentTimeMillis();
+            if (now >= this._nextUnloadCheckTime) {
+                this._nextUnloadCheckTime = now + UNLOAD_CHECK_INTERVAL_MILLIS;
+                unloadInactiveCoasters();
+            }
+        }
     }
 
     /**
@@ -828,6 +1116,11 @@ public class TrackWorld implements CoasterWorldComponent {
             // Connections of changedNodes
             HashSet<TrackConnection> changedConnections = new HashSet<TrackConnection>(nodesToUpdate.size()+1);
 
+            // Track objects moved by an animation can send their changes at a reduced rate,
+            // except when the animation ends, so that the final positions are sent right away.
+            TrackAnimationWorld animations = this.getWorld().getAnimations();
+            TrackParticleWorld particles = this.getWorld().getParticles();
+
             // Remove nodes from the changed list that have been removed
             // This avoids executing logic on removed nodes, or worse, adding to the rails world
             // Refresh all the node's shape and track the connections that also changed
@@ -838,6 +1131,7 @@ public class TrackWorld implements CoasterWorldComponent {
                     continue;
                 }
 
+                particles.setAnimating(animations.isAnimating(changedNode));
                 try {
                     changedNode.onShapeUpdated();
                 } catch (Throwable t) {
@@ -849,6 +1143,8 @@ public class TrackWorld implements CoasterWorldComponent {
             }
 
             for (TrackConnection changedConnection : changedConnections) {
+                particles.setAnimating(animations.isAnimating(changedConnection.getNodeA()) ||
+                                       animations.isAnimating(changedConnection.getNodeB()));
                 try {
                     changedConnection.onShapeUpdated();
                 } catch (Throwable t) {
@@ -857,6 +1153,7 @@ public class TrackWorld implements CoasterWorldComponent {
                             changedConnection.getNodeB().getPosition() + "]", t);
                 }
             }
+            particles.setAnimating(false);
 
             if (updateRails) {
                 // Purge all cached rail information for the changed nodes
@@ -926,25 +1223,61 @@ public class TrackWorld implements CoasterWorldComponent {
         Iterator<TrackCoaster> iter = this._coasters.iterator();
         while (iter.hasNext()) {
             TrackCoaster coaster = iter.next();
-            if (coaster.getNodes().isEmpty()) {
+            if (coaster.isImporting()) {
+                continue; // Saved once importing finishes, not while it is partially created
+            } else if (coaster.getNodes().isEmpty()) {
+                coaster.waitForPendingSave();
                 coaster.clear();
                 iter.remove();
+                if (this._boundsIndex != null) {
+                    this._boundsIndex.remove(coaster.getName());
+                }
 
                 // Deletes the physical saved files of the coasters
                 String baseName = TCCoasters.escapeName(coaster.getName());
                 File folder = this.getWorld().getConfigFolder(true);
-                File tmpFile = new File(folder, baseName + ".csv.tmp");
-                File realFile = new File(folder, baseName + ".csv");
-                if (tmpFile.exists()) {
-                    tmpFile.delete();
+                for (TrackFileFormat format : TrackFileFormat.values()) {
+                    File tmpFile = new File(folder, baseName + format.getExtension() + ".tmp");
+                    File realFile = new File(folder, baseName + format.getExtension());
+                    if (tmpFile.exists()) {
+                        tmpFile.delete();
+                    }
+                    if (realFile.exists()) {
+                        realFile.delete();
+                    }
                 }
-                if (realFile.exists()) {
-                    realFile.delete();
+                File journalFile = new File(folder, baseName + TrackCoaster.JOURNAL_EXTENSION);
+                if (journalFile.exists()) {
+                    journalFile.delete();
                 }
+            } else if (this._boundsIndex != null && (!autosave || coaster.hasUnsavedChanges())) {
+                coaster.save(autosave);
+                this._boundsIndex.update(coaster);
             } else {
                 coaster.save(autosave);
             }
         }
+
+        if (this._boundsIndex != null) {
+            try {
+                this._boundsIndex.save();
+            } catch (IOException ex) {
+                this.getPlugin().getLogger().log(Level.WARNING, "Failed to save coaster bounds index of world " +
+                        this.getBukkitWorld().getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Called when a coaster finished saving on another thread during autosave.
+     * Updates the coaster bounds index with the size of the newly saved file.
+     *
+     * @param coaster Coaster that was saved
+     */
+    void onCoasterSaved(TrackCoaster coaster) {
+        if (this._boundsIndex != null && this._coasters.contains(coaster)) {
+            this._boundsIndex.update(coaster);
+        }
     }
 
     private static void addConnectionToNode(TrackNode node, TrackConnection connection) {
@@ -1,11 +1,15 @@
 package com.bergerkiller.bukkit.coasters.util;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
 
 public class CSVFormatDetectorStream extends InputStream {
-    private final InputStream _input;
+    private InputStream _input;
     private byte[] _prebuffer_bytes;
     private int _prebuffer_pos;
     private char _separator;
@@ -20,11 +24,15 @@ public class CSVFormatDetectorStream extends InputStream {
     }
 
     /**
-     * Reads the base input stream to detect the CSV format that is used
+     * Reads the base input stream to detect the CSV format that is used.
+     * If the input is compressed, it is decompressed while it is read.
+     * A UTF-8 byte order mark at the start of the input is skipped.
      * 
      * @throws IOException
      */
     public void detect() throws IOException {
+        this._input = skipByteOrderMark(decompress(this._input));
+
         ByteArrayOutputStream prebuffer = new ByteArrayOutputStream();
 
         FormatDetector bestDetector = null;
@@ -83,6 +91,76 @@ public class CSVFormatDetectorStream extends InputStream {
         return this._ignoreQuotes;
     }
 
+    /**
+     * Checks whether an input stream starts with a gzip header. If it does, returns a stream
+     * that decompresses the data while it is read. Otherwise, returns a stream that reads
+     * the same data as the input stream.
+     *
+     * @param input Input stream
+     * @return input stream, decompressed if compressed
+     * @throws IOException
+     */
+    public static InputStream decompress(InputStream input) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(input, 2);
+        int b0 = pushback.read();
+        int b1 = (b0 == -1) ? -1 : pushback.read();
+        if (b1 != -1) {
+            pushback.unread(b1);
+        }
+        if (b0 != -1) {
+            pushback.unread(b0);
+        }
+        if (isGZIPHeader(b0, b1)) {
+            return new GZIPInputStream(pushback, 65536);
+        } else {
+            return pushback;
+        }
+    }
+
+    /**
+     * Skips the UTF-8 byte order mark some text editors write at the start of a file.
+     * If there is none, returns a stream that reads the same data as the input stream.
+     *
+     * @param input Input stream
+     * @return input stream, without byte order mark
+     * @throws IOException
+     */
+    private static InputStream skipByteOrderMark(InputStream input) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(input, 3);
+        byte[] start = new byte[3];
+        int len = 0;
+        for (int n; len < start.length && (n = pushback.read(start, len, start.length - len)) != -1;) {
+            len += n;
+        }
+        if (len == 3 && start[0] == (byte) 0xEF && start[1] == (byte) 0xBB && start[2] == (byte) 0xBF) {
+            return pushback;
+        }
+        if (len > 0) {
+            pushback.unread(start, 0, len);
+        }
+        return pushback;
+    }
+
+    /**
+     * Checks whether a file starts with a gzip header, and must be decompressed
+     * before it can be read
+     *
+     * @param file File to check
+     * @return True if the file is compressed
+     * @throws IOException
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            int b0 = input.read();
+            int b1 = (b0 == -1) ? -1 : input.read();
+            return isGZIPHeader(b0, b1);
+        }
+    }
+
+    private static boolean isGZIPHeader(int b0, int b1) {
+        return b0 == (GZIPInputStream.GZIP_MAGIC & 0xFF) && b1 == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
     @Override
     public int read() throws IOException {
         if (this._prebuffer_bytes == null) {
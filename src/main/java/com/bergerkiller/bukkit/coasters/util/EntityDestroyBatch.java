@@ -0,0 +1,123 @@
+package com.bergerkiller.bukkit.coasters.util;
+
+import java.util.Arrays;
+
+import org.bukkit.entity.Player;
+
+import com.bergerkiller.bukkit.common.utils.PacketUtil;
+import com.bergerkiller.generated.net.minecraft.network.protocol.game.ClientboundRemoveEntitiesPacketHandle;
+
+/**
+ * Collects the entity ids destroyed for a single viewer, and sends them in a single
+ * remove entities packet once finished. While a batch is started, calls to
+ * {@link #destroy(Player, int)} for the same viewer on the same thread are added
+ * to the batch. Otherwise, the destroy packet is sent right away.<br>
+ * <br>
+ * Entities destroyed in a batch should not be spawned again before the batch
+ * finishes, as the client would then remove the newly spawned entity.
+ */
+public final class EntityDestroyBatch {
+    private static EntityDestroyBatch active = null;
+    private final EntityDestroyBatch previous;
+    private final Thread thread;
+    private final Player viewer;
+    private int[] entityIds = new int[16];
+    private int count = 0;
+
+    private EntityDestroyBatch(EntityDestroyBatch previous, Player viewer) {
+        this.previous = previous;
+        this.thread = Thread.currentThread();
+        this.viewer = viewer;
+    }
+
+    /**
+     * Starts collecting the entities destroyed for a viewer. The returned batch must be
+     * finished using {@link #finish()}, preferably in a finally block.
+     *
+     * @param viewer Viewer to collect destroyed entities for
+     * @return started batch
+     */
+    public static EntityDestroyBatch start(Player viewer) {
+        return active = new EntityDestroyBatch(active, viewer);
+    }
+
+    /**
+     * Gets the number of entities destroyed in this batch so far
+     *
+     * @return destroyed entity count
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Sends the packets to destroy all entities collected in this batch, and
+     * stops collecting them.
+     *
+     * @return number of packets sent
+     */
+    public int finish() {
+        if (active == this) {
+            active = this.previous;
+        }
+        int count = this.count;
+        this.count = 0;
+        if (count == 0) {
+            return 0;
+        } else if (count == 1) {
+            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.entityIds[0]));
+            return 1;
+        } else {
+            return sendDestroyPackets(this.viewer, Arrays.copyOf(this.entityIds, count));
+        }
+    }
+
+    /**
+     * Destroys an entity for a viewer. If a batch was started for this viewer,
+     * the entity is destroyed when the batch finishes.
+     *
+     * @param viewer Viewer
+     * @param entityId Entity Id to destroy
+     */
+    public static void destroy(Player viewer, int entityId) {
+        EntityDestroyBatch batch = active;
+        if (batch != null && batch.viewer == viewer && batch.thread == Thread.currentThread()) {
+            if (batch.count == batch.entityIds.length) {
+                batch.entityIds = Arrays.copyOf(batch.entityIds, batch.count * 2);
+            }
+            batch.entityIds[batch.count++] = entityId;
+        } else {
+            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(entityId));
+        }
+    }
+
+    /**
+     * Destroys multiple entities for a viewer. If a batch was started for this viewer,
+     * the entities are destroyed when the batch finishes.
+     *
+     * @param viewer Viewer
+     * @param entityIds Entity Ids to destroy
+     */
+    public static void destroy(Player viewer, int[] entityIds) {
+        EntityDestroyBatch batch = active;
+        if (batch != null && batch.viewer == viewer && batch.thread == Thread.currentThread()) {
+            for (int entityId : entityIds) {
+                destroy(viewer, entityId);
+            }
+        } else {
+            sendDestroyPackets(viewer, entityIds);
+        }
+    }
+
+    private static int sendDestroyPackets(Player viewer, int[] entityIds) {
+        if (ClientboundRemoveEntitiesPacketHandle.canDestroyMultiple()) {
+            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewMultiple(entityIds));
+            return 1;
+        } else {
+            for (int entityId : entityIds) {
+                PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(entityId));
+            }
+            return entityIds.length;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.bergerkiller.bukkit.coasters.util;
+
+/**
+ * Formats decimal numbers with a fixed maximum number of fraction digits, producing
+ * exactly the same text as a {@link java.text.DecimalFormat} with the same pattern
+ * and an English Locale. Supports simple patterns like <i>0.0#####</i> and <i>0.000000</i>,
+ * which are the ones used when writing coasters to CSV.<br>
+ * <br>
+ * Numbers are rounded half-even using their exact binary value, like DecimalFormat does.
+ * Numbers that are too large to be formatted this way are not formatted, and the
+ * caller should use DecimalFormat instead. Instances are immutable and can be used
+ * by multiple threads at once.
+ */
+public final class FixedDecimalFormatter {
+    /** Maximum number of characters written by {@link #format(double, char[], int)} */
+    public static final int MAX_LENGTH = 32;
+    private static final int MAX_FRACTION_DIGITS = 9;
+    private static final double SPLITTER = 134217729.0; // 2^27 + 1
+    private static final double MAX_SCALED_VALUE = 0x1p52; // Fraction of the scaled value must be exact
+    private static final long[] POWERS_OF_TEN = new long[MAX_FRACTION_DIGITS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private final int minFractionDigits;
+    private final int maxFractionDigits;
+    private final long scale;
+    private final double halfUnit;
+
+    private FixedDecimalFormatter(int minFractionDigits, int maxFractionDigits) {
+        this.minFractionDigits = minFractionDigits;
+        this.maxFractionDigits = maxFractionDigits;
+        this.scale = POWERS_OF_TEN[maxFractionDigits];
+        this.halfUnit = Double.parseDouble("5E-" + (maxFractionDigits + 1));
+    }
+
+    /**
+     * Creates a formatter for a DecimalFormat pattern. Only patterns consisting of a single
+     * 0 integer digit, a decimal point, zero or more 0 fraction digits and then zero or
+     * more # fraction digits are supported, with at most 9 fraction digits.
+     *
+     * @param pattern DecimalFormat pattern
+     * @return formatter, or null if the pattern is not supported
+     */
+    public static FixedDecimalFormatter forPattern(String pattern) {
+        if (!pattern.startsWith("0.")) {
+            return null;
+        }
+        int minFractionDigits = 0;
+        int maxFractionDigits = 0;
+        for (int i = 2; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '0' && minFractionDigits == maxFractionDigits) {
+                minFractionDigits++;
+                maxFractionDigits++;
+            } else if (c == '#') {
+                maxFractionDigits++;
+            } else {
+                return null;
+            }
+        }
+        if (maxFractionDigits == 0 || maxFractionDigits > MAX_FRACTION_DIGITS) {
+            return null;
+        }
+        return new FixedDecimalFormatter(minFractionDigits, maxFractionDigits);
+    }
+
+    /**
+     * Formats a number, writing the characters into a buffer
+     *
+     * @param value Value to format
+     * @param buffer Buffer to write to, must have room for at least {@link #MAX_LENGTH} characters
+     * @return number of characters written, or -1 if the value can not be formatted
+     */
+    public int format(double value, char[] buffer) {
+        return format(value, buffer, 0);
+    }
+
+    /**
+     * Formats a number, writing the characters into a buffer at an offset
+     *
+     * @param value Value to format
+     * @param buffer Buffer to write to, must have room for at least {@link #MAX_LENGTH} characters
+     *               starting at the offset
+     * @param offset Offset into the buffer to write at
+     * @return number of characters written, or -1 if the value can not be formatted
+     */
+    public int format(double value, char[] buffer, int offset) {
+        double abs = Math.abs(value);
+        double scaled = abs * this.scale;
+        if (!(scaled < MAX_SCALED_VALUE)) {
+            return -1; // Too large, infinite or NaN
+        }
+        if (abs != 0.0 && abs < 1e-200) {
+            return -1; // Avoid precision loss of the rounding error with subnormal numbers
+        }
+
+        // Round the exact value of abs * scale half-even. The product is calculated as
+        // scaled + error exactly (Dekker), and the error only matters when scaled is
+        // exactly halfway between two integers.
+        double rounded = Math.rint(scaled);
+        if (Math.abs(scaled - rounded) == 0.5) {
+            double error = productError(abs, this.scale, scaled);
+            if (abs == this.halfUnit) {
+                return -1; // DecimalFormat is inconsistent rounding this value, depending on the digit count
+            } else if (error > 0.0) {
+                rounded = Math.floor(scaled) + 1.0;
+            } else if (error < 0.0) {
+                rounded = Math.floor(scaled);
+            }
+        }
+        long units = (long) rounded;
+        long integerPart = units / this.scale;
+        long fractionPart = units % this.scale;
+
+        // Sign is written for all negative numbers, also when rounded to 0
+        int pos = offset;
+        if (value < 0.0 || (value == 0.0 && 1.0 / value < 0.0)) {
+            buffer[pos++] = '-';
+        }
+
+        // Integer digits
+        if (integerPart == 0) {
+            buffer[pos++] = '0';
+        } else {
+            int start = pos;
+            while (integerPart != 0) {
+                buffer[pos++] = (char) ('0' + (int) (integerPart % 10));
+                integerPart /= 10;
+            }
+            for (int i = start, j = pos - 1; i < j; i++, j--) {
+                char c = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = c;
+            }
+        }
+
+        // Fraction digits, omitting trailing zeroes beyond the minimum
+        int numFractionDigits = this.maxFractionDigits;
+        while (numFractionDigits > this.minFractionDigits && (fractionPart % 10) == 0) {
+            fractionPart /= 10;
+            numFractionDigits--;
+        }
+        if (numFractionDigits > 0) {
+            buffer[pos++] = '.';
+            for (int i = pos + numFractionDigits - 1; i >= pos; i--) {
+                buffer[i] = (char) ('0' + (int) (fractionPart % 10));
+                fractionPart /= 10;
+            }
+            pos += numFractionDigits;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Formats a number
+     *
+     * @param value Value to format
+     * @return formatted value, or null if the value can not be formatted
+     */
+    public String format(double value) {
+        char[] buffer = new char[MAX_LENGTH];
+        int length = format(value, buffer);
+        return (length == -1) ? null : new String(buffer, 0, length);
+    }
+
+    /**
+     * Calculates the rounding error of a * b, where product is the rounded
+     * result of a * b. Uses Veltkamp splitting, so that a * b == product + error exactly.
+     */
+    private static double productError(double a, double b, double product) {
+        double ta = SPLITTER * a;
+        double aHigh = ta - (ta - a);
+        double aLow = a - aHigh;
+        double tb = SPLITTER * b;
+        double bHigh = tb - (tb - b);
+        double bLow = b - bHigh;
+        return ((aHigh * bHigh - product) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+    }
+}
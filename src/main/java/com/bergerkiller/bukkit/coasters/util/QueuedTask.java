@@ -1,8 +1,11 @@
 package com.bergerkiller.bukkit.coasters.util;
 
 import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.IdentityHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 import com.bergerkiller.bukkit.common.collections.ImplicitlySharedSet;
@@ -11,18 +14,33 @@ import com.bergerkiller.bukkit.common.utils.CommonUtil;
 /**
  * Allows scheduling a function to be run after a set delay (or as soon as possible with
  * delay 0), on an object. The {@link #runAll()} method is called by TC-Coasters and
- * runs all the tasks scheduled after the set delay.
+ * runs all the tasks scheduled after the set delay.<br>
+ * <br>
+ * A task can be given a tick budget with {@link #setTickBudget(int, long)}. When more
+ * objects are due than fit in the budget, the remaining objects are run the next tick
+ * in the same order they were scheduled.
  *
  * @param <T>
  */
 public class QueuedTask<T> {
     private static final ImplicitlySharedSet<QueuedTask<?>> scheduled = new ImplicitlySharedSet<QueuedTask<?>>();
     private static final Precondition<Object> no_precondition = object -> { return true; };
+    private static final Collection<QueuedTask<?>> named = new CopyOnWriteArrayList<QueuedTask<?>>();
     private final int delay;
     private final Precondition<T> precondition;
     private final Consumer<T> function;
     private IdentityHashMap<T, Entry<T>> queuedByObject = new IdentityHashMap<>();
     private final Deque<Entry<T>> queue = new ArrayDeque<Entry<T>>();
+    private int numAlreadyRunInMap = 0;
+    private int numScheduled = 0;
+    private final int[] scheduledTimes;
+    private final int[] scheduledCountAtTime;
+    private String name = null;
+    private int maxItemsPerTick = Integer.MAX_VALUE;
+    private long maxNanosPerTick = Long.MAX_VALUE;
+    private long queuedCount = 0;
+    private long processedCount = 0;
+    private long deferredCount = 0;
 
     /**
      * Constructs a new delayed Queued Task function
@@ -35,6 +53,8 @@ public class QueuedTask<T> {
         this.delay = delay;
         this.precondition = precondition;
         this.function = function;
+        this.scheduledTimes = new int[delay + 1];
+        this.scheduledCountAtTime = new int[delay + 1];
     }
 
     /**
@@ -58,6 +78,96 @@ public class QueuedTask<T> {
         return new QueuedTask<T>(delay, precondition, function);
     }
 
+    /**
+     * Sets a name for this task, and makes its statistics available through
+     * {@link #getNamedTasks()}. Should only be used for tasks that exist for
+     * as long as the server runs, like static constants.
+     *
+     * @param name Name of this task
+     * @return this queued task
+     */
+    public QueuedTask<T> setName(String name) {
+        if (this.name == null) {
+            named.add(this);
+        }
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Gets the name of this task set using {@link #setName(String)}
+     *
+     * @return name, null if not set
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Limits how many objects are processed by this task every tick. The objects
+     * that are due but did not fit in the budget are processed the tick after, in
+     * the order they were scheduled. At least one object is always processed
+     * every tick, so the task always makes progress.
+     *
+     * @param maxItems Maximum number of objects to process every tick
+     * @param maxNanos Maximum time in nanoseconds to spend every tick
+     * @return this queued task
+     */
+    public QueuedTask<T> setTickBudget(int maxItems, long maxNanos) {
+        this.maxItemsPerTick = Math.max(1, maxItems);
+        this.maxNanosPerTick = Math.max(0L, maxNanos);
+        return this;
+    }
+
+    /**
+     * Gets the total number of times an object was scheduled to run with a new time
+     *
+     * @return total queued count
+     */
+    public long getQueuedCount() {
+        return this.queuedCount;
+    }
+
+    /**
+     * Gets the total number of objects that were processed by this task. This
+     * includes objects for which the precondition failed.
+     *
+     * @return total processed count
+     */
+    public long getProcessedCount() {
+        return this.processedCount;
+    }
+
+    /**
+     * Gets the total number of times an object that was due was deferred to the
+     * next tick, because the tick budget of this task was used up. An object
+     * deferred for multiple ticks is counted every tick.
+     *
+     * @return total deferred count
+     */
+    public long getDeferredCount() {
+        return this.deferredCount;
+    }
+
+    /**
+     * Gets the number of objects currently waiting in the queue. This may
+     * include objects whose schedule was cancelled and not yet cleaned up.
+     *
+     * @return pending count
+     */
+    public int getPendingCount() {
+        return this.queue.size();
+    }
+
+    /**
+     * Gets all tasks that were given a name using {@link #setName(String)}
+     *
+     * @return named tasks
+     */
+    public static Collection<QueuedTask<?>> getNamedTasks() {
+        return Collections.unmodifiableCollection(named);
+    }
+
     /**
      * Schedules a new object to be passed as parameter to the function and
      * executed. If this object was already scheduled, the original
@@ -79,12 +189,17 @@ public class QueuedTask<T> {
                     return entry; // Already scheduled, same time. Unchanged.
                 } else {
                     entry.state = EntryState.CANCELLED; // Cancel old entry. New entry will be re-added at the end.
+                    onUnscheduled(entry.time);
                 }
+            } else if (entry != null) {
+                numAlreadyRunInMap--; // Replaced with the new entry
             }
 
             boolean isFirstScheduledEntry = queue.isEmpty();
             entry = new Entry<>(obj, time);
             queue.add(entry);
+            onScheduled(time);
+            queuedCount++;
             if (isFirstScheduledEntry) {
                 scheduled.add(QueuedTask.this);
             }
@@ -108,8 +223,10 @@ public class QueuedTask<T> {
     private void run(int time) {
         // Take all items from the queue which need to run right now and process them.
         // We do not mutate the identity hashmap item by item as the remove() shrink operation is far too slow.
-        // Instead, we do this shrinking with a rebuild after the fact.
-        boolean hasRunTasks = false;
+        // Instead, we do this shrinking with a rebuild once enough of it refers to entries that have run.
+        // Stops processing when the tick budget is used up, leaving the rest in the queue for next tick.
+        int numRun = 0;
+        long deadline = (maxNanosPerTick == Long.MAX_VALUE) ? Long.MAX_VALUE : (System.nanoTime() + maxNanosPerTick);
         for (Entry<T> e; (e = queue.poll()) != null;) {
             // Ignore cancelled or already-run entries
             if (e.state != EntryState.SCHEDULED) {
@@ -122,34 +239,77 @@ public class QueuedTask<T> {
                 break;
             }
 
+            // When the budget is used up, re-add and stop processing. Count what was deferred.
+            if (numRun > 0 && (numRun >= maxItemsPerTick ||
+                               (deadline != Long.MAX_VALUE && System.nanoTime() >= deadline))
+            ) {
+                queue.addFirst(e);
+                deferredCount += countDue(time);
+                break;
+            }
+
             // Mark to be run, so if a concurrent schedule happens, a new entry is added again
             e.state = EntryState.ALREADY_RUN;
+            onUnscheduled(e.time);
+            numAlreadyRunInMap++;
 
             // Run the task
             T object = e.object;
             if (precondition.canExecute(object)) {
                 function.accept(object);
             }
-
-            // Something has run, so it's worth compressing the queuedByObject map
-            hasRunTasks = true;
+            processedCount++;
+            numRun++;
         }
 
         // Rebuild the identity hashmap to omit entries that have already been run (if not empty)
-        // Only do this when we mutated something interesting or the queue is emptied.
+        // Only do this when the queue is emptied, or when more than half of it refers to entries that have run.
         if (queue.isEmpty()) {
             if (!queuedByObject.isEmpty()) {
                 queuedByObject = new IdentityHashMap<>();
             }
-        } else if (hasRunTasks) {
-            IdentityHashMap<T, Entry<T>> newQueuedByObject = new IdentityHashMap<>(queue.size());
+            numAlreadyRunInMap = 0;
+        } else if (numAlreadyRunInMap > (queuedByObject.size() >> 1)) {
+            IdentityHashMap<T, Entry<T>> newQueuedByObject = new IdentityHashMap<>(numScheduled);
             queue.forEach(e -> {
                 if (e.state == EntryState.SCHEDULED) {
                     newQueuedByObject.put(e.object, e);
                 }
             });
             queuedByObject = newQueuedByObject;
+            numAlreadyRunInMap = 0;
+        }
+    }
+
+    // Tracks the number of scheduled entries, and how many are scheduled for each of the next delay+1 ticks.
+    // Entries are always scheduled at most delay ticks in the future, so entries not yet due fit in there.
+    private void onScheduled(int time) {
+        int slot = Math.floorMod(time, scheduledTimes.length);
+        if (scheduledTimes[slot] != time) {
+            scheduledTimes[slot] = time;
+            scheduledCountAtTime[slot] = 0;
+        }
+        scheduledCountAtTime[slot]++;
+        numScheduled++;
+    }
+
+    private void onUnscheduled(int time) {
+        int slot = Math.floorMod(time, scheduledTimes.length);
+        if (scheduledTimes[slot] == time) {
+            scheduledCountAtTime[slot]--;
+        }
+        numScheduled--;
+    }
+
+    // Counts the number of scheduled entries in the queue that are due at the time specified
+    private int countDue(int time) {
+        int count = numScheduled;
+        for (int slot = 0; slot < scheduledTimes.length; slot++) {
+            if (time < scheduledTimes[slot]) {
+                count -= scheduledCountAtTime[slot];
+            }
         }
+        return count;
     }
 
     /**
@@ -26,17 +26,28 @@ import com.bergerkiller.bukkit.common.wrappers.BlockData;
  * <br>
  * In addition read/write
  * streaming functions can be used to read and write multiple values, and
- * automatically increment the current position.
+ * automatically increment the current position.<br>
+ * <br>
+ * Decimal numbers are formatted into a shared character buffer, and only turned
+ * into a String when read using {@link #get(int)}. Writers can append them without
+ * creating a String using {@link #appendTo(int, StringBuilder)}.
  */
 public class StringArrayBuffer implements Iterator<String> {
-    private static final NumberFormat DEFAULT_NUMBER_FORMAT = new DecimalFormat("0.0#####", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+    private static final String DEFAULT_NUMBER_FORMAT = "0.0#####";
+    private static final FixedDecimalFormatter DEFAULT_NUMBER_FORMATTER = FixedDecimalFormatter.forPattern(DEFAULT_NUMBER_FORMAT);
     private static final boolean CAN_WRITE_NULL_ITEM = Common.hasCapability("Common:JSONSerializer:NullItemStack");
 
     private final JsonSerializer jsonSerializer = new JsonSerializer();
     private String[] buffer = new String[10];
+    private int[] charsStart = new int[10];
+    private int[] charsLength = new int[10]; // -1 if the value is only stored as String
+    private char[] chars = new char[256];
+    private int charsSize = 0;
     private int size = 0;
     private int index = 0;
-    private NumberFormat numberFormat = DEFAULT_NUMBER_FORMAT;
+    private NumberFormat numberFormat = null; // Created when first needed, as it is slow to create
+    private String numberFormatPattern = DEFAULT_NUMBER_FORMAT;
+    private FixedDecimalFormatter numberFormatter = DEFAULT_NUMBER_FORMATTER;
 
     /**
      * Loads this buffer with the data specified.
@@ -47,8 +58,10 @@ public class StringArrayBuffer implements Iterator<String> {
     public void load(String[] data) {
         growBuffer(data.length);
         System.arraycopy(data, 0, this.buffer, 0, data.length);
+        Arrays.fill(this.charsLength, 0, data.length, -1);
         this.size = data.length;
         this.index = 0;
+        this.charsSize = 0;
     }
 
     /**
@@ -61,8 +74,10 @@ public class StringArrayBuffer implements Iterator<String> {
         growBuffer(data.size());
         this.size = data.size();
         this.index = 0;
+        this.charsSize = 0;
         for (int i = 0; i < this.size; i++) {
             this.buffer[i] = data.get(i);
+            this.charsLength[i] = -1;
         }
     }
 
@@ -73,6 +88,8 @@ public class StringArrayBuffer implements Iterator<String> {
                 new_size *= 2;
             }
             this.buffer = new String[new_size];
+            this.charsStart = new int[new_size];
+            this.charsLength = new int[new_size];
         }
     }
 
@@ -82,6 +99,7 @@ public class StringArrayBuffer implements Iterator<String> {
     public void clear() {
         this.size = 0;
         this.index = 0;
+        this.charsSize = 0;
     }
 
     /**
@@ -99,7 +117,9 @@ public class StringArrayBuffer implements Iterator<String> {
      * @param formatPattern
      */
     public void setNumberFormat(String formatPattern) {
-        setNumberFormat(new DecimalFormat(formatPattern, DecimalFormatSymbols.getInstance(Locale.ENGLISH)));
+        this.numberFormat = null;
+        this.numberFormatPattern = formatPattern;
+        this.numberFormatter = FixedDecimalFormatter.forPattern(formatPattern);
     }
 
     /**
@@ -109,6 +129,8 @@ public class StringArrayBuffer implements Iterator<String> {
      */
     public void setNumberFormat(NumberFormat format) {
         this.numberFormat = format;
+        this.numberFormatPattern = null;
+        this.numberFormatter = null;
     }
 
     /**
@@ -207,7 +229,28 @@ public class StringArrayBuffer implements Iterator<String> {
      * @param value The value to set
      */
     public void putDouble(double value) {
-        put(this.numberFormat.format(value));
+        FixedDecimalFormatter formatter = this.numberFormatter;
+        if (formatter != null) {
+            if (this.charsSize + FixedDecimalFormatter.MAX_LENGTH > this.chars.length) {
+                this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2,
+                        this.charsSize + FixedDecimalFormatter.MAX_LENGTH));
+            }
+            int length = formatter.format(value, this.chars, this.charsSize);
+            if (length != -1) {
+                int index = this.index++;
+                set(index, null);
+                this.charsStart[index] = this.charsSize;
+                this.charsLength[index] = length;
+                this.charsSize += length;
+                return;
+            }
+        }
+
+        NumberFormat format = this.numberFormat;
+        if (format == null) {
+            this.numberFormat = format = new DecimalFormat(this.numberFormatPattern, DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+        }
+        put(format.format(value));
     }
 
     /**
@@ -438,8 +481,30 @@ public class StringArrayBuffer implements Iterator<String> {
     public String get(int index) {
         if (index >= this.size) {
             return "";
-        } else {
-            return this.buffer[index];
+        }
+        String value = this.buffer[index];
+        if (value == null && this.charsLength[index] != -1) {
+            value = new String(this.chars, this.charsStart[index], this.charsLength[index]);
+            this.buffer[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Appends the value at the index to a StringBuilder. Unlike {@link #get(int)},
+     * this does not create a String for values that are not yet stored as one.
+     * Appends nothing if no value exists at the index.
+     *
+     * @param index
+     * @param builder StringBuilder to append to
+     */
+    public void appendTo(int index, StringBuilder builder) {
+        if (index < this.size) {
+            if (this.charsLength[index] != -1) {
+                builder.append(this.chars, this.charsStart[index], this.charsLength[index]);
+            } else if (this.buffer[index] != null) {
+                builder.append(this.buffer[index]);
+            }
         }
     }
 
@@ -454,10 +519,14 @@ public class StringArrayBuffer implements Iterator<String> {
         while (index >= this.size) {
             if (this.size == this.buffer.length) {
                 this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+                this.charsStart = Arrays.copyOf(this.charsStart, this.buffer.length);
+                this.charsLength = Arrays.copyOf(this.charsLength, this.buffer.length);
             }
+            this.charsLength[this.size] = -1;
             this.buffer[this.size++] = "";
         }
         this.buffer[index] = value;
+        this.charsLength[index] = -1;
     }
 
     /**
@@ -466,7 +535,11 @@ public class StringArrayBuffer implements Iterator<String> {
      * @return array
      */
     public String[] toArray() {
-        return Arrays.copyOf(this.buffer, this.size);
+        String[] result = new String[this.size];
+        for (int i = 0; i < this.size; i++) {
+            result[i] = get(i);
+        }
+        return result;
     }
 
     @Override
@@ -477,7 +550,7 @@ public class StringArrayBuffer implements Iterator<String> {
             if (n > 0) {
                 builder.append(", ");
             }
-            builder.append('\"').append(this.buffer[n]).append('\"');
+            builder.append('\"').append(get(n)).append('\"');
         }
         builder.append('}');
         return builder.toString();
@@ -0,0 +1,227 @@
+package com.bergerkiller.bukkit.coasters.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel that runs entries after a delay in ticks. Scheduling
+ * and cancelling an entry is O(1), and advancing a tick only touches the entries
+ * that expire that tick, plus once in a while the entries that move down a level.
+ * This makes it suitable for keeping track of thousands of pending delays at once.<br>
+ * <br>
+ * The wheel has its own tick counter, which only increases when {@link #advance()}
+ * is called. Entries scheduled while the wheel is not advanced (for example, while
+ * the plugin is not yet enabled) wait until it is.
+ */
+public final class TimingWheel {
+    private static final int LEVEL_BITS = 6;
+    private static final int SLOT_COUNT = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final int LEVEL_COUNT = 5; // 64^5 ticks is over a year
+    private final Entry[][] slots = new Entry[LEVEL_COUNT][SLOT_COUNT];
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * Gets the current tick of this wheel. Increments by one every time
+     * {@link #advance()} is called.
+     *
+     * @return current tick
+     */
+    public long getCurrentTick() {
+        return this.currentTick;
+    }
+
+    /**
+     * Gets the number of entries currently scheduled
+     *
+     * @return scheduled entry count
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets whether no entries are scheduled
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Schedules an entry to expire after a delay. If the entry was already
+     * scheduled, it is rescheduled with the new delay.
+     *
+     * @param entry Entry to schedule
+     * @param delay Delay in ticks, at least 1
+     */
+    public void schedule(Entry entry, long delay) {
+        if (entry.wheel != null) {
+            entry.wheel.cancel(entry);
+        }
+        entry.wheel = this;
+        entry.expireTick = this.currentTick + Math.max(1L, delay);
+        insert(entry);
+        this.size++;
+    }
+
+    /**
+     * Cancels a scheduled entry. Does nothing if the entry is not scheduled
+     * on this wheel.
+     *
+     * @param entry Entry to cancel
+     */
+    public void cancel(Entry entry) {
+        if (entry.wheel == this) {
+            unlink(entry);
+            entry.wheel = null;
+            this.size--;
+        }
+    }
+
+    /**
+     * Cancels all scheduled entries
+     */
+    public void clear() {
+        for (Entry[] level : this.slots) {
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                for (Entry e = level[i]; e != null;) {
+                    Entry next = e.next;
+                    e.wheel = null;
+                    e.prev = null;
+                    e.next = null;
+                    e = next;
+                }
+                level[i] = null;
+            }
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Iterates all the entries currently scheduled, in no particular order.
+     * The wheel should not be modified while iterating.
+     *
+     * @param action Action to perform for every scheduled entry
+     */
+    public void forEach(Consumer<Entry> action) {
+        for (Entry[] level : this.slots) {
+            for (Entry head : level) {
+                for (Entry e = head; e != null; e = e.next) {
+                    action.accept(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick, running all entries that expire this tick.
+     * Entries may schedule and cancel entries while they run.
+     */
+    public void advance() {
+        long tick = ++this.currentTick;
+        if (this.size == 0) {
+            return;
+        }
+
+        // Move entries of higher levels whose time has come down a level, top-down
+        for (int level = LEVEL_COUNT - 1; level >= 1; level--) {
+            int shift = level * LEVEL_BITS;
+            if ((tick & ((1L << shift) - 1)) == 0) {
+                int slot = (int) (tick >>> shift) & SLOT_MASK;
+                Entry e = this.slots[level][slot];
+                this.slots[level][slot] = null;
+                while (e != null) {
+                    Entry next = e.next;
+                    insert(e);
+                    e = next;
+                }
+            }
+        }
+
+        // Run all entries of the lowest level that expire right now
+        // Entries scheduled while running never end up in this same slot
+        Entry[] level0 = this.slots[0];
+        int slot = (int) tick & SLOT_MASK;
+        for (Entry e; (e = level0[slot]) != null;) {
+            unlink(e);
+            if (e.expireTick > tick) {
+                insert(e); // Should not happen
+                continue;
+            }
+            e.wheel = null;
+            this.size--;
+            e.onExpired();
+        }
+    }
+
+    private void insert(Entry entry) {
+        long delta = entry.expireTick - this.currentTick;
+        int level = 0;
+        while (level < (LEVEL_COUNT - 1) && delta >= (1L << ((level + 1) * LEVEL_BITS))) {
+            level++;
+        }
+        int slot = (int) (entry.expireTick >>> (level * LEVEL_BITS)) & SLOT_MASK;
+        Entry head = this.slots[level][slot];
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        this.slots[level][slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else {
+            this.slots[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    /**
+     * An entry that can be scheduled on a timing wheel. An entry can only be
+     * scheduled once at a time.
+     */
+    public static abstract class Entry {
+        private TimingWheel wheel = null;
+        private long expireTick = 0;
+        private Entry prev = null;
+        private Entry next = null;
+        private int level = 0;
+        private int slot = 0;
+
+        /**
+         * Gets whether this entry is currently scheduled on a timing wheel
+         *
+         * @return True if scheduled
+         */
+        public final boolean isScheduled() {
+            return this.wheel != null;
+        }
+
+        /**
+         * Gets the number of ticks remaining until this entry expires
+         *
+         * @return remaining ticks, or -1 if not scheduled
+         */
+        public final long getRemainingTicks() {
+            TimingWheel wheel = this.wheel;
+            return (wheel == null) ? -1L : Math.max(0L, this.expireTick - wheel.currentTick);
+        }
+
+        /**
+         * Called when the delay of this entry expires. The entry is no longer
+         * scheduled when this is called, and can be scheduled again.
+         */
+        protected abstract void onExpired();
+    }
+}
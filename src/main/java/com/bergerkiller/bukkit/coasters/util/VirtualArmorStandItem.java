@@ -44,6 +44,9 @@ public class VirtualArmorStandItem {
     private Quaternion orientation;
     private ItemStack item;
     private boolean glowing = false;
+    private ClientboundEntityPositionSyncPacketHandle lastPositionPacket = null;
+    private int lastPositionPacketEntityId;
+    private double lastPositionPacketY;
 
     public VirtualArmorStandItem item(ItemStack item) {
         this.item = item;
@@ -54,6 +57,7 @@ public class VirtualArmorStandItem {
         this.posX = position.getX();
         this.posY = position.getY();
         this.posZ = position.getZ();
+        this.lastPositionPacket = null;
         return this;
     }
 
@@ -61,6 +65,7 @@ public class VirtualArmorStandItem {
         this.posX = position.getX();
         this.posY = position.getY();
         this.posZ = position.getZ();
+        this.lastPositionPacket = null;
         return this;
     }
 
@@ -150,34 +155,39 @@ public class VirtualArmorStandItem {
     }
 
     public VirtualArmorStandItem updatePosition(Player viewer) {
+        // Teleport the armorstand holder if there is one, otherwise the armorstand itself
+        // When called for multiple viewers in a row, re-uses the packet when it would be the same
+        int id;
+        double posY;
         if (this.holderEntityId == -1) {
-            // Teleport the armorstand itself
-            ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
-                    this.entityId,
-                    this.posX,
-                    this.posY - ARMORSTAND_HEAD_OFFSET,
-                    this.posZ,
-                    0.0f, 0.0f, false);
-            PacketUtil.sendPacket(viewer, tpPacket);
+            id = this.entityId;
+            posY = this.posY - ARMORSTAND_HEAD_OFFSET;
         } else {
-            // Teleport the armorstand holder
-            ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
-                    this.holderEntityId,
+            id = this.holderEntityId;
+            posY = this.posY - ARMORSTAND_HEAD_OFFSET - getHolderYOffset(viewer);
+        }
+        ClientboundEntityPositionSyncPacketHandle tpPacket = this.lastPositionPacket;
+        if (tpPacket == null || this.lastPositionPacketEntityId != id || this.lastPositionPacketY != posY) {
+            tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
+                    id,
                     this.posX,
-                    this.posY - ARMORSTAND_HEAD_OFFSET - getHolderYOffset(viewer),
+                    posY,
                     this.posZ,
                     0.0f, 0.0f, false);
-            PacketUtil.sendPacket(viewer, tpPacket);
+            this.lastPositionPacket = tpPacket;
+            this.lastPositionPacketEntityId = id;
+            this.lastPositionPacketY = posY;
         }
+        PacketUtil.sendPacket(viewer, tpPacket);
         return this;
     }
 
     public VirtualArmorStandItem destroy(Player viewer) {
         if (this.holderEntityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.holderEntityId));
+            EntityDestroyBatch.destroy(viewer, this.holderEntityId);
         }
         if (this.entityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.entityId));
+            EntityDestroyBatch.destroy(viewer, this.entityId);
         }
         return this;
     }
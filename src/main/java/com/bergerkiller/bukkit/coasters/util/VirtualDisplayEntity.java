@@ -38,6 +38,10 @@ public class VirtualDisplayEntity {
      * when 1.19.4 clients connect to a 1.20 server.
      */
     private static final boolean IS_ITEM_YAW_FLIPPED = Common.evaluateMCVersion("<=", "1.19.4");
+    /**
+     * Number of ticks over which the client interpolates changes in transformation by default
+     */
+    public static final int DEFAULT_INTERPOLATION_DURATION = 3;
 
     private int holderEntityId;
     private int entityId;
@@ -47,6 +51,7 @@ public class VirtualDisplayEntity {
     private Brightness brightness = null;
     private Vector scale;
     private Boolean glowing = null;
+    private int interpolationDuration = -1;
     private final boolean isBlock;
     private final boolean isItem;
 
@@ -110,6 +115,18 @@ public class VirtualDisplayEntity {
         return this;
     }
 
+    /**
+     * Sets the number of ticks over which the client interpolates changes in transformation.
+     * If not set, spawned entities use {@link #DEFAULT_INTERPOLATION_DURATION}.
+     *
+     * @param interpolationDuration Interpolation duration in ticks
+     * @return this
+     */
+    public VirtualDisplayEntity interpolationDuration(int interpolationDuration) {
+        this.interpolationDuration = interpolationDuration;
+        return this;
+    }
+
     public VirtualDisplayEntity item(ItemStack item) {
         this.item = item;
         this.itemSet = true;
@@ -138,36 +155,35 @@ public class VirtualDisplayEntity {
         return this;
     }
 
-    public VirtualDisplayEntity updatePosition(Player viewer) {
-        if (this.holderEntityId == -1) {
-            // Teleport the display entity itself
-            ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
-                    this.entityId,
-                    this.posX,
-                    this.posY,
-                    this.posZ,
-                    0.0f, 0.0f, false);
-            PacketUtil.sendPacket(viewer, tpPacket);
-        } else {
-            // Teleport the armorstand holder
-            ClientboundEntityPositionSyncPacketHandle tpPacket = ClientboundEntityPositionSyncPacketHandle.createNew(
-                    this.holderEntityId,
-                    this.posX,
-                    this.posY,
-                    this.posZ,
-                    0.0f, 0.0f, false);
+    public VirtualDisplayEntity updatePosition(Iterable<Player> viewers) {
+        ClientboundEntityPositionSyncPacketHandle tpPacket = createPositionPacket();
+        for (Player viewer : viewers) {
             PacketUtil.sendPacket(viewer, tpPacket);
         }
+        return this;
+    }
 
+    public VirtualDisplayEntity updatePosition(Player viewer) {
+        PacketUtil.sendPacket(viewer, createPositionPacket());
         return this;
     }
 
+    private ClientboundEntityPositionSyncPacketHandle createPositionPacket() {
+        // Teleport the armorstand holder if there is one, otherwise the display entity itself
+        return ClientboundEntityPositionSyncPacketHandle.createNew(
+                (this.holderEntityId == -1) ? this.entityId : this.holderEntityId,
+                this.posX,
+                this.posY,
+                this.posZ,
+                0.0f, 0.0f, false);
+    }
+
     public VirtualDisplayEntity destroy(Player viewer) {
         if (this.holderEntityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.holderEntityId));
+            EntityDestroyBatch.destroy(viewer, this.holderEntityId);
         }
         if (this.entityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.entityId));
+            EntityDestroyBatch.destroy(viewer, this.entityId);
         }
         return this;
     }
@@ -181,7 +197,7 @@ public class VirtualDisplayEntity {
             this.holderEntityId = -1;
         }
 
-        viewers.forEach(this::updatePosition);
+        updatePosition(viewers);
 
         return this;
     }
@@ -225,6 +241,9 @@ public class VirtualDisplayEntity {
         if (brightness != null) {
             metadata.set(DisplayHandle.DATA_BRIGHTNESS_OVERRIDE, this.brightness);
         }
+        if (interpolationDuration != -1) {
+            metadata.set(DisplayHandle.DATA_INTERPOLATION_DURATION, this.interpolationDuration);
+        }
     }
 
     private Quaternion calcOrientation() {
@@ -262,7 +281,7 @@ public class VirtualDisplayEntity {
         ClientboundAddEntityPacketHandle spawnPacket = ClientboundAddEntityPacketHandle.createNew();
 
         DataWatcher metadata = new DataWatcher();
-        metadata.set(DisplayHandle.DATA_INTERPOLATION_DURATION, 3);
+        metadata.set(DisplayHandle.DATA_INTERPOLATION_DURATION, DEFAULT_INTERPOLATION_DURATION);
         metadata.setFlag(EntityHandle.DATA_FLAGS, EntityHandle.DATA_FLAG_GLOWING, this.glowing);
         applyProperties(metadata);
         if (isItem) {
@@ -141,10 +141,10 @@ public class VirtualFallingBlock {
 
     public VirtualFallingBlock destroy(Player viewer) {
         if (this.holderEntityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.holderEntityId));
+            EntityDestroyBatch.destroy(viewer, this.holderEntityId);
         }
         if (this.entityId != -1) {
-            PacketUtil.sendPacket(viewer, ClientboundRemoveEntitiesPacketHandle.createNewSingle(this.entityId));
+            EntityDestroyBatch.destroy(viewer, this.entityId);
         }
         return this;
     }
@@ -100,21 +100,14 @@ public class CoasterWorldImpl implements CoasterWorld {
 
     /**
      * Performs all the logic required to load a World into memory.
-     * Can be safely called during the onLoad() plugin stage.
+     * Can be safely called during the onLoad() plugin stage. Loaded pulses
+     * start counting down once the world is updated every tick.
      */
     public void load() {
         getTracks().load();
         getNamedPowerChannels().loadPulses();
     }
 
-    /**
-     * Performs all the logic required to start animating a World.
-     * Must be called during or after the onEnable() plugin stage.
-     */
-    public void enable() {
-        getNamedPowerChannels().enable();
-    }
-
     /**
      * Performs a save of the underlying world components
      */
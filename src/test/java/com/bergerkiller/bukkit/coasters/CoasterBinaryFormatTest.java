@@ -0,0 +1,92 @@
+package com.bergerkiller.bukkit.coasters;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.bukkit.util.Vector;
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.AnimationStateNodeEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.BaseNodeEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.CSVEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.LinkNodeEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.LockCoasterEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.NodeEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.RootNodeEntry;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSVReader;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSVWriter;
+import com.bergerkiller.bukkit.common.bases.IntVector3;
+
+public class CoasterBinaryFormatTest {
+
+    @Test
+    public void testEntriesRoundTrip() throws Throwable {
+        byte[] data;
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (TrackCSVWriter writer = TrackCSVWriter.createBinary(out)) {
+                writer.write(new LockCoasterEntry());
+                writer.write(node(new RootNodeEntry(), new Vector(-77.1, 4.8, 271.32), new Vector(0.0, 1.0, 0.0), new IntVector3(-72, 4, 281)));
+                AnimationStateNodeEntry anim = node(new AnimationStateNodeEntry(), new Vector(-77.2, 4.8, 271.32), new Vector(0.0, 1.0, 0.0), null);
+                anim.name = "b";
+                writer.write(anim);
+                LinkNodeEntry link = new LinkNodeEntry();
+                link.pos = new Vector(-77.5, 4.8, 271.8);
+                writer.write(link);
+                writer.write(node(new NodeEntry(), new Vector(-78.1, 4.0, 286.1), new Vector(0.0, 1.0, -2.22E-16), null));
+                writer.write(anim); // Repeated values are read from the string table
+            }
+            data = out.toByteArray();
+        }
+
+        CSVEntry e;
+        try (TrackCSVReader reader = TrackCSVReader.createBinary(new ByteArrayInputStream(data))) {
+            e = reader.readNextEntry();
+            assertEquals(LockCoasterEntry.class, e.getClass());
+
+            e = reader.readNextEntry();
+            assertEquals(RootNodeEntry.class, e.getClass());
+            assertEquals(new Vector(-77.1, 4.8, 271.32), ((RootNodeEntry) e).pos);
+            assertEquals(new Vector(0.0, 1.0, 0.0), ((RootNodeEntry) e).up);
+            assertEquals(new IntVector3(-72, 4, 281), ((RootNodeEntry) e).rail);
+
+            for (int i = 0; i < 2; i++) {
+                if (i == 1) {
+                    e = reader.readNextEntry();
+                    assertEquals(LinkNodeEntry.class, e.getClass());
+                    assertEquals(new Vector(-77.5, 4.8, 271.8), ((LinkNodeEntry) e).pos);
+
+                    e = reader.readNextEntry();
+                    assertEquals(NodeEntry.class, e.getClass());
+                    assertEquals(new Vector(-78.1, 4.0, 286.1), ((NodeEntry) e).pos);
+                    assertEquals(-2.22E-16, ((NodeEntry) e).up.getZ(), 0.0); // Exact
+                    assertNull(((NodeEntry) e).rail);
+                }
+
+                e = reader.readNextEntry();
+                assertEquals(AnimationStateNodeEntry.class, e.getClass());
+                assertEquals("b", ((AnimationStateNodeEntry) e).name);
+                assertEquals(new Vector(-77.2, 4.8, 271.32), ((AnimationStateNodeEntry) e).pos);
+                assertNull(((AnimationStateNodeEntry) e).rail);
+            }
+
+            assertNull(reader.readNextEntry());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotBinaryFormat() throws Throwable {
+        byte[] csv = "\"ROOT\",\"-77.1\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\"".getBytes("UTF-8");
+        TrackCSVReader.createBinary(new ByteArrayInputStream(csv)).close();
+    }
+
+    private static <T extends BaseNodeEntry> T node(T entry, Vector pos, Vector up, IntVector3 rail) {
+        entry.pos = pos;
+        entry.up = up;
+        entry.rail = rail;
+        return entry;
+    }
+}
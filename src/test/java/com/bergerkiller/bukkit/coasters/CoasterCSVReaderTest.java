@@ -3,10 +3,14 @@ package com.bergerkiller.bukkit.coasters;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
 
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
@@ -15,6 +19,8 @@ import org.bukkit.util.Vector;
 import org.junit.Test;
 
 import com.bergerkiller.bukkit.coasters.csv.TrackCSVReader;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSVWriter;
+import com.bergerkiller.bukkit.coasters.csv.TrackCSV.CSVReaderState;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSV.AnimationStateNodeEntry;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSV.CSVEntry;
 import com.bergerkiller.bukkit.coasters.csv.TrackCSV.LinkNodeEntry;
@@ -26,21 +32,47 @@ import com.bergerkiller.bukkit.coasters.util.SyntaxException;
 import com.bergerkiller.bukkit.coasters.util.TrailingNewLineTrimmingWriter;
 import com.bergerkiller.bukkit.common.bases.IntVector3;
 import com.bergerkiller.bukkit.common.internal.CommonBootstrap;
+import com.opencsv.CSVWriter;
 
 public class CoasterCSVReaderTest {
+    private static final String TCC_FORMAT =
+            "\"ROOT\",\"-77.1\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"-72\",\"4\",\"281\"\r\n" + 
+            "\"ANIM\",\"-77.6\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"-72\",\"4\",\"281\",\"a\"\r\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"b\"\r\n" + 
+            "\"LINK\",\"-77.5\",\"4.8\",\"271.8\"\r\n" + 
+            "\"NODE\",\"-78.1\",\"4.0\",\"286.1\",\"0.0\",\"1.0\",\"0.0\"\r\n" + 
+            "\"NODE\",\"-77.5\",\"4.8\",\"275.8\",\"0.0\",\"1.0\",\"-2.22E-16\",\"-72\",\"4\",\"279\"";
+    private static final String NOLIMITS_FORMAT_1 =
+            "\"No.\"\t\"PosX\"\t\"PosY\"\t\"PosZ\"\t\"FrontX\"\t\"FrontY\"\t\"FrontZ\"\t\"LeftX\"\t\"LeftY\"\t\"LeftZ\"\t\"UpX\"\t\"UpY\"\t\"UpZ\"\r\n" + 
+            "1\t43.345145\t8.695299\t-33.675375\t0.005115\t0.425082\t-0.905141\t-0.938856\t-0.309581\t-0.150694\t-0.344272\t0.850568\t0.397507\r\n" + 
+            "2\t43.350331\t8.906957\t-34.128325\t0.020909\t0.419768\t-0.907390\t-0.941258\t-0.297695\t-0.159407\t-0.337040\t0.857422\t0.388886\r\n" + 
+            "3\t43.942754\t10.606781\t-38.238981\t0.261420\t0.323027\t-0.909568\t-0.943069\t0.286225\t-0.169398\t0.205621\t0.902069\t0.379462";
+    private static final String NOLIMITS_FORMAT_2 =
+            "\"1\t43.345145\t8.695299\t-33.675375\t0.005115\t0.425082\t-0.905141\t-0.938856\t-0.309581\t-0.150694\t-0.344272\t0.850568\t0.397507\"\r\n" + 
+            "\"2\t43.350331\t8.906957\t-34.128325\t0.020909\t0.419768\t-0.907390\t-0.941258\t-0.297695\t-0.159407\t-0.337040\t0.857422\t0.388886\"\r\n" + 
+            "\"3\t43.942754\t10.606781\t-38.238981\t0.261420\t0.323027\t-0.909568\t-0.943069\t0.286225\t-0.169398\t0.205621\t0.902069\t0.379462\"";
+    private static final String UNUSUAL_FORMAT =
+            "NODE,-78.1,4.0,286.1,0.0,1.0,0.0\n" +
+            "\"NODE\",\"1,555.23\",\"+4\",\"1e3\",\" 0.0\",\"1.\",\".5\",\"-72\",\"+4\",\"279\"\n" +
+            "\"ROOT\",\"0.1234567890123456789\",\"4.9E-324\",\"1.7976931348623157E308\",\"-0.0\",\"1.0\",\"0.0\"\n" +
+            "\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"a \"\"quoted\"\" \\\\ name\"\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"multi\r\nline name\"\r\n" +
+            "\"LINK\",\"-77.5\",\"4.8\",\"271.8\"";
+    private static final String WHITESPACE_FORMAT =
+            "NODE, -78.1, 4.0,286.1 ,0.0,1.0,0.0\r\n" +
+            " \"NODE\",  \"-77.5\",\"4.8\" ,\"275.8\",\"0.0\",\"1.0\",\"0.0\"\r\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",  \"a\"b\r\n" +
+            "ANIM,-77.2,4.8,271.32,0.0,1.0,0.0,,,,ab\"cd\"\r\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"two\r\nlines\"x\"y\"\r\n" +
+            "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"three\n\n \"\"lines\"\"\\\\\"\r\n" +
+            "\"LINK\",\"-77.5\",\"4.8\",\"271.8\"\r\n";
 
     @Test
     public void testTCCFormat() throws Throwable {
         // Standards TC-Coasters CSV files
         CSVEntry e;
-        try (TrackCSVReader reader = openReader(
-                "\"ROOT\",\"-77.1\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"-72\",\"4\",\"281\"\r\n" + 
-                "\"ANIM\",\"-77.6\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"-72\",\"4\",\"281\",\"a\"\r\n" +
-                "\"ANIM\",\"-77.2\",\"4.8\",\"271.32\",\"0.0\",\"1.0\",\"0.0\",\"\",\"\",\"\",\"b\"\r\n" + 
-                "\"LINK\",\"-77.5\",\"4.8\",\"271.8\"\r\n" + 
-                "\"NODE\",\"-78.1\",\"4.0\",\"286.1\",\"0.0\",\"1.0\",\"0.0\"\r\n" + 
-                "\"NODE\",\"-77.5\",\"4.8\",\"275.8\",\"0.0\",\"1.0\",\"-2.22E-16\",\"-72\",\"4\",\"279\""
-        )) {
+        try (TrackCSVReader reader = openReader(TCC_FORMAT)) {
              // ROOT
              e = reader.readNextEntry();
              assertEquals(RootNodeEntry.class, e.getClass());
@@ -93,12 +125,7 @@ public class CoasterCSVReaderTest {
         // NoLimits CSV Files, with tabs between the fields and each value quoted
         // Includes a header at the top
         CSVEntry e;
-        try (TrackCSVReader reader = openReader(
-                "\"No.\"\t\"PosX\"\t\"PosY\"\t\"PosZ\"\t\"FrontX\"\t\"FrontY\"\t\"FrontZ\"\t\"LeftX\"\t\"LeftY\"\t\"LeftZ\"\t\"UpX\"\t\"UpY\"\t\"UpZ\"\r\n" + 
-                "1\t43.345145\t8.695299\t-33.675375\t0.005115\t0.425082\t-0.905141\t-0.938856\t-0.309581\t-0.150694\t-0.344272\t0.850568\t0.397507\r\n" + 
-                "2\t43.350331\t8.906957\t-34.128325\t0.020909\t0.419768\t-0.907390\t-0.941258\t-0.297695\t-0.159407\t-0.337040\t0.857422\t0.388886\r\n" + 
-                "3\t43.942754\t10.606781\t-38.238981\t0.261420\t0.323027\t-0.909568\t-0.943069\t0.286225\t-0.169398\t0.205621\t0.902069\t0.379462"
-        )) {
+        try (TrackCSVReader reader = openReader(NOLIMITS_FORMAT_1)) {
             // 1
             e = reader.readNextEntry();
             assertEquals(NoLimits2Entry.class, e.getClass());
@@ -137,11 +164,7 @@ public class CoasterCSVReaderTest {
         // No header at the top
         // Adds support for https://github.com/Buam/nolimits2-csv-exporter
         CSVEntry e;
-        try (TrackCSVReader reader = openReader(
-                "\"1\t43.345145\t8.695299\t-33.675375\t0.005115\t0.425082\t-0.905141\t-0.938856\t-0.309581\t-0.150694\t-0.344272\t0.850568\t0.397507\"\r\n" + 
-                "\"2\t43.350331\t8.906957\t-34.128325\t0.020909\t0.419768\t-0.907390\t-0.941258\t-0.297695\t-0.159407\t-0.337040\t0.857422\t0.388886\"\r\n" + 
-                "\"3\t43.942754\t10.606781\t-38.238981\t0.261420\t0.323027\t-0.909568\t-0.943069\t0.286225\t-0.169398\t0.205621\t0.902069\t0.379462\""
-        )) {
+        try (TrackCSVReader reader = openReader(NOLIMITS_FORMAT_2)) {
             // 1
             e = reader.readNextEntry();
             assertEquals(NoLimits2Entry.class, e.getClass());
@@ -174,6 +197,112 @@ public class CoasterCSVReaderTest {
         }
     }
 
+    @Test
+    public void testMappedReaderParity() throws Throwable {
+        // The memory-mapped reader must produce exactly the same entries
+        testMappedReaderParity(TCC_FORMAT);
+        testMappedReaderParity(NOLIMITS_FORMAT_1);
+        testMappedReaderParity(NOLIMITS_FORMAT_2);
+        testMappedReaderParity(UNUSUAL_FORMAT);
+        testMappedReaderParity(WHITESPACE_FORMAT);
+        testMappedReaderParity(TCC_FORMAT.replace("\r\n", "\n"));
+        testMappedReaderParity(UNUSUAL_FORMAT.replace("\n", "\r\n"));
+        testMappedReaderParity("\uFEFF" + TCC_FORMAT);
+        testMappedReaderParity("\uFEFF" + WHITESPACE_FORMAT);
+    }
+
+    @Test
+    public void testByteOrderMark() throws Throwable {
+        // Some text editors write a byte order mark at the start of the file
+        byte[] data = ("\uFEFF" + TCC_FORMAT).getBytes("UTF-8");
+        try (TrackCSVReader reader = new TrackCSVReader(new ByteArrayInputStream(data))) {
+            assertEquals(RootNodeEntry.class, reader.readNextEntry().getClass());
+        }
+        try (TrackCSVReader reader = TrackCSVReader.createMapped(ByteBuffer.wrap(data))) {
+            assertEquals(RootNodeEntry.class, reader.readNextEntry().getClass());
+        }
+    }
+
+    private void testMappedReaderParity(String text) throws Throwable {
+        byte[] data = text.getBytes("UTF-8");
+        try (TrackCSVReader expectedReader = new TrackCSVReader(new ByteArrayInputStream(data));
+             TrackCSVReader mappedReader = TrackCSVReader.createMapped(ByteBuffer.wrap(data)))
+        {
+            assertSameEntries(expectedReader, mappedReader);
+        }
+    }
+
+    @Test
+    public void testCompressedFormat() throws Throwable {
+        // Compressed csv is detected and decompressed while reading
+        byte[] data = TCC_FORMAT.getBytes("UTF-8");
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(data);
+        }
+        try (TrackCSVReader expectedReader = new TrackCSVReader(new ByteArrayInputStream(data));
+             TrackCSVReader compressedReader = new TrackCSVReader(new ByteArrayInputStream(compressed.toByteArray())))
+        {
+            assertSameEntries(expectedReader, compressedReader);
+        }
+    }
+
+    private static void assertSameEntries(TrackCSVReader expectedReader, TrackCSVReader actualReader) throws Throwable {
+        StringArrayBuffer expectedBuffer = new StringArrayBuffer();
+        StringArrayBuffer actualBuffer = new StringArrayBuffer();
+        expectedBuffer.setNumberFormat("0.0##########################");
+        actualBuffer.setNumberFormat("0.0##########################");
+
+        CSVEntry expected;
+        do {
+            expected = expectedReader.readNextEntry();
+            CSVEntry actual = actualReader.readNextEntry();
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertNotNull(actual);
+                assertEquals(expected.getClass(), actual.getClass());
+                expectedBuffer.clear();
+                actualBuffer.clear();
+                expected.write(expectedBuffer);
+                actual.write(actualBuffer);
+                assertArrayEquals(expectedBuffer.toArray(), actualBuffer.toArray());
+            }
+        } while (expected != null);
+    }
+
+    @Test
+    public void testWriterParity() throws Throwable {
+        NodeEntry node = new NodeEntry();
+        node.pos = new Vector(-12.25, 64.0, 1e9);
+        node.up = new Vector(0.0, 1.0, -0.0000005);
+        node.rail = new IntVector3(-12, 63, 5);
+        CSVEntry[] entries = new CSVEntry[] {
+                node,
+                new RowEntry(false, "plain", "with,separator", "with \"quotes\"", "back\\slash", "multi\nline", "cr\rreturn", ""),
+                new RowEntry(true, "plain", "with,separator", "with \"quotes\"", "back\\slash", "multi\nline", ""),
+                new RowEntry(false)
+        };
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (TrackCSVWriter writer = new TrackCSVWriter(actual)) {
+            for (CSVEntry entry : entries) {
+                writer.write(entry);
+            }
+        }
+
+        StringWriter expected = new StringWriter();
+        try (CSVWriter writer = new CSVWriter(new TrailingNewLineTrimmingWriter(expected), ',', '"', '\\', "\r\n")) {
+            for (CSVEntry entry : entries) {
+                StringArrayBuffer buffer = new StringArrayBuffer();
+                entry.write(buffer);
+                writer.writeNext(buffer.toArray(), entry.applyQuotes());
+            }
+        }
+
+        assertEquals(expected.toString(), new String(actual.toByteArray(), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testItemStackSerialization() {
         CommonBootstrap.initServer();
@@ -255,6 +384,41 @@ public class CoasterCSVReaderTest {
         return new TrackCSVReader(new ByteArrayInputStream(text.getBytes("UTF-8")));
     }
 
+    private static final class RowEntry extends CSVEntry {
+        private final boolean applyQuotes;
+        private final String[] values;
+
+        public RowEntry(boolean applyQuotes, String... values) {
+            this.applyQuotes = applyQuotes;
+            this.values = values;
+        }
+
+        @Override
+        public boolean applyQuotes() {
+            return this.applyQuotes;
+        }
+
+        @Override
+        public boolean detect(StringArrayBuffer buffer) {
+            return false;
+        }
+
+        @Override
+        public void read(StringArrayBuffer buffer) {
+        }
+
+        @Override
+        public void write(StringArrayBuffer buffer) {
+            for (String value : this.values) {
+                buffer.put(value);
+            }
+        }
+
+        @Override
+        public void processReader(CSVReaderState state) {
+        }
+    }
+
     @FunctionalInterface
     private static interface WriterConsumer {
         public void accept(Writer writer) throws IOException;
@@ -0,0 +1,85 @@
+package com.bergerkiller.bukkit.coasters;
+
+import static org.junit.Assert.*;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.coasters.util.FixedDecimalFormatter;
+import com.bergerkiller.bukkit.coasters.util.StringArrayBuffer;
+
+public class FixedDecimalFormatterTest {
+    private static final String[] PATTERNS = { "0.0#####", "0.000000", "0.0##", "0.0########", "0.#" };
+
+    @Test
+    public void testUnsupportedPatterns() {
+        assertNull(FixedDecimalFormatter.forPattern("#,##0.0#"));
+        assertNull(FixedDecimalFormatter.forPattern("0.0##########################"));
+        assertNull(FixedDecimalFormatter.forPattern("0."));
+        assertNull(FixedDecimalFormatter.forPattern("0.#0"));
+        assertNotNull(FixedDecimalFormatter.forPattern("0.0#####"));
+        assertNotNull(FixedDecimalFormatter.forPattern("0.000000"));
+    }
+
+    @Test
+    public void testSpecialValues() {
+        double[] values = { 0.0, -0.0, 1.0, -1.0, 1e-7, -1e-7, 5e-7, -5e-7, 1.5e-6, 2.5e-6, 1.0000005,
+                0.05, 0.15, 0.25, 0.125, 5e-4, 2.22E-16, -2.22E-16, 29999999.9999995, 123456.654321,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY };
+        for (String pattern : PATTERNS) {
+            Checker checker = new Checker(pattern);
+            for (double value : values) {
+                checker.assertSameAsDecimalFormat(value);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomValues() {
+        Random random = new Random(1234);
+        for (String pattern : PATTERNS) {
+            Checker checker = new Checker(pattern);
+            for (int i = 0; i < 100000; i++) {
+                checker.assertSameAsDecimalFormat((random.nextDouble() - 0.5) * 6e7);
+                checker.assertSameAsDecimalFormat((random.nextDouble() - 0.5) * 2.0);
+                checker.assertSameAsDecimalFormat((random.nextInt(2000000) - 1000000 + 0.5) / 1e6);
+                checker.assertSameAsDecimalFormat((random.nextInt(20000) + 0.5) / Math.pow(10.0, 1 + random.nextInt(9)));
+            }
+        }
+    }
+
+    private static final class Checker {
+        private final String pattern;
+        private final DecimalFormat format;
+        private final FixedDecimalFormatter formatter;
+        private final StringArrayBuffer buffer;
+
+        public Checker(String pattern) {
+            this.pattern = pattern;
+            this.format = new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+            this.formatter = FixedDecimalFormatter.forPattern(pattern);
+            this.buffer = new StringArrayBuffer();
+            this.buffer.setNumberFormat(pattern);
+        }
+
+        public void assertSameAsDecimalFormat(double value) {
+            String expected = this.format.format(value);
+
+            // Formatter may refuse to format some values
+            String formatted = this.formatter.format(value);
+            if (formatted != null) {
+                assertEquals("Value " + value + " with pattern " + this.pattern, expected, formatted);
+            }
+
+            // The buffer falls back to DecimalFormat for those
+            this.buffer.clear();
+            this.buffer.putDouble(value);
+            assertEquals("Value " + value + " with pattern " + this.pattern, expected, this.buffer.get(0));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.bergerkiller.bukkit.coasters;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.bergerkiller.bukkit.coasters.util.TimingWheel;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testExpireAtDelay() {
+        TimingWheel wheel = new TimingWheel();
+        List<TestEntry> entries = new ArrayList<>();
+        for (int delay : new int[] { 1, 2, 63, 64, 65, 127, 128, 4095, 4096, 4097, 300000 }) {
+            TestEntry entry = new TestEntry(wheel);
+            wheel.schedule(entry, delay);
+            entry.expectedTick = delay;
+            entries.add(entry);
+        }
+        assertEquals(entries.size(), wheel.size());
+        for (int i = 0; i < 300001; i++) {
+            wheel.advance();
+        }
+        assertTrue(wheel.isEmpty());
+        for (TestEntry entry : entries) {
+            assertEquals(entry.expectedTick, entry.expiredTick);
+        }
+    }
+
+    @Test
+    public void testCancelAndReschedule() {
+        TimingWheel wheel = new TimingWheel();
+        TestEntry a = new TestEntry(wheel);
+        TestEntry b = new TestEntry(wheel);
+        wheel.schedule(a, 10);
+        wheel.schedule(b, 10);
+        wheel.cancel(a);
+        assertFalse(a.isScheduled());
+        assertEquals(1, wheel.size());
+
+        wheel.schedule(b, 200);
+        assertEquals(200, b.getRemainingTicks());
+        assertEquals(1, wheel.size());
+        for (int i = 0; i < 150; i++) {
+            wheel.advance();
+        }
+        assertEquals(50, b.getRemainingTicks());
+        for (int i = 0; i < 50; i++) {
+            wheel.advance();
+        }
+        assertEquals(-1, a.expiredTick);
+        assertEquals(200, b.expiredTick);
+        assertEquals(-1, b.getRemainingTicks());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(1234);
+        TimingWheel wheel = new TimingWheel();
+        List<TestEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            entries.add(new TestEntry(wheel));
+        }
+        for (int tick = 0; tick < 200000; tick++) {
+            for (int n = 0; n < 3; n++) {
+                TestEntry entry = entries.get(random.nextInt(entries.size()));
+                if (random.nextInt(4) == 0) {
+                    wheel.cancel(entry);
+                    entry.expectedTick = -1;
+                } else {
+                    int delay = 1 + (random.nextBoolean() ? random.nextInt(100) : random.nextInt(20000));
+                    wheel.schedule(entry, delay);
+                    entry.expectedTick = wheel.getCurrentTick() + delay;
+                }
+            }
+            wheel.advance();
+            for (TestEntry entry : entries) {
+                if (entry.expectedTick == wheel.getCurrentTick()) {
+                    assertEquals(entry.expectedTick, entry.expiredTick);
+                    entry.expectedTick = -1;
+                } else if (entry.expectedTick != -1) {
+                    assertTrue(entry.isScheduled());
+                    assertEquals(entry.expectedTick - wheel.getCurrentTick(), entry.getRemainingTicks());
+                }
+            }
+        }
+    }
+
+    private static final class TestEntry extends TimingWheel.Entry {
+        private final TimingWheel wheel;
+        public long expectedTick = -1;
+        public long expiredTick = -1;
+
+        public TestEntry(TimingWheel wheel) {
+            this.wheel = wheel;
+        }
+
+        @Override
+        protected void onExpired() {
+            expiredTick = wheel.getCurrentTick();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.bergerkiller.bukkit.coasters.tracks;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.util.Vector;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CoasterBoundsIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPendingInChunkAcrossRegionBorders() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+
+        // Chunks x=-2..2, z=6..8, padded to x=-3..3, z=5..9. Spans regions x=-1..0, z=0..1
+        index.putLoaded(createEntry(index, "a", -20.0, 64.0, 100.0, 40.0, 70.0, 130.0));
+        index.addPending("a");
+
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(-3, 5));
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(3, 9));
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(-1, 7));
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(0, 8));
+        assertTrue(index.getPendingInChunk(-4, 5).isEmpty());
+        assertTrue(index.getPendingInChunk(4, 9).isEmpty());
+        assertTrue(index.getPendingInChunk(-3, 4).isEmpty());
+        assertTrue(index.getPendingInChunk(3, 10).isEmpty());
+        assertTrue(index.getPendingInChunk(-100, -100).isEmpty());
+    }
+
+    @Test
+    public void testPendingInChunkNegativeCoordinates() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+
+        // Chunk x=-19, z=-1, padded to x=-20..-18, z=-2..0. Region x=-3, z=-1..0
+        index.putLoaded(createEntry(index, "a", -300.0, 64.0, -10.0, -290.0, 64.0, -0.5));
+        index.addPending("a");
+
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(-20, -2));
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(-18, 0));
+        assertEquals(Collections.singletonList("a"), index.getPendingInChunk(-19, -1));
+        assertTrue(index.getPendingInChunk(-21, -1).isEmpty());
+        assertTrue(index.getPendingInChunk(-17, -1).isEmpty());
+        assertTrue(index.getPendingInChunk(-19, -3).isEmpty());
+        assertTrue(index.getPendingInChunk(-19, 1).isEmpty());
+    }
+
+    @Test
+    public void testChunkAreaIncludesPositions() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+        TrackCoasterBounds bounds = new TrackCoasterBounds();
+        bounds.include(0.0, 64.0, 0.0);
+        bounds.include(15.0, 64.0, 15.0);
+        CoasterBoundsIndex.Entry entry = index.createEntry("a", bounds,
+                Collections.singletonList(new Vector(500.0, 64.0, 0.0)), Collections.emptyList());
+
+        // Chunk 0 to chunk 31 of the animation position, padded by a chunk
+        assertEquals(-1, entry.minChunkX);
+        assertEquals(-1, entry.minChunkZ);
+        assertEquals(32, entry.maxChunkX);
+        assertEquals(1, entry.maxChunkZ);
+
+        // Bounds only include the nodes themselves
+        assertEquals(15.0, entry.bounds.getMaxX(), 0.0);
+    }
+
+    @Test
+    public void testAddRemovePending() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+        index.putLoaded(createEntry(index, "a", 0.0, 64.0, 0.0, 100.0, 64.0, 100.0));
+        index.putLoaded(createEntry(index, "b", 50.0, 64.0, 50.0, 60.0, 64.0, 60.0));
+        assertFalse(index.hasPending());
+
+        // Not indexed coasters can not become pending
+        index.addPending("c");
+        assertFalse(index.isPending("c"));
+
+        // Adding twice and removing once removes it
+        index.addPending("a");
+        index.addPending("a");
+        index.addPending("b");
+        assertEquals(Arrays.asList("a", "b"), sorted(index.getPendingInChunk(3, 3)));
+        index.removePending("a");
+        assertFalse(index.isPending("a"));
+        assertEquals(Collections.singletonList("b"), index.getPendingInChunk(3, 3));
+        assertTrue(index.getPendingInChunk(0, 0).isEmpty());
+
+        index.removePending("b");
+        index.removePending("b");
+        assertFalse(index.hasPending());
+        for (int cx = -2; cx <= 8; cx++) {
+            for (int cz = -2; cz <= 8; cz++) {
+                assertTrue(index.getPendingInChunk(cx, cz).isEmpty());
+            }
+        }
+
+        // Removing the entry also removes it as pending
+        index.addPending("b");
+        index.remove("b");
+        assertFalse(index.isPending("b"));
+        assertNull(index.get("b"));
+        assertTrue(index.getPendingInChunk(3, 3).isEmpty());
+    }
+
+    @Test
+    public void testMarkActiveOnlyLoaded() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+        index.putLoaded(createEntry(index, "a", 0.0, 64.0, 0.0, 100.0, 64.0, 100.0));
+        CoasterBoundsIndex.Entry entry = index.get("a");
+
+        index.markActiveInChunk(20, 20, 1000L);
+        assertNotEquals(1000L, entry.lastActiveTime);
+        index.markActiveInChunk(3, 3, 1000L);
+        assertEquals(1000L, entry.lastActiveTime);
+
+        // Pending coasters are not loaded, and are not marked active
+        index.addPending("a");
+        index.markActiveInChunk(3, 3, 2000L);
+        assertEquals(1000L, entry.lastActiveTime);
+
+        // Replacing the entry of a loaded coaster only marks the new entry
+        index.removePending("a");
+        index.putLoaded(createEntry(index, "a", 0.0, 64.0, 0.0, 100.0, 64.0, 100.0));
+        index.markActiveInChunk(3, 3, 3000L);
+        assertEquals(1000L, entry.lastActiveTime);
+        assertEquals(3000L, index.get("a").lastActiveTime);
+    }
+
+    @Test
+    public void testSaveLoadRoundTrip() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+        TrackCoasterBounds bounds = new TrackCoasterBounds();
+        bounds.include(-12.5, 3.0, 40.25);
+        bounds.include(88.0, 120.5, 41.0);
+        index.putLoaded(index.createEntry("coaster/1", bounds,
+                Collections.singletonList(new Vector(-200.0, 0.0, 40.0)), Arrays.asList("b", "c")));
+        index.putLoaded(createEntry(index, "b", 0.0, 0.0, 0.0, 1.0, 1.0, 1.0));
+        index.save();
+
+        CoasterBoundsIndex loaded = new CoasterBoundsIndex(folder.getRoot());
+        loaded.load();
+        CoasterBoundsIndex.Entry expected = index.get("coaster/1");
+        CoasterBoundsIndex.Entry entry = loaded.get("coaster/1");
+        assertNotNull(entry);
+        assertEquals(expected.fileStamp, entry.fileStamp);
+        assertEquals(-12.5, entry.bounds.getMinX(), 0.0);
+        assertEquals(3.0, entry.bounds.getMinY(), 0.0);
+        assertEquals(40.25, entry.bounds.getMinZ(), 0.0);
+        assertEquals(88.0, entry.bounds.getMaxX(), 0.0);
+        assertEquals(120.5, entry.bounds.getMaxY(), 0.0);
+        assertEquals(41.0, entry.bounds.getMaxZ(), 0.0);
+        assertEquals(expected.minChunkX, entry.minChunkX);
+        assertEquals(expected.minChunkZ, entry.minChunkZ);
+        assertEquals(expected.maxChunkX, entry.maxChunkX);
+        assertEquals(expected.maxChunkZ, entry.maxChunkZ);
+        assertEquals(Arrays.asList("b", "c"), entry.links);
+        assertNotNull(loaded.get("b"));
+        assertFalse(loaded.hasPending());
+
+        // Pending coasters can be looked up after loading
+        loaded.addPending("coaster/1");
+        assertEquals(Collections.singletonList("coaster/1"), loaded.getPendingInChunk(-14, 2));
+    }
+
+    @Test
+    public void testFileStamp() throws IOException {
+        CoasterBoundsIndex index = new CoasterBoundsIndex(folder.getRoot());
+        File coasterFile = new File(folder.getRoot(), "a.csv");
+        writeBytes(coasterFile, 100);
+        index.putLoaded(createEntry(index, "a", 0.0, 0.0, 0.0, 1.0, 1.0, 1.0));
+        assertTrue(index.isUpToDate("a"));
+        assertFalse(index.isUpToDate("b"));
+
+        // Changing the coaster file outdates the entry
+        writeBytes(coasterFile, 200);
+        assertFalse(index.isUpToDate("a"));
+
+        // So does a journal written next to it
+        index.putLoaded(createEntry(index, "a", 0.0, 0.0, 0.0, 1.0, 1.0, 1.0));
+        assertTrue(index.isUpToDate("a"));
+        writeBytes(new File(folder.getRoot(), "a" + TrackCoaster.JOURNAL_EXTENSION), 10);
+        assertFalse(index.isUpToDate("a"));
+    }
+
+    private static CoasterBoundsIndex.Entry createEntry(CoasterBoundsIndex index, String name,
+            double minX, double minY, double minZ, double maxX, double maxY, double maxZ
+    ) {
+        TrackCoasterBounds bounds = new TrackCoasterBounds();
+        bounds.include(minX, minY, minZ);
+        bounds.include(maxX, maxY, maxZ);
+        return index.createEntry(name, bounds, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static List<String> sorted(List<String> names) {
+        String[] arr = names.toArray(new String[0]);
+        Arrays.sort(arr);
+        return Arrays.asList(arr);
+    }
+
+    private static void writeBytes(File file, int count) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[count]);
+        }
+    }
+}
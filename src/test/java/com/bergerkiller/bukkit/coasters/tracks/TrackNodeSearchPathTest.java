@@ -0,0 +1,135 @@
+package com.bergerkiller.bukkit.coasters.tracks;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TrackNodeSearchPathTest {
+
+    @Test
+    public void testFindShortestOnGrid() {
+        GridNode[][] grid = createJunctionGrid(20, 20);
+        GridNode start = grid[2][3];
+        GridNode target = grid[15][11];
+        TrackNodeSearchPath.SearchNode<GridNode, GridNode[]> end = TrackNodeSearchPath.search(
+                GRID_GRAPH, start, Collections.singleton(target), 8000.0);
+        assertNotNull(end);
+        assertSame(target, end.node);
+        assertEquals(13.0 + 8.0, end.distance, 1e-10);
+
+        // Walk back the path, it must end at the start node with every step being a neighbour
+        int steps = 0;
+        TrackNodeSearchPath.SearchNode<GridNode, GridNode[]> s = end;
+        while (s.parent != null) {
+            assertEquals(1, Math.abs(s.node.x - s.parent.node.x) + Math.abs(s.node.z - s.parent.node.z));
+            s = s.parent;
+            steps++;
+        }
+        assertSame(start, s.node);
+        assertEquals(21, steps);
+    }
+
+    @Test
+    public void testFindShortestNearest() {
+        GridNode[][] grid = createJunctionGrid(20, 20);
+        GridNode near = grid[5][5];
+        GridNode far = grid[19][19];
+        TrackNodeSearchPath.SearchNode<GridNode, GridNode[]> end = TrackNodeSearchPath.search(
+                GRID_GRAPH, grid[0][0], new HashSet<>(Arrays.asList(far, near)), 8000.0);
+        assertNotNull(end);
+        assertSame(near, end.node);
+    }
+
+    @Test
+    public void testFindShortestRepeated() {
+        // State of a previous search stored in the nodes must not be used
+        GridNode[][] grid = createJunctionGrid(20, 20);
+        assertNotNull(TrackNodeSearchPath.search(GRID_GRAPH, grid[19][19],
+                Collections.singleton(grid[0][0]), 8000.0));
+        TrackNodeSearchPath.SearchNode<GridNode, GridNode[]> end = TrackNodeSearchPath.search(
+                GRID_GRAPH, grid[0][0], Collections.singleton(grid[3][4]), 8000.0);
+        assertNotNull(end);
+        assertEquals(7.0, end.distance, 1e-10);
+    }
+
+    @Test
+    public void testFindShortestMaxDistance() {
+        GridNode[][] grid = createJunctionGrid(20, 20);
+        assertNull(TrackNodeSearchPath.search(GRID_GRAPH, grid[0][0],
+                Collections.singleton(grid[19][19]), 10.0));
+    }
+
+    private static GridNode[][] createJunctionGrid(int size_x, int size_z) {
+        GridNode[][] grid = new GridNode[size_x][size_z];
+        for (int x = 0; x < size_x; x++) {
+            for (int z = 0; z < size_z; z++) {
+                grid[x][z] = new GridNode(x, z);
+            }
+        }
+        for (int x = 0; x < size_x; x++) {
+            for (int z = 0; z < size_z; z++) {
+                if (x > 0) {
+                    connect(grid[x-1][z], grid[x][z]);
+                }
+                if (z > 0) {
+                    connect(grid[x][z-1], grid[x][z]);
+                }
+            }
+        }
+        return grid;
+    }
+
+    private static void connect(GridNode a, GridNode b) {
+        GridNode[] connection = new GridNode[] { a, b };
+        a.connections.add(connection);
+        b.connections.add(connection);
+    }
+
+    private static final class GridNode {
+        public final int x, z;
+        public final List<GridNode[]> connections = new ArrayList<>(4);
+        public int searchId = 0;
+        public int searchIndex = 0;
+
+        public GridNode(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+    }
+
+    private static final TrackNodeSearchPath.SearchGraph<GridNode, GridNode[]> GRID_GRAPH = new TrackNodeSearchPath.SearchGraph<GridNode, GridNode[]>() {
+        @Override
+        public Iterable<GridNode[]> getConnections(GridNode node) {
+            return node.connections;
+        }
+
+        @Override
+        public GridNode getOtherNode(GridNode[] connection, GridNode node) {
+            return (connection[0] == node) ? connection[1] : connection[0];
+        }
+
+        @Override
+        public double getDistance(GridNode nodeA, GridNode nodeB) {
+            double dx = nodeA.x - nodeB.x;
+            double dz = nodeA.z - nodeB.z;
+            return Math.sqrt(dx * dx + dz * dz);
+        }
+
+        @Override
+        public int getSearchIndex(GridNode node, int searchId) {
+            return (node.searchId == searchId) ? node.searchIndex : -1;
+        }
+
+        @Override
+        public void setSearchIndex(GridNode node, int searchId, int index) {
+            node.searchId = searchId;
+            node.searchIndex = index;
+        }
+    };
+}